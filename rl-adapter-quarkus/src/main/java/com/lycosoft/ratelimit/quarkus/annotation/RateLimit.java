@@ -81,6 +81,22 @@ public @interface RateLimit {
     @jakarta.enterprise.util.Nonbinding
     String key() default RateLimitDefaultValue.KEY_EXPRESSION;
     
+    /**
+     * The cost expression: how many permits one invocation consumes.
+     * 
+     * <p>Supports the same static values and expressions as {@link #key()}, for
+     * example {@code "5"}, {@code "#args[1]"} or {@code "#headers['X-Query-Cost']"}.
+     * The result must be a positive whole number; an expression that fails or yields
+     * anything else is handled by the limits' {@link #failStrategy() fail strategy}.
+     * 
+     * <p>Defaults to {@code "1"} (one permit per invocation).
+     * 
+     * @return the cost expression
+     * @since 1.1.0
+     */
+    @jakarta.enterprise.util.Nonbinding
+    String cost() default RateLimitDefaultValue.COST_EXPRESSION;
+    
     /**
      * The rate limiting algorithm to use.
      * 
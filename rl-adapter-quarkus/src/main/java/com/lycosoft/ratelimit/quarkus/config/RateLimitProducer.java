@@ -10,6 +10,7 @@ import com.lycosoft.ratelimit.spi.NoOpMetricsExporter;
 import com.lycosoft.ratelimit.spi.StorageProvider;
 import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
 import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Singleton;
@@ -103,6 +104,7 @@ public class RateLimitProducer {
      * @param keyResolver the key resolver
      * @param metricsExporter the metrics exporter
      * @param auditLogger the audit logger
+     * @param keyEncoding how storage keys are encoded (default: RAW, the 1.0 keys)
      * @return the limiter engine
      */
     @Produces
@@ -110,9 +112,12 @@ public class RateLimitProducer {
     public LimiterEngine produceLimiterEngine(StorageProvider storageProvider,
                                              KeyResolver keyResolver,
                                              MetricsExporter metricsExporter,
-                                             AuditLogger auditLogger) {
-        logger.info("Creating LimiterEngine");
-        return new LimiterEngine(storageProvider, keyResolver, metricsExporter, auditLogger);
+                                             AuditLogger auditLogger,
+                                             @ConfigProperty(name = "ratelimit.key-encoding", defaultValue = "RAW")
+                                             StorageKeyEncoder.Mode keyEncoding) {
+        logger.info("Creating LimiterEngine with {} storage keys", keyEncoding);
+        return new LimiterEngine(storageProvider, keyResolver, metricsExporter, auditLogger, null,
+                                 StorageKeyEncoder.of(keyEncoding));
     }
     
     /**
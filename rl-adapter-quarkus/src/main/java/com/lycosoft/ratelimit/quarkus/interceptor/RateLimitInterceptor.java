@@ -8,7 +8,6 @@ import com.lycosoft.ratelimit.http.RateLimitProblemDetail;
 import com.lycosoft.ratelimit.network.AdaptiveThrottler;
 import com.lycosoft.ratelimit.network.TrustedProxyResolver;
 import com.lycosoft.ratelimit.quarkus.annotation.RateLimit;
-import com.lycosoft.ratelimit.quarkus.annotation.RateLimits;
 import com.lycosoft.ratelimit.spi.KeyResolver;
 import io.quarkus.security.identity.SecurityIdentity;
 import io.vertx.core.http.HttpServerRequest;
@@ -22,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CDI interceptor for Quarkus that processes {@link RateLimit} annotations.
@@ -80,91 +80,181 @@ public class RateLimitInterceptor {
     @Inject
     jakarta.enterprise.inject.Instance<AdaptiveThrottler> adaptiveThrottlerInstance;
     
+    /**
+     * Rate limits of each intercepted method, resolved on first invocation.
+     * @since 1.1.0
+     */
+    private final Map<Method, MethodLimitPlan> plans = new ConcurrentHashMap<>();
+    
     /**
      * Intercepts method invocations with {@link RateLimit} annotation(s).
      * 
+     * <p>Method-level annotations take precedence over class-level ones.
+     * 
      * @param ctx the invocation context
      * @return the method result
      * @throws Exception if rate limit exceeded or method execution fails
      */
     @AroundInvoke
     public Object intercept(InvocationContext ctx) throws Exception {
-        Method method = ctx.getMethod();
-        
-        // Collect all @RateLimit annotations
-        List<RateLimit> rateLimits = new ArrayList<>();
-        
-        // Check for single @RateLimit
-        RateLimit single = method.getAnnotation(RateLimit.class);
-        if (single != null) {
-            rateLimits.add(single);
-        }
-        
-        // Check for @RateLimits (multiple)
-        RateLimits multiple = method.getAnnotation(RateLimits.class);
-        if (multiple != null) {
-            rateLimits.addAll(Arrays.asList(multiple.value()));
-        }
+        MethodLimitPlan plan = planFor(ctx.getMethod());
         
         // If no annotations, proceed normally
-        if (rateLimits.isEmpty()) {
+        if (plan.isEmpty()) {
             return ctx.proceed();
         }
         
-        // Build context
-        RateLimitContext context = buildContext(ctx);
+        // Build context, resolving the first limit's key
+        RateLimitContext context = buildContext(ctx, plan.getKeyExpression(0));
         
-        // Check each rate limit
-        for (RateLimit rateLimit : rateLimits) {
-            RateLimitConfig config = buildConfig(rateLimit, method);
-            
-            // Build context with this limit's key expression
-            RateLimitContext limitContext = RateLimitContext.builder()
-                .principal(context.getPrincipal())
-                .remoteAddress(context.getRemoteAddress())
-                .requestHeaders(context.getRequestHeaders())
-                .methodArguments(context.getMethodArguments())
-                .methodSignature(context.getMethodSignature())
-                .keyExpression(rateLimit.key())
-                .build();
-            
-            // Check rate limit
-            RateLimitDecision decision = limiterEngine.tryAcquire(limitContext, config);
-            
-            if (!decision.isAllowed()) {
-                logger.warn("Rate limit exceeded: limiter={}, limit={}/{}{}", 
-                           config.getName(),
-                           config.getRequests(),
-                           config.getWindow(),
-                           config.getWindowUnit());
-                
-                throw new RateLimitExceededException(
-                    "Rate limit exceeded for " + config.getName(),
-                    decision
-                );
-            }
-            
-            // Apply adaptive throttling delay if configured
-            if (decision.getDelayMs() > 0) {
-                applyAdaptiveDelay(decision.getDelayMs(), config.getName());
-            }
+        RateLimitDecision decision = check(plan, context);
+        
+        if (!decision.isAllowed()) {
+            RateLimitConfig config = findConfig(plan.getConfigs(), decision.getLimiterName());
+            logger.warn("Rate limit exceeded: limiter={}, limit={}/{}{}", 
+                       config.getName(),
+                       config.getRequests(),
+                       config.getWindow(),
+                       config.getWindowUnit());
             
-            logger.trace("Rate limit passed: limiter={}, remaining={}", 
-                        config.getName(), decision.getRemaining());
+            throw new RateLimitExceededException(
+                "Rate limit exceeded for " + config.getName(),
+                decision
+            );
         }
         
+        // Apply adaptive throttling delay if configured
+        if (decision.getDelayMs() > 0) {
+            applyAdaptiveDelay(decision.getDelayMs(), decision.getLimiterName());
+        }
+        
+        logger.trace("Rate limits passed: limiters={}, remaining={}", 
+                    plan.size(), decision.getRemaining());
+        
         // All rate limits passed - proceed
         return ctx.proceed();
     }
     
+    /**
+     * Returns the cached plan for the intercepted method, resolving it on first use.
+     * 
+     * @param method the intercepted method
+     * @return the method's plan
+     */
+    private MethodLimitPlan planFor(Method method) {
+        MethodLimitPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, m -> MethodLimitPlan.resolve(m, limiterEngine));
+        }
+        return plan;
+    }
+    
+    /**
+     * Copies the request context with a different expression to resolve.
+     * 
+     * @param context the request context
+     * @param expression the key or cost expression
+     * @return the context for that expression
+     */
+    private static RateLimitContext withExpression(RateLimitContext context, String expression) {
+        return RateLimitContext.builder()
+            .principal(context.getPrincipal())
+            .remoteAddress(context.getRemoteAddress())
+            .requestHeaders(context.getRequestHeaders())
+            .methodArguments(context.getMethodArguments())
+            .methodSignature(context.getMethodSignature())
+            .keyExpression(expression)
+            .build();
+    }
+    
+    /**
+     * Resolves the cost of the invocation against each limit and checks the limits.
+     * 
+     * @param plan the rate limits of the intercepted method
+     * @param context the request context, resolving the first limit's key
+     * @return the combined decision
+     */
+    private RateLimitDecision check(MethodLimitPlan plan, RateLimitContext context) {
+        int[] permits = new int[plan.size()];
+        try {
+            for (int i = 0; i < plan.size(); i++) {
+                permits[i] = resolveCost(plan.getCostExpression(i), context);
+            }
+        } catch (RuntimeException e) {
+            // An unusable cost is decided by the fail strategy, like a storage failure
+            return limiterEngine.failedCheck(plan.getConfigs(), e);
+        }
+        
+        if (plan.size() == 1) {
+            return plan.getBoundLimiter().tryAcquire(context, permits[0]);
+        }
+        
+        // Build one context per limit
+        List<RateLimitContext> limitContexts = new ArrayList<>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            limitContexts.add(i == 0 ? context : withExpression(context, plan.getKeyExpression(i)));
+        }
+        
+        // Check all rate limits in one storage operation (all-or-nothing)
+        return limiterEngine.tryAcquireAll(limitContexts, plan.getConfigs(), permits);
+    }
+    
+    /**
+     * Resolves how many permits this invocation costs against a limit.
+     * 
+     * <p>The cost expression is evaluated by the {@link KeyResolver}, so it gets the
+     * same variables and sandboxing as key expressions. The default cost skips evaluation.
+     * 
+     * @param costExpression the cost expression, or null for the default cost
+     * @param context the request context
+     * @return the number of permits (at least 1)
+     * @throws IllegalArgumentException if the expression does not evaluate to a positive whole number
+     */
+    private int resolveCost(String costExpression, RateLimitContext context) {
+        if (costExpression == null) {
+            return 1;
+        }
+        
+        String value = keyResolver.resolveKey(withExpression(context, costExpression));
+        double cost;
+        try {
+            cost = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cost expression '" + costExpression + "' did not evaluate to a number", e);
+        }
+        if (cost != Math.rint(cost) || cost < 1) {
+            throw new IllegalArgumentException(
+                "Cost expression '" + costExpression + "' did not evaluate to a positive whole number");
+        }
+        return (int) Math.min(Integer.MAX_VALUE, cost);
+    }
+    
+    /**
+     * Finds the configuration that produced a decision.
+     *
+     * @param configs the configurations passed to the engine
+     * @param limiterName the limiter name reported by the decision
+     * @return the matching configuration, or the first one if none matches
+     */
+    private static RateLimitConfig findConfig(List<RateLimitConfig> configs, String limiterName) {
+        for (RateLimitConfig config : configs) {
+            if (config.getName().equals(limiterName)) {
+                return config;
+            }
+        }
+        return configs.get(0);
+    }
+    
     /**
      * Builds rate limit context from the current invocation.
      * 
      * @param ctx the invocation context
+     * @param keyExpression the key expression to resolve
      * @return the rate limit context
      */
-    private RateLimitContext buildContext(InvocationContext ctx) {
-        RateLimitContext.Builder builder = RateLimitContext.builder();
+    private RateLimitContext buildContext(InvocationContext ctx, String keyExpression) {
+        RateLimitContext.Builder builder = RateLimitContext.builder()
+            .keyExpression(keyExpression);
         
         // Method arguments
         builder.methodArguments(ctx.getParameters());
@@ -213,52 +303,6 @@ public class RateLimitInterceptor {
         return resolvedIp;
     }
     
-    /**
-     * Builds rate limit configuration from annotation.
-     *
-     * <p>Supports algorithm-specific validation:
-     * <ul>
-     *   <li>TOKEN_BUCKET: requires (capacity + refillRate) OR (requests + window)</li>
-     *   <li>SLIDING_WINDOW: requires (requests + window)</li>
-     * </ul>
-     *
-     * @param rateLimit the rate limit annotation
-     * @param method the intercepted method
-     * @return the rate limit configuration
-     */
-    private RateLimitConfig buildConfig(RateLimit rateLimit, Method method) {
-        // Determine name
-        String name = rateLimit.name();
-        if (name.isEmpty()) {
-            name = method.getDeclaringClass().getName() + "." + method.getName();
-        }
-
-        // Build configuration with algorithm-specific parameters
-        RateLimitConfig.Builder builder = RateLimitConfig.builder()
-            .name(name)
-            .algorithm(rateLimit.algorithm())
-            .windowUnit(rateLimit.windowUnit())
-            .failStrategy(rateLimit.failStrategy());
-
-        // Only set requests/window if explicitly provided (not default -1)
-        if (rateLimit.requests() > 0) {
-            builder.requests(rateLimit.requests());
-        }
-        if (rateLimit.window() > 0) {
-            builder.window(rateLimit.window());
-        }
-
-        // Set capacity and refill rate for Token Bucket
-        if (rateLimit.capacity() > 0) {
-            builder.capacity(rateLimit.capacity());
-        }
-        if (rateLimit.refillRate() > 0) {
-            builder.refillRate(rateLimit.refillRate());
-        }
-
-        return builder.build();
-    }
-    
     /**
      * Masks a key for logging (to protect PII).
      * 
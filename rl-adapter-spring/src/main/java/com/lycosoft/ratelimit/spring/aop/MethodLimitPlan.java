@@ -0,0 +1,170 @@
+package com.lycosoft.ratelimit.spring.aop;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.constants.RateLimitDefaultValue;
+import com.lycosoft.ratelimit.engine.BoundLimiter;
+import com.lycosoft.ratelimit.engine.LimiterEngine;
+import com.lycosoft.ratelimit.spring.annotation.RateLimit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rate limits of one intercepted method, resolved from its annotations once.
+ *
+ * <p>Method-level {@link RateLimit} annotations take precedence; a method without any
+ * inherits the annotations of its declaring class. Everything that depends only on the
+ * annotations (configurations, limiter names, key and cost expressions, the bound
+ * limiter for single-limit methods) is computed here, so {@link RateLimitAspect} only
+ * has to build the request context and call the engine.
+ *
+ * <p><b>Thread Safety:</b> Instances are immutable and cached per {@link Method}.
+ *
+ * @since 1.1.0
+ */
+final class MethodLimitPlan {
+
+    /**
+     * Plan for methods without rate limits.
+     */
+    static final MethodLimitPlan EMPTY = new MethodLimitPlan(
+        Collections.emptyList(), new String[0], new String[0], null);
+
+    private final List<RateLimitConfig> configs;
+    private final String[] keyExpressions;
+    private final String[] costExpressions;
+    private final BoundLimiter boundLimiter;
+
+    private MethodLimitPlan(List<RateLimitConfig> configs, String[] keyExpressions,
+                            String[] costExpressions, BoundLimiter boundLimiter) {
+        this.configs = configs;
+        this.keyExpressions = keyExpressions;
+        this.costExpressions = costExpressions;
+        this.boundLimiter = boundLimiter;
+    }
+
+    /**
+     * Resolves the plan for a method.
+     *
+     * @param method the intercepted method
+     * @param limiterEngine the engine used to bind single-limit methods
+     * @return the plan, or {@link #EMPTY} if neither the method nor its class is annotated
+     */
+    static MethodLimitPlan resolve(Method method, LimiterEngine limiterEngine) {
+        RateLimit[] rateLimits = method.getAnnotationsByType(RateLimit.class);
+        if (rateLimits.length == 0) {
+            rateLimits = method.getDeclaringClass().getAnnotationsByType(RateLimit.class);
+        }
+        if (rateLimits.length == 0) {
+            return EMPTY;
+        }
+
+        List<RateLimitConfig> configs = new ArrayList<>(rateLimits.length);
+        String[] keyExpressions = new String[rateLimits.length];
+        String[] costExpressions = new String[rateLimits.length];
+        for (int i = 0; i < rateLimits.length; i++) {
+            RateLimit rateLimit = rateLimits[i];
+            configs.add(buildConfig(rateLimit, method));
+            keyExpressions[i] = rateLimit.key();
+            costExpressions[i] = RateLimitDefaultValue.COST_EXPRESSION.equals(rateLimit.cost())
+                ? null
+                : rateLimit.cost();
+        }
+
+        BoundLimiter boundLimiter = configs.size() == 1 ? limiterEngine.bind(configs.get(0)) : null;
+        return new MethodLimitPlan(Collections.unmodifiableList(configs), keyExpressions,
+                                   costExpressions, boundLimiter);
+    }
+
+    /**
+     * Builds rate limit configuration from annotation.
+     *
+     * <p>Supports algorithm-specific validation:
+     * <ul>
+     *   <li>TOKEN_BUCKET: requires (capacity + refillRate) OR (requests + window)</li>
+     *   <li>SLIDING_WINDOW: requires (requests + window)</li>
+     * </ul>
+     *
+     * @param rateLimit the rate limit annotation
+     * @param method the intercepted method
+     * @return the rate limit configuration
+     */
+    private static RateLimitConfig buildConfig(RateLimit rateLimit, Method method) {
+        // Determine name
+        String name = rateLimit.name();
+        if (name.isEmpty()) {
+            name = method.getDeclaringClass().getName() + "." + method.getName();
+        }
+
+        // Build configuration with algorithm-specific parameters
+        RateLimitConfig.Builder builder = RateLimitConfig.builder()
+            .name(name)
+            .algorithm(rateLimit.algorithm())
+            .windowUnit(rateLimit.windowUnit())
+            .failStrategy(rateLimit.failStrategy());
+
+        // Only set requests/window if explicitly provided (not default -1)
+        if (rateLimit.requests() > 0) {
+            builder.requests(rateLimit.requests());
+        }
+        if (rateLimit.window() > 0) {
+            builder.window(rateLimit.window());
+        }
+
+        // Set capacity and refill rate for Token Bucket
+        if (rateLimit.capacity() > 0) {
+            builder.capacity(rateLimit.capacity());
+        }
+        if (rateLimit.refillRate() > 0) {
+            builder.refillRate(rateLimit.refillRate());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return true if the method has no rate limits
+     */
+    boolean isEmpty() {
+        return configs.isEmpty();
+    }
+
+    /**
+     * @return the number of rate limits
+     */
+    int size() {
+        return configs.size();
+    }
+
+    /**
+     * @return the rate limit configurations, in declaration order (unmodifiable)
+     */
+    List<RateLimitConfig> getConfigs() {
+        return configs;
+    }
+
+    /**
+     * @param index the limit index
+     * @return the key expression of that limit
+     */
+    String getKeyExpression(int index) {
+        return keyExpressions[index];
+    }
+
+    /**
+     * @param index the limit index
+     * @return the cost expression of that limit, or null if it costs one permit
+     */
+    String getCostExpression(int index) {
+        return costExpressions[index];
+    }
+
+    /**
+     * @return the bound limiter if the method has exactly one limit, otherwise null
+     */
+    BoundLimiter getBoundLimiter() {
+        return boundLimiter;
+    }
+}
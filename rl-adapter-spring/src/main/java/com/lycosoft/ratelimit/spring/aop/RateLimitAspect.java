@@ -16,6 +16,7 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -26,6 +27,7 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import jakarta.servlet.http.HttpServletRequest;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,6 +44,11 @@ import java.util.concurrent.TimeUnit;
  * 
  * <p><b>Execution Order:</b>
  * For multiple {@code @RateLimit} annotations, all limits must pass for the request to proceed.
+ * They are checked together in one storage operation, and no limit is consumed unless all pass.
+ * 
+ * <p><b>Class-level limits:</b>
+ * A {@code @RateLimit} on a class applies to every method of that class that does not
+ * declare its own. Each method's annotations are resolved once into a cached plan.
  * 
  * @since 1.0.0
  */
@@ -55,6 +62,7 @@ public class RateLimitAspect {
     private final KeyResolver keyResolver;
     private final TrustedProxyResolver proxyResolver;  // NEW
     private final AdaptiveThrottler adaptiveThrottler;  // NEW (optional)
+    private final Map<Method, MethodLimitPlan> plans = new ConcurrentHashMap<>();
     
     /**
      * Creates a rate limit aspect.
@@ -89,103 +97,199 @@ public class RateLimitAspect {
     }
     
     /**
-     * Intercepts methods with single {@code @RateLimit} annotation.
+     * Intercepts methods annotated with {@link RateLimit} or {@link RateLimits}, either
+     * directly or through their class.
      * 
      * @param joinPoint the join point
-     * @param rateLimit the rate limit annotation
      * @return the method result
-     * @throws Throwable if the method execution fails
-     */
-    @Around("@annotation(rateLimit)")
-    public Object rateLimitSingle(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
-        return checkRateLimits(joinPoint, Collections.singletonList(rateLimit));
-    }
-    
-    /**
-     * Intercepts methods with multiple {@code @RateLimit} annotations.
-     * 
-     * @param joinPoint the join point
-     * @param rateLimits the rate limits container
-     * @return the method result
-     * @throws Throwable if the method execution fails
+     * @throws Throwable if the method execution fails or rate limit exceeded
      */
-    @Around("@annotation(rateLimits)")
-    public Object rateLimitMultiple(ProceedingJoinPoint joinPoint, RateLimits rateLimits) throws Throwable {
-        return checkRateLimits(joinPoint, Arrays.asList(rateLimits.value()));
+    @Around("@annotation(com.lycosoft.ratelimit.spring.annotation.RateLimit)"
+            + " || @annotation(com.lycosoft.ratelimit.spring.annotation.RateLimits)"
+            + " || @within(com.lycosoft.ratelimit.spring.annotation.RateLimit)"
+            + " || @within(com.lycosoft.ratelimit.spring.annotation.RateLimits)")
+    public Object rateLimit(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodLimitPlan plan = planFor(joinPoint);
+        if (plan.isEmpty()) {
+            return joinPoint.proceed();
+        }
+        return checkRateLimits(joinPoint, plan);
     }
     
     /**
      * Checks all rate limits for the method invocation.
      *
      * @param joinPoint the join point
-     * @param rateLimits the list of rate limit annotations
+     * @param plan the rate limits of the intercepted method
      * @return the method result
      * @throws Throwable if the method execution fails or rate limit exceeded
-     * @throws IllegalArgumentException if rateLimits is null or empty
      */
-    private Object checkRateLimits(ProceedingJoinPoint joinPoint, List<RateLimit> rateLimits) throws Throwable {
-        // Validate input to prevent NPE
-        if (rateLimits == null || rateLimits.isEmpty()) {
-            throw new IllegalArgumentException("rateLimits cannot be null or empty");
-        }
-
-        // Build context from current request
-        RateLimitContext context = buildContext(joinPoint);
+    private Object checkRateLimits(ProceedingJoinPoint joinPoint, MethodLimitPlan plan) throws Throwable {
+        // Build context from current request, resolving the first limit's key
+        RateLimitContext context = buildContext(joinPoint, plan.getKeyExpression(0));
         
-        // Check each rate limit
-        for (RateLimit rateLimit : rateLimits) {
-            RateLimitConfig config = buildConfig(rateLimit, joinPoint);
-            
-            // Update context with this limit's key expression
-            RateLimitContext limitContext = RateLimitContext.builder()
-                .principal(context.getPrincipal())
-                .remoteAddress(context.getRemoteAddress())
-                .requestHeaders(context.getRequestHeaders())
-                .methodArguments(context.getMethodArguments())
-                .keyExpression(rateLimit.key())
-                .build();
-            
-            // Resolve the actual key
-            String resolvedKey = keyResolver.resolveKey(limitContext);
+        RateLimitDecision decision = check(plan, context);
+        
+        if (!decision.isAllowed()) {
+            int index = indexOf(plan.getConfigs(), decision.getLimiterName());
+            RateLimitConfig config = plan.getConfigs().get(index);
             
-            // Check rate limit
-            RateLimitDecision decision = limiterEngine.tryAcquire(limitContext, config);
+            // Resolve the actual key (for logging only)
+            String resolvedKey = keyResolver.resolveKey(
+                index == 0 ? context : withExpression(context, plan.getKeyExpression(index)));
             
-            if (!decision.isAllowed()) {
-                logger.warn("Rate limit exceeded: limiter={}, key={}, limit={}/{}{}", 
-                           config.getName(),
-                           maskKey(resolvedKey),
-                           config.getRequests(),
-                           config.getWindow(),
-                           config.getWindowUnit());
-                
-                throw new RateLimitExceededException(
-                    "Rate limit exceeded for " + config.getName(),
-                    decision
-                );
-            }
+            logger.warn("Rate limit exceeded: limiter={}, key={}, limit={}/{}{}", 
+                       config.getName(),
+                       maskKey(resolvedKey),
+                       config.getRequests(),
+                       config.getWindow(),
+                       config.getWindowUnit());
             
-            // Apply adaptive throttling delay if configured
-            if (decision.getDelayMs() > 0) {
-                applyAdaptiveDelay(decision.getDelayMs(), config.getName());
-            }
-            
-            logger.trace("Rate limit passed: limiter={}, remaining={}", 
-                        config.getName(), decision.getRemaining());
+            throw new RateLimitExceededException(
+                "Rate limit exceeded for " + config.getName(),
+                decision
+            );
         }
         
+        // Apply adaptive throttling delay if configured
+        if (decision.getDelayMs() > 0) {
+            applyAdaptiveDelay(decision.getDelayMs(), decision.getLimiterName());
+        }
+        
+        logger.trace("Rate limits passed: limiters={}, remaining={}", 
+                    plan.size(), decision.getRemaining());
+        
         // All rate limits passed - proceed with method execution
         return joinPoint.proceed();
     }
     
+    /**
+     * Returns the cached plan for the intercepted method, resolving it on first use.
+     * 
+     * <p>Interface methods are mapped to the target class implementation, so that
+     * annotations on the implementing class and its methods are honoured.
+     * 
+     * @param joinPoint the join point
+     * @return the method's plan
+     */
+    private MethodLimitPlan planFor(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        if (method.getDeclaringClass().isInterface() && joinPoint.getTarget() != null) {
+            method = AopUtils.getMostSpecificMethod(method, AopUtils.getTargetClass(joinPoint.getTarget()));
+        }
+        
+        MethodLimitPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, m -> MethodLimitPlan.resolve(m, limiterEngine));
+        }
+        return plan;
+    }
+    
+    /**
+     * Copies the request context with a different expression to resolve.
+     * 
+     * @param context the request context
+     * @param expression the key or cost expression
+     * @return the context for that expression
+     */
+    private static RateLimitContext withExpression(RateLimitContext context, String expression) {
+        return RateLimitContext.builder()
+            .principal(context.getPrincipal())
+            .remoteAddress(context.getRemoteAddress())
+            .requestHeaders(context.getRequestHeaders())
+            .methodArguments(context.getMethodArguments())
+            .keyExpression(expression)
+            .build();
+    }
+    
+    /**
+     * Resolves the cost of the invocation against each limit and checks the limits.
+     * 
+     * @param plan the rate limits of the intercepted method
+     * @param context the request context, resolving the first limit's key
+     * @return the combined decision
+     */
+    private RateLimitDecision check(MethodLimitPlan plan, RateLimitContext context) {
+        int[] permits = new int[plan.size()];
+        try {
+            for (int i = 0; i < plan.size(); i++) {
+                permits[i] = resolveCost(plan.getCostExpression(i), context);
+            }
+        } catch (RuntimeException e) {
+            // An unusable cost is decided by the fail strategy, like a storage failure
+            return limiterEngine.failedCheck(plan.getConfigs(), e);
+        }
+        
+        if (plan.size() == 1) {
+            return plan.getBoundLimiter().tryAcquire(context, permits[0]);
+        }
+        
+        // Build one context per limit
+        List<RateLimitContext> limitContexts = new ArrayList<>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            limitContexts.add(i == 0 ? context : withExpression(context, plan.getKeyExpression(i)));
+        }
+        
+        // Check all rate limits in one storage operation (all-or-nothing)
+        return limiterEngine.tryAcquireAll(limitContexts, plan.getConfigs(), permits);
+    }
+    
+    /**
+     * Resolves how many permits this invocation costs against a limit.
+     * 
+     * <p>The cost expression is evaluated by the {@link KeyResolver}, so it gets the
+     * same variables and sandboxing as key expressions. The default cost skips evaluation.
+     * 
+     * @param costExpression the cost expression, or null for the default cost
+     * @param context the request context
+     * @return the number of permits (at least 1)
+     * @throws IllegalArgumentException if the expression does not evaluate to a positive whole number
+     */
+    private int resolveCost(String costExpression, RateLimitContext context) {
+        if (costExpression == null) {
+            return 1;
+        }
+        
+        String value = keyResolver.resolveKey(withExpression(context, costExpression));
+        double cost;
+        try {
+            cost = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cost expression '" + costExpression + "' did not evaluate to a number", e);
+        }
+        if (cost != Math.rint(cost) || cost < 1) {
+            throw new IllegalArgumentException(
+                "Cost expression '" + costExpression + "' did not evaluate to a positive whole number");
+        }
+        return (int) Math.min(Integer.MAX_VALUE, cost);
+    }
+    
+    /**
+     * Finds the configuration that produced a decision.
+     *
+     * @param configs the configurations passed to the engine
+     * @param limiterName the limiter name reported by the decision
+     * @return the index of the matching configuration, or 0 if none matches
+     */
+    private static int indexOf(List<RateLimitConfig> configs, String limiterName) {
+        for (int i = 0; i < configs.size(); i++) {
+            if (configs.get(i).getName().equals(limiterName)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+    
     /**
      * Builds rate limit context from the current request.
      * 
      * @param joinPoint the join point
+     * @param keyExpression the key expression to resolve
      * @return the rate limit context
      */
-    private RateLimitContext buildContext(ProceedingJoinPoint joinPoint) {
-        RateLimitContext.Builder builder = RateLimitContext.builder();
+    private RateLimitContext buildContext(ProceedingJoinPoint joinPoint, String keyExpression) {
+        RateLimitContext.Builder builder = RateLimitContext.builder()
+            .keyExpression(keyExpression);
         
         // Method arguments
         builder.methodArguments(joinPoint.getArgs());
@@ -262,54 +366,6 @@ public class RateLimitAspect {
         return resolvedIp;
     }
     
-    /**
-     * Builds rate limit configuration from annotation.
-     *
-     * <p>Supports algorithm-specific validation:
-     * <ul>
-     *   <li>TOKEN_BUCKET: requires (capacity + refillRate) OR (requests + window)</li>
-     *   <li>SLIDING_WINDOW: requires (requests + window)</li>
-     * </ul>
-     *
-     * @param rateLimit the rate limit annotation
-     * @param joinPoint the join point
-     * @return the rate limit configuration
-     */
-    private RateLimitConfig buildConfig(RateLimit rateLimit, ProceedingJoinPoint joinPoint) {
-        // Determine name
-        String name = rateLimit.name();
-        if (name.isEmpty()) {
-            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            Method method = signature.getMethod();
-            name = method.getDeclaringClass().getName() + "." + method.getName();
-        }
-
-        // Build configuration with algorithm-specific parameters
-        RateLimitConfig.Builder builder = RateLimitConfig.builder()
-            .name(name)
-            .algorithm(rateLimit.algorithm())
-            .windowUnit(rateLimit.windowUnit())
-            .failStrategy(rateLimit.failStrategy());
-
-        // Only set requests/window if explicitly provided (not default -1)
-        if (rateLimit.requests() > 0) {
-            builder.requests(rateLimit.requests());
-        }
-        if (rateLimit.window() > 0) {
-            builder.window(rateLimit.window());
-        }
-
-        // Set capacity and refill rate for Token Bucket
-        if (rateLimit.capacity() > 0) {
-            builder.capacity(rateLimit.capacity());
-        }
-        if (rateLimit.refillRate() > 0) {
-            builder.refillRate(rateLimit.refillRate());
-        }
-
-        return builder.build();
-    }
-    
     /**
      * Applies adaptive throttling delay.
      *
@@ -13,6 +13,7 @@ import com.lycosoft.ratelimit.spring.handler.RateLimitExceptionHandler;
 import com.lycosoft.ratelimit.spring.metrics.MicrometerMetricsExporter;
 import com.lycosoft.ratelimit.spring.resolver.OptimizedSpELKeyResolver;
 import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -199,6 +200,7 @@ public class RateLimitAutoConfiguration {
      * @param keyResolver the key resolver
      * @param metricsExporter the metrics exporter
      * @param auditLogger the audit logger
+     * @param properties the rate limit properties
      * @return the limiter engine
      */
     @Bean
@@ -206,9 +208,11 @@ public class RateLimitAutoConfiguration {
     public LimiterEngine limiterEngine(StorageProvider storageProvider,
                                       KeyResolver keyResolver,
                                       MetricsExporter metricsExporter,
-                                      AuditLogger auditLogger) {
-        logger.info("Creating LimiterEngine");
-        return new LimiterEngine(storageProvider, keyResolver, metricsExporter, auditLogger);
+                                      AuditLogger auditLogger,
+                                      RateLimitProperties properties) {
+        logger.info("Creating LimiterEngine with {} storage keys", properties.getKeyEncoding());
+        return new LimiterEngine(storageProvider, keyResolver, metricsExporter, auditLogger, null,
+                                 StorageKeyEncoder.of(properties.getKeyEncoding()));
     }
     
     /**
@@ -1,5 +1,6 @@
 package com.lycosoft.ratelimit.spring.config;
 
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.expression.spel.SpelCompilerMode;
 
@@ -10,6 +11,7 @@ import org.springframework.expression.spel.SpelCompilerMode;
  * <pre>
  * ratelimit:
  *   enabled: true
+ *   key-encoding: HASHED_64
  *   spel:
  *     compiler-mode: IMMEDIATE
  *     cache-size: 1000
@@ -25,6 +27,12 @@ public class RateLimitProperties {
      */
     private boolean enabled = true;
     
+    /**
+     * How storage keys are encoded (see {@link StorageKeyEncoder}).
+     * Default: RAW (1.0 keys; switching resets limiter state once).
+     */
+    private StorageKeyEncoder.Mode keyEncoding = StorageKeyEncoder.Mode.RAW;
+    
     /**
      * SpEL configuration.
      */
@@ -48,6 +56,14 @@ public class RateLimitProperties {
         this.enabled = enabled;
     }
     
+    public StorageKeyEncoder.Mode getKeyEncoding() {
+        return keyEncoding;
+    }
+    
+    public void setKeyEncoding(StorageKeyEncoder.Mode keyEncoding) {
+        this.keyEncoding = keyEncoding;
+    }
+    
     public SpelConfig getSpel() {
         return spel;
     }
@@ -1,15 +1,20 @@
 package com.lycosoft.ratelimit.spring.metrics;
 
+import com.lycosoft.ratelimit.spi.LimiterMetrics;
 import com.lycosoft.ratelimit.spi.MetricsExporter;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Micrometer-based metrics exporter for Spring Boot.
@@ -132,6 +137,17 @@ public class MicrometerMetricsExporter implements MetricsExporter {
                     limiterName, current, limit, String.format("%.2f", percentage));
     }
     
+    /**
+     * Resolves the limiter's counters, timer and usage gauges once.
+     * 
+     * <p>The usage gauges are backed by the returned handles, so they always report the
+     * latest recorded usage.
+     */
+    @Override
+    public LimiterMetrics bind(String limiterName) {
+        return new BoundLimiterMetrics(limiterName);
+    }
+    
     /**
      * Converts circuit breaker state to numeric value for gauges.
      */
@@ -172,6 +188,76 @@ public class MicrometerMetricsExporter implements MetricsExporter {
         });
     }
     
+    /**
+     * Metric handles for one limiter, resolved from the registry when bound.
+     */
+    private final class BoundLimiterMetrics implements LimiterMetrics {
+        
+        private final String limiterName;
+        private final Counter allowed;
+        private final Counter denied;
+        private final Counter errors;
+        private final Timer latency;
+        private final AtomicInteger currentUsage = new AtomicInteger();
+        private final AtomicInteger limit = new AtomicInteger();
+        
+        BoundLimiterMetrics(String limiterName) {
+            this.limiterName = limiterName;
+            this.allowed = getOrCreateCounter(limiterName, "allowed");
+            this.denied = getOrCreateCounter(limiterName, "denied");
+            this.errors = getOrCreateCounter(limiterName, "error");
+            this.latency = Timer.builder("ratelimit.latency")
+                .tag(TAG_LIMITER, limiterName)
+                .description("Rate limiter check latency")
+                .register(registry);
+            
+            Gauge.builder("ratelimit.usage.current", currentUsage, AtomicInteger::get)
+                .tag(TAG_LIMITER, limiterName)
+                .description("Current usage count")
+                .register(registry);
+            Gauge.builder("ratelimit.usage.limit", limit, AtomicInteger::get)
+                .tag(TAG_LIMITER, limiterName)
+                .description("Configured limit")
+                .register(registry);
+            Gauge.builder("ratelimit.usage.percentage", this, BoundLimiterMetrics::usagePercentage)
+                .tag(TAG_LIMITER, limiterName)
+                .description("Usage percentage")
+                .register(registry);
+        }
+        
+        @Override
+        public void recordAllow() {
+            allowed.increment();
+        }
+        
+        @Override
+        public void recordDeny() {
+            denied.increment();
+        }
+        
+        @Override
+        public void recordError(Throwable error) {
+            errors.increment();
+            logger.debug("Recorded ERROR for limiter: {}, error: {}", limiterName, error.getMessage());
+        }
+        
+        @Override
+        public void recordUsage(int current, int limit) {
+            this.currentUsage.set(current);
+            this.limit.set(limit);
+        }
+        
+        @Override
+        public void recordLatency(long latencyMillis) {
+            latency.record(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        
+        private double usagePercentage() {
+            int currentLimit = limit.get();
+            return currentLimit > 0 ? (currentUsage.get() * 100.0 / currentLimit) : 0.0;
+        }
+    }
+    
     /**
      * Gets the current count for a specific limiter and result.
      * 
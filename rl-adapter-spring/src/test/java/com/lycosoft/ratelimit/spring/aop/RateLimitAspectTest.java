@@ -0,0 +1,120 @@
+package com.lycosoft.ratelimit.spring.aop;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.engine.LimiterEngine;
+import com.lycosoft.ratelimit.spi.KeyResolver;
+import com.lycosoft.ratelimit.spring.annotation.RateLimit;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for {@link RateLimitAspect} and {@link MethodLimitPlan}.
+ */
+class RateLimitAspectTest {
+
+    private LimiterEngine engine;
+    private AnnotatedService service;
+
+    @BeforeEach
+    void setUp() {
+        KeyResolver keyResolver = context -> context.getKeyExpression();
+        engine = new LimiterEngine(new InMemoryStorageProvider(), keyResolver, null, null);
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(new AnnotatedService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new RateLimitAspect(engine, keyResolver));
+        service = factory.getProxy();
+    }
+
+    @Test
+    void shouldApplyClassLevelLimitToUnannotatedMethods() {
+        // Given - the class allows 2 requests per minute
+        service.classLimited();
+        service.classLimited();
+
+        // When/Then - the third call is denied
+        assertThatThrownBy(() -> service.classLimited())
+            .isInstanceOf(RateLimitAspect.RateLimitExceededException.class);
+    }
+
+    @Test
+    void shouldPreferMethodLevelLimits() {
+        // Given - the method overrides the class limit with 3 requests per minute
+        service.methodLimited();
+        service.methodLimited();
+
+        // When
+        service.methodLimited();
+
+        // Then
+        assertThatThrownBy(() -> service.methodLimited())
+            .isInstanceOf(RateLimitAspect.RateLimitExceededException.class);
+    }
+
+    @Test
+    void shouldApplyFailStrategyToUnusableCosts() {
+        // Given - a fail-open limit whose cost is not a number, and a fail-closed one whose cost is zero
+
+        // When/Then - the first is never limited, the second always denies
+        assertThat(service.nonNumericCost()).isEqualTo("ok");
+        assertThat(service.nonNumericCost()).isEqualTo("ok");
+        assertThatThrownBy(() -> service.zeroCost())
+            .isInstanceOf(RateLimitAspect.RateLimitExceededException.class);
+    }
+
+    @Test
+    void shouldResolvePlanOnceFromAnnotations() throws Exception {
+        // Given
+        Method classLimited = AnnotatedService.class.getMethod("classLimited");
+        Method methodLimited = AnnotatedService.class.getMethod("methodLimited");
+
+        // When
+        MethodLimitPlan classPlan = MethodLimitPlan.resolve(classLimited, engine);
+        MethodLimitPlan methodPlan = MethodLimitPlan.resolve(methodLimited, engine);
+        MethodLimitPlan unannotated = MethodLimitPlan.resolve(Object.class.getMethod("toString"), engine);
+
+        // Then
+        assertThat(classPlan.size()).isEqualTo(1);
+        assertThat(classPlan.getConfigs().get(0).getName())
+            .isEqualTo(AnnotatedService.class.getName() + ".classLimited");
+        assertThat(classPlan.getKeyExpression(0)).isEqualTo("class");
+        assertThat(classPlan.getCostExpression(0)).isNull();
+        assertThat(classPlan.getBoundLimiter()).isNotNull();
+
+        assertThat(methodPlan.getConfigs().get(0).getName()).isEqualTo("method");
+        assertThat(methodPlan.getConfigs().get(0).getRequests()).isEqualTo(3);
+
+        assertThat(unannotated).isSameAs(MethodLimitPlan.EMPTY);
+    }
+
+    @RateLimit(key = "class", requests = 2, window = 60)
+    static class AnnotatedService {
+
+        public String classLimited() {
+            return "ok";
+        }
+
+        @RateLimit(name = "method", key = "method", requests = 3, window = 60)
+        public String methodLimited() {
+            return "ok";
+        }
+
+        @RateLimit(name = "nonNumeric", key = "nonNumeric", cost = "many", requests = 1, window = 60)
+        public String nonNumericCost() {
+            return "ok";
+        }
+
+        @RateLimit(name = "zero", key = "zero", cost = "0", requests = 1, window = 60,
+                   failStrategy = RateLimitConfig.FailStrategy.FAIL_CLOSED)
+        public String zeroCost() {
+            return "ok";
+        }
+    }
+}
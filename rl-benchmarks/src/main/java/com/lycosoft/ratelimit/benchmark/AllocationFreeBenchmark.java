@@ -0,0 +1,194 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.engine.BoundLimiter;
+import com.lycosoft.ratelimit.engine.LimiterEngine;
+import com.lycosoft.ratelimit.engine.RateLimitContext;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.NoOpMetricsExporter;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH Benchmarks for the allocation-free allow path of {@link BoundLimiter}.
+ *
+ * <p>Storage is a counter that allocates nothing, so {@code gc.alloc.rate.norm}
+ * measures the engine alone:
+ * <ul>
+ *   <li><b>bound:</b> {@code tryAcquire} returning a full decision per request</li>
+ *   <li><b>sharedAllow:</b> {@code tryAcquire} on a limiter bound with shared allow decisions</li>
+ *   <li><b>packed:</b> {@code tryAcquirePacked}, returning a {@code long}</li>
+ * </ul>
+ *
+ * <p>{@link #main} fails if {@code sharedAllow} or {@code packed} allocate.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * mvn clean package -pl rl-benchmarks
+ * java -jar rl-benchmarks/target/benchmarks.jar AllocationFreeBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G"})
+public class AllocationFreeBenchmark {
+
+    /**
+     * Bytes per operation tolerated by {@link #main} for the allocation-free benchmarks.
+     */
+    private static final double MAX_BYTES_PER_OP = 1.0;
+
+    private BoundLimiter boundLimiter;
+    private BoundLimiter sharedAllowLimiter;
+    private RateLimitContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LimiterEngine limiterEngine = new LimiterEngine(
+                new CountingStorageProvider(),
+                new StaticKeyResolver("benchmark"),
+                new NoOpMetricsExporter(),
+                null
+        );
+
+        RateLimitConfig config = RateLimitConfig.builder()
+                .name("benchmark-limiter")
+                .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+                .requests(Integer.MAX_VALUE)
+                .window(60)
+                .windowUnit(TimeUnit.SECONDS)
+                .build();
+        boundLimiter = limiterEngine.bind(config);
+        sharedAllowLimiter = limiterEngine.bind(config, true);
+
+        context = RateLimitContext.builder()
+                .keyExpression("benchmark-key")
+                .build();
+    }
+
+    /**
+     * Benchmark: Full decision per request.
+     */
+    @Benchmark
+    public void bound(Blackhole bh) {
+        bh.consume(boundLimiter.tryAcquire(context));
+    }
+
+    /**
+     * Benchmark: Shared allow decision.
+     */
+    @Benchmark
+    public void sharedAllow(Blackhole bh) {
+        bh.consume(sharedAllowLimiter.tryAcquire(context));
+    }
+
+    /**
+     * Benchmark: Packed primitive result.
+     */
+    @Benchmark
+    public long packed() {
+        return boundLimiter.tryAcquirePacked(context, 1);
+    }
+
+    /**
+     * Storage provider that counts permits without keeping per-key state.
+     *
+     * <p>Every request is allowed; the bound {@link BoundStorage#acquirePacked} path
+     * allocates nothing.
+     */
+    static final class CountingStorageProvider implements StorageProvider {
+
+        private final AtomicLong used = new AtomicLong();
+
+        @Override
+        public long getCurrentTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+            return true;
+        }
+
+        @Override
+        public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+            long usage = used.addAndGet(permits);
+            return AcquireResult.allowed(config.getRequests(), remaining(config, usage),
+                                         currentTime + config.getWindowMillis(), (int) usage);
+        }
+
+        @Override
+        public BoundStorage bind(RateLimitConfig config) {
+            return new BoundStorage() {
+                @Override
+                public AcquireResult acquire(String key, int permits, long currentTime) {
+                    return CountingStorageProvider.this.acquire(key, config, permits, currentTime);
+                }
+
+                @Override
+                public long acquirePacked(String key, int permits, long currentTime) {
+                    long usage = used.addAndGet(permits);
+                    return PackedAcquireResult.pack(true, remaining(config, usage),
+                                                    currentTime + config.getWindowMillis(), currentTime);
+                }
+            };
+        }
+
+        private static int remaining(RateLimitConfig config, long usage) {
+            return (int) Math.max(0, config.getRequests() - (usage & Integer.MAX_VALUE));
+        }
+
+        @Override
+        public void reset(String key) {
+            used.set(0);
+        }
+
+        @Override
+        public Optional<RateLimitState> getState(String key) {
+            return Optional.empty();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(AllocationFreeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        Collection<RunResult> results = new Runner(opt).run();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            if (benchmark.endsWith(".bound")) {
+                continue;
+            }
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (allocation != null && allocation.getScore() > MAX_BYTES_PER_OP) {
+                throw new IllegalStateException(benchmark + " allocated "
+                        + allocation.getScore() + " B/op on the allow path");
+            }
+        }
+    }
+}
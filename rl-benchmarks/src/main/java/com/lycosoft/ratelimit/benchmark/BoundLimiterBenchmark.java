@@ -0,0 +1,120 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.engine.BoundLimiter;
+import com.lycosoft.ratelimit.engine.LimiterEngine;
+import com.lycosoft.ratelimit.engine.RateLimitContext;
+import com.lycosoft.ratelimit.spi.NoOpMetricsExporter;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks comparing per-call configuration with {@link LimiterEngine#bind}.
+ *
+ * <p>Three ways to run the same check against in-memory storage:
+ * <ul>
+ *   <li><b>perCallConfig:</b> builds the config on every call, as the adapters did</li>
+ *   <li><b>sharedConfig:</b> reuses the config; the provider still builds the algorithm per call</li>
+ *   <li><b>bound:</b> a {@link BoundLimiter}; only key resolution and storage remain per call</li>
+ * </ul>
+ *
+ * <p>Compare {@code gc.alloc.rate.norm} (bytes allocated per operation) between them.
+ * The limit is large enough that every request is allowed.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * mvn clean package -pl rl-benchmarks
+ * java -jar rl-benchmarks/target/benchmarks.jar BoundLimiterBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G"})
+public class BoundLimiterBenchmark {
+
+    @Param({"TOKEN_BUCKET", "SLIDING_WINDOW", "FIXED_WINDOW"})
+    private RateLimitConfig.Algorithm algorithm;
+
+    private LimiterEngine limiterEngine;
+    private RateLimitConfig config;
+    private BoundLimiter boundLimiter;
+    private RateLimitContext context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        limiterEngine = new LimiterEngine(
+                new InMemoryStorageProvider(),
+                new StaticKeyResolver("benchmark"),
+                new NoOpMetricsExporter(),
+                null
+        );
+
+        config = buildConfig();
+        boundLimiter = limiterEngine.bind(config);
+
+        context = RateLimitContext.builder()
+                .keyExpression("benchmark-key")
+                .remoteAddress("127.0.0.1")
+                .build();
+    }
+
+    private RateLimitConfig buildConfig() {
+        return RateLimitConfig.builder()
+                .name("benchmark-limiter")
+                .algorithm(algorithm)
+                .requests(Integer.MAX_VALUE)
+                .window(60)
+                .windowUnit(TimeUnit.SECONDS)
+                .capacity(Integer.MAX_VALUE)
+                .refillRate(1_000_000.0)
+                .build();
+    }
+
+    /**
+     * Benchmark: Config built per call, as in the annotation adapters.
+     */
+    @Benchmark
+    public void perCallConfig_tryAcquire(Blackhole bh) {
+        bh.consume(limiterEngine.tryAcquire(context, buildConfig()));
+    }
+
+    /**
+     * Benchmark: Shared config, algorithm set up by the provider per call.
+     */
+    @Benchmark
+    public void sharedConfig_tryAcquire(Blackhole bh) {
+        bh.consume(limiterEngine.tryAcquire(context, config));
+    }
+
+    /**
+     * Benchmark: Bound limiter.
+     */
+    @Benchmark
+    public void bound_tryAcquire(Blackhole bh) {
+        bh.consume(boundLimiter.tryAcquire(context));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BoundLimiterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
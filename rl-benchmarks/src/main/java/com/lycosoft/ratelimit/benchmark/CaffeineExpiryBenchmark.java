@@ -0,0 +1,143 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import com.lycosoft.ratelimit.storage.caffeine.CaffeineStorageProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for {@link CaffeineStorageProvider} under a stream of unique keys of
+ * limits with mixed windows, each entry expiring after the TTL of its own limit.
+ *
+ * <p>Of every 100 keys, 90 use a 1 second fixed window, 9 a 1 minute sliding window and
+ * 1 an hourly token bucket. {@link #main} runs the benchmark, then feeds
+ * {@value #KEYS_PER_SECOND} such keys per second for {@value #SOAK_SECONDS} seconds of
+ * real time, printing every second the live entries and retained heap next to the
+ * keys a single 2 hour TTL would keep. The short-window keys should be swept as their
+ * window ends, about a second after they arrive, so that live entries grow with the
+ * other tenth only.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar CaffeineExpiryBenchmark -prof gc
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.CaffeineExpiryBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
+public class CaffeineExpiryBenchmark {
+
+    static final int KEYS_PER_SECOND = 100_000;
+    static final int SOAK_SECONDS = 15;
+
+    private static final RateLimitConfig[] CONFIGS = configs();
+
+    private CaffeineStorageProvider storageProvider;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storageProvider = provider();
+        next = 0;
+    }
+
+    /**
+     * Benchmark: Acquire for a key never seen before, of a limit chosen by the key.
+     */
+    @Benchmark
+    public boolean uniqueKey() {
+        long i = next++;
+        return storageProvider.tryAcquire("ip-" + i, CONFIGS[(int) (i % CONFIGS.length)], System.currentTimeMillis());
+    }
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        Options opt = new OptionsBuilder()
+                .include(CaffeineExpiryBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+
+        System.out.println();
+        System.out.printf("%,d mixed-window keys/second:%n", KEYS_PER_SECOND);
+        soak();
+    }
+
+    /**
+     * Feeds unique keys in real time, since Caffeine expires entries on its own clock,
+     * printing the live entries and retained heap every second.
+     */
+    static void soak() throws InterruptedException {
+        CaffeineStorageProvider provider = provider();
+        long baseline = usedHeap();
+        long seen = 0;
+        long start = System.nanoTime();
+        for (int second = 1; second <= SOAK_SECONDS; second++) {
+            for (int i = 0; i < KEYS_PER_SECOND; i++, seen++) {
+                provider.tryAcquire("ip-" + seen, CONFIGS[(int) (seen % CONFIGS.length)], System.currentTimeMillis());
+            }
+            long sleepNanos = start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime();
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+            System.out.printf("  %3d s %,10d live entries %8.1f MB  (%,10d with a 2 h TTL)%n",
+                    second, provider.getDiagnostics().get("size"), (usedHeap() - baseline) / 1e6, seen);
+        }
+    }
+
+    private static CaffeineStorageProvider provider() {
+        return new CaffeineStorageProvider(10_000_000, 2, TimeUnit.HOURS, TimeSource.system(), false, false, null);
+    }
+
+    /**
+     * Returns 100 limits: 90 of 1 second, 9 of 1 minute and 1 of 1 hour.
+     */
+    private static RateLimitConfig[] configs() {
+        RateLimitConfig second = RateLimitConfig.builder()
+                .name("expiry-second")
+                .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+                .requests(10)
+                .window(1)
+                .windowUnit(TimeUnit.SECONDS)
+                .build();
+        RateLimitConfig minute = RateLimitConfig.builder()
+                .name("expiry-minute")
+                .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+                .requests(100)
+                .window(1)
+                .windowUnit(TimeUnit.MINUTES)
+                .build();
+        RateLimitConfig hour = RateLimitConfig.builder()
+                .name("expiry-hour")
+                .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+                .requests(1000)
+                .window(1)
+                .windowUnit(TimeUnit.HOURS)
+                .build();
+        RateLimitConfig[] configs = new RateLimitConfig[100];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = i < 90 ? second : i < 99 ? minute : hour;
+        }
+        return configs;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,85 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.LockFreeTokenBucket;
+import com.lycosoft.ratelimit.storage.caffeine.CaffeineStorageProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for token bucket acquires on a single hot key, with locking
+ * ({@code compute()} or the segment write lock) and with {@link LockFreeTokenBucket}s.
+ *
+ * <p>The bucket never runs out, so every acquire updates the state and the threads
+ * contend on the same word. {@link #main} runs 1 to 64 threads.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar ContendedTokenBucketBenchmark -t 8
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.ContendedTokenBucketBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
+public class ContendedTokenBucketBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"inmemory", "caffeine"})
+    private String storageType;
+
+    @Param({"false", "true"})
+    private boolean lockFree;
+
+    private StorageProvider storageProvider;
+    private RateLimitConfig config;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storageProvider = "caffeine".equals(storageType)
+                ? new CaffeineStorageProvider(10_000, 2, TimeUnit.HOURS, TimeSource.system(), lockFree)
+                : new InMemoryStorageProvider(TimeSource.system(), lockFree);
+        config = RateLimitConfig.builder()
+                .name("contended-token-bucket")
+                .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+                .requests(Integer.MAX_VALUE)
+                .window(1)
+                .capacity(Integer.MAX_VALUE)
+                .refillRate(Integer.MAX_VALUE)
+                .build();
+    }
+
+    /**
+     * Benchmark: Acquire on the hot key.
+     */
+    @Benchmark
+    public boolean sameKey() {
+        return storageProvider.tryAcquire("hot-key", config, System.currentTimeMillis());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options opt = new OptionsBuilder()
+                    .include(ContendedTokenBucketBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(2)
+                    .measurementIterations(3)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
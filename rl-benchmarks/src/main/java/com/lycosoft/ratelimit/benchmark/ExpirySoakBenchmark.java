@@ -0,0 +1,122 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for {@link InMemoryStorageProvider} under a stream of unique keys,
+ * as during an IP-rotation attack, with state expiring after its TTL.
+ *
+ * <p>Every acquire uses a new key, and the clock is simulated so that keys arrive at
+ * {@value #KEYS_PER_HOUR} per hour: live keys level off at the rate times the TTL
+ * (2 minutes for the 1 minute window). {@link #main} runs the benchmark, then a
+ * simulated hour of that traffic, printing the live keys and retained heap every
+ * 5 simulated minutes; both should stay flat once the first TTL has passed.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar ExpirySoakBenchmark -prof gc
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.ExpirySoakBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
+public class ExpirySoakBenchmark {
+
+    static final long KEYS_PER_HOUR = 10_000_000L;
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long REPORT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private InMemoryStorageProvider storageProvider;
+    private RateLimitConfig config;
+    private long start;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storageProvider = new InMemoryStorageProvider();
+        config = config();
+        start = System.currentTimeMillis();
+        next = 0;
+    }
+
+    /**
+     * Benchmark: Acquire for a key never seen before.
+     */
+    @Benchmark
+    public boolean uniqueKey() {
+        long i = next++;
+        return storageProvider.tryAcquire("ip-" + i, config, start + i * HOUR_MILLIS / KEYS_PER_HOUR);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ExpirySoakBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+
+        System.out.println();
+        System.out.printf("Simulated hour at %,d unique keys/hour:%n", KEYS_PER_HOUR);
+        soak();
+    }
+
+    /**
+     * Drives one simulated hour of unique keys through a provider, printing the live
+     * keys, retained heap and expiry diagnostics every 5 simulated minutes.
+     */
+    static void soak() {
+        long start = System.currentTimeMillis();
+        long[] clock = {start};
+        InMemoryStorageProvider provider = new InMemoryStorageProvider(() -> clock[0]);
+        RateLimitConfig config = config();
+        long baseline = usedHeap();
+        long nextReport = REPORT_MILLIS;
+        for (long i = 0; i < KEYS_PER_HOUR; i++) {
+            long elapsed = i * HOUR_MILLIS / KEYS_PER_HOUR;
+            clock[0] = start + elapsed;
+            provider.tryAcquire("ip-" + i, config, clock[0]);
+            if (elapsed >= nextReport) {
+                Map<String, Object> diagnostics = provider.getDiagnostics();
+                System.out.printf("  %3d min %,10d live keys %8.1f MB  expired %,11d  max sweep %7.1f us%n",
+                        elapsed / 60_000, provider.size(), (usedHeap() - baseline) / 1e6,
+                        diagnostics.get("expiry.expired"), diagnostics.get("expiry.sweepMicrosMax"));
+                nextReport += REPORT_MILLIS;
+            }
+        }
+    }
+
+    private static RateLimitConfig config() {
+        return RateLimitConfig.builder()
+                .name("expiry-soak")
+                .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+                .requests(100)
+                .window(1)
+                .windowUnit(TimeUnit.MINUTES)
+                .build();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,144 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for {@link StorageKeyEncoder}.
+ *
+ * <p>Keys are JWT-subject-like strings of about 60 characters:
+ * <ul>
+ *   <li><b>encode:</b> cost of turning a resolved key into a storage key</li>
+ *   <li><b>encodeAndAcquire:</b> encoding plus a fixed window acquire on
+ *       {@link InMemoryStorageProvider}</li>
+ * </ul>
+ *
+ * <p>{@link #main} also fills an {@code InMemoryStorageProvider} with
+ * {@value #MEMORY_KEYS} keys per mode and prints the retained heap per key.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar KeyEncodingBenchmark -prof gc
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.KeyEncodingBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
+public class KeyEncodingBenchmark {
+
+    private static final int KEY_COUNT = 10_000;
+    private static final int MEMORY_KEYS = 200_000;
+
+    @Param({"RAW", "NAMESPACED", "HASHED_64", "HASHED_128"})
+    private StorageKeyEncoder.Mode mode;
+
+    private StorageKeyEncoder.Namespace namespace;
+    private InMemoryStorageProvider storageProvider;
+    private RateLimitConfig config;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        namespace = StorageKeyEncoder.of(mode).namespace("key-encoding-benchmark");
+        storageProvider = new InMemoryStorageProvider();
+        config = windowConfig();
+        keys = subjects(KEY_COUNT);
+    }
+
+    /**
+     * Benchmark: Encoding a resolved key.
+     */
+    @Benchmark
+    public void encode(Blackhole bh) {
+        bh.consume(namespace.encode(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]));
+    }
+
+    /**
+     * Benchmark: Encoding plus an in-memory acquire.
+     */
+    @Benchmark
+    public void encodeAndAcquire(Blackhole bh) {
+        String key = namespace.encode(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]);
+        bh.consume(storageProvider.acquire(key, config, 1, System.currentTimeMillis()));
+    }
+
+    private static RateLimitConfig windowConfig() {
+        return RateLimitConfig.builder()
+                .name("key-encoding-benchmark")
+                .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+                .requests(Integer.MAX_VALUE)
+                .window(60)
+                .windowUnit(TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static String[] subjects(int count) {
+        String[] subjects = new String[count];
+        for (int i = 0; i < count; i++) {
+            subjects[i] = "auth0|" + UUID.randomUUID() + ":tenant-" + (i % 97);
+        }
+        return subjects;
+    }
+
+    /**
+     * Measures the heap retained per key by an {@link InMemoryStorageProvider} holding
+     * {@code count} keys encoded with {@code mode}. The resolved keys themselves are
+     * released before measuring, as they would be after the request.
+     */
+    static double bytesPerKey(StorageKeyEncoder.Mode mode, int count) {
+        StorageKeyEncoder.Namespace namespace = StorageKeyEncoder.of(mode).namespace("key-encoding-benchmark");
+        RateLimitConfig config = windowConfig();
+        long before = usedHeap();
+        InMemoryStorageProvider provider = new InMemoryStorageProvider();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            String subject = "auth0|" + UUID.randomUUID() + ":tenant-" + (i % 97);
+            provider.acquire(namespace.encode(subject), config, 1, now);
+        }
+        long after = usedHeap();
+        if (provider.size() != count) {
+            throw new IllegalStateException("Expected " + count + " keys, found " + provider.size());
+        }
+        return (double) (after - before) / count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(KeyEncodingBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+
+        System.out.println();
+        System.out.println("Retained heap per key (" + MEMORY_KEYS + " keys, InMemoryStorageProvider):");
+        for (StorageKeyEncoder.Mode mode : StorageKeyEncoder.Mode.values()) {
+            System.out.printf("  %-10s %6.1f B/key%n", mode, bytesPerKey(mode, MEMORY_KEYS));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.engine.LimiterEngine;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.NoOpMetricsExporter;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spring.annotation.RateLimit;
+import com.lycosoft.ratelimit.spring.aop.RateLimitAspect;
+import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for the overhead of {@link RateLimitAspect}.
+ *
+ * <p>Storage is a no-op that allows every request, so the measured time is the
+ * interception itself: plan lookup, context building, key resolution and the engine.
+ * <ul>
+ *   <li><b>direct:</b> the target method without a proxy (baseline)</li>
+ *   <li><b>methodLevel:</b> one method-level {@code @RateLimit}</li>
+ *   <li><b>classLevel:</b> the method inherits a class-level {@code @RateLimit}</li>
+ *   <li><b>multipleLimits:</b> two {@code @RateLimit} annotations checked together</li>
+ * </ul>
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * mvn clean package -pl rl-benchmarks
+ * java -jar rl-benchmarks/target/benchmarks.jar RateLimitAspectBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G"})
+public class RateLimitAspectBenchmark {
+
+    private BenchmarkService target;
+    private BenchmarkService proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StaticKeyResolver keyResolver = new StaticKeyResolver("benchmark");
+        LimiterEngine limiterEngine = new LimiterEngine(
+                new NoOpStorageProvider(),
+                keyResolver,
+                new NoOpMetricsExporter(),
+                null
+        );
+
+        target = new BenchmarkService();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new RateLimitAspect(limiterEngine, keyResolver));
+        proxy = factory.getProxy();
+    }
+
+    /**
+     * Benchmark: Unproxied call (baseline).
+     */
+    @Benchmark
+    public void direct(Blackhole bh) {
+        bh.consume(target.methodLevel("arg"));
+    }
+
+    /**
+     * Benchmark: Method-level limit.
+     */
+    @Benchmark
+    public void methodLevel(Blackhole bh) {
+        bh.consume(proxy.methodLevel("arg"));
+    }
+
+    /**
+     * Benchmark: Class-level limit.
+     */
+    @Benchmark
+    public void classLevel(Blackhole bh) {
+        bh.consume(proxy.classLevel("arg"));
+    }
+
+    /**
+     * Benchmark: Two limits in one storage operation.
+     */
+    @Benchmark
+    public void multipleLimits(Blackhole bh) {
+        bh.consume(proxy.multipleLimits("arg"));
+    }
+
+    /**
+     * Target bean for the aspect.
+     */
+    @RateLimit(name = "class-level", requests = 100, window = 60)
+    public static class BenchmarkService {
+
+        @RateLimit(name = "method-level", requests = 100, window = 60)
+        public String methodLevel(String arg) {
+            return arg;
+        }
+
+        public String classLevel(String arg) {
+            return arg;
+        }
+
+        @RateLimit(name = "burst", requests = 10, window = 1)
+        @RateLimit(name = "sustained", requests = 100, window = 60)
+        public String multipleLimits(String arg) {
+            return arg;
+        }
+    }
+
+    /**
+     * Storage provider that allows every request without keeping state.
+     */
+    static final class NoOpStorageProvider implements StorageProvider {
+
+        private static final AcquireResult ALLOWED = AcquireResult.allowed(100, 99, 0L, 1);
+
+        @Override
+        public long getCurrentTime() {
+            return 0L;
+        }
+
+        @Override
+        public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+            return true;
+        }
+
+        @Override
+        public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+            return ALLOWED;
+        }
+
+        @Override
+        public void reset(String key) {
+        }
+
+        @Override
+        public Optional<RateLimitState> getState(String key) {
+            return Optional.empty();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RateLimitAspectBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for snapshots of {@link InMemoryStorageProvider} holding
+ * {@value #KEYS} keys, split between token buckets and sliding windows.
+ *
+ * <p>Each invocation is timed once: writing the snapshot, starting a provider from it
+ * (the restore itself being lazy), and restoring every segment. Writing and the full
+ * restore should each take well under a second.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar SnapshotBenchmark
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.SnapshotBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 2, jvmArgs = {"-Xms4G", "-Xmx4G", "-XX:+UseG1GC"})
+public class SnapshotBenchmark {
+
+    static final int KEYS = 5_000_000;
+
+    private InMemoryStorageProvider storageProvider;
+    private InMemoryStorageProvider restoredProvider;
+    private Path file;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("rl-snapshot", ".bin");
+        time = System.currentTimeMillis();
+        storageProvider = new InMemoryStorageProvider(TimeSource.system(), false, Long.MAX_VALUE);
+        RateLimitConfig tokenBucket = config(RateLimitConfig.Algorithm.TOKEN_BUCKET);
+        RateLimitConfig slidingWindow = config(RateLimitConfig.Algorithm.SLIDING_WINDOW);
+        for (int i = 0; i < KEYS; i++) {
+            storageProvider.tryAcquire("ip-" + i, i % 2 == 0 ? tokenBucket : slidingWindow, time);
+        }
+        storageProvider.writeSnapshot(file);
+    }
+
+    @Setup(Level.Iteration)
+    public void dropRestored() {
+        restoredProvider = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+    }
+
+    /**
+     * Benchmark: Write every key to the snapshot file.
+     */
+    @Benchmark
+    public long write() {
+        return storageProvider.writeSnapshot(file);
+    }
+
+    /**
+     * Benchmark: Start a provider from the snapshot, restoring nothing yet.
+     */
+    @Benchmark
+    public InMemoryStorageProvider open() {
+        restoredProvider = new InMemoryStorageProvider(TimeSource.system(), false, Long.MAX_VALUE, file);
+        return restoredProvider;
+    }
+
+    /**
+     * Benchmark: Start a provider from the snapshot and restore every key.
+     */
+    @Benchmark
+    public int restoreAll() {
+        restoredProvider = new InMemoryStorageProvider(TimeSource.system(), false, Long.MAX_VALUE, file);
+        return restoredProvider.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SnapshotBenchmark.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(2)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    private static RateLimitConfig config(RateLimitConfig.Algorithm algorithm) {
+        return RateLimitConfig.builder()
+                .name("snapshot-" + algorithm.name())
+                .algorithm(algorithm)
+                .requests(100)
+                .window(1)
+                .windowUnit(TimeUnit.MINUTES)
+                .build();
+    }
+}
@@ -1,8 +1,10 @@
 package com.lycosoft.ratelimit.benchmark;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.BoundStorage;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
 import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
 import com.lycosoft.ratelimit.storage.caffeine.CaffeineStorageProvider;
 import org.openjdk.jmh.annotations.*;
@@ -26,9 +28,18 @@ import java.util.concurrent.TimeUnit;
  *   <li>O(1) memory complexity (no GC pressure growth)</li>
  * </ul>
  *
+ * <p>{@code keyCount} sets how many keys the random-key benchmarks spread over; the
+ * keys are populated during setup. {@code caffeine-nostats} is the Caffeine provider
+ * without cache statistics; run with {@code -prof gc} to see the allocation per
+ * decision, none for packed acquires. {@link #main} also prints the heap retained per
+ * key by {@link InMemoryStorageProvider} at {@value #MEMORY_KEYS_SMALL} and
+ * {@value #MEMORY_KEYS_LARGE} keys.
+ *
  * <p><b>Run benchmarks:</b>
  * <pre>
  * java -jar rl-benchmarks/target/benchmarks.jar StorageBenchmark
+ * java -jar rl-benchmarks/target/benchmarks.jar StorageBenchmark.randomKey -p keyCount=1000000,10000000 -prof gc
+ * java -Xmx8G -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.StorageBenchmark
  * </pre>
  */
 @BenchmarkMode({Mode.AverageTime, Mode.Throughput})
@@ -39,29 +50,27 @@ import java.util.concurrent.TimeUnit;
 @Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
 public class StorageBenchmark {
 
-    @Param({"caffeine", "inmemory"})
+    @Param({"caffeine", "caffeine-nostats", "inmemory"})
     private String storageType;
 
+    @Param({"10000"})
+    private int keyCount;
+
     private StorageProvider storageProvider;
+    private BoundStorage boundTokenBucket;
     private RateLimitConfig tokenBucketConfig;
     private RateLimitConfig slidingWindowConfig;
 
     // Pre-generated keys for consistent benchmarking
     private String[] keys;
-    private static final int KEY_COUNT = 10000;
+
+    private static final int MEMORY_KEYS_SMALL = 1_000_000;
+    private static final int MEMORY_KEYS_LARGE = 10_000_000;
 
     @Setup(Level.Trial)
     public void setup() {
         // Initialize storage provider based on parameter
-        switch (storageType) {
-            case "caffeine":
-                storageProvider = new CaffeineStorageProvider();
-                break;
-            case "inmemory":
-            default:
-                storageProvider = new InMemoryStorageProvider();
-                break;
-        }
+        storageProvider = createProvider(storageType);
 
         // Token Bucket config
         // refillRate is tokens per millisecond: 0.01 = 10 tokens/second
@@ -74,6 +83,8 @@ public class StorageBenchmark {
                 .window(1)
                 .build();
 
+        boundTokenBucket = storageProvider.bind(tokenBucketConfig);
+
         // Sliding Window config
         slidingWindowConfig = RateLimitConfig.builder()
                 .name("storage-benchmark-sw")
@@ -82,13 +93,31 @@ public class StorageBenchmark {
                 .window(60)
                 .build();
 
-        // Pre-generate keys
-        keys = new String[KEY_COUNT];
-        for (int i = 0; i < KEY_COUNT; i++) {
-            keys[i] = "user-" + i + "-key";
+        // Pre-generate and populate keys
+        keys = new String[keyCount];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = key(i);
+            storageProvider.tryAcquire(keys[i], tokenBucketConfig, now);
         }
     }
 
+    private static StorageProvider createProvider(String storageType) {
+        switch (storageType) {
+            case "caffeine":
+                return new CaffeineStorageProvider();
+            case "caffeine-nostats":
+                return new CaffeineStorageProvider(10_000, 2, TimeUnit.HOURS, TimeSource.system(), false, false, null);
+            case "inmemory":
+            default:
+                return new InMemoryStorageProvider();
+        }
+    }
+
+    private static String key(int i) {
+        return "user-" + i + "-key";
+    }
+
     @TearDown(Level.Trial)
     public void tearDown() {
         // Cleanup
@@ -121,6 +150,15 @@ public class StorageBenchmark {
                 System.currentTimeMillis()));
     }
 
+    /**
+     * Single key bound acquire with a packed result (Token Bucket).
+     * Allocation-free on the hot path.
+     */
+    @Benchmark
+    public long singleKey_acquirePacked_tokenBucket() {
+        return boundTokenBucket.acquirePacked("hot-key-tb", 1, System.currentTimeMillis());
+    }
+
     /**
      * Single key getState.
      * Read-only operation, should be very fast.
@@ -139,7 +177,7 @@ public class StorageBenchmark {
      */
     @Benchmark
     public void randomKey_tryAcquire(Blackhole bh) {
-        int index = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+        int index = ThreadLocalRandom.current().nextInt(keyCount);
         bh.consume(storageProvider.tryAcquire(keys[index], tokenBucketConfig,
                 System.currentTimeMillis()));
     }
@@ -150,7 +188,7 @@ public class StorageBenchmark {
      */
     @Benchmark
     public void randomKey_getState(Blackhole bh) {
-        int index = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+        int index = ThreadLocalRandom.current().nextInt(keyCount);
         bh.consume(storageProvider.getState(keys[index]));
     }
 
@@ -191,7 +229,7 @@ public class StorageBenchmark {
     public void batch_100_tryAcquire(Blackhole bh) {
         long now = System.currentTimeMillis();
         for (int i = 0; i < 100; i++) {
-            bh.consume(storageProvider.tryAcquire(keys[i % KEY_COUNT], tokenBucketConfig, now));
+            bh.consume(storageProvider.tryAcquire(keys[i % keyCount], tokenBucketConfig, now));
         }
     }
 
@@ -240,5 +278,46 @@ public class StorageBenchmark {
                 .build();
 
         new Runner(opt).run();
+
+        System.out.println();
+        System.out.println("Retained heap per key (token bucket state, InMemoryStorageProvider):");
+        for (int count : new int[] {MEMORY_KEYS_SMALL, MEMORY_KEYS_LARGE}) {
+            System.out.printf("  %,11d keys %6.1f B/key%n", count, bytesPerKey(count));
+        }
+    }
+
+    /**
+     * Measures the heap retained per key by an {@link InMemoryStorageProvider} holding
+     * token bucket state for {@code count} keys. The keys themselves are released
+     * before measuring, as they would be after the request.
+     */
+    static double bytesPerKey(int count) {
+        RateLimitConfig config = RateLimitConfig.builder()
+                .name("storage-benchmark-memory")
+                .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+                .capacity(100)
+                .refillRate(0.01)
+                .requests(100)
+                .window(1)
+                .build();
+        long before = usedHeap();
+        InMemoryStorageProvider provider = new InMemoryStorageProvider();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            provider.tryAcquire(key(i), config, now);
+        }
+        long after = usedHeap();
+        if (provider.size() != count) {
+            throw new IllegalStateException("Expected " + count + " keys, found " + provider.size());
+        }
+        return (double) (after - before) / count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
     }
 }
@@ -0,0 +1,87 @@
+package com.lycosoft.ratelimit.benchmark;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.caffeine.CaffeineStorageProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH Benchmarks for a single global token bucket taking every request, through
+ * Caffeine's {@code compute()}, one lock-free bucket, and striped buckets.
+ *
+ * <p>{@code compute} is the default Caffeine path, {@code lockfree} the in-memory
+ * provider with lock-free token buckets, and {@code striped} the in-memory provider
+ * with the bucket split into {@code stripes} stripes. {@link #main} runs 1 to 64
+ * threads.
+ *
+ * <p><b>Run benchmarks:</b>
+ * <pre>
+ * java -jar rl-benchmarks/target/benchmarks.jar StripedTokenBucketBenchmark -t 32
+ * java -cp rl-benchmarks/target/benchmarks.jar com.lycosoft.ratelimit.benchmark.StripedTokenBucketBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgs = {"-Xms2G", "-Xmx2G", "-XX:+UseG1GC"})
+public class StripedTokenBucketBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"compute", "lockfree", "striped"})
+    private String path;
+
+    @Param({"16"})
+    private int stripes;
+
+    private StorageProvider storageProvider;
+    private RateLimitConfig config;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storageProvider = "compute".equals(path)
+                ? new CaffeineStorageProvider(10_000, 2, TimeUnit.HOURS)
+                : new InMemoryStorageProvider(TimeSource.system(), "lockfree".equals(path));
+        config = RateLimitConfig.builder()
+                .name("global")
+                .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+                .requests(Integer.MAX_VALUE)
+                .window(1)
+                .capacity(Integer.MAX_VALUE)
+                .refillRate(Integer.MAX_VALUE)
+                .stripes("striped".equals(path) ? stripes : 1)
+                .build();
+    }
+
+    /**
+     * Benchmark: Acquire on the global key.
+     */
+    @Benchmark
+    public boolean globalKey() {
+        return storageProvider.tryAcquire("global", config, System.currentTimeMillis());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            Options opt = new OptionsBuilder()
+                    .include(StripedTokenBucketBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(2)
+                    .measurementIterations(3)
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.lycosoft.ratelimit.algorithm;
 
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+
 /**
  * Fixed Window rate limiting algorithm.
  * 
@@ -68,6 +71,26 @@ public class FixedWindowAlgorithm {
      * @return the new window state after attempting to acquire
      */
     public WindowState tryAcquire(WindowState state, int limit, long currentTime) {
+        return tryAcquire(state, limit, 1, currentTime);
+    }
+    
+    /**
+     * Attempts to acquire {@code permits} units of the window's capacity.
+     *
+     * <p>Decisions are all-or-nothing: the counter is only incremented if all
+     * permits fit in the current window.
+     *
+     * @param state the current window state
+     * @param limit maximum requests allowed per window
+     * @param permits the number of units to acquire (must be positive)
+     * @param currentTime the current time in milliseconds
+     * @return the new window state after attempting to acquire
+     * @since 1.1.0
+     */
+    public WindowState tryAcquire(WindowState state, int limit, int permits, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
         long currentWindow = calculateWindowNumber(currentTime);
         
         // Initialize state if first request or new window
@@ -76,12 +99,12 @@ public class FixedWindowAlgorithm {
         }
         
         // Check if limit would be exceeded
-        if (state.requestCount >= limit) {
+        if (state.requestCount + permits > limit) {
             return new WindowState(currentWindow, state.requestCount, false);
         }
         
         // Increment counter
-        return new WindowState(currentWindow, state.requestCount + 1, true);
+        return new WindowState(currentWindow, state.requestCount + permits, true);
     }
     
     /**
@@ -115,6 +138,64 @@ public class FixedWindowAlgorithm {
         return Math.max(0, (windowEndTime - currentTime) / 1000);
     }
     
+    /**
+     * Describes a window state produced by {@link #tryAcquire} as an {@link AcquireResult}.
+     *
+     * @param state the state returned by {@code tryAcquire}
+     * @param limit maximum requests allowed per window
+     * @return the acquire result, with the reset time at the end of the state's window
+     */
+    public AcquireResult toResult(WindowState state, int limit) {
+        return toResult(state.allowed, state.windowNumber, state.requestCount, limit);
+    }
+
+    /**
+     * Primitive form of {@link #toResult(WindowState, int)}, for storage that keeps the
+     * count in place.
+     *
+     * @param allowed whether the request was allowed
+     * @param windowNumber the window the count belongs to
+     * @param requestCount the requests counted in the window
+     * @param limit maximum requests allowed per window
+     * @return the acquire result
+     * @since 1.1.0
+     */
+    public AcquireResult toResult(boolean allowed, long windowNumber, int requestCount, int limit) {
+        long resetTime = (windowNumber + 1) * windowSeconds * 1000L;
+
+        return allowed
+                ? AcquireResult.allowed(limit, limit - requestCount, resetTime, requestCount)
+                : AcquireResult.denied(limit, 0, resetTime, requestCount);
+    }
+
+    /**
+     * Same as {@link #toResult(boolean, long, int, int)}, packed as a
+     * {@link PackedAcquireResult} without allocating.
+     *
+     * @param allowed whether the request was allowed
+     * @param windowNumber the window the count belongs to
+     * @param requestCount the requests counted in the window
+     * @param limit maximum requests allowed per window
+     * @param currentTime the time of the decision in milliseconds
+     * @return the packed acquire result
+     * @since 1.1.0
+     */
+    public long toPackedResult(boolean allowed, long windowNumber, int requestCount, int limit, long currentTime) {
+        return PackedAcquireResult.pack(allowed, allowed ? limit - requestCount : 0,
+                (windowNumber + 1) * windowSeconds * 1000L, currentTime);
+    }
+
+    /**
+     * Returns the number of the window containing {@code timestamp}.
+     *
+     * @param timestamp the time in milliseconds
+     * @return the window number
+     * @since 1.1.0
+     */
+    public long windowNumber(long timestamp) {
+        return calculateWindowNumber(timestamp);
+    }
+
     /**
      * Calculates the window number for a given timestamp.
      * 
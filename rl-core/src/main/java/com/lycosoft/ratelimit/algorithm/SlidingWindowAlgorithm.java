@@ -1,5 +1,8 @@
 package com.lycosoft.ratelimit.algorithm;
 
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+
 /**
  * Sliding Window Counter Algorithm implementation.
  * 
@@ -55,8 +58,29 @@ public class SlidingWindowAlgorithm {
      * @return the new window state after attempting to consume
      */
     public WindowState tryConsume(WindowState state, long currentTime) {
+        return tryConsume(state, 1, currentTime);
+    }
+
+    /**
+     * Attempts to consume {@code permits} slots in the current window.
+     *
+     * <p>The request is allowed if the weighted count plus all but the last permit
+     * stays below the limit, which matches the single-permit rule for {@code permits = 1}.
+     * Decisions are all-or-nothing.
+     *
+     * @param state the current window state
+     * @param permits the number of slots to consume (must be positive)
+     * @param currentTime the current time in milliseconds
+     * @return the new window state after attempting to consume
+     * @since 1.1.0
+     */
+    public WindowState tryConsume(WindowState state, int permits, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+
         // Determine current window boundaries
-        long currentWindowStart = (currentTime / windowSizeMs) * windowSizeMs;
+        long currentWindowStart = windowStart(currentTime);
         long previousWindowStart = currentWindowStart - windowSizeMs;
         
         // Initialize or rotate windows
@@ -73,18 +97,14 @@ public class SlidingWindowAlgorithm {
         }
         
         // Calculate weighted rate
-        long timeElapsedInCurrent = currentTime - currentWindowStart;
-        double overlapWeight = (windowSizeMs - timeElapsedInCurrent) / (double) windowSizeMs;
-        
-        int previousCount = (state.previousWindow != null) ? state.previousWindow.count : 0;
-        double estimatedCount = (previousCount * overlapWeight) + state.currentWindow.count;
+        double estimatedCount = estimateCount(state, currentWindowStart, currentTime);
         
         // Decision: allow or deny
-        if (estimatedCount < limit) {
+        if (allows(estimatedCount, permits)) {
             // Request ALLOWED - increment current window
             WindowData newCurrentWindow = new WindowData(
                 state.currentWindow.windowStart,
-                state.currentWindow.count + 1
+                state.currentWindow.count + permits
             );
             return new WindowState(newCurrentWindow, state.previousWindow, true);
         } else {
@@ -93,6 +113,120 @@ public class SlidingWindowAlgorithm {
         }
     }
     
+    /**
+     * Describes a window state produced by {@link #tryConsume} as an {@link AcquireResult}.
+     *
+     * <p>Remaining capacity is derived from the weighted estimate, and the reset time
+     * is the end of the current window.
+     *
+     * @param state       the state returned by {@code tryConsume}
+     * @param currentTime the current time in milliseconds
+     * @return the acquire result
+     */
+    public AcquireResult toResult(WindowState state, long currentTime) {
+        int previousCount = state.previousWindow != null ? state.previousWindow.count : 0;
+        return toResult(state.allowed, previousCount, state.currentWindow.count, state.currentWindow.windowStart,
+                currentTime);
+    }
+
+    /**
+     * Primitive form of {@link #toResult(WindowState, long)}, for storage that keeps the
+     * counts in place.
+     *
+     * @param allowed       whether the request was allowed
+     * @param previousCount the count of the window before {@code windowStart}
+     * @param currentCount  the count of the window starting at {@code windowStart}
+     * @param windowStart   the start of the stored current window
+     * @param currentTime   the current time in milliseconds
+     * @return the acquire result
+     * @since 1.1.0
+     */
+    public AcquireResult toResult(boolean allowed, int previousCount, int currentCount, long windowStart,
+                                  long currentTime) {
+        double estimatedCount = estimateCount(previousCount, currentCount, windowStart, currentTime);
+        int usage = (int) Math.ceil(estimatedCount);
+        long resetTime = windowStart + windowSizeMs;
+
+        return allowed
+                ? AcquireResult.allowed(limit, (int) Math.floor(limit - estimatedCount), resetTime, usage)
+                : AcquireResult.denied(limit, 0, resetTime, usage);
+    }
+
+    /**
+     * Same as {@link #toResult(boolean, int, int, long, long)}, packed as a
+     * {@link PackedAcquireResult} without allocating.
+     *
+     * @param allowed       whether the request was allowed
+     * @param previousCount the count of the window before {@code windowStart}
+     * @param currentCount  the count of the window starting at {@code windowStart}
+     * @param windowStart   the start of the stored current window
+     * @param currentTime   the current time in milliseconds
+     * @return the packed acquire result
+     * @since 1.1.0
+     */
+    public long toPackedResult(boolean allowed, int previousCount, int currentCount, long windowStart,
+                               long currentTime) {
+        int remaining = allowed
+                ? (int) Math.floor(limit - estimateCount(previousCount, currentCount, windowStart, currentTime))
+                : 0;
+        return PackedAcquireResult.pack(allowed, remaining, windowStart + windowSizeMs, currentTime);
+    }
+
+    /**
+     * Returns the start of the window containing {@code currentTime}.
+     *
+     * @param currentTime the current time in milliseconds
+     * @return the window start in milliseconds
+     * @since 1.1.0
+     */
+    public long windowStart(long currentTime) {
+        return (currentTime / windowSizeMs) * windowSizeMs;
+    }
+
+    /**
+     * @return the window size in milliseconds
+     * @since 1.1.0
+     */
+    public long getWindowSizeMs() {
+        return windowSizeMs;
+    }
+
+    /**
+     * Tells whether {@code permits} fit under the limit given the weighted count.
+     *
+     * @param estimatedCount the weighted request count
+     * @param permits        the number of slots requested
+     * @return true if the request is allowed
+     * @since 1.1.0
+     */
+    public boolean allows(double estimatedCount, int permits) {
+        return estimatedCount + permits - 1 < limit;
+    }
+
+    /**
+     * Calculates the weighted request count.
+     *
+     * @param previousCount      the count of the window before {@code currentWindowStart}
+     * @param currentCount       the count of the window starting at {@code currentWindowStart}
+     * @param currentWindowStart the start of the current window
+     * @param currentTime        the current time in milliseconds
+     * @return the weighted count
+     * @since 1.1.0
+     */
+    public double estimateCount(int previousCount, int currentCount, long currentWindowStart, long currentTime) {
+        long timeElapsedInCurrent = currentTime - currentWindowStart;
+        double overlapWeight = (windowSizeMs - timeElapsedInCurrent) / (double) windowSizeMs;
+        return (previousCount * overlapWeight) + currentCount;
+    }
+
+    /**
+     * Calculates the weighted request count for an already rotated state.
+     */
+    private double estimateCount(WindowState state, long currentWindowStart, long currentTime) {
+        int previousCount = (state.previousWindow != null) ? state.previousWindow.count : 0;
+        return estimateCount(previousCount, state.currentWindow.count, currentWindowStart, currentTime);
+    }
+
     /**
      * Represents the state of sliding windows.
      */
@@ -1,5 +1,8 @@
 package com.lycosoft.ratelimit.algorithm;
 
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.LeaseResult;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -76,9 +79,7 @@ public class TokenBucketAlgorithm {
         }
 
         // Lazy refill calculation
-        long elapsedTime = currentTime - state.lastRefillTime;
-        double tokensToAdd = elapsedTime * refillRate;
-        double availableTokens = Math.min(capacity, state.tokens + tokensToAdd);
+        double availableTokens = availableTokens(state.tokens, state.lastRefillTime, 0, currentTime);
 
         // Binary decision: all-or-nothing
         if (availableTokens >= tokensRequired) {
@@ -100,6 +101,289 @@ public class TokenBucketAlgorithm {
         }
     }
 
+    /**
+     * Reserves tokens, letting the bucket go into debt instead of denying.
+     *
+     * <p>The reserved tokens are deducted immediately, so the token count may become
+     * negative. Later requests see the debt and queue behind the reservation rather
+     * than consuming the tokens it is waiting for. The reservation is only booked if
+     * the tokens become available within {@code maxWaitMillis}; otherwise the bucket
+     * is left as it was (after refill).
+     *
+     * @param state          the current bucket state
+     * @param tokensRequired the number of tokens to reserve (at most the capacity)
+     * @param maxWaitMillis  the longest acceptable wait, in milliseconds
+     * @param currentTime    the current time in milliseconds
+     * @return the new bucket state; {@link BucketState#allowed()} tells whether the
+     *         reservation was booked
+     * @since 1.1.0
+     */
+    public BucketState reserve(BucketState state, int tokensRequired, long maxWaitMillis, long currentTime) {
+        if (tokensRequired <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        if (tokensRequired > capacity) {
+            throw new IllegalArgumentException("tokensRequired cannot exceed capacity");
+        }
+
+        // Initialize state if first request (bucket starts FULL)
+        if (state == null) {
+            state = new BucketState(capacity, currentTime);
+        }
+
+        // Lazy refill calculation
+        double availableTokens = availableTokens(state.tokens, state.lastRefillTime, 0, currentTime);
+
+        if (canReserve(availableTokens, tokensRequired, maxWaitMillis)) {
+            return new BucketState(availableTokens - tokensRequired, currentTime, true);
+        }
+        return new BucketState(availableTokens, currentTime, false);
+    }
+
+    /**
+     * Returns the tokens in a bucket at {@code currentTime}: the stored tokens plus the
+     * refill since {@code lastRefillTime} plus {@code returnedTokens}, capped at the
+     * capacity.
+     *
+     * <p>This and the other methods taking primitive state let storage keep buckets in
+     * place, without a {@link BucketState} per request.
+     *
+     * @param tokens         the stored token count
+     * @param lastRefillTime the time the tokens were stored, in milliseconds
+     * @param returnedTokens unused tokens handed back (0 if none)
+     * @param currentTime    the current time in milliseconds
+     * @return the available tokens
+     * @since 1.1.0
+     */
+    public double availableTokens(double tokens, long lastRefillTime, int returnedTokens, long currentTime) {
+        long elapsedTime = currentTime - lastRefillTime;
+        return Math.min(capacity, tokens + elapsedTime * refillRate + returnedTokens);
+    }
+
+    /**
+     * Tells whether a reservation of {@code tokensRequired} is available within
+     * {@code maxWaitMillis}, given the tokens available now.
+     *
+     * @param availableTokens the tokens available now
+     * @param tokensRequired  the number of tokens to reserve
+     * @param maxWaitMillis   the longest acceptable wait, in milliseconds
+     * @return true if the reservation can be booked
+     * @since 1.1.0
+     */
+    public boolean canReserve(double availableTokens, int tokensRequired, long maxWaitMillis) {
+        return millisToRefill(tokensRequired - availableTokens) <= maxWaitMillis;
+    }
+
+    /**
+     * Returns how many tokens a lease is granted, given the tokens available.
+     *
+     * @param availableTokens the tokens available, returned tokens included
+     * @param minTokens       the fewest tokens worth leasing
+     * @param maxTokens       the most tokens to lease
+     * @return the tokens granted, or -1 if the lease is denied
+     * @since 1.1.0
+     */
+    public int leaseGrant(double availableTokens, int minTokens, int maxTokens) {
+        return availableTokens >= minTokens ? (int) Math.min(maxTokens, Math.floor(availableTokens)) : -1;
+    }
+
+    /**
+     * @return the bucket capacity, which is also the token count of a new bucket
+     * @since 1.1.0
+     */
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the refill rate, in tokens per millisecond
+     * @since 1.1.0
+     */
+    public double getRefillRate() {
+        return refillRate;
+    }
+
+    /**
+     * Returns when the tokens of a {@link #reserve} call are available.
+     *
+     * <p>For a booked reservation this is when the bucket's debt is repaid; for one
+     * that was not booked, when {@code tokensRequired} tokens would be available.
+     *
+     * @param state          the state returned by {@code reserve}
+     * @param tokensRequired the number of tokens the reservation asked for
+     * @param currentTime    the current time in milliseconds
+     * @return the time at which the tokens are available, in milliseconds
+     * @since 1.1.0
+     */
+    public long availableAt(BucketState state, int tokensRequired, long currentTime) {
+        return availableAt(state.allowed(), state.tokens(), tokensRequired, currentTime);
+    }
+
+    /**
+     * Primitive form of {@link #availableAt(BucketState, int, long)}.
+     *
+     * @param booked         whether the reservation was booked
+     * @param tokens         the token count stored by the reservation
+     * @param tokensRequired the number of tokens the reservation asked for
+     * @param currentTime    the current time in milliseconds
+     * @return the time at which the tokens are available, in milliseconds
+     * @since 1.1.0
+     */
+    public long availableAt(boolean booked, double tokens, int tokensRequired, long currentTime) {
+        double deficit = booked ? -tokens : tokensRequired - tokens;
+        return currentTime + millisToRefill(deficit);
+    }
+
+    /**
+     * Returns unused leased tokens and leases up to {@code maxTokens} new ones.
+     *
+     * <p>A lease debits tokens from the shared bucket so that the caller can hand them
+     * out locally. Returned tokens are added after the refill (never beyond capacity).
+     * The lease is granted only if at least {@code minTokens} are available, in which
+     * case as many as are available, up to {@code maxTokens}, are debited. With
+     * {@code minTokens} and {@code maxTokens} both 0 the call only returns tokens.
+     *
+     * @param state          the current bucket state
+     * @param returnedTokens the number of unused tokens handed back (non-negative)
+     * @param minTokens      the fewest tokens worth leasing (non-negative)
+     * @param maxTokens      the most tokens to lease (at least {@code minTokens})
+     * @param currentTime    the current time in milliseconds
+     * @return the new bucket state and the number of tokens leased
+     * @since 1.1.0
+     */
+    public LeaseGrant lease(BucketState state, int returnedTokens, int minTokens, int maxTokens,
+                            long currentTime) {
+        if (returnedTokens < 0 || minTokens < 0 || maxTokens < minTokens) {
+            throw new IllegalArgumentException("invalid lease: returned=" + returnedTokens
+                    + ", min=" + minTokens + ", max=" + maxTokens);
+        }
+
+        // Initialize state if first request (bucket starts FULL)
+        if (state == null) {
+            state = new BucketState(capacity, currentTime);
+        }
+
+        // Lazy refill calculation, then take back the unused tokens
+        double availableTokens = availableTokens(state.tokens, state.lastRefillTime, returnedTokens, currentTime);
+
+        int granted = leaseGrant(availableTokens, minTokens, maxTokens);
+        if (granted >= 0) {
+            return new LeaseGrant(new BucketState(availableTokens - granted, currentTime, true), granted);
+        }
+        return new LeaseGrant(new BucketState(availableTokens, currentTime, false), 0);
+    }
+
+    /**
+     * Describes a {@link #lease} outcome as a {@link LeaseResult}.
+     *
+     * @param grant       the grant returned by {@code lease}
+     * @param minTokens   the fewest tokens the lease asked for
+     * @param currentTime the current time in milliseconds
+     * @return the lease result
+     * @since 1.1.0
+     */
+    public LeaseResult toLeaseResult(LeaseGrant grant, int minTokens, long currentTime) {
+        BucketState state = grant.state();
+        return toLeaseResult(state.allowed(), grant.granted(), state.tokens(), minTokens, currentTime);
+    }
+
+    /**
+     * Primitive form of {@link #toLeaseResult(LeaseGrant, int, long)}.
+     *
+     * @param allowed     whether the lease was granted
+     * @param granted     the number of tokens leased
+     * @param tokens      the token count stored by the lease
+     * @param minTokens   the fewest tokens the lease asked for
+     * @param currentTime the current time in milliseconds
+     * @return the lease result
+     * @since 1.1.0
+     */
+    public LeaseResult toLeaseResult(boolean allowed, int granted, double tokens, int minTokens, long currentTime) {
+        int limit = (int) capacity;
+        int remaining = (int) Math.floor(tokens);
+        if (allowed) {
+            return LeaseResult.granted(granted, limit, remaining, currentTime + millisToRefill(capacity - tokens));
+        }
+        return LeaseResult.denied(limit, remaining, currentTime + millisToRefill(minTokens - tokens));
+    }
+
+    /**
+     * Describes a bucket state produced by {@link #tryConsume} as an {@link AcquireResult}.
+     *
+     * <p>For an allowed request the reset time is when the bucket will be full again.
+     * For a denied request it is when {@code tokensRequired} tokens will be available,
+     * which is the earliest moment a retry can succeed.
+     *
+     * @param state          the state returned by {@code tryConsume}
+     * @param tokensRequired the number of tokens the request asked for
+     * @param currentTime    the current time in milliseconds
+     * @return the acquire result
+     */
+    public AcquireResult toResult(BucketState state, int tokensRequired, long currentTime) {
+        return toResult(state.allowed(), state.tokens(), tokensRequired, currentTime);
+    }
+
+    /**
+     * Primitive form of {@link #toResult(BucketState, int, long)}.
+     *
+     * @param allowed        whether the request was allowed
+     * @param tokens         the token count after the decision
+     * @param tokensRequired the number of tokens the request asked for
+     * @param currentTime    the current time in milliseconds
+     * @return the acquire result
+     * @since 1.1.0
+     */
+    public AcquireResult toResult(boolean allowed, double tokens, int tokensRequired, long currentTime) {
+        int limit = (int) capacity;
+        int remaining = (int) Math.floor(tokens);
+        long resetTime = resetTime(allowed, tokens, tokensRequired, currentTime);
+        return allowed
+                ? AcquireResult.allowed(limit, remaining, resetTime, limit - remaining)
+                : AcquireResult.denied(limit, remaining, resetTime, limit - remaining);
+    }
+
+    /**
+     * Same as {@link #toResult(boolean, double, int, long)}, packed as a
+     * {@link PackedAcquireResult} without allocating.
+     *
+     * @param allowed        whether the request was allowed
+     * @param tokens         the token count after the decision
+     * @param tokensRequired the number of tokens the request asked for
+     * @param currentTime    the current time in milliseconds
+     * @return the packed acquire result
+     * @since 1.1.0
+     */
+    public long toPackedResult(boolean allowed, double tokens, int tokensRequired, long currentTime) {
+        return PackedAcquireResult.pack(allowed, (int) Math.floor(tokens),
+                resetTime(allowed, tokens, tokensRequired, currentTime), currentTime);
+    }
+
+    /**
+     * For an allowed request, when the bucket is full again; for a denied one, when
+     * {@code tokensRequired} tokens are available.
+     */
+    private long resetTime(boolean allowed, double tokens, int tokensRequired, long currentTime) {
+        return currentTime + millisToRefill(allowed ? capacity - tokens : tokensRequired - tokens);
+    }
+
+    /**
+     * Calculates how long it takes to refill the given number of tokens.
+     */
+    private long millisToRefill(double deficit) {
+        if (deficit <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(deficit / refillRate);
+    }
+
+    /**
+     * The outcome of {@link #lease}: the new bucket state and the number of tokens leased.
+     *
+     * @since 1.1.0
+     */
+    public record LeaseGrant(BucketState state, int granted) {
+    }
+
     /**
      * Represents the state of a token bucket.
      */
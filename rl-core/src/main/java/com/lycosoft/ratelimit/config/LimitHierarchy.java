@@ -0,0 +1,231 @@
+package com.lycosoft.ratelimit.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A tree of nested rate limits, such as global → tenant → user.
+ *
+ * <p>Each level is a {@link RateLimitConfig} identified by its name, plus a key
+ * template that places it in storage. Templates contain {@code {variable}}
+ * placeholders filled in per request, for example:
+ * <pre>
+ * LimitHierarchy hierarchy = LimitHierarchy.builder()
+ *     .root(global, "global")
+ *     .child("global", tenant, "tenant:{tenant}")
+ *     .child("tenant", user, "tenant:{tenant}:user:{user}")
+ *     .build();
+ * </pre>
+ *
+ * <p>A request to a level is checked against that level and every ancestor; see
+ * {@code LimiterEngine#bind(LimitHierarchy)}.
+ *
+ * <p>This immutable class is safe to share across threads.
+ *
+ * @since 1.1.0
+ */
+public final class LimitHierarchy {
+
+    private final Map<String, Level> levels;
+
+    private LimitHierarchy(Map<String, Level> levels) {
+        this.levels = Collections.unmodifiableMap(levels);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param name the level's configuration name
+     * @return the level
+     * @throws IllegalArgumentException if there is no such level
+     */
+    public Level getLevel(String name) {
+        Level level = levels.get(name);
+        if (level == null) {
+            throw new IllegalArgumentException("Unknown hierarchy level: " + name);
+        }
+        return level;
+    }
+
+    /**
+     * @return the level names, parents before children
+     */
+    public Set<String> getLevelNames() {
+        return levels.keySet();
+    }
+
+    /**
+     * One limit in the hierarchy.
+     */
+    public static final class Level {
+
+        private final RateLimitConfig config;
+        private final String keyTemplate;
+        private final Level parent;
+        private final int depth;
+
+        // Template split into literals (even indexes) and variable names (odd indexes)
+        private final String[] segments;
+
+        private Level(RateLimitConfig config, String keyTemplate, Level parent) {
+            this.config = config;
+            this.keyTemplate = keyTemplate;
+            this.parent = parent;
+            this.depth = parent != null ? parent.depth + 1 : 0;
+            this.segments = parse(keyTemplate);
+        }
+
+        public RateLimitConfig getConfig() {
+            return config;
+        }
+
+        public String getKeyTemplate() {
+            return keyTemplate;
+        }
+
+        /**
+         * @return the parent level, or null for the root
+         */
+        public Level getParent() {
+            return parent;
+        }
+
+        /**
+         * @return the number of ancestors (0 for the root)
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns this level and its ancestors, from this level up to the root.
+         *
+         * @return the path to the root
+         */
+        public List<Level> pathToRoot() {
+            List<Level> path = new ArrayList<>(depth + 1);
+            for (Level level = this; level != null; level = level.parent) {
+                path.add(level);
+            }
+            return path;
+        }
+
+        /**
+         * Fills in the key template.
+         *
+         * @param variables the values of the template's variables
+         * @return the storage key for this level
+         * @throws IllegalArgumentException if a variable is missing
+         */
+        public String resolveKey(Map<String, String> variables) {
+            if (segments.length == 1) {
+                return segments[0];
+            }
+            StringBuilder key = new StringBuilder(keyTemplate.length() + 16);
+            for (int i = 0; i < segments.length; i++) {
+                if ((i & 1) == 0) {
+                    key.append(segments[i]);
+                } else {
+                    String value = variables.get(segments[i]);
+                    if (value == null) {
+                        throw new IllegalArgumentException("Missing value for key variable '" + segments[i]
+                            + "' of level " + config.getName());
+                    }
+                    key.append(value);
+                }
+            }
+            return key.toString();
+        }
+
+        private static String[] parse(String template) {
+            List<String> segments = new ArrayList<>();
+            int start = 0;
+            int open;
+            while ((open = template.indexOf('{', start)) >= 0) {
+                int close = template.indexOf('}', open);
+                if (close < 0 || close == open + 1) {
+                    throw new IllegalArgumentException("Malformed key template: " + template);
+                }
+                segments.add(template.substring(start, open));
+                segments.add(template.substring(open + 1, close));
+                start = close + 1;
+            }
+            segments.add(template.substring(start));
+            return segments.toArray(new String[0]);
+        }
+
+        @Override
+        public String toString() {
+            return "Level{" +
+                    "name='" + config.getName() + '\'' +
+                    ", keyTemplate='" + keyTemplate + '\'' +
+                    ", depth=" + depth +
+                    '}';
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Level> levels = new LinkedHashMap<>();
+
+        /**
+         * Sets the root level.
+         *
+         * @param config the root limit
+         * @param keyTemplate the root key template
+         * @return this builder
+         */
+        public Builder root(RateLimitConfig config, String keyTemplate) {
+            if (!levels.isEmpty()) {
+                throw new IllegalStateException("root must be added first and only once");
+            }
+            return add(config, keyTemplate, null);
+        }
+
+        /**
+         * Adds a level below an existing one.
+         *
+         * @param parentName the name of the parent level's configuration
+         * @param config the limit
+         * @param keyTemplate the key template; it should include the parent's variables
+         *                    so that each parent key has its own children
+         * @return this builder
+         */
+        public Builder child(String parentName, RateLimitConfig config, String keyTemplate) {
+            Level parent = levels.get(parentName);
+            if (parent == null) {
+                throw new IllegalArgumentException("Unknown parent level: " + parentName);
+            }
+            return add(config, keyTemplate, parent);
+        }
+
+        private Builder add(RateLimitConfig config, String keyTemplate, Level parent) {
+            Objects.requireNonNull(config, "config cannot be null");
+            Objects.requireNonNull(keyTemplate, "keyTemplate cannot be null");
+            if (levels.containsKey(config.getName())) {
+                throw new IllegalArgumentException("Duplicate hierarchy level: " + config.getName());
+            }
+            for (Level ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.keyTemplate.equals(keyTemplate)) {
+                    throw new IllegalArgumentException("Level " + config.getName()
+                        + " has the same key template as its ancestor " + ancestor.config.getName());
+                }
+            }
+            levels.put(config.getName(), new Level(config, keyTemplate, parent));
+            return this;
+        }
+
+        public LimitHierarchy build() {
+            if (levels.isEmpty()) {
+                throw new IllegalStateException("a hierarchy needs a root level");
+            }
+            return new LimitHierarchy(new LinkedHashMap<>(levels));
+        }
+    }
+}
@@ -26,6 +26,12 @@ public final class RateLimitConfig {
     
     // TTL for storage cleanup
     private final long ttl;
+
+    // Eventually consistent mode (0 = strict)
+    private final long maxStalenessMillis;
+
+    // Striped token bucket (1 = single bucket)
+    private final int stripes;
     
     private RateLimitConfig(Builder builder) {
         this.name = builder.name;
@@ -36,6 +42,8 @@ public final class RateLimitConfig {
         this.failStrategy = builder.failStrategy;
         this.capacity = builder.capacity;
         this.refillRate = builder.refillRate;
+        this.maxStalenessMillis = builder.maxStalenessMillis;
+        this.stripes = builder.stripes;
         this.ttl = calculateTtl();
     }
     
@@ -90,6 +98,44 @@ public final class RateLimitConfig {
     public long getTtl() {
         return ttl;
     }
+
+    /**
+     * Returns how old the cluster-wide view may be when a node decides locally.
+     *
+     * <p>Zero (the default) means every decision is made by the storage provider.
+     * A positive bound lets an eventually consistent provider (see
+     * {@code EventuallyConsistentStorageProvider}) admit requests from local counters
+     * that were last merged with the global counts at most this many milliseconds ago.
+     *
+     * @return the staleness bound in milliseconds, or 0 for strict enforcement
+     * @since 1.1.0
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * @return true if this limiter may be decided from eventually consistent local counters
+     * @since 1.1.0
+     */
+    public boolean isEventuallyConsistent() {
+        return maxStalenessMillis > 0;
+    }
+
+    /**
+     * Returns how many sub-buckets a token bucket is split into.
+     *
+     * <p>One (the default) is a single bucket. With more, local providers that
+     * support it (see {@code InMemoryStorageProvider}) split the capacity and refill
+     * rate evenly across stripes, so that threads contending on one very hot key
+     * update different cache lines.
+     *
+     * @return the number of stripes
+     * @since 1.1.0
+     */
+    public int getStripes() {
+        return stripes;
+    }
     
     public static Builder builder() {
         return new Builder();
@@ -104,6 +150,8 @@ public final class RateLimitConfig {
         private FailStrategy failStrategy = FailStrategy.FAIL_OPEN;
         private int capacity;
         private double refillRate;
+        private long maxStalenessMillis;
+        private int stripes = 1;
         
         public Builder name(String name) {
             this.name = name;
@@ -145,12 +193,59 @@ public final class RateLimitConfig {
             return this;
         }
         
+        /**
+         * Allows decisions from local counters whose global view is at most this old.
+         *
+         * <p>Only valid with {@link FailStrategy#FAIL_OPEN}, since it trades some
+         * over-admission for keeping remote storage off the request path.
+         *
+         * @param maxStalenessMillis the staleness bound in milliseconds, or 0 for strict enforcement
+         * @return this builder
+         * @since 1.1.0
+         */
+        public Builder maxStalenessMillis(long maxStalenessMillis) {
+            this.maxStalenessMillis = maxStalenessMillis;
+            return this;
+        }
+        
+        /**
+         * Splits a token bucket into per-core sub-buckets, for keys that take a large
+         * share of all requests (such as a global limit).
+         *
+         * <p>Each stripe holds {@code capacity / stripes} tokens and refills at
+         * {@code refillRate / stripes}; a request that its own stripe cannot cover
+         * borrows from the others, so the aggregate never exceeds the configured limit.
+         * {@code Runtime.getRuntime().availableProcessors()} is a good value.
+         *
+         * @param stripes the number of stripes (1 for a single bucket, at most the capacity)
+         * @return this builder
+         * @since 1.1.0
+         */
+        public Builder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+        
         public RateLimitConfig build() {
             Objects.requireNonNull(name, "name cannot be null");
             Objects.requireNonNull(algorithm, "algorithm cannot be null");
             Objects.requireNonNull(windowUnit, "windowUnit cannot be null");
             Objects.requireNonNull(failStrategy, "failStrategy cannot be null");
 
+            if (stripes < 1) {
+                throw new IllegalArgumentException("stripes must be positive");
+            }
+            if (stripes > 1 && algorithm != Algorithm.TOKEN_BUCKET) {
+                throw new IllegalArgumentException("stripes require the TOKEN_BUCKET algorithm");
+            }
+            if (maxStalenessMillis < 0) {
+                throw new IllegalArgumentException("maxStalenessMillis cannot be negative");
+            }
+            if (maxStalenessMillis > 0 && failStrategy != FailStrategy.FAIL_OPEN) {
+                throw new IllegalArgumentException(
+                    "Eventually consistent limits (maxStalenessMillis > 0) require FAIL_OPEN");
+            }
+
             // Algorithm-based validation
             if (algorithm == Algorithm.TOKEN_BUCKET) {
                 // TOKEN_BUCKET requires either (capacity + refillRate) OR (requests + window)
@@ -174,6 +269,10 @@ public final class RateLimitConfig {
                     requests = capacity;
                     window = 1; // Default 1 second for TTL calculation
                 }
+
+                if (stripes > capacity) {
+                    throw new IllegalArgumentException("stripes cannot exceed capacity");
+                }
             } else if (algorithm == Algorithm.SLIDING_WINDOW || algorithm == Algorithm.FIXED_WINDOW) {
                 // SLIDING_WINDOW and FIXED_WINDOW require requests and window
                 if (requests <= 0) {
@@ -241,6 +340,8 @@ public final class RateLimitConfig {
                 capacity == that.capacity &&
                 Double.compare(that.refillRate, refillRate) == 0 &&
                 ttl == that.ttl &&
+                maxStalenessMillis == that.maxStalenessMillis &&
+                stripes == that.stripes &&
                 Objects.equals(name, that.name) &&
                 algorithm == that.algorithm &&
                 windowUnit == that.windowUnit &&
@@ -250,7 +351,7 @@ public final class RateLimitConfig {
     @Override
     public int hashCode() {
         return Objects.hash(name, algorithm, requests, window, windowUnit, 
-                           failStrategy, capacity, refillRate, ttl);
+                           failStrategy, capacity, refillRate, ttl, maxStalenessMillis, stripes);
     }
     
     @Override
@@ -265,6 +366,8 @@ public final class RateLimitConfig {
                 ", capacity=" + capacity +
                 ", refillRate=" + refillRate +
                 ", ttl=" + ttl +
+                ", maxStalenessMillis=" + maxStalenessMillis +
+                ", stripes=" + stripes +
                 '}';
     }
 }
@@ -5,4 +5,5 @@ public class RateLimitDefaultValue {
         throw new AssertionError("RateLimitDefaultValue class should not be instantiated");
     }
     public static final String KEY_EXPRESSION = "#ip";
+    public static final String COST_EXPRESSION = "1";
 }
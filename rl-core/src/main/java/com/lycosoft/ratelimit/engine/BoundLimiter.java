@@ -0,0 +1,186 @@
+package com.lycosoft.ratelimit.engine;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LimiterMetrics;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A rate limiter bound to one {@link RateLimitConfig}, created by {@link LimiterEngine#bind}.
+ * 
+ * <p>Makes the same decisions as {@link LimiterEngine#tryAcquire(RateLimitContext, RateLimitConfig)}
+ * with the same metrics, audit logging and fail strategy, but the per-configuration work
+ * (algorithm setup, argument encoding, metric lookup) was done once when binding.
+ * 
+ * <p><b>Allocation-free use:</b> {@link #tryAcquirePacked} returns the outcome as a
+ * {@code long} (see {@link PackedAcquireResult}), and limiters bound with
+ * {@link LimiterEngine#bind(RateLimitConfig, boolean) shared allow decisions} return
+ * one decision instance for every allowed request. Neither allocates on the allow
+ * path, provided the key resolver and storage provider don't and storage keys are
+ * not {@link StorageKeyEncoder encoded}.
+ * 
+ * <p><b>Thread Safety:</b> This class is immutable and can be shared across requests.
+ * 
+ * @since 1.1.0
+ */
+public final class BoundLimiter {
+    
+    private final LimiterEngine engine;
+    private final RateLimitConfig config;
+    private final BoundStorage storage;
+    private final StorageKeyEncoder.Namespace keys;
+    private final LimiterMetrics metrics;
+    private final int limit;
+    private final RateLimitDecision sharedAllow;
+    
+    BoundLimiter(LimiterEngine engine, RateLimitConfig config, BoundStorage storage,
+                 StorageKeyEncoder.Namespace keys, LimiterMetrics metrics, boolean shareAllowDecisions) {
+        this.engine = engine;
+        this.config = config;
+        this.storage = storage;
+        this.keys = keys;
+        this.metrics = metrics;
+        this.limit = config.getAlgorithm() == RateLimitConfig.Algorithm.TOKEN_BUCKET
+            ? config.getCapacity()
+            : config.getRequests();
+        this.sharedAllow = shareAllowDecisions ? RateLimitDecision.sharedAllow(config.getName(), limit) : null;
+    }
+    
+    /**
+     * Attempts to acquire permission for a request.
+     * 
+     * @param context the request context
+     * @return the rate limit decision
+     */
+    public RateLimitDecision tryAcquire(RateLimitContext context) {
+        return tryAcquire(context, 1);
+    }
+    
+    /**
+     * Attempts to acquire {@code permits} units of capacity for a weighted request.
+     * 
+     * @param context the request context
+     * @param permits the number of permits the request costs (must be positive)
+     * @return the rate limit decision
+     * @throws IllegalArgumentException if {@code permits} is not positive
+     */
+    public RateLimitDecision tryAcquire(RateLimitContext context, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long startTime = engine.now();
+        
+        try {
+            String key = engine.resolveKey(context);
+            long currentTime = engine.currentTime();
+            if (sharedAllow == null) {
+                AcquireResult result = storage.acquire(keys.encode(key), permits, currentTime);
+                return engine.decide(config, metrics, key, result, startTime);
+            }
+            
+            long packed = acquirePacked(key, permits, currentTime, startTime);
+            if (PackedAcquireResult.isAllowed(packed)) {
+                return sharedAllow;
+            }
+            return RateLimitDecision.deny(
+                config.getName(),
+                limit,
+                currentTime + PackedAcquireResult.resetDelayMillis(packed),
+                "Rate limit exceeded"
+            );
+            
+        } catch (Exception e) {
+            return engine.handleError(config, e);
+        }
+    }
+    
+    /**
+     * Attempts to acquire {@code permits} units of capacity and returns the outcome
+     * packed into a {@code long}.
+     * 
+     * <p>Decode the result with {@link PackedAcquireResult}; the reset delay is relative
+     * to the time of the call. Metrics, audit logging and the fail strategy apply as for
+     * {@link #tryAcquire(RateLimitContext, int)}, but the allow path allocates nothing.
+     * 
+     * @param context the request context
+     * @param permits the number of permits the request costs (must be positive)
+     * @return the packed outcome
+     * @throws IllegalArgumentException if {@code permits} is not positive
+     */
+    public long tryAcquirePacked(RateLimitContext context, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long startTime = engine.now();
+        
+        try {
+            String key = engine.resolveKey(context);
+            return acquirePacked(key, permits, engine.currentTime(), startTime);
+            
+        } catch (Exception e) {
+            RateLimitDecision decision = engine.handleError(config, e);
+            return PackedAcquireResult.pack(decision.isAllowed(), decision.getRemaining(),
+                                            decision.getResetTime(), engine.now());
+        }
+    }
+    
+    /**
+     * Acquires from storage in packed form and records metrics and audit events.
+     */
+    private long acquirePacked(String key, int permits, long currentTime, long startTime) {
+        long packed = storage.acquirePacked(keys.encode(key), permits, currentTime);
+        int usage = limit - PackedAcquireResult.remaining(packed);
+        engine.record(config, metrics, key, PackedAcquireResult.isAllowed(packed), limit, usage, startTime);
+        return packed;
+    }
+    
+    /**
+     * Asynchronous variant of {@link #tryAcquire(RateLimitContext, int)}.
+     * 
+     * <p>Storage failures complete the stage with the fail strategy's decision, not
+     * exceptionally.
+     * 
+     * @param context the request context
+     * @param permits the number of permits the request costs (must be positive)
+     * @return a stage completed with the rate limit decision
+     * @throws IllegalArgumentException if {@code permits} is not positive
+     */
+    public CompletionStage<RateLimitDecision> tryAcquireAsync(RateLimitContext context, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long startTime = engine.now();
+        
+        String key;
+        CompletionStage<AcquireResult> pending;
+        try {
+            key = engine.resolveKey(context);
+            pending = storage.acquireAsync(keys.encode(key), permits, engine.currentTime());
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(engine.handleError(config, e));
+        }
+        
+        return pending.handle((result, error) -> {
+            if (error != null) {
+                return engine.handleError(config, LimiterEngine.unwrap(error));
+            }
+            try {
+                return engine.decide(config, metrics, key, result, startTime);
+            } catch (Exception e) {
+                return engine.handleError(config, e);
+            }
+        });
+    }
+    
+    /**
+     * @return the bound configuration
+     */
+    public RateLimitConfig getConfig() {
+        return config;
+    }
+}
@@ -0,0 +1,118 @@
+package com.lycosoft.ratelimit.engine;
+
+import com.lycosoft.ratelimit.config.LimitHierarchy;
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nested rate limits bound to a {@link LimiterEngine}, created by
+ * {@link LimiterEngine#bind(LimitHierarchy)}.
+ *
+ * <p>A request names the level it belongs to (typically a leaf, such as a user) and
+ * supplies the key variables. The level and every ancestor are checked as one
+ * all-or-nothing {@code acquireAll} storage operation, ordered from the level up to
+ * the root: a single Lua script on Redis; in memory, every level is checked under
+ * locks taken in a fixed order and written only once all of them allow. A user over
+ * their own budget therefore does not use up tenant or global capacity, and a request
+ * costs one round trip however deep the hierarchy is.
+ *
+ * <p>The decision names the level that denied the request, or the level with the
+ * least remaining capacity if every level allowed it.
+ *
+ * <p><b>Thread Safety:</b> This class is immutable and can be shared across requests.
+ *
+ * @since 1.1.0
+ */
+public final class HierarchicalLimiter {
+
+    private final LimiterEngine engine;
+    private final LimitHierarchy hierarchy;
+    private final Map<String, Path> paths;
+
+    HierarchicalLimiter(LimiterEngine engine, LimitHierarchy hierarchy) {
+        this.engine = engine;
+        this.hierarchy = hierarchy;
+        Map<String, Path> paths = new HashMap<>();
+        for (String name : hierarchy.getLevelNames()) {
+            paths.put(name, new Path(hierarchy.getLevel(name).pathToRoot()));
+        }
+        this.paths = paths;
+    }
+
+    /**
+     * @return the bound hierarchy
+     */
+    public LimitHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Attempts to acquire permission for a request at {@code level}.
+     *
+     * @param level the name of the level the request belongs to
+     * @param variables the values of the key template variables
+     * @return the rate limit decision
+     * @throws IllegalArgumentException if the level is unknown or a variable is missing
+     */
+    public RateLimitDecision tryAcquire(String level, Map<String, String> variables) {
+        return tryAcquire(level, variables, 1);
+    }
+
+    /**
+     * Attempts to acquire {@code permits} units of capacity at {@code level} and every
+     * ancestor.
+     *
+     * @param level the name of the level the request belongs to
+     * @param variables the values of the key template variables
+     * @param permits the number of permits the request costs at each level (must be positive)
+     * @return the rate limit decision
+     * @throws IllegalArgumentException if the level is unknown, a variable is missing,
+     *         or {@code permits} is not positive
+     */
+    public RateLimitDecision tryAcquire(String level, Map<String, String> variables, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        Path path = paths.get(level);
+        if (path == null) {
+            throw new IllegalArgumentException("Unknown hierarchy level: " + level);
+        }
+        long startTime = engine.now();
+
+        List<String> keys = path.resolveKeys(variables);
+        int[] costs = new int[keys.size()];
+        Arrays.fill(costs, permits);
+        return engine.tryAcquireAllKeys(keys, path.configs, costs, startTime);
+    }
+
+    /**
+     * The levels checked for one request level, from that level up to the root.
+     */
+    private static final class Path {
+        private final List<LimitHierarchy.Level> levels;
+        private final List<RateLimitConfig> configs;
+
+        Path(List<LimitHierarchy.Level> levels) {
+            this.levels = levels;
+            List<RateLimitConfig> configs = new ArrayList<>(levels.size());
+            for (LimitHierarchy.Level level : levels) {
+                configs.add(level.getConfig());
+            }
+            this.configs = Collections.unmodifiableList(configs);
+        }
+
+        List<String> resolveKeys(Map<String, String> variables) {
+            List<String> keys = new ArrayList<>(levels.size());
+            for (LimitHierarchy.Level level : levels) {
+                keys.add(level.resolveKey(variables));
+            }
+            return keys;
+        }
+    }
+}
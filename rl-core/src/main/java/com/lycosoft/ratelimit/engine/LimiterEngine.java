@@ -1,11 +1,24 @@
 package com.lycosoft.ratelimit.engine;
 
+import com.lycosoft.ratelimit.config.LimitHierarchy;
 import com.lycosoft.ratelimit.config.RateLimitConfig;
 import com.lycosoft.ratelimit.spi.*;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Core rate limiting engine that orchestrates all components.
@@ -30,6 +43,11 @@ public class LimiterEngine {
     private final KeyResolver keyResolver;
     private final MetricsExporter metricsExporter;
     private final AuditLogger auditLogger;
+    private final boolean auditEnabled;
+    private final TimeSource timeSource;
+    private final StorageKeyEncoder keyEncoder;
+    private final Map<String, LimiterMetrics> metricsByLimiter = new ConcurrentHashMap<>();
+    private final WaitQueues waitQueues = new WaitQueues();
     
     /**
      * Creates a new limiter engine with all required components.
@@ -43,10 +61,116 @@ public class LimiterEngine {
                         KeyResolver keyResolver,
                         MetricsExporter metricsExporter,
                         AuditLogger auditLogger) {
+        this(storageProvider, keyResolver, metricsExporter, auditLogger, null);
+    }
+    
+    /**
+     * Creates a new limiter engine that reads the local clock from {@code timeSource}.
+     * 
+     * <p>The time source measures latency, stamps audit events and dates fail-strategy
+     * decisions. The time passed to storage still comes from
+     * {@link StorageProvider#getCurrentTime()}, which providers read from their own
+     * time source.
+     * 
+     * @param storageProvider the storage provider
+     * @param keyResolver the key resolver
+     * @param metricsExporter the metrics exporter (optional, can be no-op)
+     * @param auditLogger the audit logger (optional, can be no-op)
+     * @param timeSource the local clock (optional, defaults to {@link TimeSource#system()})
+     * @since 1.1.0
+     */
+    public LimiterEngine(StorageProvider storageProvider,
+                        KeyResolver keyResolver,
+                        MetricsExporter metricsExporter,
+                        AuditLogger auditLogger,
+                        TimeSource timeSource) {
+        this(storageProvider, keyResolver, metricsExporter, auditLogger, timeSource, null);
+    }
+    
+    /**
+     * Creates a new limiter engine that encodes storage keys with {@code keyEncoder}.
+     * 
+     * <p>The encoder turns each limiter name and resolved key into the key passed to
+     * the storage provider, so limiters resolving the same key keep separate state and
+     * long keys can be stored as fixed-width hashes. Audit events still report the
+     * resolved key. The default, {@link StorageKeyEncoder#raw()}, keeps the 1.0 keys.
+     * 
+     * @param storageProvider the storage provider
+     * @param keyResolver the key resolver
+     * @param metricsExporter the metrics exporter (optional, can be no-op)
+     * @param auditLogger the audit logger (optional, can be no-op)
+     * @param timeSource the local clock (optional, defaults to {@link TimeSource#system()})
+     * @param keyEncoder the storage key encoder (optional, defaults to {@link StorageKeyEncoder#raw()})
+     * @since 1.1.0
+     */
+    public LimiterEngine(StorageProvider storageProvider,
+                        KeyResolver keyResolver,
+                        MetricsExporter metricsExporter,
+                        AuditLogger auditLogger,
+                        TimeSource timeSource,
+                        StorageKeyEncoder keyEncoder) {
+        this.keyEncoder = keyEncoder != null ? keyEncoder : StorageKeyEncoder.raw();
+        this.timeSource = timeSource != null ? timeSource : TimeSource.system();
         this.storageProvider = Objects.requireNonNull(storageProvider, "storageProvider cannot be null");
         this.keyResolver = Objects.requireNonNull(keyResolver, "keyResolver cannot be null");
         this.metricsExporter = metricsExporter != null ? metricsExporter : new NoOpMetricsExporter();
         this.auditLogger = auditLogger != null ? auditLogger : new NoOpAuditLogger();
+        this.auditEnabled = auditLogger != null;
+    }
+    
+    /**
+     * Binds a configuration to this engine for repeated checks.
+     * 
+     * <p>The returned limiter holds everything that depends only on the configuration:
+     * the storage provider's {@link StorageProvider#bind bound operations} (algorithm
+     * instance, derived window, encoded script arguments) and the metric handles. Each
+     * check then only resolves the key and calls storage. Bind once per configuration,
+     * for example at startup or when an annotated method is first invoked.
+     * 
+     * @param config the rate limit configuration
+     * @return a reusable limiter for this configuration
+     * @since 1.1.0
+     */
+    public BoundLimiter bind(RateLimitConfig config) {
+        Objects.requireNonNull(config, "config cannot be null");
+        return bind(config, false);
+    }
+    
+    /**
+     * Binds a configuration to this engine, optionally in allocation-free mode.
+     * 
+     * <p>With {@code shareAllowDecisions}, the limiter's allow path does not allocate:
+     * {@link BoundLimiter#tryAcquire(RateLimitContext)} returns one
+     * {@link RateLimitDecision#sharedAllow shared allow decision} per limiter, which does
+     * not report remaining capacity or reset time. Callers that need those use
+     * {@link BoundLimiter#tryAcquirePacked}, which is allocation-free in either mode.
+     * Denials are always fully populated.
+     * 
+     * @param config the rate limit configuration
+     * @param shareAllowDecisions whether allowed requests return a shared decision
+     * @return a reusable limiter for this configuration
+     * @since 1.1.0
+     */
+    public BoundLimiter bind(RateLimitConfig config, boolean shareAllowDecisions) {
+        Objects.requireNonNull(config, "config cannot be null");
+        return new BoundLimiter(this, config, storageProvider.bind(config), keyEncoder.namespace(config.getName()),
+                                metricsFor(config.getName()), shareAllowDecisions);
+    }
+    
+    /**
+     * Binds a hierarchy of nested limits to this engine.
+     * 
+     * <p>The returned limiter checks a level together with all of its ancestors in one
+     * {@link StorageProvider#acquireAll} call, so capacity is taken from a parent only
+     * when every level on the path allows the request.
+     * 
+     * @param hierarchy the limit hierarchy
+     * @return a reusable limiter for the hierarchy
+     * @since 1.1.0
+     */
+    public HierarchicalLimiter bind(LimitHierarchy hierarchy) {
+        Objects.requireNonNull(hierarchy, "hierarchy cannot be null");
+        return new HierarchicalLimiter(this, hierarchy);
     }
     
     /**
@@ -59,82 +183,718 @@ public class LimiterEngine {
      * @return the rate limit decision
      */
     public RateLimitDecision tryAcquire(RateLimitContext context, RateLimitConfig config) {
-        long startTime = System.currentTimeMillis();
+        return tryAcquire(context, config, 1);
+    }
+    
+    /**
+     * Attempts to acquire {@code permits} units of capacity for a weighted request.
+     * 
+     * <p>Use this for requests whose cost varies, such as GraphQL queries or bulk
+     * endpoints. The decision is all-or-nothing: either every permit is granted or
+     * none is consumed.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration
+     * @param permits the number of permits the request costs (must be positive)
+     * @return the rate limit decision
+     * @throws IllegalArgumentException if {@code permits} is not positive
+     * @since 1.1.0
+     */
+    public RateLimitDecision tryAcquire(RateLimitContext context, RateLimitConfig config, int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long startTime = timeSource.currentTimeMillis();
         
+        // 1. Resolve the key
+        String key = resolveKey(context);
+        return tryAcquireKey(key, keyEncoder.encode(config.getName(), key), config, permits, startTime);
+    }
+    
+    /**
+     * Acquires permits for an already resolved key, stored under {@code storageKey}.
+     */
+    private RateLimitDecision tryAcquireKey(String key, String storageKey, RateLimitConfig config, int permits,
+                                            long startTime) {
         try {
-            // 1. Resolve the key
-            String key = resolveKey(context);
-            
             // 2. Get current time from storage provider (for clock sync)
             long currentTime = storageProvider.getCurrentTime();
             
-            // 3. Try to acquire from storage
-            boolean allowed = storageProvider.tryAcquire(key, config, currentTime);
+            // 3. Acquire from storage (decision and post-decision state in one operation)
+            AcquireResult result = storageProvider.acquire(storageKey, config, permits, currentTime);
             
-            // 4. Get current state for decision metadata
-            RateLimitState state = storageProvider.getState(key)
-                .orElse(null);
+            // 4. Create decision and record metrics
+            return decide(config, metricsFor(config.getName()), key, result, startTime);
             
-            // 5. Create decision
-            RateLimitDecision decision;
-            if (allowed) {
-                decision = RateLimitDecision.allow(
-                    config.getName(),
-                    config.getRequests(),
-                    state != null ? state.getRemaining() : config.getRequests() - 1,
-                    state != null ? state.getResetTime() : currentTime + config.getWindowMillis()
-                );
-                metricsExporter.recordAllow(config.getName());
-            } else {
-                decision = RateLimitDecision.deny(
-                    config.getName(),
-                    config.getRequests(),
-                    state != null ? state.getResetTime() : currentTime + config.getWindowMillis(),
-                    "Rate limit exceeded"
-                );
-                metricsExporter.recordDeny(config.getName());
-                
-                // Audit log enforcement
-                auditLogger.logEnforcementAction(new EnforcementEventImpl(
-                    config.getName(),
-                    key,
-                    config.getRequests(),
-                    state != null ? state.getCurrentUsage() : config.getRequests(),
-                    AuditLogger.EnforcementEvent.EnforcementResult.DENIED
-                ));
+        } catch (Exception e) {
+            return handleError(config, e);
+        }
+    }
+    
+    /**
+     * Acquires permission for a request, blocking until it is available or
+     * {@code timeout} expires.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration
+     * @param timeout the longest time to wait
+     * @return the rate limit decision
+     * @see #acquire(RateLimitContext, RateLimitConfig, int, Duration)
+     * @since 1.1.0
+     */
+    public RateLimitDecision acquire(RateLimitContext context, RateLimitConfig config, Duration timeout) {
+        return acquire(context, config, 1, timeout);
+    }
+    
+    /**
+     * Acquires {@code permits} units of capacity, blocking until they are available or
+     * {@code timeout} expires.
+     * 
+     * <p>A denied attempt does not spin: the caller parks until the reset time reported
+     * by the algorithm (for a token bucket, the moment enough tokens have refilled) and
+     * polls storage once more. Callers blocked on the same key queue up and only the
+     * head of the queue polls, so a pool of waiting workers costs one storage call per
+     * refill instead of one per worker. If the reported wait is longer than the time
+     * left, the call returns the denial at once rather than sleeping until the timeout.
+     * A caller that times out before reaching the head does not poll either: it returns
+     * the denial the head last received.
+     * 
+     * <p>Waiting uses {@link java.util.concurrent.locks.LockSupport parking} and never
+     * holds a monitor, so it does not pin virtual threads. Interrupts do not abort the
+     * wait; the interrupt status is restored before returning.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration
+     * @param permits the number of permits the request costs (must be positive)
+     * @param timeout the longest time to wait; zero behaves like {@code tryAcquire}
+     * @return the allow decision, or the last denial if the permits could not be
+     *         acquired in time
+     * @throws IllegalArgumentException if {@code permits} is not positive or
+     *         {@code timeout} is negative
+     * @since 1.1.0
+     */
+    public RateLimitDecision acquire(RateLimitContext context, RateLimitConfig config, int permits,
+                                     Duration timeout) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        Objects.requireNonNull(timeout, "timeout cannot be null");
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        long deadline = System.nanoTime() + toNanosSaturated(timeout);
+        long startTime = timeSource.currentTimeMillis();
+        String key = resolveKey(context);
+        String storageKey = keyEncoder.encode(config.getName(), key);
+        
+        // Fast path, unless others are already waiting for this key
+        RateLimitDecision denial = null;
+        if (!waitQueues.hasWaiters(storageKey)) {
+            RateLimitDecision decision = tryAcquireKey(key, storageKey, config, permits, startTime);
+            if (decision.isAllowed() || timeout.isZero()) {
+                return decision;
+            }
+            denial = decision;
+        }
+        
+        WaitQueues.Queue queue = waitQueues.join(storageKey);
+        boolean[] interrupted = new boolean[1];
+        try {
+            if (!queue.awaitHead(deadline, interrupted)) {
+                return timedOutBehindHead(key, storageKey, config, permits, queue, denial, startTime);
+            }
+            try {
+                return acquireAtHead(key, storageKey, config, permits, deadline, interrupted, queue, denial);
+            } finally {
+                queue.release();
             }
+        } finally {
+            waitQueues.leave(storageKey, queue);
+            if (interrupted[0]) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Polls storage at the head of a key's wait queue, parking until each reported reset.
+     * A denial from the fast path counts as the first poll.
+     */
+    private RateLimitDecision acquireAtHead(String key, String storageKey, RateLimitConfig config, int permits,
+                                            long deadline, boolean[] interrupted, WaitQueues.Queue queue,
+                                            RateLimitDecision denial) {
+        RateLimitDecision decision = denial != null ? denial
+                : tryAcquireKey(key, storageKey, config, permits, timeSource.currentTimeMillis());
+        while (!decision.isAllowed()) {
+            queue.denied(decision);
+            long waitMillis = Math.max(1L, decision.getResetTime() - storageProvider.getCurrentTime());
+            long waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            if (waitNanos > deadline - System.nanoTime()) {
+                return decision;
+            }
+            interrupted[0] |= WaitQueues.park(waitNanos);
+            decision = tryAcquireKey(key, storageKey, config, permits, timeSource.currentTimeMillis());
+        }
+        return decision;
+    }
+    
+    /**
+     * Answers a caller that timed out before reaching the head of the queue with the
+     * head's last denial rather than another storage call, recording it as this
+     * caller's decision unless the fast path already did. Storage is only polled if
+     * neither the head nor the fast path has been denied yet.
+     */
+    private RateLimitDecision timedOutBehindHead(String key, String storageKey, RateLimitConfig config, int permits,
+                                                 WaitQueues.Queue queue, RateLimitDecision denial,
+                                                 long startTime) {
+        RateLimitDecision last = queue.lastDenial();
+        if (last == null) {
+            return denial != null ? denial : tryAcquireKey(key, storageKey, config, permits, startTime);
+        }
+        if (denial == null) {
+            record(config, metricsFor(config.getName()), key, false, last.getLimit(), last.getLimit(), startTime);
+        }
+        return last;
+    }
+    
+    /**
+     * Asynchronous variant of {@link #tryAcquire(RateLimitContext, RateLimitConfig)}.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration
+     * @return a stage completed with the rate limit decision
+     * @since 1.1.0
+     */
+    public CompletionStage<RateLimitDecision> tryAcquireAsync(RateLimitContext context, RateLimitConfig config) {
+        return tryAcquireAsync(context, config, 1);
+    }
+    
+    /**
+     * Asynchronous variant of {@link #tryAcquire(RateLimitContext, RateLimitConfig, int)}.
+     * 
+     * <p>The storage call goes through {@link StorageProvider#acquireAsync}, so the
+     * calling thread does not wait for remote storage. Local providers decide on the
+     * calling thread; a provider with a blocking client, such as the Redis provider,
+     * runs the call on its own executor, where a pool thread waits instead, and the
+     * decision completes on that thread. Metrics, audit logging and the fail strategy
+     * are applied exactly as in the synchronous call; the returned stage never
+     * completes exceptionally because of a storage failure.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration
+     * @param permits the number of permits the request costs (must be positive)
+     * @return a stage completed with the rate limit decision
+     * @throws IllegalArgumentException if {@code permits} is not positive
+     * @since 1.1.0
+     */
+    public CompletionStage<RateLimitDecision> tryAcquireAsync(RateLimitContext context, RateLimitConfig config,
+                                                              int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long startTime = timeSource.currentTimeMillis();
+        
+        String key;
+        CompletionStage<AcquireResult> pending;
+        try {
+            key = resolveKey(context);
+            long currentTime = storageProvider.getCurrentTime();
+            pending = storageProvider.acquireAsync(keyEncoder.encode(config.getName(), key), config, permits,
+                                                   currentTime);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(handleError(config, e));
+        }
+        
+        return pending.handle((result, error) -> {
+            if (error != null) {
+                return handleError(config, unwrap(error));
+            }
+            try {
+                return decide(config, metricsFor(config.getName()), key, result, startTime);
+            } catch (Exception e) {
+                return handleError(config, e);
+            }
+        });
+    }
+    
+    /**
+     * Reserves {@code permits} units of capacity, waiting as long as necessary.
+     * 
+     * <p>Equivalent to {@link #reserve(RateLimitContext, RateLimitConfig, int, Duration)}
+     * without a maximum wait, so the reservation is always booked.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration (must use TOKEN_BUCKET)
+     * @param permits the number of permits to reserve (positive, at most the capacity)
+     * @return the reservation
+     * @since 1.1.0
+     */
+    public Reservation reserve(RateLimitContext context, RateLimitConfig config, int permits) {
+        return reserve(context, config, permits, null);
+    }
+    
+    /**
+     * Reserves {@code permits} units of capacity and returns when they can be used.
+     * 
+     * <p>Unlike {@link #tryAcquire}, a request that exceeds the limit is not denied:
+     * the permits are booked against future capacity in storage, and the caller waits
+     * {@link Reservation#getWaitMillis()} before proceeding. Because the booking is
+     * visible to every caller, waiters queue behind each other instead of polling the
+     * limiter. If the wait would exceed {@code maxWait}, nothing is booked.
+     * 
+     * <p>On storage failure the fail strategy applies: FAIL_OPEN returns an immediate
+     * reservation, FAIL_CLOSED one that is not booked and available one window later.
+     * 
+     * @param context the request context
+     * @param config the rate limit configuration (must use TOKEN_BUCKET)
+     * @param permits the number of permits to reserve (positive, at most the capacity)
+     * @param maxWait the longest acceptable wait, or null for no maximum
+     * @return the reservation
+     * @throws IllegalArgumentException if {@code permits} is not positive or exceeds the
+     *         capacity, or {@code maxWait} is negative
+     * @throws UnsupportedOperationException if the algorithm or storage provider does
+     *         not support reservations
+     * @since 1.1.0
+     */
+    public Reservation reserve(RateLimitContext context, RateLimitConfig config, int permits, Duration maxWait) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Reservations require the TOKEN_BUCKET algorithm");
+        }
+        if (permits > config.getCapacity()) {
+            throw new IllegalArgumentException("permits cannot exceed the bucket capacity");
+        }
+        if (maxWait != null && maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait cannot be negative");
+        }
+        long maxWaitMillis = maxWait != null ? toMillisSaturated(maxWait) : Long.MAX_VALUE;
+        long startTime = timeSource.currentTimeMillis();
+        
+        try {
+            String key = resolveKey(context);
+            long currentTime = storageProvider.getCurrentTime();
             
-            // 6. Record latency
-            long latency = System.currentTimeMillis() - startTime;
-            metricsExporter.recordLatency(config.getName(), latency);
+            // Book the permits against future capacity in one storage operation
+            long availableAt = storageProvider.reserve(keyEncoder.encode(config.getName(), key), config, permits,
+                                                       maxWaitMillis, currentTime);
+            boolean booked = availableAt - currentTime <= maxWaitMillis;
             
-            // 7. Record usage
-            if (state != null) {
-                metricsExporter.recordUsage(config.getName(), state.getCurrentUsage(), config.getRequests());
+            LimiterMetrics metrics = metricsFor(config.getName());
+            if (booked) {
+                metrics.recordAllow();
+            } else {
+                metrics.recordDeny();
             }
+            metrics.recordLatency(timeSource.currentTimeMillis() - startTime);
             
-            return decision;
+            return new Reservation(config.getName(), permits, booked, availableAt, currentTime);
             
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
-            logger.error("Error during rate limit check for limiter: {}", config.getName(), e);
-            metricsExporter.recordError(config.getName(), e);
+            RateLimitDecision fallback = handleError(config, e);
+            long now = timeSource.currentTimeMillis();
+            return fallback.isAllowed()
+                ? new Reservation(config.getName(), permits, true, now, now)
+                : new Reservation(config.getName(), permits, false, fallback.getResetTime(), now);
+        }
+    }
+    
+    /**
+     * Converts a duration to nanoseconds, saturating instead of overflowing.
+     */
+    private static long toNanosSaturated(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    /**
+     * Converts a duration to milliseconds, saturating instead of overflowing.
+     */
+    private static long toMillisSaturated(Duration duration) {
+        try {
+            return duration.toMillis();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    /**
+     * Turns a storage result into a decision, recording metrics and audit events.
+     */
+    RateLimitDecision decide(RateLimitConfig config, LimiterMetrics metrics, String key,
+                             AcquireResult result, long startTime) {
+        RateLimitDecision decision;
+        if (result.isAllowed()) {
+            decision = RateLimitDecision.allow(
+                config.getName(),
+                result.getLimit(),
+                result.getRemaining(),
+                result.getResetTime()
+            );
+        } else {
+            decision = RateLimitDecision.deny(
+                config.getName(),
+                result.getLimit(),
+                result.getResetTime(),
+                "Rate limit exceeded"
+            );
+        }
+        record(config, metrics, key, result.isAllowed(), result.getLimit(), result.getCurrentUsage(), startTime);
+        return decision;
+    }
+    
+    /**
+     * Records the metrics and audit event of one decision.
+     * 
+     * <p>Enforcement events are only built when an audit logger is configured, so the
+     * deny path does not allocate them for nothing.
+     */
+    void record(RateLimitConfig config, LimiterMetrics metrics, String key, boolean allowed,
+                int limit, int usage, long startTime) {
+        if (allowed) {
+            metrics.recordAllow();
+        } else {
+            metrics.recordDeny();
             
-            // Audit log system failure
+            // Audit log enforcement
+            if (auditEnabled) {
+                auditLogger.logEnforcementAction(new EnforcementEventImpl(
+                    config.getName(),
+                    key,
+                    limit,
+                    usage,
+                    AuditLogger.EnforcementEvent.EnforcementResult.DENIED,
+                    timeSource.currentTimeMillis()
+                ));
+            }
+        }
+        
+        // Record latency
+        long latency = timeSource.currentTimeMillis() - startTime;
+        metrics.recordLatency(latency);
+        
+        // Record usage
+        metrics.recordUsage(usage, limit);
+    }
+    
+    /**
+     * Returns the metric handles for a limiter, binding them on first use.
+     */
+    private LimiterMetrics metricsFor(String limiterName) {
+        LimiterMetrics metrics = metricsByLimiter.get(limiterName);
+        if (metrics != null) {
+            return metrics;
+        }
+        return metricsByLimiter.computeIfAbsent(limiterName, name -> {
+            LimiterMetrics bound = metricsExporter.bind(name);
+            // Mocked or partial exporters may not bind; fall back to name-based calls
+            return bound != null ? bound : LimiterMetrics.forwarding(metricsExporter, name);
+        });
+    }
+    
+    /**
+     * Records a failed rate limit check and applies the fail strategy.
+     */
+    RateLimitDecision handleError(RateLimitConfig config, Throwable e) {
+        logger.error("Error during rate limit check for limiter: {}", config.getName(), e);
+        metricsFor(config.getName()).recordError(e);
+        
+        // Audit log system failure
+        if (auditEnabled) {
             auditLogger.logSystemFailure(new SystemFailureEventImpl(
                 "LimiterEngine",
                 "Rate limit check failed: " + e.getMessage(),
-                e
+                e,
+                timeSource.currentTimeMillis()
             ));
-            
-            // Apply fail strategy
-            return handleFailure(config, e);
         }
+        
+        // Apply fail strategy
+        return handleFailure(config, e);
+    }
+    
+    /**
+     * Decides a request whose check could not be prepared, for example because its cost
+     * could not be resolved, as if storage had failed: the error is recorded and
+     * audited, and the strictest fail strategy of the limits applies.
+     *
+     * @param configs the rate limit configurations of the request (must not be empty)
+     * @param error the error that prevented the check
+     * @return the fail strategy's decision
+     * @since 1.1.0
+     */
+    public RateLimitDecision failedCheck(List<RateLimitConfig> configs, Throwable error) {
+        Objects.requireNonNull(configs, "configs cannot be null");
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("configs cannot be empty");
+        }
+        return handleError(strictestConfig(configs), error);
+    }
+
+    /**
+     * Unwraps the cause of an asynchronous failure; errors are rethrown, not masked.
+     */
+    static Throwable unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause()
+            : error;
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause;
     }
     
+    /**
+     * Checks several rate limits for one request as a single all-or-nothing operation.
+     *
+     * <p>All limits share the given context, so they resolve to the same key. See
+     * {@link #tryAcquireAll(List, List)} for how limits sharing a key are stored.
+     *
+     * @param context the request context
+     * @param configs the rate limit configurations (must not be empty)
+     * @return the combined rate limit decision
+     * @since 1.1.0
+     */
+    public RateLimitDecision tryAcquireAll(RateLimitContext context, List<RateLimitConfig> configs) {
+        Objects.requireNonNull(configs, "configs cannot be null");
+        return tryAcquireAll(Collections.nCopies(configs.size(), context), configs);
+    }
+
+    /**
+     * Checks several rate limits for one request as a single all-or-nothing operation.
+     *
+     * <p>Every limit is evaluated with one {@link StorageProvider#acquireAll} call, so
+     * a distributed provider pays one round trip regardless of the number of limits,
+     * and capacity is consumed only if every limit allows the request.
+     *
+     * <p>Each limit's key is resolved from its own context and encoded by the engine's
+     * {@link StorageKeyEncoder}, so a limiter has the same storage key here as in every
+     * other call. Under the raw encoding, limits that resolve to the same key share
+     * state, as they do one at a time; a namespacing encoding keeps them apart.
+     *
+     * <p>The returned decision is the denying limit with the latest reset time, or, if
+     * every limit allowed, the limit with the least remaining capacity.
+     *
+     * @param contexts the request contexts, one per limit
+     * @param configs the rate limit configurations, in the same order as {@code contexts}
+     * @return the combined rate limit decision
+     * @throws IllegalArgumentException if the lists are empty or differ in size
+     * @since 1.1.0
+     */
+    public RateLimitDecision tryAcquireAll(List<RateLimitContext> contexts, List<RateLimitConfig> configs) {
+        Objects.requireNonNull(configs, "configs cannot be null");
+        int[] permits = new int[configs.size()];
+        Arrays.fill(permits, 1);
+        return tryAcquireAll(contexts, configs, permits);
+    }
+
+    /**
+     * Checks several rate limits for one weighted request as a single all-or-nothing
+     * operation.
+     *
+     * <p>Behaves like {@link #tryAcquireAll(List, List)}, except that the request costs
+     * {@code permits[i]} units against limit {@code i}.
+     *
+     * @param contexts the request contexts, one per limit
+     * @param configs the rate limit configurations, in the same order as {@code contexts}
+     * @param permits the cost of the request against each limit (each must be positive)
+     * @return the combined rate limit decision
+     * @throws IllegalArgumentException if the arguments are empty, differ in size, or a
+     *         permit count is not positive
+     * @since 1.1.0
+     */
+    public RateLimitDecision tryAcquireAll(List<RateLimitContext> contexts, List<RateLimitConfig> configs,
+                                           int[] permits) {
+        Objects.requireNonNull(contexts, "contexts cannot be null");
+        Objects.requireNonNull(configs, "configs cannot be null");
+        Objects.requireNonNull(permits, "permits cannot be null");
+        if (configs.isEmpty() || contexts.size() != configs.size() || permits.length != configs.size()) {
+            throw new IllegalArgumentException("contexts, configs and permits must be non-empty and have the same size");
+        }
+        for (int permit : permits) {
+            if (permit <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+        }
+        if (configs.size() == 1) {
+            return tryAcquire(contexts.get(0), configs.get(0), permits[0]);
+        }
+
+        long startTime = timeSource.currentTimeMillis();
+
+        // 1. Resolve the keys
+        return tryAcquireAllKeys(resolveKeys(contexts), configs, permits, startTime);
+    }
+
+    /**
+     * Checks several rate limits whose keys are already resolved, as a single
+     * all-or-nothing operation.
+     */
+    RateLimitDecision tryAcquireAllKeys(List<String> keys, List<RateLimitConfig> configs, int[] permits,
+                                        long startTime) {
+        if (configs.size() == 1) {
+            String key = keys.get(0);
+            return tryAcquireKey(key, keyEncoder.encode(configs.get(0).getName(), key), configs.get(0), permits[0],
+                                 startTime);
+        }
+
+        try {
+            // 2. Get current time from storage provider (for clock sync)
+            long currentTime = storageProvider.getCurrentTime();
+
+            // 3. Check and commit every limit in one storage operation
+            List<AcquireResult> results = storageProvider.acquireAll(encodeKeys(keys, configs), configs, permits,
+                                                                     currentTime);
+
+            boolean allowed = results.size() == configs.size();
+            for (AcquireResult result : results) {
+                allowed &= result.isAllowed();
+            }
+
+            // 4. Create decision and record per-limit metrics
+            RateLimitDecision decision = null;
+            AcquireResult decisive = null;
+            long latency = timeSource.currentTimeMillis() - startTime;
+            for (int i = 0; i < results.size(); i++) {
+                RateLimitConfig config = configs.get(i);
+                AcquireResult result = results.get(i);
+                LimiterMetrics metrics = metricsFor(config.getName());
+
+                if (allowed) {
+                    metrics.recordAllow();
+                    if (decisive == null || result.getRemaining() < decisive.getRemaining()) {
+                        decisive = result;
+                        decision = RateLimitDecision.allow(
+                            config.getName(),
+                            result.getLimit(),
+                            result.getRemaining(),
+                            result.getResetTime()
+                        );
+                    }
+                } else if (!result.isAllowed()) {
+                    metrics.recordDeny();
+                    if (auditEnabled) {
+                        auditLogger.logEnforcementAction(new EnforcementEventImpl(
+                            config.getName(),
+                            keys.get(i),
+                            result.getLimit(),
+                            result.getCurrentUsage(),
+                            AuditLogger.EnforcementEvent.EnforcementResult.DENIED,
+                            timeSource.currentTimeMillis()
+                        ));
+                    }
+                    if (decisive == null || result.getResetTime() > decisive.getResetTime()) {
+                        decisive = result;
+                        decision = RateLimitDecision.deny(
+                            config.getName(),
+                            result.getLimit(),
+                            result.getResetTime(),
+                            "Rate limit exceeded"
+                        );
+                    }
+                }
+
+                // 5. Record latency and usage
+                metrics.recordLatency(latency);
+                metrics.recordUsage(result.getCurrentUsage(), result.getLimit());
+            }
+
+            if (decision == null) {
+                throw new IllegalStateException("Storage provider returned no denying result for a denied request");
+            }
+            return decision;
+
+        } catch (Exception e) {
+            RateLimitConfig strictest = strictestConfig(configs);
+            logger.error("Error during rate limit check for limiters: {}", limiterNames(configs), e);
+            for (RateLimitConfig config : configs) {
+                metricsFor(config.getName()).recordError(e);
+            }
+
+            // Audit log system failure
+            if (auditEnabled) {
+                auditLogger.logSystemFailure(new SystemFailureEventImpl(
+                    "LimiterEngine",
+                    "Rate limit check failed: " + e.getMessage(),
+                    e,
+                    timeSource.currentTimeMillis()
+                ));
+            }
+
+            // Apply the strictest fail strategy of the group
+            return handleFailure(strictest, e);
+        }
+    }
+
+    /**
+     * Resolves the key of each limit.
+     */
+    private List<String> resolveKeys(List<RateLimitContext> contexts) {
+        List<String> keys = new ArrayList<>(contexts.size());
+        for (RateLimitContext context : contexts) {
+            keys.add(resolveKey(context));
+        }
+        return keys;
+    }
+
+    /**
+     * Encodes the storage key of each limit.
+     */
+    private List<String> encodeKeys(List<String> keys, List<RateLimitConfig> configs) {
+        if (keyEncoder.getMode() == StorageKeyEncoder.Mode.RAW) {
+            return keys;
+        }
+        List<String> storageKeys = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            storageKeys.add(keyEncoder.encode(configs.get(i).getName(), keys.get(i)));
+        }
+        return storageKeys;
+    }
+
+    /**
+     * Returns the first FAIL_CLOSED configuration, or the first configuration if all fail open.
+     */
+    private static RateLimitConfig strictestConfig(List<RateLimitConfig> configs) {
+        for (RateLimitConfig config : configs) {
+            if (config.getFailStrategy() == RateLimitConfig.FailStrategy.FAIL_CLOSED) {
+                return config;
+            }
+        }
+        return configs.get(0);
+    }
+
+    private static List<String> limiterNames(List<RateLimitConfig> configs) {
+        List<String> names = new ArrayList<>(configs.size());
+        for (RateLimitConfig config : configs) {
+            names.add(config.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Returns the local time, for latency measurement.
+     */
+    long now() {
+        return timeSource.currentTimeMillis();
+    }
+
+    /**
+     * Returns the current time from the storage provider (for clock sync).
+     */
+    long currentTime() {
+        return storageProvider.getCurrentTime();
+    }
+
     /**
      * Resolves the rate limit key from the context.
      */
-    private String resolveKey(RateLimitContext context) {
+    String resolveKey(RateLimitContext context) {
         try {
             String key = keyResolver.resolveKey(context);
             if (key == null || key.trim().isEmpty()) {
@@ -151,7 +911,7 @@ public class LimiterEngine {
     /**
      * Handles failures based on the fail strategy.
      */
-    private RateLimitDecision handleFailure(RateLimitConfig config, Exception error) {
+    private RateLimitDecision handleFailure(RateLimitConfig config, Throwable error) {
         switch (config.getFailStrategy()) {
             case FAIL_OPEN:
                 // Allow request (AP mode - availability priority)
@@ -160,7 +920,7 @@ public class LimiterEngine {
                     config.getName(),
                     config.getRequests(),
                     config.getRequests(), // Unknown remaining
-                    System.currentTimeMillis() + config.getWindowMillis()
+                    timeSource.currentTimeMillis() + config.getWindowMillis()
                 );
                 
             case FAIL_CLOSED:
@@ -171,7 +931,7 @@ public class LimiterEngine {
                 return RateLimitDecision.deny(
                     config.getName(),
                     config.getRequests(),
-                    System.currentTimeMillis() + config.getWindowMillis(),
+                    timeSource.currentTimeMillis() + config.getWindowMillis(),
                     "Rate limiter temporarily unavailable"
                 );
                 
@@ -204,13 +964,13 @@ public class LimiterEngine {
         private final long timestamp;
         
         public EnforcementEventImpl(String limiterName, String resolvedKey, int threshold, 
-                                   int currentUsage, EnforcementResult result) {
+                                   int currentUsage, EnforcementResult result, long timestamp) {
             this.limiterName = limiterName;
             this.resolvedKey = resolvedKey;
             this.threshold = threshold;
             this.currentUsage = currentUsage;
             this.result = result;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = timestamp;
         }
         
         @Override
@@ -255,11 +1015,11 @@ public class LimiterEngine {
         private final Throwable cause;
         private final long timestamp;
         
-        public SystemFailureEventImpl(String component, String errorMessage, Throwable cause) {
+        public SystemFailureEventImpl(String component, String errorMessage, Throwable cause, long timestamp) {
             this.component = component;
             this.errorMessage = errorMessage;
             this.cause = cause;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = timestamp;
         }
         
         @Override
@@ -28,14 +28,20 @@ public final class RateLimitDecision {
     private final RateLimitProblemDetail problemDetail;  // NEW: RFC 9457 support
     
     private RateLimitDecision(Builder builder) {
-        this.allowed = builder.allowed;
-        this.limiterName = builder.limiterName;
-        this.limit = builder.limit;
-        this.remaining = builder.remaining;
-        this.resetTime = builder.resetTime;
-        this.reason = builder.reason;
-        this.delayMs = builder.delayMs;
-        this.problemDetail = builder.problemDetail;
+        this(builder.allowed, builder.limiterName, builder.limit, builder.remaining, builder.resetTime,
+             builder.reason, builder.delayMs, builder.problemDetail);
+    }
+    
+    private RateLimitDecision(boolean allowed, String limiterName, int limit, int remaining, long resetTime,
+                              String reason, long delayMs, RateLimitProblemDetail problemDetail) {
+        this.allowed = allowed;
+        this.limiterName = limiterName;
+        this.limit = limit;
+        this.remaining = remaining;
+        this.resetTime = resetTime;
+        this.reason = reason;
+        this.delayMs = delayMs;
+        this.problemDetail = problemDetail;
     }
     
     /**
@@ -60,14 +66,16 @@ public final class RateLimitDecision {
     }
     
     /**
-     * @return the remaining capacity (e.g., 42 requests remaining)
+     * @return the remaining capacity (e.g., 42 requests remaining), or -1 for a
+     *         {@link #sharedAllow shared allow decision}
      */
     public int getRemaining() {
         return remaining;
     }
     
     /**
-     * @return the time when the limit will reset (milliseconds since epoch)
+     * @return the time when the limit will reset (milliseconds since epoch), or 0 for a
+     *         {@link #sharedAllow shared allow decision}
      */
     public long getResetTime() {
         return resetTime;
@@ -125,27 +133,30 @@ public final class RateLimitDecision {
      * Creates an ALLOWED decision.
      */
     public static RateLimitDecision allow(String limiterName, int limit, int remaining, long resetTime) {
-        return builder()
-            .allowed(true)
-            .limiterName(limiterName)
-            .limit(limit)
-            .remaining(remaining)
-            .resetTime(resetTime)
-            .build();
+        return new RateLimitDecision(true, limiterName, limit, remaining, resetTime, null, 0, null);
+    }
+    
+    /**
+     * Creates an ALLOWED decision that can be shared by every request to a limiter.
+     * 
+     * <p>It reports the limiter and its limit, but not per-request state: the remaining
+     * capacity is -1 and the reset time is 0. Used by allocation-free limiters, see
+     * {@link LimiterEngine#bind(com.lycosoft.ratelimit.config.RateLimitConfig, boolean)}.
+     * 
+     * @param limiterName the limiter name
+     * @param limit the configured limit
+     * @return the decision
+     * @since 1.1.0
+     */
+    public static RateLimitDecision sharedAllow(String limiterName, int limit) {
+        return new RateLimitDecision(true, limiterName, limit, -1, 0, null, 0, null);
     }
     
     /**
      * Creates a DENIED decision.
      */
     public static RateLimitDecision deny(String limiterName, int limit, long resetTime, String reason) {
-        return builder()
-            .allowed(false)
-            .limiterName(limiterName)
-            .limit(limit)
-            .remaining(0)
-            .resetTime(resetTime)
-            .reason(reason)
-            .build();
+        return new RateLimitDecision(false, limiterName, limit, 0, resetTime, reason, 0, null);
     }
     
     public static class Builder {
@@ -0,0 +1,83 @@
+package com.lycosoft.ratelimit.engine;
+
+/**
+ * Outcome of {@link LimiterEngine#reserve}: when the reserved permits can be used.
+ *
+ * <p>A booked reservation has already consumed its permits; the caller proceeds once
+ * {@link #getWaitMillis()} has elapsed, without checking the limiter again. A
+ * reservation that was not booked consumed nothing, because the wait would have
+ * exceeded the caller's maximum.
+ *
+ * <p>This immutable value object is created once per reservation.
+ *
+ * @since 1.1.0
+ */
+public final class Reservation {
+
+    private final String limiterName;
+    private final int permits;
+    private final boolean booked;
+    private final long availableAt;
+    private final long reservedAt;
+
+    Reservation(String limiterName, int permits, boolean booked, long availableAt, long reservedAt) {
+        this.limiterName = limiterName;
+        this.permits = permits;
+        this.booked = booked;
+        this.availableAt = availableAt;
+        this.reservedAt = reservedAt;
+    }
+
+    /**
+     * @return the name of the rate limiter that made this reservation
+     */
+    public String getLimiterName() {
+        return limiterName;
+    }
+
+    /**
+     * @return the number of permits reserved
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * @return true if the permits were booked, false if the wait was too long
+     */
+    public boolean isBooked() {
+        return booked;
+    }
+
+    /**
+     * @return the time at which the permits are available (milliseconds since epoch)
+     */
+    public long getAvailableAt() {
+        return availableAt;
+    }
+
+    /**
+     * @return the time of the reservation (milliseconds since epoch, limiter clock)
+     */
+    public long getReservedAt() {
+        return reservedAt;
+    }
+
+    /**
+     * @return how long to wait from the reservation until the permits can be used
+     */
+    public long getWaitMillis() {
+        return Math.max(0, availableAt - reservedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" +
+                "limiterName='" + limiterName + '\'' +
+                ", permits=" + permits +
+                ", booked=" + booked +
+                ", availableAt=" + availableAt +
+                ", waitMillis=" + getWaitMillis() +
+                '}';
+    }
+}
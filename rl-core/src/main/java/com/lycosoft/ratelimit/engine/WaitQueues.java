@@ -0,0 +1,136 @@
+package com.lycosoft.ratelimit.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-key queues of callers blocked in {@link LimiterEngine#acquire}.
+ *
+ * <p>Waiters on the same key line up behind a fair {@link ReentrantLock}. Only the head
+ * of the line polls storage; the others stay parked until it has its permits or gives
+ * up, and those that time out first answer with the head's last denial. Neither the lock nor {@link #park} uses monitors, so waiting does not pin virtual
+ * threads to their carrier. A key's queue is removed when its last waiter leaves.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe.
+ *
+ * @since 1.1.0
+ */
+final class WaitQueues {
+
+    private final ConcurrentHashMap<String, Queue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a waiter to the key's queue, creating the queue if needed.
+     *
+     * @param key the rate limit key
+     * @return the queue; pass it to {@link #leave} when done
+     */
+    Queue join(String key) {
+        return queues.compute(key, (k, queue) -> {
+            Queue joined = queue != null ? queue : new Queue();
+            joined.waiters++;
+            return joined;
+        });
+    }
+
+    /**
+     * Removes a waiter from the key's queue, dropping the queue with its last waiter.
+     *
+     * @param key the rate limit key
+     * @param queue the queue returned by {@link #join}
+     */
+    void leave(String key, Queue queue) {
+        queues.computeIfPresent(key, (k, current) ->
+            current == queue && --current.waiters == 0 ? null : current);
+    }
+
+    /**
+     * @param key the rate limit key
+     * @return true if callers are currently waiting on the key
+     */
+    boolean hasWaiters(String key) {
+        return queues.containsKey(key);
+    }
+
+    /**
+     * @return the number of keys with waiters
+     */
+    int size() {
+        return queues.size();
+    }
+
+    /**
+     * Parks the current thread for {@code nanos}, ignoring interrupts.
+     *
+     * @param nanos how long to park
+     * @return true if the thread was interrupted while parked (the flag is cleared)
+     */
+    static boolean park(long nanos) {
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            interrupted |= Thread.interrupted();
+            remaining = deadline - System.nanoTime();
+        }
+        return interrupted;
+    }
+
+    /**
+     * The waiters on one key.
+     */
+    static final class Queue {
+
+        private final ReentrantLock head = new ReentrantLock(true);
+
+        /** Guarded by the enclosing map's {@code compute}. */
+        private int waiters;
+
+        /** Last denial received by the head, or null. */
+        private volatile RateLimitDecision lastDenial;
+
+        /**
+         * Records a denial received by the head of the queue.
+         *
+         * @param denial the denial
+         */
+        void denied(RateLimitDecision denial) {
+            lastDenial = denial;
+        }
+
+        /**
+         * @return the last denial received by the head, or null if it has not been denied
+         */
+        RateLimitDecision lastDenial() {
+            return lastDenial;
+        }
+
+        /**
+         * Waits until this caller is at the head of the queue, ignoring interrupts.
+         *
+         * @param deadlineNanos the {@link System#nanoTime()} after which to give up
+         * @param interrupted receives whether the thread was interrupted while waiting
+         *                    (the flag is cleared)
+         * @return true if this caller is now at the head; it must call {@link #release}
+         */
+        boolean awaitHead(long deadlineNanos, boolean[] interrupted) {
+            while (true) {
+                try {
+                    return head.tryLock(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        }
+
+        /**
+         * Hands the head of the queue to the next waiter.
+         */
+        void release() {
+            head.unlock();
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.lycosoft.ratelimit.resilience;
 
+import com.lycosoft.ratelimit.spi.TimeSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -56,6 +61,7 @@ public class JitteredCircuitBreaker {
     private final long baseHalfOpenTimeoutMs;
     private final double jitterFactor;
     private final int maxConcurrentProbes;
+    private final TimeSource timeSource;
     
     /**
      * Creates a circuit breaker with default settings.
@@ -87,6 +93,28 @@ public class JitteredCircuitBreaker {
                                  long baseHalfOpenTimeoutMs,
                                  double jitterFactor,
                                  int maxConcurrentProbes) {
+        this(failureThreshold, windowMs, baseHalfOpenTimeoutMs, jitterFactor, maxConcurrentProbes,
+             TimeSource.system());
+    }
+    
+    /**
+     * Creates a circuit breaker with custom settings that reads the time from
+     * {@code timeSource}.
+     * 
+     * @param failureThreshold the failure rate threshold (0.0 to 1.0)
+     * @param windowMs the sliding window size in milliseconds
+     * @param baseHalfOpenTimeoutMs the base half-open timeout in milliseconds
+     * @param jitterFactor the jitter factor (0.0 to 1.0, typically 0.3 for ±30%)
+     * @param maxConcurrentProbes the maximum number of concurrent probe requests
+     * @param timeSource the clock used to time the open state
+     * @since 1.1.0
+     */
+    public JitteredCircuitBreaker(double failureThreshold, 
+                                 long windowMs, 
+                                 long baseHalfOpenTimeoutMs,
+                                 double jitterFactor,
+                                 int maxConcurrentProbes,
+                                 TimeSource timeSource) {
         if (failureThreshold < 0 || failureThreshold > 1) {
             throw new IllegalArgumentException("failureThreshold must be between 0 and 1");
         }
@@ -99,6 +127,7 @@ public class JitteredCircuitBreaker {
         this.baseHalfOpenTimeoutMs = baseHalfOpenTimeoutMs;
         this.jitterFactor = jitterFactor;
         this.maxConcurrentProbes = maxConcurrentProbes;
+        this.timeSource = Objects.requireNonNull(timeSource, "timeSource cannot be null");
         
         logger.info("JitteredCircuitBreaker initialized: threshold={}, window={}ms, " +
                    "halfOpenTimeout={}ms, jitter=±{}%", 
@@ -144,11 +173,93 @@ public class JitteredCircuitBreaker {
         }
     }
     
+    /**
+     * Executes an asynchronous operation with circuit breaker protection.
+     *
+     * <p>Admission follows the same rules as {@link #execute(Callable)}; success or
+     * failure is recorded when the returned stage completes, and a HALF_OPEN probe
+     * slot is held until then.
+     *
+     * @param operation supplies the stage of the operation to execute
+     * @param <T> the result type
+     * @return the operation stage, or a stage failed with {@link CircuitBreakerOpenException}
+     *         if the circuit is open
+     * @since 1.1.0
+     */
+    public <T> CompletionStage<T> executeAsync(Supplier<? extends CompletionStage<T>> operation) {
+        boolean probe;
+        try {
+            probe = admit();
+        } catch (CircuitBreakerOpenException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletionStage<T> stage;
+        try {
+            stage = operation.get();
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+
+        return stage.whenComplete((result, error) -> {
+            try {
+                if (error == null) {
+                    onSuccess();
+                    if (probe) {
+                        logger.info("Circuit probe succeeded, transitioning to CLOSED");
+                    }
+                } else {
+                    onFailure();
+                    if (probe) {
+                        logger.warn("Circuit probe failed, back to OPEN");
+                    }
+                }
+            } finally {
+                if (probe) {
+                    activeProbes.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Admits an operation in the current state.
+     *
+     * @return true if the operation runs as a HALF_OPEN probe
+     * @throws CircuitBreakerOpenException if the operation is rejected
+     */
+    private boolean admit() {
+        switch (state.get()) {
+            case OPEN:
+                leaveOpenState();
+                acquireProbeSlot();
+                return true;
+
+            case HALF_OPEN:
+                acquireProbeSlot();
+                return true;
+
+            case CLOSED:
+            default:
+                return false;
+        }
+    }
+
     /**
      * Handles execution in OPEN state (circuit tripped).
      */
     private <T> T handleOpenState(Callable<T> operation) throws Exception {
-        long elapsed = System.currentTimeMillis() - lastFailureTime.get();
+        leaveOpenState();
+        return handleHalfOpenState(operation);
+    }
+
+    /**
+     * Moves from OPEN to HALF_OPEN once the jittered timeout has elapsed.
+     *
+     * @throws CircuitBreakerOpenException if the circuit is still open
+     */
+    private void leaveOpenState() {
+        long elapsed = timeSource.currentTimeMillis() - lastFailureTime.get();
         long jitteredTimeout = calculateJitteredTimeout();
 
         if (elapsed > jitteredTimeout) {
@@ -159,7 +270,7 @@ public class JitteredCircuitBreaker {
             }
             // Either we transitioned to HALF_OPEN, or another thread did - proceed with probe
             if (state.get() == State.HALF_OPEN) {
-                return handleHalfOpenState(operation);
+                return;
             }
         }
 
@@ -173,9 +284,32 @@ public class JitteredCircuitBreaker {
      * Handles execution in HALF_OPEN state (testing recovery).
      *
      * <p>Limits concurrent probes to prevent overwhelming the recovering service.
-     * Uses atomic CAS loop to enforce maxConcurrentProbes limit without exceeding it.
      */
     private <T> T handleHalfOpenState(Callable<T> operation) throws Exception {
+        acquireProbeSlot();
+
+        try {
+            T result = operation.call();
+            onSuccess(); // Transition to CLOSED
+            logger.info("Circuit probe succeeded, transitioning to CLOSED");
+            return result;
+        } catch (Exception e) {
+            onFailure(); // Back to OPEN
+            logger.warn("Circuit probe failed, back to OPEN");
+            throw e;
+        } finally {
+            activeProbes.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes a HALF_OPEN probe slot.
+     *
+     * <p>Uses atomic CAS loop to enforce maxConcurrentProbes limit without exceeding it.
+     *
+     * @throws CircuitBreakerOpenException if every probe slot is taken
+     */
+    private void acquireProbeSlot() {
         // Proper CAS loop to atomically check-and-increment probe count
         while (true) {
             int currentProbes = activeProbes.get();
@@ -189,23 +323,10 @@ public class JitteredCircuitBreaker {
 
             // Try to increment atomically; if another thread beat us, retry the loop
             if (activeProbes.compareAndSet(currentProbes, currentProbes + 1)) {
-                break; // Successfully acquired a probe slot
+                return; // Successfully acquired a probe slot
             }
             // CAS failed - another thread modified the counter, loop and retry
         }
-
-        try {
-            T result = operation.call();
-            onSuccess(); // Transition to CLOSED
-            logger.info("Circuit probe succeeded, transitioning to CLOSED");
-            return result;
-        } catch (Exception e) {
-            onFailure(); // Back to OPEN
-            logger.warn("Circuit probe failed, back to OPEN");
-            throw e;
-        } finally {
-            activeProbes.decrementAndGet();
-        }
     }
     
     /**
@@ -226,7 +347,7 @@ public class JitteredCircuitBreaker {
      */
     private void onFailure() {
         failureCount.incrementAndGet();
-        lastFailureTime.set(System.currentTimeMillis());
+        lastFailureTime.set(timeSource.currentTimeMillis());
         
         // Check if we should trip the circuit
         int total = successCount.get() + failureCount.get();
@@ -281,7 +402,7 @@ public class JitteredCircuitBreaker {
      */
     public void tripCircuit() {
         state.set(State.OPEN);
-        lastFailureTime.set(System.currentTimeMillis());
+        lastFailureTime.set(timeSource.currentTimeMillis());
         logger.warn("Circuit breaker manually tripped to OPEN");
     }
     
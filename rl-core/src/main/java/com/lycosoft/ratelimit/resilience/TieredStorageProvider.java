@@ -1,13 +1,21 @@
 package com.lycosoft.ratelimit.resilience;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LeaseResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.storage.StorageException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Tiered storage provider with L1/L2 failover strategy.
@@ -155,6 +163,250 @@ public class TieredStorageProvider implements StorageProvider {
         }
     }
 
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        try {
+            // Try L1 (primary) with circuit breaker protection
+            return circuitBreaker.execute(() -> l1Provider.acquire(key, config, permits, currentTime));
+
+        } catch (JitteredCircuitBreaker.CircuitBreakerOpenException e) {
+            // Circuit is open - use L2 fallback
+            return handleL1UnavailableAcquire(key, config, permits, currentTime, "Circuit breaker OPEN");
+
+        } catch (Exception e) {
+            // L1 error - use L2 fallback
+            return handleL1UnavailableAcquire(key, config, permits, currentTime, "L1 error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles L1 unavailability for {@link #acquire}, mirroring
+     * {@link #handleL1Unavailable(String, RateLimitConfig, long, String)}.
+     *
+     * @param key         the rate limit key
+     * @param config      the rate limit configuration
+     * @param permits     the number of permits requested
+     * @param currentTime the current time
+     * @param reason      the reason for L1 unavailability
+     * @return the L2 result, or a synthetic result when L2 cannot be used
+     */
+    private AcquireResult handleL1UnavailableAcquire(String key, RateLimitConfig config, int permits,
+                                                     long currentTime, String reason) {
+        logger.debug("L1 unavailable for key={}, reason={}, using L2 fallback", key, reason);
+
+        RateLimitConfig.FailStrategy strategy = config.getFailStrategy() != null
+                ? config.getFailStrategy()
+                : failStrategy;
+        long resetTime = currentTime + config.getWindowMillis();
+
+        switch (strategy) {
+            case FAIL_OPEN:
+                try {
+                    AcquireResult result = l2Provider.acquire(key, config, permits, currentTime);
+
+                    if (!result.isAllowed()) {
+                        logger.trace("L2 denied request for key={} (AP mode)", key);
+                    }
+
+                    return result;
+                } catch (Exception l2Exception) {
+                    logger.warn("Both L1 and L2 failed for key={}, allowing request (FAIL_OPEN): {}",
+                            key, l2Exception.getMessage());
+                    return AcquireResult.allowed(config.getRequests(), config.getRequests(), resetTime, 0);
+                }
+
+            case FAIL_CLOSED:
+                logger.warn("L1 unavailable and FAIL_CLOSED strategy active, denying request for key={}", key);
+                return AcquireResult.denied(config.getRequests(), 0, resetTime, config.getRequests());
+
+            default:
+                throw new IllegalStateException("Unknown fail strategy: " + strategy);
+        }
+    }
+
+    @Override
+    public CompletionStage<AcquireResult> acquireAsync(String key, RateLimitConfig config,
+                                                       int permits, long currentTime) {
+        // Try L1 (primary) with circuit breaker protection; L2 is local and answers synchronously
+        return circuitBreaker.executeAsync(() -> l1Provider.acquireAsync(key, config, permits, currentTime))
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return result;
+                    }
+                    return handleL1UnavailableAcquire(key, config, permits, currentTime, reasonFor(error));
+                });
+    }
+
+    /**
+     * Binds the configuration on L1, so the primary path skips per-call setup.
+     * The L2 fallback path is unchanged.
+     */
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        BoundStorage l1Bound = l1Provider.bind(config);
+        return new BoundStorage() {
+            @Override
+            public AcquireResult acquire(String key, int permits, long currentTime) {
+                try {
+                    return circuitBreaker.execute(() -> l1Bound.acquire(key, permits, currentTime));
+
+                } catch (JitteredCircuitBreaker.CircuitBreakerOpenException e) {
+                    return handleL1UnavailableAcquire(key, config, permits, currentTime, "Circuit breaker OPEN");
+
+                } catch (Exception e) {
+                    return handleL1UnavailableAcquire(key, config, permits, currentTime, "L1 error: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public CompletionStage<AcquireResult> acquireAsync(String key, int permits, long currentTime) {
+                return circuitBreaker.executeAsync(() -> l1Bound.acquireAsync(key, permits, currentTime))
+                        .handle((result, error) -> {
+                            if (error == null) {
+                                return result;
+                            }
+                            return handleL1UnavailableAcquire(key, config, permits, currentTime, reasonFor(error));
+                        });
+            }
+        };
+    }
+
+    /**
+     * Reserves on L1, falling back to L2 under FAIL_OPEN.
+     *
+     * <p>Under FAIL_CLOSED the L1 failure is rethrown, so the caller's fail strategy
+     * refuses the reservation; a synthetic wait could not be booked anywhere.
+     */
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        try {
+            return circuitBreaker.execute(() -> l1Provider.reserve(key, config, permits, maxWaitMillis, currentTime));
+
+        } catch (UnsupportedOperationException e) {
+            throw e;
+
+        } catch (Exception e) {
+            String reason = e instanceof JitteredCircuitBreaker.CircuitBreakerOpenException
+                    ? "Circuit breaker OPEN"
+                    : "L1 error: " + e.getMessage();
+            if (strategyFor(config) == RateLimitConfig.FailStrategy.FAIL_CLOSED) {
+                logger.warn("L1 unavailable and FAIL_CLOSED strategy active, refusing reservation for key={}", key);
+                throw new StorageException("L1 unavailable: " + reason, e);
+            }
+            logger.debug("L1 unavailable for key={}, reason={}, reserving on L2", key, reason);
+            return l2Provider.reserve(key, config, permits, maxWaitMillis, currentTime);
+        }
+    }
+
+    /**
+     * Leases on L1, falling back to L2 under FAIL_OPEN.
+     *
+     * <p>Under FAIL_CLOSED the L1 failure is rethrown. Tokens handed back with a lease
+     * that fails are not returned to either tier.
+     */
+    @Override
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
+        try {
+            return circuitBreaker.execute(() ->
+                    l1Provider.lease(key, config, returned, minPermits, maxPermits, currentTime));
+
+        } catch (UnsupportedOperationException e) {
+            throw e;
+
+        } catch (Exception e) {
+            String reason = e instanceof JitteredCircuitBreaker.CircuitBreakerOpenException
+                    ? "Circuit breaker OPEN"
+                    : "L1 error: " + e.getMessage();
+            if (strategyFor(config) == RateLimitConfig.FailStrategy.FAIL_CLOSED) {
+                logger.warn("L1 unavailable and FAIL_CLOSED strategy active, refusing lease for key={}", key);
+                throw new StorageException("L1 unavailable: " + reason, e);
+            }
+            logger.debug("L1 unavailable for key={}, reason={}, leasing on L2", key, reason);
+            return l2Provider.lease(key, config, returned, minPermits, maxPermits, currentTime);
+        }
+    }
+
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        try {
+            // Try L1 (primary) with circuit breaker protection
+            return circuitBreaker.execute(() -> l1Provider.acquireAll(keys, configs, permits, currentTime));
+
+        } catch (JitteredCircuitBreaker.CircuitBreakerOpenException e) {
+            // Circuit is open - use L2 fallback
+            return handleL1UnavailableAcquireAll(keys, configs, permits, currentTime, "Circuit breaker OPEN");
+
+        } catch (Exception e) {
+            // L1 error - use L2 fallback
+            return handleL1UnavailableAcquireAll(keys, configs, permits, currentTime, "L1 error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles L1 unavailability for {@link #acquireAll}.
+     *
+     * <p>If any limit uses FAIL_CLOSED, the whole group is denied without touching L2:
+     * those limits are reported as denied and the others as allowed but not consumed.
+     * Otherwise the group is evaluated against L2, and allowed if L2 fails as well.
+     *
+     * @param keys        the rate limit keys
+     * @param configs     the rate limit configurations
+     * @param permits     the permits requested from each limit
+     * @param currentTime the current time
+     * @param reason      the reason for L1 unavailability
+     * @return one result per limit
+     */
+    private List<AcquireResult> handleL1UnavailableAcquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                                              int[] permits, long currentTime, String reason) {
+        logger.debug("L1 unavailable for {} limits, reason={}, using L2 fallback", keys.size(), reason);
+
+        boolean failClosed = false;
+        for (RateLimitConfig config : configs) {
+            failClosed |= strategyFor(config) == RateLimitConfig.FailStrategy.FAIL_CLOSED;
+        }
+
+        if (!failClosed) {
+            try {
+                return l2Provider.acquireAll(keys, configs, permits, currentTime);
+            } catch (Exception l2Exception) {
+                logger.warn("Both L1 and L2 failed for {} limits, allowing request (FAIL_OPEN): {}",
+                        keys.size(), l2Exception.getMessage());
+            }
+        } else {
+            logger.warn("L1 unavailable and FAIL_CLOSED strategy active, denying request for {} limits", keys.size());
+        }
+
+        List<AcquireResult> results = new ArrayList<>(configs.size());
+        for (RateLimitConfig config : configs) {
+            long resetTime = currentTime + config.getWindowMillis();
+            results.add(strategyFor(config) == RateLimitConfig.FailStrategy.FAIL_CLOSED
+                    ? AcquireResult.denied(config.getRequests(), 0, resetTime, config.getRequests())
+                    : AcquireResult.allowed(config.getRequests(), config.getRequests(), resetTime, 0));
+        }
+        return results;
+    }
+
+    /**
+     * Describes why an asynchronous L1 call failed, unwrapping {@link CompletionException}.
+     */
+    private static String reasonFor(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        return cause instanceof JitteredCircuitBreaker.CircuitBreakerOpenException
+                ? "Circuit breaker OPEN"
+                : "L1 error: " + cause.getMessage();
+    }
+
+    /**
+     * Determines the fail strategy: config-specific or global default.
+     */
+    private RateLimitConfig.FailStrategy strategyFor(RateLimitConfig config) {
+        return config.getFailStrategy() != null ? config.getFailStrategy() : failStrategy;
+    }
+
     @Override
     public void reset(String key) {
         // Reset in both L1 and L2
@@ -186,6 +438,37 @@ public class TieredStorageProvider implements StorageProvider {
         }
     }
 
+    @Override
+    public CompletionStage<Void> resetAsync(String key) {
+        // Reset in both L1 and L2
+        return circuitBreaker.executeAsync(() -> l1Provider.resetAsync(key))
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        logger.debug("Failed to reset L1 for key={}: {}", key, reasonFor(error));
+                    }
+                    try {
+                        l2Provider.reset(key);
+                    } catch (Exception e) {
+                        logger.debug("Failed to reset L2 for key={}: {}", key, e.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    @Override
+    public CompletionStage<Optional<RateLimitState>> getStateAsync(String key) {
+        // Try L1 first
+        return circuitBreaker.executeAsync(() -> l1Provider.getStateAsync(key))
+                .handle((state, error) -> {
+                    if (error == null) {
+                        return state;
+                    }
+                    // Fallback to L2
+                    logger.trace("L1 getState failed for key={}, using L2: {}", key, reasonFor(error));
+                    return l2Provider.getState(key);
+                });
+    }
+
     @Override
     public boolean isHealthy() {
         logger.info("L1 healthy {} | L2 healthy {}", l1Provider.isHealthy(), l2Provider.isHealthy());
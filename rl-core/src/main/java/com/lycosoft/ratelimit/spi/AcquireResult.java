@@ -0,0 +1,94 @@
+package com.lycosoft.ratelimit.spi;
+
+/**
+ * Outcome of a single {@link StorageProvider#acquire} call.
+ *
+ * <p>Carries both the allow/deny decision and the post-decision state of the
+ * limiter, so callers can build response headers without a second storage
+ * round trip.
+ *
+ * <p>This immutable value object is created once per decision by the storage
+ * provider.
+ *
+ * @since 1.1.0
+ */
+public final class AcquireResult implements RateLimitState {
+
+    private final boolean allowed;
+    private final int limit;
+    private final int remaining;
+    private final long resetTime;
+    private final int currentUsage;
+
+    private AcquireResult(boolean allowed, int limit, int remaining, long resetTime, int currentUsage) {
+        this.allowed = allowed;
+        this.limit = limit;
+        this.remaining = Math.max(0, remaining);
+        this.resetTime = resetTime;
+        this.currentUsage = Math.max(0, currentUsage);
+    }
+
+    /**
+     * Creates an ALLOWED result.
+     *
+     * @param limit the configured limit
+     * @param remaining the remaining capacity after this request
+     * @param resetTime the time when the limit resets (milliseconds since epoch)
+     * @param currentUsage the usage after this request
+     * @return the result
+     */
+    public static AcquireResult allowed(int limit, int remaining, long resetTime, int currentUsage) {
+        return new AcquireResult(true, limit, remaining, resetTime, currentUsage);
+    }
+
+    /**
+     * Creates a DENIED result.
+     *
+     * @param limit the configured limit
+     * @param remaining the remaining capacity (usually 0)
+     * @param resetTime the time when capacity becomes available again (milliseconds since epoch)
+     * @param currentUsage the current usage
+     * @return the result
+     */
+    public static AcquireResult denied(int limit, int remaining, long resetTime, int currentUsage) {
+        return new AcquireResult(false, limit, remaining, resetTime, currentUsage);
+    }
+
+    /**
+     * @return true if the request is allowed, false if rate limit exceeded
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getRemaining() {
+        return remaining;
+    }
+
+    @Override
+    public long getResetTime() {
+        return resetTime;
+    }
+
+    @Override
+    public int getCurrentUsage() {
+        return currentUsage;
+    }
+
+    @Override
+    public String toString() {
+        return "AcquireResult{" +
+                "allowed=" + allowed +
+                ", limit=" + limit +
+                ", remaining=" + remaining +
+                ", resetTime=" + resetTime +
+                ", currentUsage=" + currentUsage +
+                '}';
+    }
+}
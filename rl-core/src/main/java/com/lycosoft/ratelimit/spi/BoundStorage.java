@@ -0,0 +1,69 @@
+package com.lycosoft.ratelimit.spi;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Storage operations bound to a single {@link RateLimitConfig}.
+ *
+ * <p>Returned by {@link StorageProvider#bind(RateLimitConfig)}. Everything that
+ * depends only on the configuration (algorithm instances, derived window sizes,
+ * encoded script arguments) is computed once when binding, so each call only does
+ * the per-request work.
+ *
+ * <p><b>Thread Safety:</b> Implementations must be thread-safe.
+ *
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface BoundStorage {
+
+    /**
+     * Acquires {@code permits} units of capacity under the bound configuration.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param permits the number of permits the request costs (must be positive)
+     * @param currentTime the current time in milliseconds (from {@link StorageProvider#getCurrentTime()})
+     * @return the acquire result (never null)
+     * @see StorageProvider#acquire(String, RateLimitConfig, int, long)
+     */
+    AcquireResult acquire(String key, int permits, long currentTime);
+
+    /**
+     * Variant of {@link #acquire(String, int, long)} that returns the outcome packed
+     * into a {@code long} (see {@link PackedAcquireResult}).
+     *
+     * <p>Used by allocation-free callers. The default implementation packs the
+     * {@code acquire} result; providers whose result construction does not get
+     * optimized away can override it to pack directly from their state.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param permits the number of permits the request costs (must be positive)
+     * @param currentTime the current time in milliseconds
+     * @return the packed acquire result
+     */
+    default long acquirePacked(String key, int permits, long currentTime) {
+        return PackedAcquireResult.pack(acquire(key, permits, currentTime), currentTime);
+    }
+
+    /**
+     * Asynchronous variant of {@link #acquire(String, int, long)}.
+     *
+     * <p>The default implementation runs {@code acquire} on the calling thread.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param permits the number of permits the request costs (must be positive)
+     * @param currentTime the current time in milliseconds
+     * @return a stage completed with the acquire result
+     * @see StorageProvider#acquireAsync(String, RateLimitConfig, int, long)
+     */
+    default CompletionStage<AcquireResult> acquireAsync(String key, int permits, long currentTime) {
+        try {
+            return CompletableFuture.completedFuture(acquire(key, permits, currentTime));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lycosoft.ratelimit.spi;
+
+/**
+ * Outcome of a {@link StorageProvider#lease} call.
+ *
+ * <p>A granted lease carries the number of tokens debited from the shared bucket for
+ * the caller to hand out locally, together with the bucket's state afterwards. A
+ * denied lease debited nothing; its reset time is when the minimum requested would
+ * be available.
+ *
+ * <p>This immutable value object is created once per lease by the storage provider.
+ *
+ * @since 1.1.0
+ */
+public final class LeaseResult implements RateLimitState {
+
+    private final boolean allowed;
+    private final int granted;
+    private final int limit;
+    private final int remaining;
+    private final long resetTime;
+
+    private LeaseResult(boolean allowed, int granted, int limit, int remaining, long resetTime) {
+        this.allowed = allowed;
+        this.granted = granted;
+        this.limit = limit;
+        this.remaining = Math.max(0, remaining);
+        this.resetTime = resetTime;
+    }
+
+    /**
+     * Creates a granted lease.
+     *
+     * @param granted the number of tokens leased (at least the minimum requested)
+     * @param limit the bucket capacity
+     * @param remaining the tokens left in the shared bucket after the lease
+     * @param resetTime the time when the bucket is full again (milliseconds since epoch)
+     * @return the result
+     */
+    public static LeaseResult granted(int granted, int limit, int remaining, long resetTime) {
+        return new LeaseResult(true, granted, limit, remaining, resetTime);
+    }
+
+    /**
+     * Creates a denied lease.
+     *
+     * @param limit the bucket capacity
+     * @param remaining the tokens left in the shared bucket
+     * @param resetTime the time when the minimum requested is available (milliseconds since epoch)
+     * @return the result
+     */
+    public static LeaseResult denied(int limit, int remaining, long resetTime) {
+        return new LeaseResult(false, 0, limit, remaining, resetTime);
+    }
+
+    /**
+     * @return true if at least the minimum requested was leased
+     */
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    /**
+     * @return the number of tokens leased
+     */
+    public int getGranted() {
+        return granted;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getRemaining() {
+        return remaining;
+    }
+
+    @Override
+    public long getResetTime() {
+        return resetTime;
+    }
+
+    @Override
+    public int getCurrentUsage() {
+        return Math.max(0, limit - remaining);
+    }
+
+    @Override
+    public String toString() {
+        return "LeaseResult{" +
+                "allowed=" + allowed +
+                ", granted=" + granted +
+                ", limit=" + limit +
+                ", remaining=" + remaining +
+                ", resetTime=" + resetTime +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package com.lycosoft.ratelimit.spi;
+
+/**
+ * Metric handles for a single rate limiter.
+ *
+ * <p>Returned by {@link MetricsExporter#bind(String)}. Implementations resolve their
+ * counters, timers and gauges once, so recording does not look meters up by name on
+ * every request.
+ *
+ * @since 1.1.0
+ */
+public interface LimiterMetrics {
+
+    /**
+     * Records a successful rate limit check (request allowed).
+     */
+    void recordAllow();
+
+    /**
+     * Records a rate limit denial (request blocked).
+     */
+    void recordDeny();
+
+    /**
+     * Records an error during rate limit evaluation.
+     *
+     * @param error the error that occurred
+     */
+    void recordError(Throwable error);
+
+    /**
+     * Records the current usage of the rate limiter.
+     *
+     * @param current the current usage count
+     * @param limit the configured limit
+     */
+    void recordUsage(int current, int limit);
+
+    /**
+     * Records the latency of a rate limit check.
+     *
+     * @param latencyMillis the latency in milliseconds
+     */
+    void recordLatency(long latencyMillis);
+
+    /**
+     * Creates handles that forward every call to {@code exporter} with the limiter name.
+     *
+     * @param exporter the metrics exporter
+     * @param limiterName the name of the rate limiter
+     * @return the forwarding handles
+     */
+    static LimiterMetrics forwarding(MetricsExporter exporter, String limiterName) {
+        return new LimiterMetrics() {
+            @Override
+            public void recordAllow() {
+                exporter.recordAllow(limiterName);
+            }
+
+            @Override
+            public void recordDeny() {
+                exporter.recordDeny(limiterName);
+            }
+
+            @Override
+            public void recordError(Throwable error) {
+                exporter.recordError(limiterName, error);
+            }
+
+            @Override
+            public void recordUsage(int current, int limit) {
+                exporter.recordUsage(limiterName, current, limit);
+            }
+
+            @Override
+            public void recordLatency(long latencyMillis) {
+                exporter.recordLatency(limiterName, latencyMillis);
+            }
+        };
+    }
+}
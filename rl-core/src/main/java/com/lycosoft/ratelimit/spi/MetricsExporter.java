@@ -75,4 +75,19 @@ public interface MetricsExporter {
      * @param latencyMillis the latency in milliseconds
      */
     void recordLatency(String limiterName, long latencyMillis);
+    
+    /**
+     * Returns metric handles for one rate limiter.
+     * 
+     * <p>Called once per limiter; the handles are then reused for every request.
+     * Exporters that resolve meters by name should override this to resolve them
+     * up front. The default implementation forwards to the methods above.
+     * 
+     * @param limiterName the name of the rate limiter
+     * @return the metric handles (never null)
+     * @since 1.1.0
+     */
+    default LimiterMetrics bind(String limiterName) {
+        return LimiterMetrics.forwarding(this, limiterName);
+    }
 }
@@ -0,0 +1,77 @@
+package com.lycosoft.ratelimit.spi;
+
+/**
+ * Encodes an acquire outcome in a single {@code long}, for allocation-free hot paths.
+ *
+ * <p>Layout, from the most significant bit:
+ * <pre>
+ * bit  63     allowed (1) or denied (0)
+ * bits 62..32 remaining capacity (31 bits, clamped to [0, Integer.MAX_VALUE])
+ * bits 31..0  milliseconds from the decision until reset (unsigned, saturates at ~49 days)
+ * </pre>
+ *
+ * <p>The limit and current usage are not encoded; they follow from the configuration
+ * the result was produced for ({@code usage = limit - remaining}).
+ *
+ * @see BoundStorage#acquirePacked(String, int, long)
+ * @since 1.1.0
+ */
+public final class PackedAcquireResult {
+
+    private static final long ALLOWED_BIT = 1L << 63;
+    private static final long REMAINING_MASK = 0x7FFF_FFFFL;
+    private static final long DELAY_MASK = 0xFFFF_FFFFL;
+
+    private PackedAcquireResult() {
+    }
+
+    /**
+     * Packs an acquire outcome.
+     *
+     * @param allowed whether the request was allowed
+     * @param remaining the remaining capacity after the decision
+     * @param resetTime the time when the limit resets (milliseconds since epoch)
+     * @param currentTime the time of the decision (milliseconds since epoch)
+     * @return the packed result
+     */
+    public static long pack(boolean allowed, int remaining, long resetTime, long currentTime) {
+        long delay = Math.max(0L, Math.min(DELAY_MASK, resetTime - currentTime));
+        long packed = ((long) Math.max(0, remaining) << 32) | delay;
+        return allowed ? packed | ALLOWED_BIT : packed;
+    }
+
+    /**
+     * Packs an {@link AcquireResult}.
+     *
+     * @param result the result to pack
+     * @param currentTime the time of the decision (milliseconds since epoch)
+     * @return the packed result
+     */
+    public static long pack(AcquireResult result, long currentTime) {
+        return pack(result.isAllowed(), result.getRemaining(), result.getResetTime(), currentTime);
+    }
+
+    /**
+     * @param packed a packed result
+     * @return true if the request was allowed
+     */
+    public static boolean isAllowed(long packed) {
+        return packed < 0;
+    }
+
+    /**
+     * @param packed a packed result
+     * @return the remaining capacity after the decision
+     */
+    public static int remaining(long packed) {
+        return (int) ((packed >>> 32) & REMAINING_MASK);
+    }
+
+    /**
+     * @param packed a packed result
+     * @return the milliseconds from the decision until the limit resets
+     */
+    public static long resetDelayMillis(long packed) {
+        return packed & DELAY_MASK;
+    }
+}
@@ -2,8 +2,13 @@ package com.lycosoft.ratelimit.spi;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Service Provider Interface for rate limit storage.
@@ -53,7 +58,268 @@ public interface StorageProvider {
      * @return true if the request is allowed, false if rate limit exceeded
      */
     boolean tryAcquire(String key, RateLimitConfig config, long currentTime);
-    
+
+    /**
+     * Attempts to acquire {@code permits} units of capacity and returns the limiter
+     * state after the decision.
+     *
+     * <p>Unlike {@link #tryAcquire(String, RateLimitConfig, long)}, this method reports
+     * the limit, remaining capacity, reset time and usage produced by the same atomic
+     * operation, so no follow-up {@link #getState(String)} call is needed. Distributed
+     * providers should implement it as a single round trip.
+     *
+     * <p>Weighted requests are all-or-nothing: either every permit is granted or none.
+     *
+     * <p>The default implementation falls back to {@code tryAcquire} followed by
+     * {@code getState} for providers that have not been updated yet, and only
+     * supports a single permit.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param config the rate limit configuration
+     * @param permits the number of permits the request costs (must be positive)
+     * @param currentTime the current time in milliseconds (from {@link #getCurrentTime()})
+     * @return the acquire result (never null)
+     * @throws UnsupportedOperationException if {@code permits > 1} and the provider
+     *         does not support weighted requests
+     * @since 1.1.0
+     */
+    default AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        if (permits != 1) {
+            throw new UnsupportedOperationException(
+                getClass().getSimpleName() + " does not support weighted permits");
+        }
+        boolean allowed = tryAcquire(key, config, currentTime);
+        RateLimitState state = getState(key).orElse(null);
+
+        int limit = config.getRequests();
+        long resetTime = state != null ? state.getResetTime() : currentTime + config.getWindowMillis();
+        if (allowed) {
+            int remaining = state != null ? state.getRemaining() : limit - 1;
+            return AcquireResult.allowed(limit, remaining, resetTime, limit - remaining);
+        }
+        int usage = state != null ? state.getCurrentUsage() : limit;
+        return AcquireResult.denied(limit, 0, resetTime, usage);
+    }
+
+    /**
+     * Evaluates several rate limits as one all-or-nothing operation.
+     *
+     * <p>Every limit is checked first; capacity is consumed from all of them only if
+     * every limit allows the request. If any limit denies, nothing is consumed. Each
+     * result's {@link AcquireResult#isAllowed()} reports whether that limit alone
+     * would have admitted the request. Distributed providers should implement this as
+     * a single round trip.
+     *
+     * <p>The default implementation calls {@link #acquire} for each limit in order and
+     * stops at the first denial, so limits evaluated before it keep their consumption.
+     * The returned list is then shorter than {@code keys}. Providers that can check
+     * and commit atomically should override it.
+     *
+     * @param keys the storage keys, one per limit
+     * @param configs the rate limit configurations, in the same order as {@code keys}
+     * @param permits the cost of the request against each limit, in the same order
+     * @param currentTime the current time in milliseconds (from {@link #getCurrentTime()})
+     * @return one result per evaluated limit, in order (never null)
+     * @throws IllegalArgumentException if the arguments differ in size
+     * @since 1.1.0
+     */
+    default List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                           int[] permits, long currentTime) {
+        if (keys.size() != configs.size() || keys.size() != permits.length) {
+            throw new IllegalArgumentException("keys, configs and permits must have the same size");
+        }
+        List<AcquireResult> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            AcquireResult result = acquire(keys.get(i), configs.get(i), permits[i], currentTime);
+            results.add(result);
+            if (!result.isAllowed()) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reserves {@code permits} units of capacity that may only become available later.
+     *
+     * <p>Instead of denying, the provider books the permits against future capacity
+     * and returns when they will be available, so callers that can wait queue behind
+     * earlier reservations rather than polling. The reservation is booked only if that
+     * time is at most {@code maxWaitMillis} after {@code currentTime}; otherwise
+     * nothing is consumed and the returned time tells the caller how long it would
+     * have had to wait.
+     *
+     * <p>Only {@link RateLimitConfig.Algorithm#TOKEN_BUCKET} supports reservations, as
+     * its availability follows from the refill rate and the current deficit.
+     *
+     * <p>The default implementation does not support reservations.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param config the rate limit configuration
+     * @param permits the number of permits to reserve (positive, at most the capacity)
+     * @param maxWaitMillis the longest acceptable wait, in milliseconds
+     * @param currentTime the current time in milliseconds (from {@link #getCurrentTime()})
+     * @return the time at which the permits are available (milliseconds since epoch)
+     * @throws UnsupportedOperationException if the provider or the algorithm does not
+     *         support reservations
+     * @since 1.1.0
+     */
+    default long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support reservations");
+    }
+
+    /**
+     * Returns unused leased tokens and leases new ones, in one atomic operation.
+     *
+     * <p>Leasing lets a node take a batch of tokens from a shared bucket and serve
+     * requests from them locally, paying one round trip per batch instead of one per
+     * request (see {@code LeasingStorageProvider}). The provider first adds
+     * {@code returned} unused tokens back to the bucket, then debits as many tokens as
+     * are available, up to {@code maxPermits}, provided at least {@code minPermits} are.
+     * Otherwise nothing is debited.
+     *
+     * <p>Only {@link RateLimitConfig.Algorithm#TOKEN_BUCKET} supports leases, as its
+     * tokens are interchangeable over time.
+     *
+     * <p>The default implementation does not support leases.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param config the rate limit configuration
+     * @param returned the number of unused tokens handed back (non-negative)
+     * @param minPermits the fewest tokens worth leasing (non-negative)
+     * @param maxPermits the most tokens to lease (at least {@code minPermits})
+     * @param currentTime the current time in milliseconds (from {@link #getCurrentTime()})
+     * @return the lease result (never null)
+     * @throws UnsupportedOperationException if the provider or the algorithm does not
+     *         support leases
+     * @since 1.1.0
+     */
+    default LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                              long currentTime) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support leases");
+    }
+
+    /**
+     * Adds deltas to plain counters and returns their new values, as one batch.
+     *
+     * <p>Eventually consistent nodes (see {@code EventuallyConsistentStorageProvider})
+     * count admissions locally and periodically push the per-key deltas with this
+     * method, reading back the merged cluster-wide counts in the same call. A delta of
+     * zero only reads the counter. Each counter's expiry is (re)set to
+     * {@code ttlMillis} from now, so counters of past windows disappear on their own.
+     *
+     * <p>Each addition is atomic; the batch as a whole need not be. Distributed
+     * providers should send the batch in one round trip.
+     *
+     * <p>The default implementation does not support counters.
+     *
+     * @param keys the counter keys
+     * @param deltas the amounts to add, in the same order as {@code keys}
+     * @param ttlMillis the expiry of each counter in milliseconds, in the same order
+     * @return the counters' values after the additions, in the same order (never null)
+     * @throws UnsupportedOperationException if the provider does not support counters
+     * @since 1.1.0
+     */
+    default long[] addCounters(List<String> keys, long[] deltas, long[] ttlMillis) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support counters");
+    }
+
+    /**
+     * Binds storage operations to one configuration.
+     *
+     * <p>Callers that evaluate the same configuration repeatedly (see
+     * {@code LimiterEngine.bind}) bind once and reuse the result, so providers can
+     * precompute whatever depends only on the configuration: algorithm instances,
+     * derived window sizes, encoded script arguments.
+     *
+     * <p>The default implementation delegates to {@link #acquire} and
+     * {@link #acquireAsync} with the bound configuration.
+     *
+     * @param config the rate limit configuration
+     * @return the bound storage operations (never null)
+     * @since 1.1.0
+     */
+    default BoundStorage bind(RateLimitConfig config) {
+        Objects.requireNonNull(config, "config cannot be null");
+        return new BoundStorage() {
+            @Override
+            public AcquireResult acquire(String key, int permits, long currentTime) {
+                return StorageProvider.this.acquire(key, config, permits, currentTime);
+            }
+
+            @Override
+            public CompletionStage<AcquireResult> acquireAsync(String key, int permits, long currentTime) {
+                return StorageProvider.this.acquireAsync(key, config, permits, currentTime);
+            }
+        };
+    }
+
+    /**
+     * Asynchronous variant of {@link #acquire(String, RateLimitConfig, int, long)}.
+     *
+     * <p>Lets non-blocking callers (event loops, reactive pipelines) rate limit without
+     * parking their own thread on storage I/O. Remote providers should complete the
+     * stage from their I/O layer, or with a blocking client run the call on an executor
+     * of their own; local providers can complete it immediately.
+     *
+     * <p>The default implementation runs {@code acquire} on the calling thread and
+     * returns an already completed stage. Failures are reported through the stage,
+     * not thrown.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @param config the rate limit configuration
+     * @param permits the number of permits the request costs (must be positive)
+     * @param currentTime the current time in milliseconds (from {@link #getCurrentTime()})
+     * @return a stage completed with the acquire result
+     * @since 1.1.0
+     */
+    default CompletionStage<AcquireResult> acquireAsync(String key, RateLimitConfig config,
+                                                        int permits, long currentTime) {
+        try {
+            return CompletableFuture.completedFuture(acquire(key, config, permits, currentTime));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #getState(String)}.
+     *
+     * <p>The default implementation runs {@code getState} on the calling thread.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @return a stage completed with the current state, or empty if no state exists
+     * @since 1.1.0
+     */
+    default CompletionStage<Optional<RateLimitState>> getStateAsync(String key) {
+        try {
+            return CompletableFuture.completedFuture(getState(key));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #reset(String)}.
+     *
+     * <p>The default implementation runs {@code reset} on the calling thread.
+     *
+     * @param key the unique identifier for this rate limiter
+     * @return a stage completed once the state has been reset
+     * @since 1.1.0
+     */
+    default CompletionStage<Void> resetAsync(String key) {
+        try {
+            reset(key);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Resets the rate limit state for the given key.
      * 
@@ -0,0 +1,43 @@
+package com.lycosoft.ratelimit.spi;
+
+import com.lycosoft.ratelimit.time.SystemTimeSource;
+
+/**
+ * Service Provider Interface for the wall clock used by rate limiting.
+ *
+ * <p>The engine, the storage providers and the circuit breaker read the time through
+ * a {@code TimeSource} instead of calling {@link System#currentTimeMillis()} directly,
+ * so a deployment can choose how precise and how expensive the clock is:
+ * <ul>
+ *   <li>{@link #system()} - the system clock, read on every call (the default)</li>
+ *   <li>{@code CoarseTimeSource} - a value refreshed by a background thread at a fixed
+ *       resolution, so reading the time is a volatile load</li>
+ *   <li>{@code MonotonicTimeSource} - epoch time derived from {@link System#nanoTime()},
+ *       which never goes backwards when the system clock is adjusted</li>
+ *   <li>{@code RedisTimeSource} - the local clock corrected by the Redis server's
+ *       offset, refreshed off the request thread</li>
+ * </ul>
+ *
+ * <p><b>Thread Safety:</b> Implementations must be thread-safe and should not block.
+ *
+ * @since 1.1.0
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+    /**
+     * Returns the current time.
+     *
+     * @return the current time in milliseconds since epoch
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns the system clock.
+     *
+     * @return a time source reading {@link System#currentTimeMillis()} on every call
+     */
+    static TimeSource system() {
+        return SystemTimeSource.INSTANCE;
+    }
+}
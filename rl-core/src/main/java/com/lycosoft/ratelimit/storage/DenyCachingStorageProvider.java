@@ -0,0 +1,300 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage decorator that remembers exhausted keys and denies them locally until they
+ * can admit requests again.
+ *
+ * <p>When the delegate denies a request, the denial's reset time is the earliest time
+ * the same request could be admitted. Until then, requests for that key costing at
+ * least as many permits are denied from this node's cache without a storage call.
+ * Requests costing fewer permits, and every request after the reset time, go to the
+ * delegate as usual. Under abuse, where most traffic comes from keys that are already
+ * over their limit, this removes most round trips to remote storage.
+ *
+ * <p>Only exact reset times are cached:
+ * <ul>
+ *   <li><b>TOKEN_BUCKET:</b> the denial's reset time is when enough tokens will have
+ *       refilled for the request (for a single permit, when the next token is due)</li>
+ *   <li><b>FIXED_WINDOW:</b> the end of the window</li>
+ *   <li><b>SLIDING_WINDOW:</b> not cached; capacity frees up gradually as the previous
+ *       window's weight decays, so the reported reset is only an upper bound</li>
+ * </ul>
+ * The cache only ever answers with denials, so it cannot admit requests the delegate
+ * would deny. Other nodes consuming or resetting the same key are not observed, which
+ * can only make this node deny a request until the cached reset time.
+ *
+ * <p>The cache is a fixed-size, direct-mapped table: each key hashes to one slot and a
+ * new denial overwrites whatever the slot held. Memory is bounded by the slot count
+ * and lookups never lock or allocate.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe if the delegate is.
+ *
+ * @since 1.1.0
+ */
+public class DenyCachingStorageProvider implements StorageProvider {
+
+    /**
+     * Default number of cache slots.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 65_536;
+
+    private final StorageProvider delegate;
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final LongAdder localDenials = new LongAdder();
+
+    /**
+     * Creates a deny cache with {@link #DEFAULT_MAX_ENTRIES} slots.
+     *
+     * @param delegate the storage provider to decorate
+     */
+    public DenyCachingStorageProvider(StorageProvider delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a deny cache.
+     *
+     * @param delegate the storage provider to decorate
+     * @param maxEntries the number of cache slots (rounded up to a power of two)
+     */
+    public DenyCachingStorageProvider(StorageProvider delegate, int maxEntries) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int size = Integer.highestOneBit(Math.min(maxEntries, 1 << 30));
+        if (size < maxEntries) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return delegate.getCurrentTime();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        AcquireResult cached = lookup(key, permits, currentTime);
+        if (cached != null) {
+            return cached;
+        }
+        return remember(key, config, permits, delegate.acquire(key, config, permits, currentTime));
+    }
+
+    /**
+     * Answers from the cache only if the first limit is known to be exhausted, since
+     * that is the only case where the delegate would consume nothing at all.
+     * Hierarchical limits are ordered leaf first, so an exhausted leaf short-circuits.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        if (!keys.isEmpty() && permits.length > 0) {
+            AcquireResult cached = lookup(keys.get(0), permits[0], currentTime);
+            if (cached != null) {
+                return List.of(cached);
+            }
+        }
+        List<AcquireResult> results = delegate.acquireAll(keys, configs, permits, currentTime);
+        for (int i = 0; i < results.size(); i++) {
+            remember(keys.get(i), configs.get(i), permits[i], results.get(i));
+        }
+        return results;
+    }
+
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        // Reservations book future capacity, so they always go to the delegate
+        return delegate.reserve(key, config, permits, maxWaitMillis, currentTime);
+    }
+
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        Objects.requireNonNull(config, "config cannot be null");
+        BoundStorage bound = delegate.bind(config);
+        return new BoundStorage() {
+            @Override
+            public AcquireResult acquire(String key, int permits, long currentTime) {
+                AcquireResult cached = lookup(key, permits, currentTime);
+                if (cached != null) {
+                    return cached;
+                }
+                return remember(key, config, permits, bound.acquire(key, permits, currentTime));
+            }
+
+            @Override
+            public long acquirePacked(String key, int permits, long currentTime) {
+                AcquireResult cached = lookup(key, permits, currentTime);
+                if (cached != null) {
+                    return PackedAcquireResult.pack(cached, currentTime);
+                }
+                long packed = bound.acquirePacked(key, permits, currentTime);
+                if (!PackedAcquireResult.isAllowed(packed) && isCacheable(config)) {
+                    int limit = limitOf(config);
+                    int remaining = PackedAcquireResult.remaining(packed);
+                    store(key, permits, AcquireResult.denied(limit, remaining,
+                        currentTime + PackedAcquireResult.resetDelayMillis(packed), limit - remaining));
+                }
+                return packed;
+            }
+
+            @Override
+            public CompletionStage<AcquireResult> acquireAsync(String key, int permits, long currentTime) {
+                AcquireResult cached = lookup(key, permits, currentTime);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+                return bound.acquireAsync(key, permits, currentTime)
+                    .thenApply(result -> remember(key, config, permits, result));
+            }
+        };
+    }
+
+    @Override
+    public CompletionStage<AcquireResult> acquireAsync(String key, RateLimitConfig config,
+                                                       int permits, long currentTime) {
+        AcquireResult cached = lookup(key, permits, currentTime);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.acquireAsync(key, config, permits, currentTime)
+            .thenApply(result -> remember(key, config, permits, result));
+    }
+
+    @Override
+    public CompletionStage<Optional<RateLimitState>> getStateAsync(String key) {
+        return delegate.getStateAsync(key);
+    }
+
+    @Override
+    public CompletionStage<Void> resetAsync(String key) {
+        invalidate(key);
+        return delegate.resetAsync(key);
+    }
+
+    @Override
+    public void reset(String key) {
+        invalidate(key);
+        delegate.reset(key);
+    }
+
+    @Override
+    public Optional<RateLimitState> getState(String key) {
+        return delegate.getState(key);
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return delegate.isHealthy();
+    }
+
+    @Override
+    public Map<String, Object> getDiagnostics() {
+        Map<String, Object> diagnostics = new HashMap<>();
+        diagnostics.put("type", getClass().getSimpleName());
+        diagnostics.put("denyCacheSlots", slots.length());
+        diagnostics.put("localDenials", localDenials.sum());
+        Map<String, Object> delegateDiag = delegate.getDiagnostics();
+        diagnostics.put("delegateDiagnostics", delegateDiag != null ? delegateDiag : Map.of());
+        return diagnostics;
+    }
+
+    /**
+     * @return the number of requests denied from the cache without a storage call
+     */
+    public long getLocalDenials() {
+        return localDenials.sum();
+    }
+
+    /**
+     * Returns the cached denial for a request, or null if storage must decide.
+     */
+    private AcquireResult lookup(String key, int permits, long currentTime) {
+        Entry entry = slots.get(slot(key));
+        if (entry == null || currentTime >= entry.result.getResetTime()
+                || permits < entry.permits || !entry.key.equals(key)) {
+            return null;
+        }
+        localDenials.increment();
+        return entry.result;
+    }
+
+    /**
+     * Caches a denial when its reset time is exact; returns the result unchanged.
+     */
+    private AcquireResult remember(String key, RateLimitConfig config, int permits, AcquireResult result) {
+        if (!result.isAllowed() && isCacheable(config)) {
+            store(key, permits, result);
+        }
+        return result;
+    }
+
+    private void store(String key, int permits, AcquireResult result) {
+        slots.set(slot(key), new Entry(key, permits, result));
+    }
+
+    private void invalidate(String key) {
+        int slot = slot(key);
+        Entry entry = slots.get(slot);
+        if (entry != null && entry.key.equals(key)) {
+            slots.compareAndSet(slot, entry, null);
+        }
+    }
+
+    private int slot(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static boolean isCacheable(RateLimitConfig config) {
+        return config.getAlgorithm() != RateLimitConfig.Algorithm.SLIDING_WINDOW;
+    }
+
+    private static int limitOf(RateLimitConfig config) {
+        return config.getAlgorithm() == RateLimitConfig.Algorithm.TOKEN_BUCKET
+            ? config.getCapacity()
+            : config.getRequests();
+    }
+
+    /**
+     * A cached denial: requests for {@code key} costing at least {@code permits} are
+     * denied until the result's reset time.
+     */
+    private static final class Entry {
+        private final String key;
+        private final int permits;
+        private final AcquireResult result;
+
+        Entry(String key, int permits, AcquireResult result) {
+            this.key = key;
+            this.permits = permits;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LeaseResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Storage decorator that decides eventually consistent limits from local counters and
+ * merges them with the cluster-wide counts in the background.
+ *
+ * <p>Limits whose configuration sets a staleness bound
+ * ({@link RateLimitConfig#getMaxStalenessMillis()}, which requires FAIL_OPEN) are
+ * counted per window on this node. A request is admitted if the node's view of the
+ * window, meaning the last merged global count plus the admissions it has not flushed
+ * yet, leaves room for it. Every flush interval, the per-key deltas are pushed to the
+ * delegate in batches with {@link StorageProvider#addCounters} (one pipelined round
+ * trip per batch on Redis), and the merged counts that come back replace each node's
+ * view, so the nodes converge.
+ *
+ * <p><b>Staleness bound:</b> a view is as old as its last merge; at the start of a
+ * window the count is known to be zero. If a request finds its key's view older than
+ * the configured bound, for example because flushes are failing, that request merges
+ * the key synchronously before deciding, without holding the key's lock; requests for
+ * the key that arrive during the merge decide from the stale view. If the merge fails
+ * too, the error reaches its caller and the limiter's FAIL_OPEN strategy applies.
+ * Over-admission is therefore bounded by what the other nodes admit within one
+ * staleness bound.
+ *
+ * <p><b>Drift metrics:</b> each merge reveals how many admissions other nodes made
+ * that this node had not seen ({@link #getDrift()}, {@link #getMaxDrift()}), and by
+ * how much a window's global count exceeded its limit ({@link #getOverAdmissions()}).
+ *
+ * <p>Supported algorithms are FIXED_WINDOW and SLIDING_WINDOW, which both reduce to
+ * per-window counters. Strict limits, token buckets (see
+ * {@link LeasingStorageProvider}), reservations and leases go to the delegate.
+ * Multi-limit calls that include an eventually consistent limit are evaluated one
+ * limit at a time, as by {@link StorageProvider#acquireAll}'s default.
+ *
+ * <p>Call {@link #close()} on shutdown to stop the flusher and push the last deltas.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe if the delegate is.
+ *
+ * @since 1.1.0
+ */
+public class EventuallyConsistentStorageProvider implements StorageProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventuallyConsistentStorageProvider.class);
+
+    /**
+     * Default interval between background flushes.
+     */
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(50);
+
+    /**
+     * Default number of counters sent per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    /**
+     * Separates the limiter key from the window number in counter keys.
+     */
+    private static final String COUNTER_SEPARATOR = ":ec:";
+
+    private final StorageProvider delegate;
+    private final int batchSize;
+    private final ConcurrentHashMap<String, KeyCounters> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder localDecisions = new LongAdder();
+    private final LongAdder syncDecisions = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder drift = new LongAdder();
+    private final LongAccumulator maxDrift = new LongAccumulator(Math::max, 0);
+    private final LongAdder overAdmissions = new LongAdder();
+
+    /**
+     * Creates a provider with the default flush interval and batch size.
+     *
+     * @param delegate the shared storage; must support {@link StorageProvider#addCounters}
+     */
+    public EventuallyConsistentStorageProvider(StorageProvider delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a provider that flushes on a daemon thread every {@code flushInterval}.
+     *
+     * @param delegate the shared storage; must support {@link StorageProvider#addCounters}
+     * @param flushInterval the time between background flushes
+     * @param batchSize the most counters sent in one batch
+     */
+    public EventuallyConsistentStorageProvider(StorageProvider delegate, Duration flushInterval, int batchSize) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+        Objects.requireNonNull(flushInterval, "flushInterval cannot be null");
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rl-counter-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalMillis = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return delegate.getCurrentTime();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        if (!isLocal(config)) {
+            return delegate.acquire(key, config, permits, currentTime);
+        }
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+
+        while (true) {
+            KeyCounters keyCounters = counters.get(key);
+            if (keyCounters == null) {
+                keyCounters = counters.computeIfAbsent(key, k -> new KeyCounters(k, config));
+            }
+            keyCounters.lock.lock();
+            try {
+                if (keyCounters.removed) {
+                    continue;  // Dropped as idle while we were looking it up
+                }
+                keyCounters.roll(currentTime);
+                if (!keyCounters.isStale(currentTime) || keyCounters.merging) {
+                    localDecisions.increment();
+                    return keyCounters.tryAcquire(permits, currentTime);
+                }
+                keyCounters.merging = true;
+            } finally {
+                keyCounters.lock.unlock();
+            }
+
+            try {
+                sync(List.of(keyCounters), currentTime);
+            } finally {
+                keyCounters.lock.lock();
+                keyCounters.merging = false;
+                keyCounters.lock.unlock();
+            }
+            keyCounters.lock.lock();
+            try {
+                if (keyCounters.removed) {
+                    continue;
+                }
+                keyCounters.roll(currentTime);
+                syncDecisions.increment();
+                return keyCounters.tryAcquire(permits, currentTime);
+            } finally {
+                keyCounters.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Evaluates limits one at a time when any of them is eventually consistent, since
+     * local counters cannot take part in the delegate's atomic check.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        for (RateLimitConfig config : configs) {
+            if (isLocal(config)) {
+                return StorageProvider.super.acquireAll(keys, configs, permits, currentTime);
+            }
+        }
+        return delegate.acquireAll(keys, configs, permits, currentTime);
+    }
+
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        return delegate.reserve(key, config, permits, maxWaitMillis, currentTime);
+    }
+
+    @Override
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
+        return delegate.lease(key, config, returned, minPermits, maxPermits, currentTime);
+    }
+
+    @Override
+    public long[] addCounters(List<String> keys, long[] deltas, long[] ttlMillis) {
+        return delegate.addCounters(keys, deltas, ttlMillis);
+    }
+
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        return isLocal(config) ? StorageProvider.super.bind(config) : delegate.bind(config);
+    }
+
+    /**
+     * Local decisions complete on the calling thread; a key whose view is past its
+     * staleness bound is merged there too.
+     */
+    @Override
+    public CompletionStage<AcquireResult> acquireAsync(String key, RateLimitConfig config,
+                                                       int permits, long currentTime) {
+        return isLocal(config)
+            ? StorageProvider.super.acquireAsync(key, config, permits, currentTime)
+            : delegate.acquireAsync(key, config, permits, currentTime);
+    }
+
+    @Override
+    public CompletionStage<Optional<RateLimitState>> getStateAsync(String key) {
+        return counters.containsKey(key)
+            ? StorageProvider.super.getStateAsync(key)
+            : delegate.getStateAsync(key);
+    }
+
+    /**
+     * Drops this node's counters for the key, together with the delegate's state and
+     * the counters of the windows this node was tracking.
+     */
+    @Override
+    public void reset(String key) {
+        KeyCounters keyCounters = counters.remove(key);
+        if (keyCounters != null) {
+            List<String> counterKeys = new ArrayList<>(2);
+            keyCounters.lock.lock();
+            try {
+                keyCounters.removed = true;
+                for (Slot slot : keyCounters.slots()) {
+                    counterKeys.add(slot.counterKey);
+                }
+            } finally {
+                keyCounters.lock.unlock();
+            }
+            counterKeys.forEach(delegate::reset);
+        }
+        delegate.reset(key);
+    }
+
+    @Override
+    public Optional<RateLimitState> getState(String key) {
+        KeyCounters keyCounters = counters.get(key);
+        if (keyCounters == null) {
+            return delegate.getState(key);
+        }
+        keyCounters.lock.lock();
+        try {
+            return Optional.of(keyCounters.state());
+        } finally {
+            keyCounters.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return delegate.isHealthy();
+    }
+
+    @Override
+    public Map<String, Object> getDiagnostics() {
+        Map<String, Object> diagnostics = new HashMap<>();
+        diagnostics.put("type", getClass().getSimpleName());
+        diagnostics.put("keys", counters.size());
+        diagnostics.put("localDecisions", localDecisions.sum());
+        diagnostics.put("syncDecisions", syncDecisions.sum());
+        diagnostics.put("flushes", flushes.sum());
+        diagnostics.put("flushFailures", flushFailures.sum());
+        diagnostics.put("drift", drift.sum());
+        diagnostics.put("maxDrift", maxDrift.get());
+        diagnostics.put("overAdmissions", overAdmissions.sum());
+        Map<String, Object> delegateDiag = delegate.getDiagnostics();
+        diagnostics.put("delegateDiagnostics", delegateDiag != null ? delegateDiag : Map.of());
+        return diagnostics;
+    }
+
+    /**
+     * Pushes every pending delta and refreshes the view of every key used within its
+     * staleness bound. Idle keys with nothing pending are dropped.
+     *
+     * <p>Runs on the flusher thread every flush interval; calling it directly is
+     * useful before shutdown or in tests.
+     *
+     * @throws RuntimeException if a batch fails; its deltas, and those of the batches not
+     *         sent yet, stay pending for the next flush
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            long now = delegate.getCurrentTime();
+            List<KeyCounters> batch = new ArrayList<>();
+            int batchCounters = 0;
+            for (KeyCounters keyCounters : counters.values()) {
+                keyCounters.lock.lock();
+                try {
+                    if (keyCounters.isIdle(now)) {
+                        keyCounters.removed = true;
+                        counters.remove(keyCounters.key, keyCounters);
+                        continue;
+                    }
+                    if (!keyCounters.needsFlush(now)) {
+                        continue;
+                    }
+                    batchCounters += keyCounters.slots().size();
+                } finally {
+                    keyCounters.lock.unlock();
+                }
+                batch.add(keyCounters);
+                if (batchCounters >= batchSize) {
+                    sync(batch, now);
+                    batch.clear();
+                    batchCounters = 0;
+                }
+            }
+            if (!batch.isEmpty()) {
+                sync(batch, now);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Counter flush failed, deltas kept for the next flush: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background flusher and pushes the remaining deltas.
+     */
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * @return the number of requests decided from a fresh local view
+     */
+    public long getLocalDecisions() {
+        return localDecisions.sum();
+    }
+
+    /**
+     * @return the number of requests that merged their key synchronously first
+     */
+    public long getSyncDecisions() {
+        return syncDecisions.sum();
+    }
+
+    /**
+     * @return the number of counter batches merged successfully
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * @return the number of counter batches that failed
+     */
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    /**
+     * @return the total admissions by other nodes that merges revealed to this node
+     */
+    public long getDrift() {
+        return drift.sum();
+    }
+
+    /**
+     * @return the largest gap between this node's view of a window and its global count
+     *         found by a single merge
+     */
+    public long getMaxDrift() {
+        return maxDrift.get();
+    }
+
+    /**
+     * @return the permits admitted beyond their limit in global windows, as observed by this node
+     */
+    public long getOverAdmissions() {
+        return overAdmissions.sum();
+    }
+
+    private static boolean isLocal(RateLimitConfig config) {
+        return config.isEventuallyConsistent() && config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET;
+    }
+
+    /**
+     * Pushes the pending deltas of the given keys in one batch and merges the global
+     * counts that come back. On failure the deltas become pending again and the
+     * error is thrown.
+     */
+    private void sync(List<KeyCounters> batch, long now) {
+        List<Slot> slots = new ArrayList<>();
+        List<KeyCounters> owners = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        for (KeyCounters keyCounters : batch) {
+            keyCounters.lock.lock();
+            try {
+                keyCounters.touched = false;
+                for (Slot slot : keyCounters.slots()) {
+                    long delta = slot.pending;
+                    slot.pending = 0;
+                    slot.inFlight += delta;
+                    slots.add(slot);
+                    owners.add(keyCounters);
+                    deltas.add(delta);
+                }
+            } finally {
+                keyCounters.lock.unlock();
+            }
+        }
+        if (slots.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(slots.size());
+        long[] deltaArray = new long[slots.size()];
+        long[] ttls = new long[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            keys.add(slots.get(i).counterKey);
+            deltaArray[i] = deltas.get(i);
+            // A window's count is needed until the end of the next window
+            ttls[i] = 2 * owners.get(i).windowMillis;
+        }
+
+        long[] values;
+        try {
+            values = delegate.addCounters(keys, deltaArray, ttls);
+            flushes.increment();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            for (int i = 0; i < slots.size(); i++) {
+                ReentrantLock lock = owners.get(i).lock;
+                lock.lock();
+                try {
+                    Slot slot = slots.get(i);
+                    slot.inFlight -= deltaArray[i];
+                    slot.pending += deltaArray[i];
+                } finally {
+                    lock.unlock();
+                }
+            }
+            throw e;
+        }
+
+        for (int i = 0; i < slots.size(); i++) {
+            KeyCounters keyCounters = owners.get(i);
+            keyCounters.lock.lock();
+            try {
+                merge(keyCounters, slots.get(i), deltaArray[i], values[i], now);
+            } finally {
+                keyCounters.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replaces a slot's view with the global count returned for its delta.
+     */
+    private void merge(KeyCounters keyCounters, Slot slot, long delta, long global, long now) {
+        slot.inFlight -= delta;
+        long unseen = global - (slot.global + delta);
+        if (slot.known && unseen > 0) {
+            drift.add(unseen);
+            maxDrift.accumulate(unseen);
+        }
+        // Replies to overlapping batches may arrive out of order; counts never decrease
+        slot.global = Math.max(slot.global, global);
+        slot.known = true;
+        slot.syncedAt = Math.max(slot.syncedAt, now);
+        slot.needsRead = false;
+
+        long excess = slot.global - keyCounters.limit;
+        if (excess > slot.excessSeen) {
+            overAdmissions.add(excess - slot.excessSeen);
+            slot.excessSeen = excess;
+        }
+    }
+
+    /**
+     * The counters of one limiter key on this node: the current window, the previous
+     * one (needed by the sliding window estimate) and any older windows with deltas
+     * still to push.
+     */
+    private static final class KeyCounters {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final String key;
+        private final int limit;
+        private final long windowMillis;
+        private final long maxStalenessMillis;
+        private final boolean sliding;
+        private Slot current;
+        private Slot previous;
+        private List<Slot> retired;
+        private boolean touched;
+        private boolean removed;
+        private boolean merging;
+        private long lastAccess;
+
+        KeyCounters(String key, RateLimitConfig config) {
+            this.key = key;
+            this.limit = config.getRequests();
+            this.windowMillis = Math.max(1, config.getWindowMillis());
+            this.maxStalenessMillis = config.getMaxStalenessMillis();
+            this.sliding = config.getAlgorithm() == RateLimitConfig.Algorithm.SLIDING_WINDOW;
+        }
+
+        /**
+         * Moves to the window containing {@code currentTime}. A new window's count is
+         * known to be zero as of its start.
+         */
+        void roll(long currentTime) {
+            lastAccess = currentTime;
+            touched = true;
+            long window = Math.floorDiv(currentTime, windowMillis);
+            if (current == null) {
+                current = new Slot(key, window, window * windowMillis, true);
+                previous = sliding ? new Slot(key, window - 1, Long.MIN_VALUE, false) : null;
+                return;
+            }
+            if (window <= current.window) {
+                return;
+            }
+            retire(previous);
+            if (window == current.window + 1) {
+                previous = current;
+                previous.needsRead = true;
+            } else {
+                retire(current);
+                previous = sliding ? new Slot(key, window - 1, Long.MIN_VALUE, false) : null;
+            }
+            current = new Slot(key, window, window * windowMillis, true);
+        }
+
+        private void retire(Slot slot) {
+            if (slot != null && slot.pending + slot.inFlight != 0) {
+                if (retired == null) {
+                    retired = new ArrayList<>(1);
+                }
+                retired.add(slot);
+            }
+        }
+
+        boolean isStale(long currentTime) {
+            return currentTime - current.syncedAt > maxStalenessMillis || (sliding && !previous.known);
+        }
+
+        AcquireResult tryAcquire(int permits, long currentTime) {
+            double count = estimate(currentTime);
+            boolean allowed = sliding
+                ? count + permits - 1 < limit
+                : count + permits <= limit;
+            if (allowed) {
+                current.pending += permits;
+                count += permits;
+            }
+            int remaining = (int) Math.max(0, Math.floor(limit - count));
+            int usage = (int) Math.ceil(count);
+            long resetTime = (current.window + 1) * windowMillis;
+            return allowed
+                ? AcquireResult.allowed(limit, remaining, resetTime, usage)
+                : AcquireResult.denied(limit, remaining, resetTime, usage);
+        }
+
+        RateLimitState state() {
+            double count = current != null ? estimate(lastAccess) : 0;
+            long resetTime = current != null ? (current.window + 1) * windowMillis : 0;
+            return new SimpleRateLimitState(limit, (int) Math.max(0, Math.floor(limit - count)), resetTime,
+                (int) Math.ceil(count));
+        }
+
+        /**
+         * The same estimate as the window algorithms, over this node's view.
+         */
+        private double estimate(long currentTime) {
+            if (!sliding || previous == null) {
+                return current.count();
+            }
+            long elapsed = currentTime - current.window * windowMillis;
+            double overlapWeight = Math.max(0, windowMillis - elapsed) / (double) windowMillis;
+            return previous.count() * overlapWeight + current.count();
+        }
+
+        boolean needsFlush(long now) {
+            if (touched || now - lastAccess <= maxStalenessMillis) {
+                return true;
+            }
+            for (Slot slot : slots()) {
+                if (slot.pending != 0 || slot.needsRead) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isIdle(long now) {
+            if (touched || now - lastAccess <= 2 * windowMillis) {
+                return false;
+            }
+            for (Slot slot : slots()) {
+                if (slot.pending + slot.inFlight != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The slots to merge: retired windows with deltas, then the previous and
+         * current windows. Retired windows with nothing left to push are forgotten.
+         */
+        List<Slot> slots() {
+            List<Slot> slots = new ArrayList<>(3);
+            if (retired != null) {
+                retired.removeIf(slot -> slot.pending + slot.inFlight == 0);
+                slots.addAll(retired);
+            }
+            if (previous != null) {
+                slots.add(previous);
+            }
+            if (current != null) {
+                slots.add(current);
+            }
+            return slots;
+        }
+    }
+
+    /**
+     * One window's counter as seen by this node: the last merged global count, the
+     * admissions not pushed yet, and those being pushed.
+     */
+    private static final class Slot {
+        private final long window;
+        private final String counterKey;
+        private long global;
+        private long pending;
+        private long inFlight;
+        private long syncedAt;
+        private long excessSeen;
+        private boolean known;
+        private boolean needsRead;
+
+        Slot(String key, long window, long syncedAt, boolean known) {
+            this.window = window;
+            this.counterKey = key + COUNTER_SEPARATOR + window;
+            this.syncedAt = syncedAt;
+            this.known = known;
+            this.needsRead = !known;
+        }
+
+        long count() {
+            return global + pending + inFlight;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.util.MurmurHash3;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys have been seen, for
+ * TinyLFU admission in {@link StateTable} segments.
+ *
+ * <p>Each key increments one counter in each of four rows; its frequency is the
+ * smallest of the four, which never underestimates and rarely overestimates. Counters
+ * saturate at 15. After ten increments per tracked key every counter is halved, so
+ * the estimates follow recent popularity rather than all-time counts.
+ *
+ * <p><b>Thread Safety:</b> Not thread-safe; each segment's sketch is guarded by the
+ * segment's write lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a sketch for about {@code maximumSize} keys.
+     */
+    FrequencySketch(int maximumSize) {
+        int size = Integer.highestOneBit(Math.max(8, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+        this.table = new long[size];
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * Returns the estimated number of times the key was seen, from 0 to 15.
+     */
+    int frequency(long hash) {
+        int frequency = 15;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long spread = MurmurHash3.fmix64(hash ^ SEEDS[row]);
+            int shift = counterShift(spread);
+            frequency = Math.min(frequency, (int) (table[index(spread)] >>> shift) & 15);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts one occurrence of the key.
+     */
+    void increment(long hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long spread = MurmurHash3.fmix64(hash ^ SEEDS[row]);
+            int index = index(spread);
+            int shift = counterShift(spread);
+            if (((table[index] >>> shift) & 15) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int index(long spread) {
+        return (int) spread & (table.length - 1);
+    }
+
+    private static int counterShift(long spread) {
+        // One of the sixteen 4-bit counters of the word
+        return (int) (spread >>> 60) << 2;
+    }
+}
@@ -0,0 +1,102 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+
+/**
+ * Tells when the state of a key becomes equivalent to no state at all, so that local
+ * providers can drop it: a token bucket once it has refilled, a window once its counts
+ * have aged out of the estimate. A new key then starts from exactly the state that was
+ * dropped.
+ *
+ * <p>The state is read as the two words that {@link StateSnapshot} records hold for
+ * its tag. What the state alone does not tell, the configuration's capacity and refill
+ * rate or its window, is packed by {@link #rule} into one {@code long} that providers
+ * keep beside the state:
+ * <ul>
+ *   <li>Token buckets: the capacity and refill rate as {@code float}s, rounded so that a
+ *       bucket is never taken to be full before it is</li>
+ *   <li>Windows: the window's length in milliseconds, whole seconds for fixed windows</li>
+ * </ul>
+ * A rule is never zero.
+ *
+ * @since 1.1.0
+ */
+public final class IdleState {
+
+    private IdleState() {
+    }
+
+    /**
+     * Returns the rule of a configuration, for {@link #idleAt}.
+     *
+     * @param config the configuration
+     * @return the rule
+     */
+    public static long rule(RateLimitConfig config) {
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> (long) Float.floatToRawIntBits(roundUp(config.getCapacity())) << 32
+                    | Float.floatToRawIntBits(roundDown(config.getRefillRate())) & 0xFFFF_FFFFL;
+            case SLIDING_WINDOW -> Math.max(1, config.getWindowMillis());
+            case FIXED_WINDOW -> Math.max(1, config.getWindowMillis() / 1000) * 1000;
+        };
+    }
+
+    /**
+     * Returns the time from which a state that is not updated again is equivalent to no
+     * state.
+     *
+     * @param tag the {@link StateSnapshot} tag of the state
+     * @param first the first state word
+     * @param second the second state word
+     * @param rule the {@link #rule} of the state's configuration
+     * @return the time in milliseconds, {@link Long#MIN_VALUE} if the state is already
+     *         equivalent to none, or {@link Long#MAX_VALUE} if it never will be
+     */
+    public static long idleAt(int tag, long first, long second, long rule) {
+        return switch (tag) {
+            // Tokens and last refill time
+            case StateSnapshot.TOKEN_BUCKET -> {
+                double missing = capacity(rule) - Double.longBitsToDouble(first);
+                yield missing <= 0 ? second : plus(second, missing / refillRate(rule));
+            }
+            // Empty time relative to the origin
+            case StateSnapshot.LOCK_FREE_TOKEN_BUCKET ->
+                    plus(second, Double.longBitsToDouble(first) + capacity(rule) / refillRate(rule));
+            // Current window start, then previous and current counts; the current window
+            // becomes the previous one, then leaves the estimate
+            case StateSnapshot.SLIDING_WINDOW -> second == 0 ? Long.MIN_VALUE
+                    : plus(first, (int) second == 0 ? rule : 2.0 * rule);
+            // Window number and count
+            case StateSnapshot.FIXED_WINDOW -> second == 0 ? Long.MIN_VALUE : plus(0, (first + 1.0) * rule);
+            // Time at which the stripes are full again
+            case StateSnapshot.STRIPED_TOKEN_BUCKET -> first;
+            default -> Long.MAX_VALUE;
+        };
+    }
+
+    private static double capacity(long rule) {
+        return Float.intBitsToFloat((int) (rule >>> 32));
+    }
+
+    private static double refillRate(long rule) {
+        return Float.intBitsToFloat((int) rule);
+    }
+
+    /**
+     * Returns {@code time + millis} rounded up, saturated at {@link Long#MAX_VALUE}.
+     */
+    private static long plus(long time, double millis) {
+        double sum = time + Math.ceil(millis);
+        return sum >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) sum;
+    }
+
+    private static float roundUp(double value) {
+        float rounded = (float) value;
+        return rounded < value ? Math.nextUp(rounded) : rounded;
+    }
+
+    private static float roundDown(double value) {
+        float rounded = (float) value;
+        return rounded > value ? Math.nextDown(rounded) : rounded;
+    }
+}
@@ -4,153 +4,1138 @@ import com.lycosoft.ratelimit.algorithm.FixedWindowAlgorithm;
 import com.lycosoft.ratelimit.algorithm.TokenBucketAlgorithm;
 import com.lycosoft.ratelimit.algorithm.SlidingWindowAlgorithm;
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LeaseResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lycosoft.ratelimit.storage.StateTable.A;
+import static com.lycosoft.ratelimit.storage.StateTable.B;
 
 /**
  * In-memory implementation of {@link StorageProvider}.
- * 
- * <p>This implementation stores rate limit state in local memory using
- * ConcurrentHashMap. It's suitable for:
+ *
+ * <p>This implementation stores rate limit state in local memory. It's suitable for:
  * <ul>
  *   <li>Single-node deployments</li>
  *   <li>Testing and development</li>
  *   <li>L2 fallback cache</li>
  * </ul>
- * 
+ *
  * <p><b>Not suitable for:</b> Multi-node clusters (no state sharing)
- * 
- * <p><b>Clock:</b> Uses System.currentTimeMillis() (local clock)
- * 
+ *
+ * <p><b>Storage:</b> All state lives in a segmented open-addressing table of
+ * primitive slots (four {@code long}s per key and algorithm) rather than in maps of
+ * state objects. Keys are not retained, only a keyed hash of them, so the footprint
+ * per key is independent of the key length and there is no per-key object for the
+ * garbage collector to trace. Acquires update the slot in place under the segment
+ * lock and allocate nothing beyond their result; {@link #bind bound} acquires can
+ * return {@link BoundStorage#acquirePacked packed} results and allocate nothing at all.
+ *
+ * <p><b>Expiry:</b> State is removed as soon as it is equivalent to new state, as
+ * {@link IdleState} tells: a token bucket once it has refilled, a window once its
+ * counts have aged out. Each table segment keeps a hierarchical {@link TimingWheel}
+ * of its slots, each due when its state would become so, advanced when a key is
+ * inserted into the segment, so that keys seen once, such as rotating client IPs, do
+ * not accumulate and the resident keys are the active ones. An idle key is removed
+ * within about a second of becoming equivalent to new state; {@link #cleanUp()}
+ * expires due keys of every segment at once.
+ *
+ * <p><b>Memory budget:</b> Optionally, the state is limited to a number of bytes,
+ * estimated per slot from the table layout (about 74 bytes for a rate limit key,
+ * 42 for a counter). When full, a new key is admitted only if it is requested more
+ * often than the idle key it would evict (TinyLFU), so a flood of one-off keys cannot
+ * push out regular clients. A key that is not admitted is decided against, and charged
+ * to, one overflow state per algorithm in its table segment, which it shares with the
+ * other keys not admitted there, so such keys are limited together rather than each
+ * getting a fresh limit. Striped token buckets are charged for their stripes.
+ *
+ * <p><b>Lock-free token buckets:</b> Optionally, token buckets are kept as
+ * {@link LockFreeTokenBucket}s and updated by compare-and-set under the shared segment
+ * lock, so concurrent requests for one hot key retry instead of queueing on the
+ * segment's write lock. {@link #getState} then reports only the time at which such
+ * a bucket runs empty.
+ *
+ * <p><b>Striped token buckets:</b> Token buckets whose configuration has more than one
+ * {@link RateLimitConfig#getStripes() stripe} are kept as {@link StripedTokenBucket}s
+ * beside their table slot, so that threads acquiring a key such as a node-wide limit
+ * mostly update their own stripe, under an optimistic read of the segment lock. They
+ * expire and are admitted like other keys. Reservations and leases are not supported
+ * on them.
+ *
+ * <p><b>Snapshots:</b> The state can be {@link #writeSnapshot written} to a file, for
+ * example by a {@link StateSnapshotter} on shutdown, and restored by a new provider so
+ * that a restart does not hand every client a full bucket. The snapshot is mapped
+ * and each table segment restores its part when first used. Times are shifted if the
+ * clock moved differently from the wall clock since the snapshot; windows are then
+ * dropped, as they cannot be shifted.
+ *
+ * <p><b>Clock:</b> Uses the local clock, {@link TimeSource#system()} unless another
+ * {@link TimeSource} is given
+ *
  * @since 1.0.0
  */
-public class InMemoryStorageProvider implements StorageProvider {
+public class InMemoryStorageProvider implements StorageProvider, Snapshottable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryStorageProvider.class);
+
+    /** Identifies snapshots written by this provider. */
+    private static final int SNAPSHOT_KIND = 1;
+
+    private final StateTable table;
+    private final AtomicInteger counterBatches = new AtomicInteger();
+    private final TimeSource timeSource;
+    private final boolean lockFreeTokenBuckets;
+    private final long maxBytes;
+
+    // Expirations seen by the last getDiagnostics() call, for the rate
+    private volatile long lastExpired;
+    private volatile long lastDiagnosticsTime;
+
+    /**
+     * Number of {@link #addCounters} batches between sweeps of expired counters.
+     */
+    private static final int COUNTER_SWEEP_INTERVAL = 1024;
+
+    /**
+     * Creates an in-memory provider on the system clock.
+     */
+    public InMemoryStorageProvider() {
+        this(TimeSource.system());
+    }
+
+    /**
+     * Creates an in-memory provider on the given clock.
+     *
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @since 1.1.0
+     */
+    public InMemoryStorageProvider(TimeSource timeSource) {
+        this(timeSource, false);
+    }
+
+    /**
+     * Creates an in-memory provider on the given clock, optionally with lock-free
+     * token buckets.
+     *
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @since 1.1.0
+     */
+    public InMemoryStorageProvider(TimeSource timeSource, boolean lockFreeTokenBuckets) {
+        this(timeSource, lockFreeTokenBuckets, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an in-memory provider on the given clock that holds at most
+     * {@code maxBytes} of rate limit state.
+     *
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @param maxBytes the heap budget for state, in bytes, or {@link Long#MAX_VALUE} for none
+     * @since 1.1.0
+     */
+    public InMemoryStorageProvider(TimeSource timeSource, boolean lockFreeTokenBuckets, long maxBytes) {
+        this(timeSource, lockFreeTokenBuckets, maxBytes, null);
+    }
+
+    /**
+     * Creates an in-memory provider as {@link #InMemoryStorageProvider(TimeSource, boolean, long)},
+     * restoring the state of a snapshot written by {@link #writeSnapshot}.
+     *
+     * <p>A missing snapshot is ignored; one that cannot be read is logged and ignored,
+     * so that a bad file never prevents startup.
+     *
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @param maxBytes the heap budget for state, in bytes, or {@link Long#MAX_VALUE} for none
+     * @param snapshot the snapshot file to restore, or null
+     * @since 1.1.0
+     */
+    public InMemoryStorageProvider(TimeSource timeSource, boolean lockFreeTokenBuckets, long maxBytes,
+                                   Path snapshot) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.timeSource = Objects.requireNonNull(timeSource, "timeSource cannot be null");
+        this.lockFreeTokenBuckets = lockFreeTokenBuckets;
+        this.maxBytes = maxBytes;
+        StateSnapshot restored = snapshot == null ? null : openSnapshot(snapshot);
+        this.table = new StateTable(maxBytes, restored, timeSource);
+        this.lastDiagnosticsTime = timeSource.currentTimeMillis();
+    }
+
+    private static StateSnapshot openSnapshot(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            StateSnapshot snapshot = StateSnapshot.open(file);
+            if (snapshot.kind() != SNAPSHOT_KIND || snapshot.sections() != StateTable.SEGMENTS) {
+                logger.warn("Ignoring state snapshot {}: not written by InMemoryStorageProvider", file);
+                return null;
+            }
+            logger.info("Restoring {} records from state snapshot {}", snapshot.records(), file);
+            return snapshot;
+        } catch (StorageException e) {
+            logger.warn("Ignoring state snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
 
-    private final Map<String, TokenBucketAlgorithm.BucketState> tokenBucketStates = new ConcurrentHashMap<>();
-    private final Map<String, SlidingWindowAlgorithm.WindowState> slidingWindowStates = new ConcurrentHashMap<>();
-    private final Map<String, FixedWindowAlgorithm.WindowState> fixedWindowStates = new ConcurrentHashMap<>();
-    
     @Override
     public long getCurrentTime() {
-        return System.currentTimeMillis();
+        return timeSource.currentTimeMillis();
     }
-    
+
     @Override
     public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
         return switch (config.getAlgorithm()) {
-            case TOKEN_BUCKET -> tryAcquireTokenBucket(key, config, currentTime);
-            case SLIDING_WINDOW -> tryAcquireSlidingWindow(key, config, currentTime);
-            case FIXED_WINDOW -> tryAcquireFixedWindow(key, config, currentTime);
+            case TOKEN_BUCKET -> config.getStripes() > 1
+                    ? acquireStriped(key, tokenBucket(config), config.getStripes(), IdleState.rule(config), permits,
+                            currentTime)
+                    : acquireTokenBucket(key, tokenBucket(config), IdleState.rule(config), permits, currentTime);
+            case SLIDING_WINDOW -> acquireSlidingWindow(key, slidingWindow(config), IdleState.rule(config), permits,
+                    currentTime);
+            case FIXED_WINDOW -> acquireFixedWindow(key, fixedWindow(config), config.getRequests(),
+                    IdleState.rule(config), permits, currentTime);
         };
     }
-    
-    private boolean tryAcquireTokenBucket(String key, RateLimitConfig config, long currentTime) {
-        TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm(
-            config.getCapacity(),
-            config.getRefillRate()
-        );
-
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        // Always update state to track refill time correctly, regardless of allow/deny
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        tokenBucketStates.compute(key, (k, oldState) -> {
-            TokenBucketAlgorithm.BucketState newState = algorithm.tryConsume(oldState, 1, currentTime);
-            allowed.set(newState.allowed());
-            return newState;  // Always persist state for correct refill tracking
-        });
-
-        return allowed.get();
-    }
-    
-    private boolean tryAcquireSlidingWindow(String key, RateLimitConfig config, long currentTime) {
-        SlidingWindowAlgorithm algorithm = new SlidingWindowAlgorithm(
-            config.getRequests(),
-            config.getWindowMillis()
-        );
-
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        // Always update state to track window rotation correctly, regardless of allow/deny
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        slidingWindowStates.compute(key, (k, oldState) -> {
-            SlidingWindowAlgorithm.WindowState newState = algorithm.tryConsume(oldState, currentTime);
-            allowed.set(newState.isAllowed());
-            return newState;  // Always persist state for correct window tracking
-        });
-
-        return allowed.get();
-    }
-
-    private boolean tryAcquireFixedWindow(String key, RateLimitConfig config, long currentTime) {
-        // Convert window to seconds for FixedWindowAlgorithm
-        int windowSeconds = (int) (config.getWindowMillis() / 1000);
-        if (windowSeconds < 1) {
-            windowSeconds = 1;  // Minimum 1 second
+
+    /**
+     * Creates the algorithm instance once, instead of on every {@link #acquire} call.
+     * The bound storage packs its results straight from the slot.
+     */
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        long rule = IdleState.rule(config);
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> {
+                TokenBucketAlgorithm algorithm = tokenBucket(config);
+                int stripes = config.getStripes();
+                if (stripes > 1) {
+                    yield new BoundStorage() {
+                        @Override
+                        public AcquireResult acquire(String key, int permits, long currentTime) {
+                            return acquireStriped(key, algorithm, stripes, rule, permits, currentTime);
+                        }
+
+                        @Override
+                        public long acquirePacked(String key, int permits, long currentTime) {
+                            return acquireStripedPacked(key, algorithm, stripes, rule, permits, currentTime);
+                        }
+                    };
+                }
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireTokenBucket(key, algorithm, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        return acquireTokenBucketPacked(key, algorithm, rule, permits, currentTime);
+                    }
+                };
+            }
+            case SLIDING_WINDOW -> {
+                SlidingWindowAlgorithm algorithm = slidingWindow(config);
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireSlidingWindow(key, algorithm, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        return acquireSlidingWindowPacked(key, algorithm, rule, permits, currentTime);
+                    }
+                };
+            }
+            case FIXED_WINDOW -> {
+                FixedWindowAlgorithm algorithm = fixedWindow(config);
+                int limit = config.getRequests();
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireFixedWindow(key, algorithm, limit, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        return acquireFixedWindowPacked(key, algorithm, limit, rule, permits, currentTime);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Evaluates all limits and consumes from them only if every one allows.
+     *
+     * <p>The segments of the keys are write-locked in index order, so that concurrent
+     * calls cannot deadlock, and each limit is checked against a copy of its state.
+     * The copies are written back only once every limit allows. Limits on the same
+     * state are checked in turn, each seeing the permits counted by the ones before.
+     * Striped token buckets are consumed once all other limits allow, and given back if
+     * one of them denies.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        if (keys.size() != configs.size() || keys.size() != permits.length) {
+            throw new IllegalArgumentException("keys, configs and permits must have the same size");
+        }
+        int size = keys.size();
+        long[] hashes = new long[size];
+        long[] fingerprints = new long[size];
+        long locked = 0;
+        for (int i = 0; i < size; i++) {
+            if (permits[i] <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+            hashes[i] = table.hash(keys.get(i));
+            fingerprints[i] = StateTable.fingerprint(keys.get(i), tag(configs.get(i)));
+            locked |= 1L << StateTable.segmentIndex(hashes[i]);
+        }
+
+        long[] stamps = new long[Long.bitCount(locked)];
+        int lockCount = 0;
+        try {
+            for (long rest = locked; rest != 0; rest &= rest - 1) {
+                stamps[lockCount] = table.segmentAt(Long.numberOfTrailingZeros(rest)).lock.writeLock();
+                lockCount++;
+            }
+
+            // Inserts come first, as an insert may move other slots of its segment
+            for (int i = 0; i < size; i++) {
+                if (configs.get(i).getStripes() <= 1) {
+                    insertSlot(table.segment(hashes[i]), hashes[i], fingerprints[i], configs.get(i), currentTime);
+                }
+            }
+
+            int[] bases = new int[size];
+            long[] words = new long[2 * size];
+            double[] available = new double[size];
+            boolean[] allowed = new boolean[size];
+            boolean allAllowed = true;
+            for (int i = 0; i < size; i++) {
+                RateLimitConfig config = configs.get(i);
+                if (config.getStripes() > 1) {
+                    continue;
+                }
+                StateTable.Segment segment = table.segment(hashes[i]);
+                int base = segment.findOrOverflow(hashes[i], fingerprints[i]);
+                bases[i] = base;
+                int earlier = -1;
+                for (int j = 0; j < i && base >= 0; j++) {
+                    if (bases[j] == base && configs.get(j).getStripes() <= 1
+                            && StateTable.segmentIndex(hashes[j]) == StateTable.segmentIndex(hashes[i])) {
+                        earlier = j;
+                    }
+                }
+                if (earlier >= 0) {
+                    System.arraycopy(words, 2 * earlier, words, 2 * i, 2);
+                } else if (base >= 0) {
+                    System.arraycopy(segment.slots, base + A, words, 2 * i, 2);
+                } else {
+                    // Evicted by the insert of another limit, so it was new state
+                    initState(words, 2 * i, StateTable.tag(fingerprints[i]), config, currentTime);
+                }
+                switch (StateTable.tag(fingerprints[i])) {
+                    case StateTable.TOKEN_BUCKET -> {
+                        available[i] = refillAndTake(words, 2 * i, tokenBucket(config), permits[i], currentTime);
+                        allowed[i] = available[i] >= permits[i];
+                    }
+                    case StateTable.LOCK_FREE_TOKEN_BUCKET -> {
+                        available[i] = LockFreeTokenBucket.tryConsume(words, 2 * i, tokenBucket(config), permits[i],
+                                currentTime);
+                        allowed[i] = available[i] >= permits[i];
+                    }
+                    case StateTable.SLIDING_WINDOW ->
+                        allowed[i] = rotateAndCount(words, 2 * i, slidingWindow(config), permits[i], currentTime);
+                    default -> allowed[i] = countInWindow(words, 2 * i, fixedWindow(config), config.getRequests(),
+                            permits[i], currentTime);
+                }
+                allAllowed &= allowed[i];
+            }
+
+            AcquireResult[] striped = new AcquireResult[size];
+            StripedTokenBucket[] buckets = new StripedTokenBucket[size];
+            boolean[] taken = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                RateLimitConfig config = configs.get(i);
+                if (config.getStripes() <= 1) {
+                    continue;
+                }
+                TokenBucketAlgorithm algorithm = tokenBucket(config);
+                buckets[i] = stripedBucket(table.segment(hashes[i]), hashes[i], fingerprints[i], algorithm,
+                        config.getStripes(), IdleState.rule(config), currentTime);
+                if (allAllowed) {
+                    double tokens = buckets[i].tryConsume(permits[i], currentTime);
+                    taken[i] = tokens >= permits[i];
+                    striped[i] = algorithm.toResult(taken[i], taken[i] ? tokens - permits[i] : tokens, permits[i],
+                            currentTime);
+                    allAllowed = taken[i];
+                } else {
+                    double tokens = buckets[i].available(currentTime);
+                    striped[i] = algorithm.toResult(tokens >= permits[i], tokens, permits[i], currentTime);
+                }
+            }
+            if (!allAllowed) {
+                for (int i = 0; i < size; i++) {
+                    if (taken[i]) {
+                        striped[i] = tokenBucket(configs.get(i)).toResult(true,
+                                buckets[i].refund(permits[i], currentTime), permits[i], currentTime);
+                    }
+                }
+            }
+
+            List<AcquireResult> results = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                if (striped[i] != null) {
+                    results.add(striped[i]);
+                    continue;
+                }
+                if (allAllowed) {
+                    StateTable.Segment segment = table.segment(hashes[i]);
+                    int base = segment.findOrOverflow(hashes[i], fingerprints[i]);
+                    if (base < 0) {
+                        base = insertSlot(segment, hashes[i], fingerprints[i], configs.get(i), currentTime);
+                    }
+                    System.arraycopy(words, 2 * i, segment.slots, base + A, 2);
+                }
+                results.add(result(configs.get(i), StateTable.tag(fingerprints[i]), words, 2 * i, allowed[i],
+                        allAllowed, available[i], permits[i], currentTime));
+            }
+            return results;
+        } finally {
+            long rest = locked;
+            for (int i = 0; i < lockCount; i++, rest &= rest - 1) {
+                table.segmentAt(Long.numberOfTrailingZeros(rest)).unlockWrite(stamps[i]);
+            }
         }
-        FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm(windowSeconds);
+    }
+
+    /**
+     * Returns the tag of the table slot holding a limit's state.
+     */
+    private int tag(RateLimitConfig config) {
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> config.getStripes() > 1 ? StateTable.STRIPED_TOKEN_BUCKET
+                    : lockFreeTokenBuckets ? StateTable.LOCK_FREE_TOKEN_BUCKET : StateTable.TOKEN_BUCKET;
+            case SLIDING_WINDOW -> StateTable.SLIDING_WINDOW;
+            case FIXED_WINDOW -> StateTable.FIXED_WINDOW;
+        };
+    }
+
+    /**
+     * Returns the offset of the slot a limit is decided against, inserting new state
+     * that expires under the limit's rule if there is none. Requires the write lock.
+     */
+    private static int insertSlot(StateTable.Segment segment, long hash, long fingerprint, RateLimitConfig config,
+                                  long currentTime) {
+        int slot = segment.findOrInsert(hash, fingerprint, currentTime);
+        if (slot >= 0) {
+            return slot;
+        }
+        int base = ~slot;
+        initState(segment.slots, base + A, StateTable.tag(fingerprint), config, currentTime);
+        segment.expireWhenIdle(base, IdleState.rule(config), currentTime);
+        return base;
+    }
+
+    /**
+     * Writes the new state of a limit, in the layout of its slot tag, at {@code offset}.
+     */
+    private static void initState(long[] words, int offset, int tag, RateLimitConfig config, long currentTime) {
+        switch (tag) {
+            case StateTable.TOKEN_BUCKET -> {
+                words[offset] = Double.doubleToRawLongBits(config.getCapacity());
+                words[offset + 1] = currentTime;
+            }
+            case StateTable.LOCK_FREE_TOKEN_BUCKET ->
+                LockFreeTokenBucket.init(words, offset, tokenBucket(config), currentTime);
+            case StateTable.SLIDING_WINDOW -> {
+                words[offset] = slidingWindow(config).windowStart(currentTime);
+                words[offset + 1] = 0;
+            }
+            default -> {
+                words[offset] = fixedWindow(config).windowNumber(currentTime);
+                words[offset + 1] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the result of one limit of {@link #acquireAll} from its checked state. A
+     * limit that allowed but was not committed reports its state without the permits.
+     */
+    private static AcquireResult result(RateLimitConfig config, int tag, long[] words, int offset, boolean allowed,
+                                        boolean committed, double available, int permits, long currentTime) {
+        int uncommitted = allowed && !committed ? permits : 0;
+        switch (tag) {
+            case StateTable.TOKEN_BUCKET:
+            case StateTable.LOCK_FREE_TOKEN_BUCKET:
+                return tokenBucket(config).toResult(allowed, allowed && committed ? available - permits : available,
+                        permits, currentTime);
+            case StateTable.SLIDING_WINDOW:
+                return slidingWindow(config).toResult(allowed, previousCount(words[offset + 1]),
+                        currentCount(words[offset + 1]) - uncommitted, words[offset], currentTime);
+            default:
+                return fixedWindow(config).toResult(allowed, words[offset], (int) words[offset + 1] - uncommitted,
+                        config.getRequests());
+        }
+    }
 
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        fixedWindowStates.compute(key, (k, oldState) -> {
-            FixedWindowAlgorithm.WindowState newState = algorithm.tryAcquire(
-                    oldState, config.getRequests(), currentTime);
-            allowed.set(newState.isAllowed());
-            return newState;
-        });
+    /**
+     * Books the permits as {@link TokenBucketAlgorithm#reserve} does, under the segment
+     * lock, so concurrent reservations queue behind each other.
+     */
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Reservations require the TOKEN_BUCKET algorithm");
+        }
+        if (config.getStripes() > 1) {
+            throw new UnsupportedOperationException("Reservations are not supported on striped token buckets");
+        }
+        TokenBucketAlgorithm algorithm = tokenBucket(config);
+        long rule = IdleState.rule(config);
+        if (lockFreeTokenBuckets) {
+            long hash = table.hash(key);
+            long fingerprint = StateTable.fingerprint(key, StateTable.LOCK_FREE_TOKEN_BUCKET);
+            StateTable.Segment segment = table.segment(hash);
+            long stamp = lockBucket(segment, hash, fingerprint, algorithm, rule, currentTime);
+            try {
+                int base = segment.findOrOverflow(hash, fingerprint);
+                return LockFreeTokenBucket.reserve(segment.slots, base + A, algorithm,
+                        permits, maxWaitMillis, currentTime);
+            } finally {
+                segment.unlock(stamp);
+            }
+        }
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        if (permits > algorithm.getCapacity()) {
+            throw new IllegalArgumentException("tokensRequired cannot exceed capacity");
+        }
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int base = bucketSlot(segment, hash, key, algorithm, rule, currentTime);
+            long[] slots = segment.slots;
+            double available = algorithm.availableTokens(
+                    Double.longBitsToDouble(slots[base + A]), slots[base + B], 0, currentTime);
+            boolean booked = algorithm.canReserve(available, permits, maxWaitMillis);
+            double tokens = booked ? available - permits : available;
+            slots[base + A] = Double.doubleToRawLongBits(tokens);
+            slots[base + B] = currentTime;
+            return algorithm.availableAt(booked, tokens, permits, currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
 
-        return allowed.get();
+    /**
+     * Returns and leases tokens as {@link TokenBucketAlgorithm#lease} does, under the
+     * segment lock.
+     */
+    @Override
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Leases require the TOKEN_BUCKET algorithm");
+        }
+        if (config.getStripes() > 1) {
+            throw new UnsupportedOperationException("Leases are not supported on striped token buckets");
+        }
+        if (returned < 0 || minPermits < 0 || maxPermits < minPermits) {
+            throw new IllegalArgumentException("invalid lease: returned=" + returned
+                    + ", min=" + minPermits + ", max=" + maxPermits);
+        }
+        TokenBucketAlgorithm algorithm = tokenBucket(config);
+        long rule = IdleState.rule(config);
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        if (lockFreeTokenBuckets) {
+            long fingerprint = StateTable.fingerprint(key, StateTable.LOCK_FREE_TOKEN_BUCKET);
+            long stamp = lockBucket(segment, hash, fingerprint, algorithm, rule, currentTime);
+            try {
+                int base = segment.findOrOverflow(hash, fingerprint);
+                return LockFreeTokenBucket.lease(segment.slots, base + A, algorithm,
+                        returned, minPermits, maxPermits, currentTime);
+            } finally {
+                segment.unlock(stamp);
+            }
+        }
+        long stamp = segment.lock.writeLock();
+        try {
+            int base = bucketSlot(segment, hash, key, algorithm, rule, currentTime);
+            long[] slots = segment.slots;
+            double available = algorithm.availableTokens(
+                    Double.longBitsToDouble(slots[base + A]), slots[base + B], returned, currentTime);
+            int granted = algorithm.leaseGrant(available, minPermits, maxPermits);
+            double tokens = granted >= 0 ? available - granted : available;
+            slots[base + A] = Double.doubleToRawLongBits(tokens);
+            slots[base + B] = currentTime;
+            return algorithm.toLeaseResult(granted >= 0, Math.max(0, granted), tokens, minPermits, currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds to each counter under its segment lock; a counter past its expiry starts
+     * again from zero. Expired counters are swept periodically.
+     */
+    @Override
+    public long[] addCounters(List<String> keys, long[] deltas, long[] ttlMillis) {
+        if (keys.size() != deltas.length || keys.size() != ttlMillis.length) {
+            throw new IllegalArgumentException("keys, deltas and ttlMillis must have the same size");
+        }
+        long now = getCurrentTime();
+        long[] values = new long[deltas.length];
+        for (int i = 0; i < values.length; i++) {
+            String key = keys.get(i);
+            long hash = table.hash(key);
+            StateTable.Segment segment = table.segment(hash);
+            long stamp = segment.lock.writeLock();
+            try {
+                int slot = segment.findOrInsert(hash, StateTable.fingerprint(key, StateTable.COUNTER));
+                int base = slot < 0 ? ~slot : slot;
+                long[] slots = segment.slots;
+                long value = slot >= 0 && now < slots[base + B] ? slots[base + A] : 0;
+                values[i] = value + deltas[i];
+                slots[base + A] = values[i];
+                slots[base + B] = now + ttlMillis[i];
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+
+        if (counterBatches.incrementAndGet() % COUNTER_SWEEP_INTERVAL == 0) {
+            for (StateTable.Segment segment : table.segments()) {
+                long stamp = segment.lock.writeLock();
+                try {
+                    segment.removeExpired(StateTable.COUNTER, B, now);
+                } finally {
+                    segment.unlockWrite(stamp);
+                }
+            }
+        }
+        return values;
+    }
+
+    private AcquireResult acquireTokenBucket(String key, TokenBucketAlgorithm algorithm, long rule, int permits,
+                                             long currentTime) {
+        double available = consumeTokens(key, algorithm, rule, permits, currentTime);
+        boolean allowed = available >= permits;
+        return algorithm.toResult(allowed, allowed ? available - permits : available, permits, currentTime);
+    }
+
+    private long acquireTokenBucketPacked(String key, TokenBucketAlgorithm algorithm, long rule, int permits,
+                                          long currentTime) {
+        double available = consumeTokens(key, algorithm, rule, permits, currentTime);
+        boolean allowed = available >= permits;
+        return algorithm.toPackedResult(allowed, allowed ? available - permits : available, permits, currentTime);
+    }
+
+    /**
+     * Refills the bucket and consumes the permits if available, as
+     * {@link TokenBucketAlgorithm#tryConsume} does.
+     *
+     * @return the tokens available before consuming; the request is allowed if at
+     *         least {@code permits}
+     */
+    private double consumeTokens(String key, TokenBucketAlgorithm algorithm, long rule, int permits,
+                                 long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        if (lockFreeTokenBuckets) {
+            long fingerprint = StateTable.fingerprint(key, StateTable.LOCK_FREE_TOKEN_BUCKET);
+            long stamp = lockBucket(segment, hash, fingerprint, algorithm, rule, currentTime);
+            try {
+                int base = segment.findOrOverflow(hash, fingerprint);
+                return LockFreeTokenBucket.tryConsume(segment.slots, base + A, algorithm,
+                        permits, currentTime);
+            } finally {
+                segment.unlock(stamp);
+            }
+        }
+        long stamp = segment.lock.writeLock();
+        try {
+            int base = bucketSlot(segment, hash, key, algorithm, rule, currentTime);
+            return refillAndTake(segment.slots, base + A, algorithm, permits, currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Refills the bucket at {@code offset} and takes the permits if available, as
+     * {@link TokenBucketAlgorithm#tryConsume} does. The refill is stored either way.
+     *
+     * @return the tokens available before consuming
+     */
+    private static double refillAndTake(long[] words, int offset, TokenBucketAlgorithm algorithm, int permits,
+                                        long currentTime) {
+        double available = algorithm.availableTokens(
+                Double.longBitsToDouble(words[offset]), words[offset + 1], 0, currentTime);
+        words[offset] = Double.doubleToRawLongBits(available >= permits ? available - permits : available);
+        words[offset + 1] = currentTime;
+        return available;
+    }
+
+    /**
+     * Returns the offset of a key's token bucket slot, creating a full bucket that
+     * expires under {@code rule} if there is none. Requires the write lock.
+     */
+    private static int bucketSlot(StateTable.Segment segment, long hash, String key,
+                                  TokenBucketAlgorithm algorithm, long rule, long currentTime) {
+        int slot = segment.findOrInsert(hash, StateTable.fingerprint(key, StateTable.TOKEN_BUCKET), currentTime);
+        if (slot >= 0) {
+            return slot;
+        }
+        int base = ~slot;
+        segment.slots[base + A] = Double.doubleToRawLongBits(algorithm.getCapacity());
+        segment.slots[base + B] = currentTime;
+        segment.expireWhenIdle(base, rule, currentTime);
+        return base;
+    }
+
+    /**
+     * Locks the segment for an operation on a {@link LockFreeTokenBucket} slot, creating
+     * a full bucket that expires under {@code rule} if there is none. The lock is
+     * shared unless the bucket had to be created.
+     *
+     * @return the stamp to release with {@code unlock}
+     */
+    private static long lockBucket(StateTable.Segment segment, long hash, long fingerprint,
+                                   TokenBucketAlgorithm algorithm, long rule, long currentTime) {
+        long stamp = segment.lock.readLock();
+        if (segment.find(hash, fingerprint) >= 0) {
+            return stamp;
+        }
+        long writeStamp = segment.lock.tryConvertToWriteLock(stamp);
+        if (writeStamp == 0) {
+            segment.lock.unlockRead(stamp);
+            writeStamp = segment.lock.writeLock();
+        }
+        int slot = segment.findOrInsert(hash, fingerprint, currentTime);
+        if (slot < 0) {
+            LockFreeTokenBucket.init(segment.slots, ~slot + A, algorithm, currentTime);
+            segment.expireWhenIdle(~slot, rule, currentTime);
+        }
+        return writeStamp;
+    }
+
+    private AcquireResult acquireStriped(String key, TokenBucketAlgorithm algorithm, int stripes, long rule,
+                                         int permits, long currentTime) {
+        double available = consumeStriped(key, algorithm, stripes, rule, permits, currentTime);
+        boolean allowed = available >= permits;
+        return algorithm.toResult(allowed, allowed ? available - permits : available, permits, currentTime);
+    }
+
+    private long acquireStripedPacked(String key, TokenBucketAlgorithm algorithm, int stripes, long rule,
+                                      int permits, long currentTime) {
+        double available = consumeStriped(key, algorithm, stripes, rule, permits, currentTime);
+        boolean allowed = available >= permits;
+        return algorithm.toPackedResult(allowed, allowed ? available - permits : available, permits, currentTime);
+    }
+
+    /**
+     * Consumes from the key's {@link StripedTokenBucket} under an optimistic read, so
+     * that threads contend only on their stripes. If a writer intervened, the bucket may
+     * have been removed meanwhile, so the permits are given back and taken again under
+     * the write lock, which also creates the bucket if there is none.
+     *
+     * @return the tokens available before consuming, estimated from the thread's stripe
+     */
+    private double consumeStriped(String key, TokenBucketAlgorithm algorithm, int stripes, long rule, int permits,
+                                  long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        long hash = table.hash(key);
+        long fingerprint = StateTable.fingerprint(key, StateTable.STRIPED_TOKEN_BUCKET);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        StripedTokenBucket bucket = stamp != 0 ? segment.stripedBucket(hash, fingerprint) : null;
+        if (bucket != null) {
+            double available = bucket.tryConsume(permits, currentTime);
+            if (segment.lock.validate(stamp)) {
+                return available;
+            }
+            if (available >= permits) {
+                bucket.refund(permits, currentTime);
+            }
+        }
+
+        stamp = segment.lock.writeLock();
+        try {
+            return stripedBucket(segment, hash, fingerprint, algorithm, stripes, rule, currentTime)
+                    .tryConsume(permits, currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the {@link StripedTokenBucket} a key is decided against, creating one that
+     * expires under {@code rule} once full again if there is none: full, or as full as
+     * the restored bucket of the slot. Requires the write lock.
+     */
+    private static StripedTokenBucket stripedBucket(StateTable.Segment segment, long hash, long fingerprint,
+                                                    TokenBucketAlgorithm algorithm, int stripes, long rule,
+                                                    long currentTime) {
+        int slot = segment.findOrInsertStriped(hash, fingerprint, stripes, currentTime);
+        int base = slot < 0 ? ~slot : slot;
+        StripedTokenBucket bucket = segment.bucket(base);
+        if (bucket != null) {
+            return bucket;
+        }
+        bucket = new StripedTokenBucket(algorithm, stripes, currentTime);
+        long fullAt = segment.slots[base + A];
+        if (fullAt > currentTime) {
+            bucket.drain((fullAt - currentTime) * algorithm.getRefillRate(), currentTime);
+        }
+        segment.attach(base, bucket);
+        if (slot < 0) {
+            segment.expireWhenIdle(base, rule, currentTime);
+        }
+        return bucket;
+    }
+
+    private AcquireResult acquireSlidingWindow(String key, SlidingWindowAlgorithm algorithm, long rule, int permits,
+                                               long currentTime) {
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = consumeWindow(segment, hash, key, algorithm, rule, permits, currentTime);
+            int base = slot < 0 ? ~slot : slot;
+            long[] slots = segment.slots;
+            long counts = slots[base + B];
+            return algorithm.toResult(slot >= 0, previousCount(counts), currentCount(counts), slots[base + A],
+                    currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    private long acquireSlidingWindowPacked(String key, SlidingWindowAlgorithm algorithm, long rule,
+                                            int permits, long currentTime) {
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = consumeWindow(segment, hash, key, algorithm, rule, permits, currentTime);
+            int base = slot < 0 ? ~slot : slot;
+            long[] slots = segment.slots;
+            long counts = slots[base + B];
+            return algorithm.toPackedResult(slot >= 0, previousCount(counts), currentCount(counts),
+                    slots[base + A], currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Rotates the windows and counts the permits if the weighted estimate allows, as
+     * {@link SlidingWindowAlgorithm#tryConsume} does. Requires the write lock.
+     *
+     * @return the offset of the slot if the request is allowed, its complement if denied
+     */
+    private static int consumeWindow(StateTable.Segment segment, long hash, String key,
+                                     SlidingWindowAlgorithm algorithm, long rule, int permits, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        int slot = segment.findOrInsert(hash, StateTable.fingerprint(key, StateTable.SLIDING_WINDOW), currentTime);
+        int base = slot < 0 ? ~slot : slot;
+        if (slot < 0) {
+            // New state: the current window, empty
+            segment.slots[base + A] = algorithm.windowStart(currentTime);
+        }
+        boolean allowed = rotateAndCount(segment.slots, base + A, algorithm, permits, currentTime);
+        if (slot < 0) {
+            segment.expireWhenIdle(base, rule, currentTime);
+        }
+        return allowed ? base : ~base;
+    }
+
+    /**
+     * Rotates the windows at {@code offset} and counts the permits if the weighted
+     * estimate allows.
+     *
+     * <p>Only the current window's start is stored; the previous count belongs to the
+     * window just before it, and is dropped when the windows rotate by more than one.
+     *
+     * @return whether the request is allowed
+     */
+    private static boolean rotateAndCount(long[] words, int offset, SlidingWindowAlgorithm algorithm, int permits,
+                                          long currentTime) {
+        long currentWindowStart = algorithm.windowStart(currentTime);
+        long start = words[offset];
+        int previous = previousCount(words[offset + 1]);
+        int current = currentCount(words[offset + 1]);
+
+        if (start < currentWindowStart) {
+            previous = start == currentWindowStart - algorithm.getWindowSizeMs() ? current : 0;
+            current = 0;
+            start = currentWindowStart;
+        }
+
+        boolean allowed = algorithm.allows(
+                algorithm.estimateCount(previous, current, currentWindowStart, currentTime), permits);
+        if (allowed) {
+            current += permits;
+        }
+        words[offset] = start;
+        words[offset + 1] = counts(previous, current);
+        return allowed;
+    }
+
+    private AcquireResult acquireFixedWindow(String key, FixedWindowAlgorithm algorithm, int limit, long rule,
+                                             int permits, long currentTime) {
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = countWindow(segment, hash, key, algorithm, limit, rule, permits, currentTime);
+            int base = slot < 0 ? ~slot : slot;
+            long[] slots = segment.slots;
+            return algorithm.toResult(slot >= 0, slots[base + A], (int) slots[base + B], limit);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    private long acquireFixedWindowPacked(String key, FixedWindowAlgorithm algorithm, int limit, long rule,
+                                          int permits, long currentTime) {
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = countWindow(segment, hash, key, algorithm, limit, rule, permits, currentTime);
+            int base = slot < 0 ? ~slot : slot;
+            long[] slots = segment.slots;
+            return algorithm.toPackedResult(slot >= 0, slots[base + A], (int) slots[base + B], limit, currentTime);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Counts the permits in the current window if they fit the limit, as
+     * {@link FixedWindowAlgorithm#tryAcquire} does. Requires the write lock.
+     *
+     * @return the offset of the slot if the request is allowed, its complement if denied
+     */
+    private static int countWindow(StateTable.Segment segment, long hash, String key, FixedWindowAlgorithm algorithm,
+                                   int limit, long rule, int permits, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        int slot = segment.findOrInsert(hash, StateTable.fingerprint(key, StateTable.FIXED_WINDOW), currentTime);
+        int base = slot < 0 ? ~slot : slot;
+        if (slot < 0) {
+            // New state: the current window, empty
+            segment.slots[base + A] = algorithm.windowNumber(currentTime);
+        }
+        boolean allowed = countInWindow(segment.slots, base + A, algorithm, limit, permits, currentTime);
+        if (slot < 0) {
+            segment.expireWhenIdle(base, rule, currentTime);
+        }
+        return allowed ? base : ~base;
+    }
+
+    /**
+     * Counts the permits in the window at {@code offset} if they fit the limit, moving
+     * on to the current window first.
+     *
+     * @return whether the request is allowed
+     */
+    private static boolean countInWindow(long[] words, int offset, FixedWindowAlgorithm algorithm, int limit,
+                                         int permits, long currentTime) {
+        long windowNumber = algorithm.windowNumber(currentTime);
+        int count = words[offset] == windowNumber ? (int) words[offset + 1] : 0;
+
+        boolean allowed = count + permits <= limit;
+        words[offset] = windowNumber;
+        words[offset + 1] = allowed ? count + permits : count;
+        return allowed;
+    }
+
+    private static long counts(int previous, int current) {
+        return (long) previous << 32 | (current & 0xFFFF_FFFFL);
+    }
+
+    private static int previousCount(long counts) {
+        return (int) (counts >>> 32);
+    }
+
+    private static int currentCount(long counts) {
+        return (int) counts;
+    }
+
+    private static TokenBucketAlgorithm tokenBucket(RateLimitConfig config) {
+        return new TokenBucketAlgorithm(config.getCapacity(), config.getRefillRate());
+    }
+
+    private static SlidingWindowAlgorithm slidingWindow(RateLimitConfig config) {
+        return new SlidingWindowAlgorithm(config.getRequests(), config.getWindowMillis());
+    }
+
+    /**
+     * Creates a {@link FixedWindowAlgorithm} with the configured window in whole seconds (minimum 1).
+     */
+    private static FixedWindowAlgorithm fixedWindow(RateLimitConfig config) {
+        int windowSeconds = (int) (config.getWindowMillis() / 1000);
+        return new FixedWindowAlgorithm(Math.max(1, windowSeconds));  // Minimum 1 second
     }
 
     @Override
     public void reset(String key) {
-        tokenBucketStates.remove(key);
-        slidingWindowStates.remove(key);
-        fixedWindowStates.remove(key);
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            for (int tag = StateTable.TOKEN_BUCKET; tag <= StateTable.STRIPED_TOKEN_BUCKET; tag++) {
+                int base = segment.find(hash, StateTable.fingerprint(key, tag));
+                if (base >= 0) {
+                    segment.remove(base);
+                }
+            }
+        } finally {
+            segment.unlockWrite(stamp);
+        }
     }
-    
+
     @Override
     public Optional<RateLimitState> getState(String key) {
+        long hash = table.hash(key);
+        StateTable.Segment segment = table.segment(hash);
+
         // Try Token Bucket first
-        TokenBucketAlgorithm.BucketState bucketState = tokenBucketStates.get(key);
-        if (bucketState != null) {
+        long[] bucket = read(segment, hash, StateTable.fingerprint(key, StateTable.TOKEN_BUCKET));
+        if (bucket != null) {
+            double tokens = Double.longBitsToDouble(bucket[0]);
             return Optional.of(new SimpleRateLimitState(
-                (int) bucketState.tokens(),
-                (int) bucketState.tokens(),
-                bucketState.lastRefillTime(),
-                (int) bucketState.tokens()
+                (int) tokens,
+                (int) tokens,
+                bucket[1],
+                (int) tokens
             ));
         }
-        
+
+        long[] lockFreeBucket = read(segment, hash, StateTable.fingerprint(key, StateTable.LOCK_FREE_TOKEN_BUCKET));
+        if (lockFreeBucket != null) {
+            // Tokens depend on the configuration; report when the bucket runs empty
+            long emptyAt = lockFreeBucket[1] + (long) Math.ceil(Double.longBitsToDouble(lockFreeBucket[0]));
+            return Optional.of(new SimpleRateLimitState(0, 0, emptyAt, 0));
+        }
+
+        long stamp = segment.lock.readLock();
+        try {
+            int base = segment.find(hash, StateTable.fingerprint(key, StateTable.STRIPED_TOKEN_BUCKET));
+            StripedTokenBucket stripedBucket = base >= 0 ? segment.bucket(base) : null;
+            if (stripedBucket != null) {
+                long now = getCurrentTime();
+                int tokens = (int) stripedBucket.available(now);
+                return Optional.of(new SimpleRateLimitState(tokens, tokens, now, tokens));
+            }
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+
         // Try Sliding Window
-        SlidingWindowAlgorithm.WindowState windowState = slidingWindowStates.get(key);
-        if (windowState != null && windowState.getCurrentWindow() != null) {
+        long[] window = read(segment, hash, StateTable.fingerprint(key, StateTable.SLIDING_WINDOW));
+        if (window != null) {
+            int count = currentCount(window[1]);
             return Optional.of(new SimpleRateLimitState(
                 100, // Unknown limit
-                100 - windowState.getCurrentWindow().getCount(),
-                windowState.getCurrentWindow().getWindowStart(),
-                windowState.getCurrentWindow().getCount()
+                100 - count,
+                window[0],
+                count
             ));
         }
 
         // Try Fixed Window
-        FixedWindowAlgorithm.WindowState fixedState = fixedWindowStates.get(key);
-        if (fixedState != null) {
+        long[] fixed = read(segment, hash, StateTable.fingerprint(key, StateTable.FIXED_WINDOW));
+        if (fixed != null) {
+            int count = (int) fixed[1];
             return Optional.of(new SimpleRateLimitState(
                 100, // Unknown limit
-                100 - fixedState.getRequestCount(),
-                fixedState.getWindowNumber() * 1000, // Approximate window start
-                fixedState.getRequestCount()
+                100 - count,
+                fixed[0] * 1000, // Approximate window start
+                count
             ));
         }
 
         return Optional.empty();
     }
 
+    /**
+     * Reads the two state words of a slot with an optimistic read, falling back to the
+     * read lock if a writer intervened.
+     *
+     * @return the state words, or null if there is no such slot
+     */
+    private static long[] read(StateTable.Segment segment, long hash, long fingerprint) {
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            long[] slots = segment.slots;
+            int base = StateTable.Segment.find(slots, hash, fingerprint);
+            long a = base >= 0 ? slots[base + A] : 0;
+            long b = base >= 0 ? slots[base + B] : 0;
+            if (segment.lock.validate(stamp)) {
+                return base >= 0 ? new long[] {a, b} : null;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            int base = segment.find(hash, fingerprint);
+            return base >= 0 ? new long[] {segment.slots[base + A], segment.slots[base + B]} : null;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Besides the live keys, reports expiry: keys expired in total and per second
+     * since the previous call, entries waiting in the timing wheels, and the number and
+     * duration of sweeps (segment wheel advances). With a memory budget, also reports
+     * the estimated bytes used, their share of the budget, and the keys evicted and
+     * refused.
+     */
     @Override
     public Map<String, Object> getDiagnostics() {
         Map<String, Object> diagnostics = new HashMap<>();
@@ -159,23 +1144,86 @@ public class InMemoryStorageProvider implements StorageProvider {
         diagnostics.put("healthy", true);
         diagnostics.put("states.count", this.size());
 
+        long expired = 0;
+        long scheduled = 0;
+        long sweeps = 0;
+        long sweepNanos = 0;
+        long maxSweepNanos = 0;
+        for (StateTable.Segment segment : table.segments()) {
+            expired += segment.expired;
+            scheduled += segment.wheel.size();
+            sweeps += segment.sweeps;
+            sweepNanos += segment.sweepNanos;
+            maxSweepNanos = Math.max(maxSweepNanos, segment.maxSweepNanos);
+        }
+        long now = getCurrentTime();
+        long elapsed = now - lastDiagnosticsTime;
+        diagnostics.put("expiry.expired", expired);
+        diagnostics.put("expiry.expiredPerSecond", elapsed > 0 ? (expired - lastExpired) * 1000.0 / elapsed : 0.0);
+        diagnostics.put("expiry.scheduled", scheduled);
+        diagnostics.put("expiry.sweeps", sweeps);
+        diagnostics.put("expiry.sweepMicrosAvg", sweeps > 0 ? sweepNanos / 1000.0 / sweeps : 0.0);
+        diagnostics.put("expiry.sweepMicrosMax", maxSweepNanos / 1000.0);
+        lastExpired = expired;
+        lastDiagnosticsTime = now;
+
+        if (maxBytes != Long.MAX_VALUE) {
+            long evictions = 0;
+            long refusals = 0;
+            for (StateTable.Segment segment : table.segments()) {
+                evictions += segment.evictions;
+                refusals += segment.refusals;
+            }
+            long bytes = table.bytes();
+            diagnostics.put("budget.maxBytes", maxBytes);
+            diagnostics.put("budget.usedBytes", bytes);
+            diagnostics.put("budget.utilization", (double) bytes / maxBytes);
+            diagnostics.put("budget.evictions", evictions);
+            diagnostics.put("budget.refusals", refusals);
+        }
+
         return diagnostics;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes one section per table segment, each copied under the segment's read
+     * lock.
+     */
+    @Override
+    public long writeSnapshot(Path file) {
+        long now = getCurrentTime();
+        try (StateSnapshot.Writer writer = StateSnapshot.write(file, SNAPSHOT_KIND, now, table.k0, table.k1)) {
+            table.snapshot(writer, now);
+            writer.commit();
+            return writer.records();
+        }
+    }
+
+    /**
+     * Expires the due keys of every segment, instead of waiting for inserts to do it.
+     * May be called periodically by an application that stops seeing new keys.
+     *
+     * @return the number of keys removed
+     * @since 1.1.0
+     */
+    public long cleanUp() {
+        return table.expire(getCurrentTime());
+    }
+
     /**
      * Clears all stored state.
      */
     public void clear() {
-        tokenBucketStates.clear();
-        slidingWindowStates.clear();
-        fixedWindowStates.clear();
+        table.clear();
     }
 
     /**
      * Returns the number of keys being tracked.
      */
     public int size() {
-        return tokenBucketStates.size() + slidingWindowStates.size() + fixedWindowStates.size();
+        return table.size();
     }
 
 }
@@ -0,0 +1,406 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.LeaseResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage decorator that leases batches of tokens from a shared token bucket and
+ * serves requests from them locally.
+ *
+ * <p>For each TOKEN_BUCKET key, the node takes a lease of K tokens with one
+ * {@link StorageProvider#lease} call (a single Lua script on Redis) and grants
+ * requests from a local lock-free counter until the lease runs out or expires. The
+ * next lease call hands back whatever was left, so tokens a node did not use return
+ * to the shared bucket.
+ *
+ * <p>K adapts per key to the rate observed over the previous lease: enough tokens to
+ * cover one lease duration of traffic, at most doubling from one lease to the next,
+ * and never more than half the bucket capacity or the configured maximum. A key that
+ * sees a request now and then keeps K = 1, which is exactly as precise as calling the
+ * delegate directly; a hot key batches heavily and pays one round trip per lease.
+ *
+ * <p><b>Trade-offs:</b>
+ * <ul>
+ *   <li>Tokens leased by one node are unavailable to the others until used or
+ *       returned, so a key can deny on one node while another still holds tokens.
+ *       Total admissions never exceed what the shared bucket allows.</li>
+ *   <li>Remaining capacity and reset time reported for locally granted requests are
+ *       as of the last lease.</li>
+ *   <li>While one thread renews a key's lease, concurrent requests for that key are
+ *       decided by the delegate directly rather than waiting.</li>
+ *   <li>Other algorithms, multi-limit calls and reservations always go to the delegate.</li>
+ * </ul>
+ *
+ * <p>Leases that expire on idle keys are handed back by the first request, for any
+ * key, once a lease duration has passed since the previous sweep. If a lease call
+ * fails, the tokens it was to hand back stay with the key's lease. Call
+ * {@link #releaseLeases()} on shutdown to return every outstanding token.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe if the delegate is.
+ *
+ * @since 1.1.0
+ */
+public class LeasingStorageProvider implements StorageProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasingStorageProvider.class);
+
+    /**
+     * Default time a lease may be served locally before its tokens are handed back.
+     */
+    public static final Duration DEFAULT_LEASE_DURATION = Duration.ofMillis(100);
+
+    /**
+     * Default upper bound on the tokens in one lease.
+     */
+    public static final int DEFAULT_MAX_LEASE = 1000;
+
+    private final StorageProvider delegate;
+    private final long leaseMillis;
+    private final int maxLease;
+    private final ConcurrentHashMap<String, KeyLease> leases = new ConcurrentHashMap<>();
+    // Time from which the next request sweeps expired leases
+    private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder localGrants = new LongAdder();
+    private final LongAdder leaseCalls = new LongAdder();
+
+    /**
+     * Creates a leasing provider with the default lease duration and size limit.
+     *
+     * @param delegate the shared storage to lease from; must support {@link StorageProvider#lease}
+     */
+    public LeasingStorageProvider(StorageProvider delegate) {
+        this(delegate, DEFAULT_LEASE_DURATION, DEFAULT_MAX_LEASE);
+    }
+
+    /**
+     * Creates a leasing provider.
+     *
+     * @param delegate the shared storage to lease from; must support {@link StorageProvider#lease}
+     * @param leaseDuration how long a lease may be served locally
+     * @param maxLease the most tokens in one lease
+     */
+    public LeasingStorageProvider(StorageProvider delegate, Duration leaseDuration, int maxLease) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+        Objects.requireNonNull(leaseDuration, "leaseDuration cannot be null");
+        if (leaseDuration.isNegative() || leaseDuration.isZero()) {
+            throw new IllegalArgumentException("leaseDuration must be positive");
+        }
+        if (maxLease <= 0) {
+            throw new IllegalArgumentException("maxLease must be positive");
+        }
+        this.leaseMillis = leaseDuration.toMillis();
+        this.maxLease = maxLease;
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return delegate.getCurrentTime();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        long sweepAt = nextSweep.get();
+        if (currentTime >= sweepAt && nextSweep.compareAndSet(sweepAt, currentTime + leaseMillis)) {
+            releaseExpired(currentTime);
+        }
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET || permits > config.getCapacity()) {
+            return delegate.acquire(key, config, permits, currentTime);
+        }
+
+        KeyLease holder = leases.get(key);
+        if (holder == null) {
+            holder = leases.computeIfAbsent(key, k -> new KeyLease());
+        }
+
+        // Fast path: take the permits from the local lease
+        Lease lease = holder.current;
+        if (lease != null && currentTime < lease.expiresAt) {
+            int left = lease.tryTake(permits);
+            if (left >= 0) {
+                localGrants.increment();
+                int remaining = lease.sharedRemaining + left;
+                return AcquireResult.allowed(lease.limit, remaining, lease.resetTime, lease.limit - remaining);
+            }
+        }
+
+        // One thread renews the lease; the others are decided by the delegate meanwhile
+        if (!holder.renewing.compareAndSet(false, true)) {
+            return delegate.acquire(key, config, permits, currentTime);
+        }
+        try {
+            if (leases.get(key) != holder) {
+                // Swept while we were looking at it
+                return delegate.acquire(key, config, permits, currentTime);
+            }
+            return renew(key, config, holder, permits, currentTime);
+        } finally {
+            holder.renewing.set(false);
+        }
+    }
+
+    /**
+     * Hands back the current lease's unused tokens and takes a new lease covering
+     * {@code permits}. If the lease call fails, the unused tokens are put back into the
+     * current lease, to be served or handed back later. Runs with the key's renewing
+     * flag held.
+     */
+    private AcquireResult renew(String key, RateLimitConfig config, KeyLease holder, int permits, long currentTime) {
+        Lease old = holder.current;
+        holder.current = null;
+        int unused = old != null ? old.drain() : 0;
+        int size = holder.nextSize(old, unused, currentTime, maxLeaseFor(config));
+
+        LeaseResult grant;
+        try {
+            grant = delegate.lease(key, config, unused, permits, Math.max(size, permits), currentTime);
+        } catch (RuntimeException e) {
+            if (old != null) {
+                old.restore(unused);
+                holder.current = old;
+            }
+            throw e;
+        }
+        leaseCalls.increment();
+
+        if (!grant.isAllowed()) {
+            return AcquireResult.denied(grant.getLimit(), grant.getRemaining(), grant.getResetTime(),
+                    grant.getCurrentUsage());
+        }
+
+        int left = grant.getGranted() - permits;
+        holder.current = new Lease(config, grant, left, currentTime, currentTime + leaseMillis);
+        holder.size = grant.getGranted();
+
+        int remaining = grant.getRemaining() + left;
+        return AcquireResult.allowed(grant.getLimit(), remaining, grant.getResetTime(), grant.getLimit() - remaining);
+    }
+
+    private int maxLeaseFor(RateLimitConfig config) {
+        return Math.max(1, Math.min(maxLease, config.getCapacity() / 2));
+    }
+
+    /**
+     * Multi-limit checks are atomic in the delegate, so they bypass leases.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        return delegate.acquireAll(keys, configs, permits, currentTime);
+    }
+
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        return delegate.reserve(key, config, permits, maxWaitMillis, currentTime);
+    }
+
+    @Override
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
+        return delegate.lease(key, config, returned, minPermits, maxPermits, currentTime);
+    }
+
+    /**
+     * Discards the key's lease (the reset refills the bucket anyway) and resets it.
+     */
+    @Override
+    public void reset(String key) {
+        leases.remove(key);
+        delegate.reset(key);
+    }
+
+    @Override
+    public Optional<RateLimitState> getState(String key) {
+        return delegate.getState(key);
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return delegate.isHealthy();
+    }
+
+    @Override
+    public Map<String, Object> getDiagnostics() {
+        Map<String, Object> diagnostics = new HashMap<>();
+        diagnostics.put("type", getClass().getSimpleName());
+        diagnostics.put("leasedKeys", leases.size());
+        diagnostics.put("localGrants", localGrants.sum());
+        diagnostics.put("leaseCalls", leaseCalls.sum());
+        Map<String, Object> delegateDiag = delegate.getDiagnostics();
+        diagnostics.put("delegateDiagnostics", delegateDiag != null ? delegateDiag : Map.of());
+        return diagnostics;
+    }
+
+    /**
+     * @return the number of requests granted from local leases without a storage call
+     */
+    public long getLocalGrants() {
+        return localGrants.sum();
+    }
+
+    /**
+     * @return the number of lease calls made to the delegate
+     */
+    public long getLeaseCalls() {
+        return leaseCalls.sum();
+    }
+
+    /**
+     * Returns the unused tokens of every lease to the delegate and drops the leases.
+     *
+     * <p>Call on shutdown so that this node's leased tokens are not lost.
+     *
+     * @return the number of tokens returned
+     */
+    public int releaseLeases() {
+        return release(Long.MAX_VALUE, getCurrentTime());
+    }
+
+    /**
+     * Returns the unused tokens of expired leases, so idle keys do not hold tokens.
+     */
+    private void releaseExpired(long currentTime) {
+        int returned = release(currentTime, currentTime);
+        if (returned > 0) {
+            logger.debug("Returned {} tokens from expired leases", returned);
+        }
+    }
+
+    /**
+     * Returns the tokens of leases expiring before {@code expiredBefore} and removes them.
+     * A lease whose tokens cannot be returned is kept.
+     */
+    private int release(long expiredBefore, long currentTime) {
+        int returned = 0;
+        for (Map.Entry<String, KeyLease> entry : leases.entrySet()) {
+            KeyLease holder = entry.getValue();
+            Lease lease = holder.current;
+            if ((lease != null && lease.expiresAt > expiredBefore) || !holder.renewing.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                lease = holder.current;
+                int unused = lease != null ? lease.drain() : 0;
+                if (unused > 0) {
+                    try {
+                        delegate.lease(entry.getKey(), lease.config, unused, 0, 0, currentTime);
+                    } catch (RuntimeException e) {
+                        // Kept, to be handed back by a later sweep or renewal
+                        lease.restore(unused);
+                        logger.warn("Failed to return leased tokens for key={}", entry.getKey(), e);
+                        continue;
+                    }
+                    returned += unused;
+                }
+                holder.current = null;
+                leases.remove(entry.getKey(), holder);
+            } finally {
+                holder.renewing.set(false);
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * A key's current lease and the state used to size the next one.
+     */
+    private static final class KeyLease {
+        private final AtomicBoolean renewing = new AtomicBoolean();
+
+        /** Read without the flag on the fast path; written only with it held. */
+        private volatile Lease current;
+
+        /** Guarded by {@code renewing}. */
+        private int size = 1;
+
+        /**
+         * Sizes the next lease from the rate at which the previous one was used.
+         */
+        int nextSize(Lease previous, int unused, long currentTime, int cap) {
+            if (previous == null) {
+                return Math.min(size, cap);
+            }
+            int used = previous.granted - unused;
+            long elapsed = Math.max(1L, Math.min(currentTime, previous.expiresAt) - previous.createdAt);
+            double tokensPerLease = (double) used / elapsed * (previous.expiresAt - previous.createdAt);
+            long target = (long) Math.ceil(tokensPerLease);
+            return (int) Math.max(1L, Math.min(Math.min(target, 2L * size), cap));
+        }
+    }
+
+    /**
+     * Tokens leased from the delegate, handed out with a lock-free counter.
+     */
+    private static final class Lease {
+        private final RateLimitConfig config;
+        private final int granted;
+        private final int limit;
+        private final int sharedRemaining;
+        private final long resetTime;
+        private final long createdAt;
+        private final long expiresAt;
+        private final AtomicInteger tokens;
+
+        Lease(RateLimitConfig config, LeaseResult grant, int tokens, long createdAt, long expiresAt) {
+            this.config = config;
+            this.granted = grant.getGranted();
+            this.limit = grant.getLimit();
+            this.sharedRemaining = grant.getRemaining();
+            this.resetTime = grant.getResetTime();
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.tokens = new AtomicInteger(tokens);
+        }
+
+        /**
+         * Takes {@code permits} tokens if available.
+         *
+         * @return the tokens left afterwards, or -1 if there were not enough
+         */
+        int tryTake(int permits) {
+            int current;
+            do {
+                current = tokens.get();
+                if (current < permits) {
+                    return -1;
+                }
+            } while (!tokens.compareAndSet(current, current - permits));
+            return current - permits;
+        }
+
+        /**
+         * Takes every remaining token.
+         */
+        int drain() {
+            return tokens.getAndSet(0);
+        }
+
+        /**
+         * Puts back tokens taken by {@link #drain()}.
+         */
+        void restore(int drained) {
+            tokens.addAndGet(drained);
+        }
+    }
+}
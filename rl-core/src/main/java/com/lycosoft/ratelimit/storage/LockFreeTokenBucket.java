@@ -0,0 +1,271 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.algorithm.TokenBucketAlgorithm;
+import com.lycosoft.ratelimit.spi.LeaseResult;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Token bucket state packed into one {@code long} and updated with a compare-and-set,
+ * so concurrent acquires on one key retry instead of blocking each other.
+ *
+ * <p>A bucket is two consecutive {@code long}s of an array: the state word and the
+ * bucket's origin (the time it was created, in milliseconds). Instead of a token
+ * count and a last refill time, the state word holds the time at which the bucket was
+ * (or will be) empty, as the bits of a {@code double} in milliseconds since the
+ * origin. The tokens available at time {@code t} are then
+ * {@code min(capacity, (t - emptyAt) × refillRate)}: refill is implied by the clock,
+ * and consuming {@code n} tokens moves {@code emptyAt} later by {@code n / refillRate}.
+ * Keeping it relative to the origin keeps sub-microsecond precision.
+ *
+ * <p>Decisions are those of {@link TokenBucketAlgorithm}: a new bucket is full, a
+ * request is allowed if the available tokens cover it, reservations may take the
+ * bucket into debt. A denied acquire does not write at all.
+ *
+ * <p><b>Thread Safety:</b> All operations are atomic. The array must be safely
+ * published after {@link #init} (for example through a concurrent map or a lock).
+ *
+ * @since 1.1.0
+ */
+public final class LockFreeTokenBucket {
+
+    /** Longs per bucket. */
+    public static final int WORDS = 2;
+
+    private static final VarHandle STATE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private LockFreeTokenBucket() {
+    }
+
+    /**
+     * Creates a full bucket in a new array.
+     *
+     * @param algorithm the bucket's capacity and refill rate
+     * @param currentTime the current time in milliseconds
+     * @return the bucket, at offset 0
+     */
+    public static long[] create(TokenBucketAlgorithm algorithm, long currentTime) {
+        long[] bucket = new long[WORDS];
+        init(bucket, 0, algorithm, currentTime);
+        return bucket;
+    }
+
+    /**
+     * Writes a full bucket at {@code offset}.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param currentTime the current time in milliseconds
+     */
+    public static void init(long[] bucket, int offset, TokenBucketAlgorithm algorithm, long currentTime) {
+        bucket[offset + 1] = currentTime;
+        bucket[offset] = Double.doubleToRawLongBits(-algorithm.getCapacity() / algorithm.getRefillRate());
+    }
+
+    /**
+     * Consumes {@code permits} tokens if available, as {@link TokenBucketAlgorithm#tryConsume}.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param permits the number of tokens required (must be positive)
+     * @param currentTime the current time in milliseconds
+     * @return the tokens available before consuming; the request is allowed if at
+     *         least {@code permits}
+     */
+    public static double tryConsume(long[] bucket, int offset, TokenBucketAlgorithm algorithm, int permits,
+                                    long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double emptyAt = Double.longBitsToDouble(bits);
+            double available = Math.min(capacity, (now - emptyAt) * refillRate);
+            if (available < permits) {
+                return available;
+            }
+            // Refill up to capacity, then take the permits
+            double next = Math.max(emptyAt, now - capacity / refillRate) + permits / refillRate;
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return available;
+            }
+        }
+    }
+
+    /**
+     * Books {@code permits} tokens if they are available within {@code maxWaitMillis},
+     * as {@link TokenBucketAlgorithm#reserve}.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param permits the number of tokens to reserve (at most the capacity)
+     * @param maxWaitMillis the longest acceptable wait, in milliseconds
+     * @param currentTime the current time in milliseconds
+     * @return when the tokens are available, as {@link TokenBucketAlgorithm#availableAt}
+     */
+    public static long reserve(long[] bucket, int offset, TokenBucketAlgorithm algorithm, int permits,
+                               long maxWaitMillis, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        double capacity = algorithm.getCapacity();
+        if (permits > capacity) {
+            throw new IllegalArgumentException("tokensRequired cannot exceed capacity");
+        }
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double emptyAt = Double.longBitsToDouble(bits);
+            double available = Math.min(capacity, (now - emptyAt) * refillRate);
+            if (!algorithm.canReserve(available, permits, maxWaitMillis)) {
+                return algorithm.availableAt(false, available, permits, currentTime);
+            }
+            double next = Math.max(emptyAt, now - capacity / refillRate) + permits / refillRate;
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return algorithm.availableAt(true, available - permits, permits, currentTime);
+            }
+        }
+    }
+
+    /**
+     * Takes back {@code returned} tokens and leases between {@code minPermits} and
+     * {@code maxPermits}, as {@link TokenBucketAlgorithm#lease}.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param returned unused tokens of an earlier lease (non-negative)
+     * @param minPermits the fewest tokens worth leasing (non-negative)
+     * @param maxPermits the most tokens to lease (at least {@code minPermits})
+     * @param currentTime the current time in milliseconds
+     * @return the lease result
+     */
+    public static LeaseResult lease(long[] bucket, int offset, TokenBucketAlgorithm algorithm, int returned,
+                                    int minPermits, int maxPermits, long currentTime) {
+        if (returned < 0 || minPermits < 0 || maxPermits < minPermits) {
+            throw new IllegalArgumentException("invalid lease: returned=" + returned
+                    + ", min=" + minPermits + ", max=" + maxPermits);
+        }
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double available = Math.min(capacity,
+                    (now - Double.longBitsToDouble(bits)) * refillRate + returned);
+            int granted = algorithm.leaseGrant(available, minPermits, maxPermits);
+            if (granted < 0 && returned == 0) {
+                return algorithm.toLeaseResult(false, 0, available, minPermits, currentTime);
+            }
+            double tokens = granted >= 0 ? available - granted : available;
+            double next = now - tokens / refillRate;
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return algorithm.toLeaseResult(granted >= 0, Math.max(0, granted), tokens, minPermits, currentTime);
+            }
+        }
+    }
+
+    /**
+     * Returns consumed tokens to the bucket, which never exceeds capacity.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param permits the number of tokens to return
+     * @param currentTime the current time in milliseconds
+     * @return the tokens available after the refund
+     */
+    public static double refund(long[] bucket, int offset, TokenBucketAlgorithm algorithm, int permits,
+                                long currentTime) {
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double next = Math.max(Double.longBitsToDouble(bits) - permits / refillRate, now - capacity / refillRate);
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return Math.min(capacity, (now - next) * refillRate);
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code max} tokens, fractions included, as far as they are available.
+     *
+     * @return the tokens taken
+     */
+    static double take(long[] bucket, int offset, TokenBucketAlgorithm algorithm, double max, long currentTime) {
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double emptyAt = Double.longBitsToDouble(bits);
+            double taken = Math.min(max, Math.min(capacity, (now - emptyAt) * refillRate));
+            if (taken <= 0) {
+                return 0;
+            }
+            double next = Math.max(emptyAt, now - capacity / refillRate) + taken / refillRate;
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Adds up to {@code tokens} tokens, fractions included, as far as the bucket has room.
+     *
+     * @return the tokens added
+     */
+    static double put(long[] bucket, int offset, TokenBucketAlgorithm algorithm, double tokens, long currentTime) {
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - bucket[offset + 1];
+        while (true) {
+            long bits = (long) STATE.getVolatile(bucket, offset);
+            double available = Math.min(capacity, (now - Double.longBitsToDouble(bits)) * refillRate);
+            double added = Math.min(tokens, capacity - available);
+            if (added <= 0) {
+                return 0;
+            }
+            double next = now - (available + added) / refillRate;
+            if (STATE.compareAndSet(bucket, offset, bits, Double.doubleToRawLongBits(next))) {
+                return added;
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens available at {@code currentTime}, without taking any.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @param algorithm the bucket's capacity and refill rate
+     * @param currentTime the current time in milliseconds
+     * @return the available tokens, fractions included
+     */
+    public static double available(long[] bucket, int offset, TokenBucketAlgorithm algorithm, long currentTime) {
+        double emptyAt = Double.longBitsToDouble((long) STATE.getVolatile(bucket, offset));
+        return Math.min(algorithm.getCapacity(), (currentTime - bucket[offset + 1] - emptyAt) * algorithm.getRefillRate());
+    }
+
+    /**
+     * Returns the time at which the bucket was or will be empty, in milliseconds.
+     *
+     * @param bucket the array holding the bucket
+     * @param offset the offset of the bucket's state word
+     * @return the empty time, rounded up
+     */
+    public static long emptyAt(long[] bucket, int offset) {
+        double emptyAt = Double.longBitsToDouble((long) STATE.getVolatile(bucket, offset));
+        return bucket[offset + 1] + (long) Math.ceil(emptyAt);
+    }
+}
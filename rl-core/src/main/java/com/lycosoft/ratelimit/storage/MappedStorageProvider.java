@@ -0,0 +1,756 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.algorithm.FixedWindowAlgorithm;
+import com.lycosoft.ratelimit.algorithm.SlidingWindowAlgorithm;
+import com.lycosoft.ratelimit.algorithm.TokenBucketAlgorithm;
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import com.lycosoft.ratelimit.util.MurmurHash3;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link StorageProvider} whose state lives in a memory-mapped file, shared by every
+ * process on the host that opens the same file.
+ *
+ * <p>Suitable for several JVMs on one host that must enforce their limits together,
+ * for example per-client limits of services behind one network interface, without a
+ * round trip to Redis. The state is off-heap, so it adds nothing for the garbage
+ * collector to trace, and it outlives the processes that use it.
+ *
+ * <p><b>Layout:</b> A 4 KB header followed by a fixed number of 32-byte slots, forming
+ * an open-addressing table with linear probing. A slot holds the key's identity (61
+ * bits of a SipHash-1-3 of the key under a secret kept in the header, plus the
+ * algorithm), one word of state, and the {@link IdleState#rule rule} of the limit
+ * that last used the key. Each
+ * algorithm's state is packed into its single word and updated with a compare-and-set
+ * through a {@link VarHandle} view of the mapped buffer, so decisions are atomic across
+ * threads and processes alike:
+ * <ul>
+ *   <li>Token bucket: the time the bucket was or will be empty, as in {@link LockFreeTokenBucket}</li>
+ *   <li>Sliding window: the window number (modulo 2<sup>24</sup>) and both counts, of 20 bits each</li>
+ *   <li>Fixed window: the window number and the count</li>
+ * </ul>
+ * A state word of zero is new state. Keys themselves are not stored, so two keys whose
+ * hashes collide share their limits; the chance is below 10<sup>-6</sup> for a million
+ * live keys.
+ *
+ * <p><b>Reclamation:</b> A slot is stale once its state is equivalent to new state
+ * under its rule: a bucket that has refilled, windows whose counts have aged out.
+ * Sweeps reclaim stale slots in three steps: the state word is marked as being
+ * reclaimed with a
+ * compare-and-set, the slot becomes a tombstone, and the state word is marked as
+ * reclaimed, a value no state takes, so that a process which looked the slot up
+ * before cannot write to the tombstone. A process that meets a slot being reclaimed
+ * finishes the reclamation itself, so a process dying mid-sweep leaves no slot stuck.
+ * Inserts reuse reclaimed tombstones, claiming the identity and then clearing the
+ * state word. A process that finds its slot no longer holds its key after writing the
+ * state undoes the write and looks the key up again. Each process
+ * sweeps {@value #SWEEP_CHUNK} slots every {@value #SWEEP_INTERVAL} acquires, the
+ * processes taking turns through a cursor in the header; {@link #cleanUp()} sweeps the
+ * whole table.
+ *
+ * <p><b>Header:</b> The first process to open the file sizes it and writes the header
+ * under an exclusive file lock, writing the magic number only once the rest of the
+ * header is on disk. A header without the magic number is left over from an
+ * initialization that did not complete and is written again; one with a bad checksum
+ * or a size that does not match the file's is rejected. An existing file keeps its
+ * number of slots, whatever the number requested.
+ *
+ * <p><b>Limitations:</b> The table does not grow: size it with room to spare for the
+ * live keys, as probing slows down when the table is nearly full and an insert into a
+ * full table fails with a {@link StorageException}. Sliding window limits are at most
+ * {@value #MAX_WINDOW_COUNT} requests. Reservations, leases and counters are not
+ * supported. Whoever can read the file can learn the hash secret, so it should only be
+ * readable by the processes sharing it.
+ *
+ * <p><b>Clock:</b> The processes must share a clock, {@link TimeSource#system()} unless
+ * another {@link TimeSource} is given.
+ *
+ * @since 1.1.0
+ */
+public class MappedStorageProvider implements StorageProvider {
+
+    /** "RLSTATE1", written last when the file is initialized. */
+    static final long MAGIC = 0x524C_5354_4154_4531L;
+    static final long VERSION = 2;
+    static final int HEADER_BYTES = 4096;
+    static final int SLOT_BYTES = 32;
+    static final int MAX_SLOTS = 1 << 25;
+
+    /** Largest sliding window count that fits the state word. */
+    static final int MAX_WINDOW_COUNT = (1 << 20) - 1;
+
+    // Header words
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int K0_OFFSET = 24;
+    private static final int K1_OFFSET = 32;
+    private static final int ORIGIN_OFFSET = 40;
+    private static final int CHECKSUM_OFFSET = 48;
+    private static final int CURSOR_OFFSET = 56;
+    private static final int LIVE_OFFSET = 64;
+    private static final int HEADER_WORDS = 9;
+
+    // Slot words
+    private static final int ID = 0;
+    private static final int STATE = 8;
+    private static final int RULE = 16;
+
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -8;
+    private static final long FRESH = 0;
+    private static final long RECLAIMING = -1;
+    private static final long RECLAIMED = -2;
+
+    private static final long TAG_MASK = 7;
+    private static final int TOKEN_BUCKET = 1;
+    private static final int SLIDING_WINDOW = 2;
+    private static final int FIXED_WINDOW = 3;
+
+    private static final long WINDOW_MASK = (1L << 24) - 1;
+
+    /** Acquires between two sweeps of a chunk, per process. */
+    private static final int SWEEP_INTERVAL = 1024;
+    /** Slots per sweep chunk. */
+    private static final int SWEEP_CHUNK = 256;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // File locks are held by the JVM, so opens within one process must not overlap
+    private static final Object OPEN_LOCK = new Object();
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int mask;
+    private final long k0;
+    private final long k1;
+    private final long origin;
+    private final TimeSource timeSource;
+    private final AtomicInteger acquires = new AtomicInteger();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder sweeps = new LongAdder();
+
+    /**
+     * Opens or creates a shared state file on the system clock.
+     *
+     * @param file the file shared by the processes
+     * @param slots the number of slots of a new file, rounded up to a power of two
+     */
+    public MappedStorageProvider(Path file, int slots) {
+        this(file, slots, TimeSource.system());
+    }
+
+    /**
+     * Opens or creates a shared state file on the given clock.
+     *
+     * @param file the file shared by the processes
+     * @param slots the number of slots of a new file, rounded up to a power of two
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     */
+    public MappedStorageProvider(Path file, int slots, TimeSource timeSource) {
+        if (slots <= 0 || slots > MAX_SLOTS) {
+            throw new IllegalArgumentException("slots must be between 1 and " + MAX_SLOTS);
+        }
+        this.file = Objects.requireNonNull(file, "file cannot be null");
+        this.timeSource = Objects.requireNonNull(timeSource, "timeSource cannot be null");
+        this.buffer = open(file, Math.max(2, Integer.highestOneBit(slots - 1) << 1), timeSource);
+        this.mask = (int) get(SLOTS_OFFSET) - 1;
+        this.k0 = get(K0_OFFSET);
+        this.k1 = get(K1_OFFSET);
+        this.origin = get(ORIGIN_OFFSET);
+    }
+
+    private static MappedByteBuffer open(Path file, int slots, TimeSource timeSource) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header;
+            synchronized (OPEN_LOCK) {
+                try (FileLock lock = channel.lock()) {
+                    header = readHeader(channel, file);
+                    if (header == null) {
+                        header = initialize(channel, slots, timeSource.currentTimeMillis());
+                    }
+                }
+            }
+            long size = HEADER_BYTES + header.getLong(SLOTS_OFFSET) * SLOT_BYTES;
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new StorageException("Cannot open shared state file " + file, e);
+        }
+    }
+
+    /**
+     * Reads and checks the header of an initialized file.
+     *
+     * @return the header, or null if the file has not been initialized completely
+     */
+    private static ByteBuffer readHeader(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size < HEADER_BYTES) {
+            throw new StorageException(file + " is not a shared state file");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_WORDS * Long.BYTES).order(ByteOrder.nativeOrder());
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new StorageException("Unexpected end of shared state file " + file);
+            }
+        }
+        long magic = header.getLong(MAGIC_OFFSET);
+        if (magic == 0) {
+            return null;
+        }
+        if (magic != MAGIC) {
+            throw new StorageException(file + " is not a shared state file");
+        }
+        if (header.getLong(VERSION_OFFSET) != VERSION) {
+            throw new StorageException("Unsupported version " + header.getLong(VERSION_OFFSET) + " of " + file);
+        }
+        long slots = header.getLong(SLOTS_OFFSET);
+        if (header.getLong(CHECKSUM_OFFSET) != checksum(header)
+                || Long.bitCount(slots) != 1 || slots > MAX_SLOTS || size != HEADER_BYTES + slots * SLOT_BYTES) {
+            throw new StorageException("Corrupt header in shared state file " + file);
+        }
+        return header;
+    }
+
+    /**
+     * Sizes the file and writes a new header, the magic number last. Requires the file
+     * lock.
+     */
+    private static ByteBuffer initialize(FileChannel channel, int slots, long origin) throws IOException {
+        // Discard what an incomplete initialization left; nobody has mapped it
+        channel.truncate(0);
+        write(channel, ByteBuffer.allocate(1), HEADER_BYTES + (long) slots * SLOT_BYTES - 1);
+
+        SecureRandom random = new SecureRandom();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_WORDS * Long.BYTES).order(ByteOrder.nativeOrder());
+        header.putLong(VERSION_OFFSET, VERSION)
+            .putLong(SLOTS_OFFSET, slots)
+            .putLong(K0_OFFSET, random.nextLong())
+            .putLong(K1_OFFSET, random.nextLong())
+            .putLong(ORIGIN_OFFSET, origin);
+        header.putLong(CHECKSUM_OFFSET, checksum(header));
+        write(channel, header.duplicate(), 0);
+        channel.force(true);
+
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        write(channel, header.duplicate().limit(Long.BYTES), 0);
+        channel.force(true);
+        return header;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    private static long checksum(ByteBuffer header) {
+        long checksum = 0;
+        for (int offset = VERSION_OFFSET; offset <= ORIGIN_OFFSET; offset += Long.BYTES) {
+            checksum = MurmurHash3.fmix64(checksum ^ header.getLong(offset));
+        }
+        return checksum;
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return timeSource.currentTimeMillis();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    /**
+     * Decides with a compare-and-set on the key's state word in the shared file.
+     */
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        if ((acquires.incrementAndGet() & (SWEEP_INTERVAL - 1)) == 0) {
+            sweep((long) LONGS.getAndAdd(buffer, CURSOR_OFFSET, (long) SWEEP_CHUNK), SWEEP_CHUNK, currentTime);
+        }
+        long rule = IdleState.rule(config);
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> acquireTokenBucket(key,
+                    new TokenBucketAlgorithm(config.getCapacity(), config.getRefillRate()), rule, permits,
+                    currentTime);
+            case SLIDING_WINDOW -> acquireSlidingWindow(key,
+                    new SlidingWindowAlgorithm(config.getRequests(), config.getWindowMillis()), config.getRequests(),
+                    rule, permits, currentTime);
+            case FIXED_WINDOW -> acquireFixedWindow(key,
+                    new FixedWindowAlgorithm(Math.max(1, (int) (config.getWindowMillis() / 1000))),
+                    config.getRequests(), rule, permits, currentTime);
+        };
+    }
+
+    /**
+     * Refills and consumes as {@link LockFreeTokenBucket#tryConsume} does, a new bucket
+     * being full.
+     */
+    private AcquireResult acquireTokenBucket(String key, TokenBucketAlgorithm algorithm, long rule,
+                                             int permits, long currentTime) {
+        long id = id(key, TOKEN_BUCKET);
+        double capacity = algorithm.getCapacity();
+        double refillRate = algorithm.getRefillRate();
+        double now = currentTime - origin;
+        int base = slot(id, rule);
+        while (true) {
+            long bits = get(base + STATE);
+            if (bits == RECLAIMING || bits == RECLAIMED) {
+                base = reclaimed(base, id, rule);
+                continue;
+            }
+            double emptyAt = bits == FRESH ? Double.NEGATIVE_INFINITY : Double.longBitsToDouble(bits);
+            double available = Math.min(capacity, (now - emptyAt) * refillRate);
+            if (available < permits) {
+                return algorithm.toResult(false, available, permits, currentTime);
+            }
+            double next = Math.max(emptyAt, now - capacity / refillRate) + permits / refillRate;
+            long nextBits = Double.doubleToRawLongBits(next);
+            // +0.0 would read as a new bucket
+            long written = nextBits == FRESH ? Double.doubleToRawLongBits(-0.0) : nextBits;
+            if (cas(base + STATE, bits, written)) {
+                if (holds(base, id, bits, written)) {
+                    return algorithm.toResult(true, available - permits, permits, currentTime);
+                }
+                base = slot(id, rule);
+            }
+        }
+    }
+
+    /**
+     * Rotates the windows and counts the permits if the weighted estimate allows, as
+     * {@link SlidingWindowAlgorithm#tryConsume} does. A window that another process has
+     * already rotated into is counted against as it is.
+     */
+    private AcquireResult acquireSlidingWindow(String key, SlidingWindowAlgorithm algorithm, int limit,
+                                               long rule, int permits, long currentTime) {
+        if (limit > MAX_WINDOW_COUNT) {
+            throw new IllegalArgumentException("requests must be at most " + MAX_WINDOW_COUNT
+                    + " for a sliding window in a shared state file");
+        }
+        long id = id(key, SLIDING_WINDOW);
+        long windowSize = algorithm.getWindowSizeMs();
+        long currentWindowStart = algorithm.windowStart(currentTime);
+        long window = (currentWindowStart / windowSize + 1) & WINDOW_MASK;
+        int base = slot(id, rule);
+        while (true) {
+            long state = get(base + STATE);
+            if (state == RECLAIMING || state == RECLAIMED) {
+                base = reclaimed(base, id, rule);
+                continue;
+            }
+            long stored = state >>> 40;
+            long ahead = (stored - window) & WINDOW_MASK;
+            int previous = (int) (state >>> 20) & MAX_WINDOW_COUNT;
+            int current = (int) state & MAX_WINDOW_COUNT;
+            long start = currentWindowStart;
+            long next = window;
+            if (state != FRESH && ahead != 0 && ahead < WINDOW_MASK >>> 1) {
+                start += ahead * windowSize;
+                next = stored;
+            } else if (state == FRESH || ahead != 0) {
+                previous = state != FRESH && ahead == WINDOW_MASK ? current : 0;
+                current = 0;
+            }
+
+            boolean allowed = algorithm.allows(
+                    algorithm.estimateCount(previous, current, currentWindowStart, currentTime), permits);
+            if (allowed) {
+                current += permits;
+            }
+            long nextState = next << 40 | (long) previous << 20 | current;
+            if (nextState == state || cas(base + STATE, state, nextState)) {
+                if (holds(base, id, state, nextState)) {
+                    return algorithm.toResult(allowed, previous, current, start, currentTime);
+                }
+                base = slot(id, rule);
+            }
+        }
+    }
+
+    /**
+     * Counts the permits in the current window if they fit the limit, as
+     * {@link FixedWindowAlgorithm#tryAcquire} does. A window that another process has
+     * already moved on to is counted against as it is.
+     */
+    private AcquireResult acquireFixedWindow(String key, FixedWindowAlgorithm algorithm, int limit, long rule,
+                                             int permits, long currentTime) {
+        long id = id(key, FIXED_WINDOW);
+        long windowNumber = algorithm.windowNumber(currentTime);
+        int base = slot(id, rule);
+        while (true) {
+            long state = get(base + STATE);
+            if (state == RECLAIMING || state == RECLAIMED) {
+                base = reclaimed(base, id, rule);
+                continue;
+            }
+            long stored = (state >>> 32) - 1;
+            int count = (int) state;
+            if (state == FRESH || stored < windowNumber) {
+                stored = windowNumber;
+                count = 0;
+            }
+
+            boolean allowed = (long) count + permits <= limit;
+            if (allowed) {
+                count += permits;
+            }
+            long nextState = (stored + 1) << 32 | (count & 0xFFFF_FFFFL);
+            if (nextState == state || cas(base + STATE, state, nextState)) {
+                if (holds(base, id, state, nextState)) {
+                    return algorithm.toResult(allowed, stored, count, limit);
+                }
+                base = slot(id, rule);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the key's identity, inserting it if needed, with its rule set.
+     *
+     * <p>The rule is written before the state is read, and a sweep decides from the
+     * state it then marks as being reclaimed: a sweep either sees the acquire's state, or
+     * marks the slot before the acquire's compare-and-set, which then fails.
+     */
+    private int slot(long id, long rule) {
+        int base = findOrInsert(id);
+        if (get(base + RULE) != rule) {
+            set(base + RULE, rule);
+        }
+        return base;
+    }
+
+    /**
+     * Returns whether the slot at {@code base} still holds the key after its state word
+     * was set from {@code expected} to {@code value}. If it does not, the slot was
+     * reclaimed since it was looked up, and the write is undone: a tombstone gets its
+     * reclaimed mark back, another key's slot its previous state.
+     */
+    private boolean holds(int base, long id, long expected, long value) {
+        long current = get(base + ID);
+        if (current == id) {
+            return true;
+        }
+        if (value != expected) {
+            cas(base + STATE, value, current == TOMBSTONE ? RECLAIMED : expected);
+        }
+        return false;
+    }
+
+    /**
+     * Finishes the reclamation of a slot the key was in, and returns its new slot.
+     */
+    private int reclaimed(int base, long id, long rule) {
+        finishReclaim(base, id);
+        return slot(id, rule);
+    }
+
+    /**
+     * Returns the offset of the key's slot, or -1 if it has none.
+     */
+    private int find(long id) {
+        int index = home(id);
+        for (int probes = 0; probes <= mask; probes++) {
+            int base = HEADER_BYTES + index * SLOT_BYTES;
+            long current = get(base + ID);
+            if (current == id) {
+                return base;
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the key's slot, claiming the first reusable tombstone or
+     * empty slot of its probe sequence if it has none.
+     *
+     * <p>Slots never become empty again, so a key is always found before the first empty
+     * slot of its sequence. Two processes inserting one key claim the same slot, and the
+     * one whose compare-and-set fails finds the key on its next probe. Only if a sweep
+     * frees a slot ahead of the key at that moment can the key briefly get a second
+     * slot, which goes stale and is reclaimed.
+     */
+    private int findOrInsert(long id) {
+        while (true) {
+            int index = home(id);
+            int free = -1;
+            for (int probes = 0; probes <= mask; probes++) {
+                int base = HEADER_BYTES + index * SLOT_BYTES;
+                long current = get(base + ID);
+                if (current == id) {
+                    // Finishes a claim that another process has not finished yet
+                    cas(base + STATE, RECLAIMED, FRESH);
+                    return base;
+                }
+                if (current == EMPTY) {
+                    if (free < 0) {
+                        free = base;
+                    }
+                    break;
+                }
+                // A tombstone can be reused once its reclamation has marked the state
+                if (current == TOMBSTONE && free < 0 && get(base + STATE) == RECLAIMED) {
+                    free = base;
+                }
+                index = (index + 1) & mask;
+            }
+            if (free < 0) {
+                throw new StorageException("Shared state file " + file + " is full (" + (mask + 1) + " slots)");
+            }
+            long expected = get(free + ID) == TOMBSTONE ? TOMBSTONE : EMPTY;
+            if ((expected == EMPTY || get(free + STATE) == RECLAIMED) && cas(free + ID, expected, id)) {
+                LONGS.getAndAdd(buffer, LIVE_OFFSET, 1L);
+                cas(free + STATE, RECLAIMED, FRESH);
+                return free;
+            }
+        }
+    }
+
+    /**
+     * Reclaims the slot at {@code base} if it is stale.
+     *
+     * @return whether this call reclaimed it
+     */
+    private boolean reclaimIfStale(int base, long currentTime) {
+        long id = get(base + ID);
+        if (id == EMPTY) {
+            return false;
+        }
+        if (id == TOMBSTONE) {
+            // Left by a reclamation that did not finish, or written by a process that
+            // looked the slot up before it was reclaimed and has not undone the write
+            long state = get(base + STATE);
+            if (state != RECLAIMED && get(base + ID) == TOMBSTONE) {
+                cas(base + STATE, state, RECLAIMED);
+            }
+            return false;
+        }
+        long state = get(base + STATE);
+        if (state == RECLAIMING) {
+            finishReclaim(base, id);
+            return false;
+        }
+        if (state == RECLAIMED) {
+            // Left by a claim that did not finish
+            cas(base + STATE, RECLAIMED, FRESH);
+            return false;
+        }
+        if (!isIdle((int) (id & TAG_MASK), state, get(base + RULE), currentTime)
+                || !cas(base + STATE, state, RECLAIMING)) {
+            return false;
+        }
+        finishReclaim(base, id);
+        return true;
+    }
+
+    /**
+     * Returns whether a state word is equivalent to new state under {@code rule}, as
+     * {@link IdleState#idleAt} tells for the state unpacked.
+     */
+    private boolean isIdle(int tag, long state, long rule, long currentTime) {
+        if (state == FRESH) {
+            return true;
+        }
+        if (rule == 0) {
+            return false;
+        }
+        return switch (tag) {
+            case TOKEN_BUCKET -> IdleState.idleAt(StateSnapshot.LOCK_FREE_TOKEN_BUCKET, state, origin, rule)
+                    <= currentTime;
+            case SLIDING_WINDOW -> {
+                // The stored window relative to the current one, which may be ahead
+                long window = currentTime / rule + 1;
+                long behind = (window - (state >>> 40)) & WINDOW_MASK;
+                long start = (window - 1 - (behind > WINDOW_MASK >>> 1 ? behind - WINDOW_MASK - 1 : behind)) * rule;
+                long counts = (state >>> 20 & MAX_WINDOW_COUNT) << 32 | (state & MAX_WINDOW_COUNT);
+                yield IdleState.idleAt(StateSnapshot.SLIDING_WINDOW, start, counts, rule) <= currentTime;
+            }
+            case FIXED_WINDOW -> IdleState.idleAt(StateSnapshot.FIXED_WINDOW, (state >>> 32) - 1,
+                    state & 0xFFFF_FFFFL, rule) <= currentTime;
+            default -> false;
+        };
+    }
+
+    /**
+     * Turns a slot marked as being reclaimed into a reusable tombstone. Idempotent, so
+     * that any process can finish a reclamation.
+     */
+    private void finishReclaim(int base, long id) {
+        if (get(base + STATE) == RECLAIMING && cas(base + ID, id, TOMBSTONE)) {
+            LONGS.getAndAdd(buffer, LIVE_OFFSET, -1L);
+        }
+        cas(base + STATE, RECLAIMING, RECLAIMED);
+    }
+
+    /**
+     * Reclaims the stale slots among {@code count} slots from index {@code start}.
+     *
+     * @return the number of slots reclaimed
+     */
+    private long sweep(long start, int count, long currentTime) {
+        long swept = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((start + i) & mask);
+            if (reclaimIfStale(HEADER_BYTES + index * SLOT_BYTES, currentTime)) {
+                swept++;
+            }
+        }
+        reclaimed.add(swept);
+        sweeps.increment();
+        return swept;
+    }
+
+    /**
+     * Returns a key's identity for the algorithm: never empty or a tombstone.
+     */
+    private long id(String key, int tag) {
+        return StateTable.sipHash13(k0, k1, key) & ~TAG_MASK | tag;
+    }
+
+    private int home(long id) {
+        return (int) (id >>> 32) & mask;
+    }
+
+    private long get(int offset) {
+        return (long) LONGS.getVolatile(buffer, offset);
+    }
+
+    private void set(int offset, long value) {
+        LONGS.setVolatile(buffer, offset, value);
+    }
+
+    private boolean cas(int offset, long expected, long value) {
+        return LONGS.compareAndSet(buffer, offset, expected, value);
+    }
+
+    @Override
+    public void reset(String key) {
+        for (int tag = TOKEN_BUCKET; tag <= FIXED_WINDOW; tag++) {
+            long id = id(key, tag);
+            int base = find(id);
+            while (base >= 0) {
+                long state = get(base + STATE);
+                if (state == RECLAIMED) {
+                    // Claimed but not yet written to: already new state
+                    break;
+                }
+                if (state == RECLAIMING || cas(base + STATE, state, RECLAIMING)) {
+                    finishReclaim(base, id);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reports the first of the key's token bucket, sliding window and fixed window
+     * states that is not yet equivalent to new state. Limits and remaining capacity
+     * depend on the configuration and are reported as 0, as are a token bucket's usage
+     * and a sliding window's reset time; a token bucket's reset time is the time at
+     * which it runs empty.
+     */
+    @Override
+    public Optional<RateLimitState> getState(String key) {
+        long currentTime = getCurrentTime();
+        for (int tag = TOKEN_BUCKET; tag <= FIXED_WINDOW; tag++) {
+            int base = find(id(key, tag));
+            if (base < 0) {
+                continue;
+            }
+            long state = get(base + STATE);
+            long rule = get(base + RULE);
+            if (state == RECLAIMING || state == RECLAIMED || isIdle(tag, state, rule, currentTime)) {
+                continue;
+            }
+            return Optional.of(switch (tag) {
+                case TOKEN_BUCKET -> new SimpleRateLimitState(
+                    0,  // limit unknown
+                    0,  // remaining unknown
+                    origin + (long) Math.ceil(Double.longBitsToDouble(state)),
+                    0   // usage unknown
+                );
+                case SLIDING_WINDOW -> new SimpleRateLimitState(
+                    0,  // limit unknown
+                    0,  // remaining unknown
+                    0,  // reset time unknown
+                    (int) state & MAX_WINDOW_COUNT
+                );
+                default -> new SimpleRateLimitState(
+                    0,  // limit unknown
+                    0,  // remaining unknown
+                    (state >>> 32) * rule,  // end of the stored window
+                    (int) state
+                );
+            });
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reports the slots of the file and how many hold a key, and the sweeps of this
+     * process and the slots they reclaimed.
+     */
+    @Override
+    public Map<String, Object> getDiagnostics() {
+        Map<String, Object> diagnostics = new HashMap<>();
+        long live = get(LIVE_OFFSET);
+
+        diagnostics.put("type", "Mapped");
+        diagnostics.put("healthy", true);
+        diagnostics.put("file", file.toString());
+        diagnostics.put("slots", mask + 1);
+        diagnostics.put("states.count", live);
+        diagnostics.put("slots.load", (double) live / (mask + 1));
+        diagnostics.put("sweep.sweeps", sweeps.sum());
+        diagnostics.put("sweep.reclaimed", reclaimed.sum());
+        return diagnostics;
+    }
+
+    /**
+     * Reclaims every stale slot of the file, instead of waiting for acquires to sweep
+     * them chunk by chunk.
+     *
+     * @return the number of slots reclaimed
+     */
+    public long cleanUp() {
+        return sweep(0, mask + 1, getCurrentTime());
+    }
+}
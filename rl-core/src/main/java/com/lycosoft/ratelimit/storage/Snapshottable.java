@@ -0,0 +1,24 @@
+package com.lycosoft.ratelimit.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Local storage whose state can be written to a {@link StateSnapshot}, to be restored
+ * by a new instance after a restart.
+ *
+ * @see StateSnapshotter
+ * @since 1.1.0
+ */
+public interface Snapshottable {
+
+    /**
+     * Writes the current state to {@code file}, replacing the previous snapshot only
+     * once the new one is complete. Requests are served meanwhile; state they change
+     * while the snapshot is being written may or may not be included.
+     *
+     * @param file the snapshot file
+     * @return the number of records written
+     * @throws StorageException if the snapshot cannot be written
+     */
+    long writeSnapshot(Path file);
+}
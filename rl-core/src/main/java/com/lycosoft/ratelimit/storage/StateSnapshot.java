@@ -0,0 +1,521 @@
+package com.lycosoft.ratelimit.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Binary snapshot of local rate limit state, for warm restarts of
+ * {@link InMemoryStorageProvider} and the Caffeine provider.
+ *
+ * <p>A snapshot is a header, a stream of records grouped into sections, and an index
+ * of the sections. A record is the state of one key under one algorithm: a tag, the
+ * key's SipHash-1-3 under the secret in the header, optionally the key itself, and
+ * state words whose meaning depends on the tag and the provider. Times in the state
+ * words are on the writing provider's clock, which the header records along with the
+ * wall clock, so that a provider whose clock has moved differently (a monotonic clock
+ * that restarted with the process, say) can shift them by {@link #clockDelta}.
+ *
+ * <p>A {@link Writer} streams records through a direct buffer into a temporary file
+ * and moves it into place once complete, so a process that dies while writing leaves
+ * the previous snapshot intact. A snapshot is read by memory-mapping the file: records
+ * are decoded in place, by {@link #section} for providers that restore a group of keys
+ * at a time, or by {@link #take} for providers that restore each key on first use.
+ * Snapshots are at most 2 GB, in native byte order, and meant for the host that wrote
+ * them.
+ *
+ * <p><b>Thread Safety:</b> A snapshot may be read by any number of threads. A
+ * {@link Writer} is not thread-safe.
+ *
+ * @since 1.1.0
+ */
+public final class StateSnapshot {
+
+    /** Record tag of token bucket state. */
+    public static final int TOKEN_BUCKET = 1;
+    /** Record tag of sliding window state. */
+    public static final int SLIDING_WINDOW = 2;
+    /** Record tag of fixed window state. */
+    public static final int FIXED_WINDOW = 3;
+    /** Record tag of counter state. */
+    public static final int COUNTER = 4;
+    /** Record tag of {@link LockFreeTokenBucket} state. */
+    public static final int LOCK_FREE_TOKEN_BUCKET = 5;
+    /** Record tag of striped token bucket state. */
+    public static final int STRIPED_TOKEN_BUCKET = 6;
+
+    /** Clock differences below this are taken as the noise of reading two clocks. */
+    static final long CLOCK_TOLERANCE_MILLIS = 1000;
+
+    /** "RLSNAP01" */
+    private static final long MAGIC = 0x524C_534E_4150_3031L;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private static final VarHandle INDEX = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int TAKEN = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int kind;
+    private final long time;
+    private final long wallTime;
+    private final long k0;
+    private final long k1;
+    private final long records;
+    private final long[] sections;
+    private volatile int[] index;
+
+    private StateSnapshot(MappedByteBuffer buffer, int kind, long time, long wallTime, long k0, long k1,
+                          long records, long[] sections) {
+        this.buffer = buffer;
+        this.kind = kind;
+        this.time = time;
+        this.wallTime = wallTime;
+        this.k0 = k0;
+        this.k1 = k1;
+        this.records = records;
+        this.sections = sections;
+    }
+
+    /**
+     * Maps a snapshot and checks that it is complete.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws StorageException if the file cannot be read or is not a complete snapshot
+     */
+    public static StateSnapshot open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new StorageException(file + " is not a state snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION) {
+                throw new StorageException(file + " is not a state snapshot");
+            }
+            long indexOffset = buffer.getLong(56);
+            if (indexOffset < HEADER_BYTES || indexOffset > size - Integer.BYTES - Long.BYTES) {
+                throw new StorageException("Incomplete state snapshot " + file);
+            }
+            int count = buffer.getInt((int) indexOffset);
+            if (count < 0 || indexOffset + Integer.BYTES + (count + 2L) * Long.BYTES != size
+                    || buffer.getLong((int) size - Long.BYTES) != MAGIC) {
+                throw new StorageException("Incomplete state snapshot " + file);
+            }
+            long[] sections = new long[count + 1];
+            for (int i = 0; i <= count; i++) {
+                sections[i] = buffer.getLong((int) indexOffset + Integer.BYTES + i * Long.BYTES);
+            }
+            return new StateSnapshot(buffer, buffer.getInt(12), buffer.getLong(16), buffer.getLong(24),
+                    buffer.getLong(32), buffer.getLong(40), buffer.getLong(48), sections);
+        } catch (IOException e) {
+            throw new StorageException("Cannot read state snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Starts writing a snapshot to {@code file}, through a temporary file next to it.
+     *
+     * @param file the snapshot file
+     * @param kind identifies the writing provider, for readers to check
+     * @param time the current time on the provider's clock
+     * @param k0 the first half of the key hash secret
+     * @param k1 the second half of the key hash secret
+     * @return the writer
+     * @throws StorageException if the temporary file cannot be created
+     */
+    public static Writer write(Path file, int kind, long time, long k0, long k1) {
+        return new Writer(file, kind, time, k0, k1);
+    }
+
+    /**
+     * Identifies the provider that wrote the snapshot.
+     */
+    public int kind() {
+        return kind;
+    }
+
+    /**
+     * Returns the time the snapshot was written, on the writing provider's clock.
+     */
+    public long time() {
+        return time;
+    }
+
+    /**
+     * Returns the number of records.
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * Returns the number of sections.
+     */
+    public int sections() {
+        return sections.length - 1;
+    }
+
+    /**
+     * Returns the first half of the key hash secret.
+     */
+    public long k0() {
+        return k0;
+    }
+
+    /**
+     * Returns the second half of the key hash secret.
+     */
+    public long k1() {
+        return k1;
+    }
+
+    /**
+     * Returns how far a clock reading {@code now} has moved beyond the snapshot's clock,
+     * given the wall clock time that passed since the snapshot: zero for the same clock,
+     * and the amount to add to the snapshot's times otherwise. Differences under a
+     * second are taken as zero.
+     *
+     * @param now the current time on the restoring provider's clock
+     * @return the shift to apply to times in the records
+     */
+    public long clockDelta(long now) {
+        long elapsed = Math.max(0, System.currentTimeMillis() - wallTime);
+        long delta = now - (time + elapsed);
+        return Math.abs(delta) < CLOCK_TOLERANCE_MILLIS ? 0 : delta;
+    }
+
+    /**
+     * Returns a cursor over the records of a section.
+     */
+    public Cursor section(int section) {
+        Objects.checkIndex(section, sections.length - 1);
+        return new Cursor(buffer, sections[section], sections[section + 1]);
+    }
+
+    /**
+     * Returns a cursor over all records.
+     */
+    public Cursor all() {
+        return new Cursor(buffer, sections[0], sections[sections.length - 1]);
+    }
+
+    /**
+     * Copies the state words of the record for {@code key} and {@code tag}, unless it
+     * has already been taken. Each record is taken at most once.
+     *
+     * <p>The first call builds an index of the keyed records, of four bytes per slot
+     * at half load.
+     *
+     * @param key the key
+     * @param tag the record tag
+     * @param words receives the state words
+     * @return whether the record was found and not taken before
+     */
+    public boolean take(String key, int tag, long[] words) {
+        int[] index = this.index;
+        if (index == null) {
+            index = buildIndex();
+        }
+        long hash = StateTable.sipHash13(k0, k1, key);
+        int mask = index.length - 1;
+        for (int i = home(hash, mask); ; i = (i + 1) & mask) {
+            int entry = (int) INDEX.getVolatile(index, i);
+            if (entry == 0) {
+                return false;
+            }
+            if (entry == TAKEN) {
+                continue;
+            }
+            int offset = entry - 1;
+            if (buffer.getLong(offset + 8) == hash && buffer.getShort(offset) == tag && keyEquals(offset, key)) {
+                if (!INDEX.compareAndSet(index, i, entry, TAKEN)) {
+                    return false;
+                }
+                int count = Math.min(words.length, buffer.getShort(offset + 2));
+                int start = offset + RECORD_HEADER_BYTES + 2 * buffer.getInt(offset + 4);
+                for (int w = 0; w < count; w++) {
+                    words[w] = buffer.getLong(start + w * Long.BYTES);
+                }
+                return true;
+            }
+        }
+    }
+
+    private synchronized int[] buildIndex() {
+        if (index != null) {
+            return index;
+        }
+        int capacity = Integer.highestOneBit((int) Math.max(2, Math.min(records * 2, 1 << 30)) - 1) << 1;
+        int[] index = new int[capacity];
+        int mask = capacity - 1;
+        Cursor cursor = all();
+        while (cursor.next()) {
+            if (cursor.keyLength() == 0) {
+                continue;
+            }
+            int i = home(cursor.hash(), mask);
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = cursor.offset + 1;
+        }
+        this.index = index;
+        return index;
+    }
+
+    private boolean keyEquals(int offset, String key) {
+        int length = buffer.getInt(offset + 4);
+        if (length != key.length()) {
+            return false;
+        }
+        int start = offset + RECORD_HEADER_BYTES;
+        for (int i = 0; i < length; i++) {
+            if (buffer.getChar(start + 2 * i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int home(long hash, int mask) {
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    /**
+     * Reads records in place, one at a time.
+     */
+    public static final class Cursor {
+        private final ByteBuffer buffer;
+        private final int end;
+        private int next;
+        private int offset = -1;
+
+        private Cursor(ByteBuffer buffer, long start, long end) {
+            this.buffer = buffer;
+            this.next = (int) start;
+            this.end = (int) end;
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return whether there was one
+         */
+        public boolean next() {
+            if (next >= end) {
+                return false;
+            }
+            offset = next;
+            next += RECORD_HEADER_BYTES + 2 * buffer.getInt(offset + 4) + words() * Long.BYTES;
+            return true;
+        }
+
+        /** Returns the record's tag. */
+        public int tag() {
+            return buffer.getShort(offset);
+        }
+
+        /** Returns the number of state words. */
+        public int words() {
+            return buffer.getShort(offset + 2);
+        }
+
+        /** Returns the length of the key, zero if the record has only its hash. */
+        public int keyLength() {
+            return buffer.getInt(offset + 4);
+        }
+
+        /** Returns the key's hash. */
+        public long hash() {
+            return buffer.getLong(offset + 8);
+        }
+
+        /** Returns the key. */
+        public String key() {
+            char[] key = new char[keyLength()];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = buffer.getChar(offset + RECORD_HEADER_BYTES + 2 * i);
+            }
+            return new String(key);
+        }
+
+        /** Returns a state word. */
+        public long word(int word) {
+            Objects.checkIndex(word, words());
+            return buffer.getLong(offset + RECORD_HEADER_BYTES + 2 * keyLength() + word * Long.BYTES);
+        }
+    }
+
+    /**
+     * Streams records into a new snapshot.
+     */
+    public static final class Writer implements Closeable {
+        private final Path file;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.nativeOrder());
+        private final int kind;
+        private final long time;
+        private final long k0;
+        private final long k1;
+        private long[] sections = new long[8];
+        private int sectionCount;
+        private long position = HEADER_BYTES;
+        private long records;
+        private boolean committed;
+
+        private Writer(Path file, int kind, long time, long k0, long k1) {
+            this.file = file;
+            this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            this.kind = kind;
+            this.time = time;
+            this.k0 = k0;
+            this.k1 = k1;
+            try {
+                this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new StorageException("Cannot write state snapshot " + temporary, e);
+            }
+            section();
+        }
+
+        /**
+         * Ends the current section and starts the next. A writer starts in section 0.
+         */
+        public void section() {
+            if (sectionCount == sections.length) {
+                sections = Arrays.copyOf(sections, sections.length * 2);
+            }
+            sections[sectionCount++] = position;
+        }
+
+        /**
+         * Returns the key hash used by snapshots with this writer's secret.
+         */
+        public long hash(String key) {
+            return StateTable.sipHash13(k0, k1, key);
+        }
+
+        /**
+         * Appends a record.
+         *
+         * @param tag the record tag
+         * @param key the key, or null to store only its hash
+         * @param hash the key's hash, as {@link #hash}
+         * @param words the state words
+         * @param count the number of state words
+         */
+        public void append(int tag, String key, long hash, long[] words, int count) {
+            int keyLength = key == null ? 0 : key.length();
+            int bytes = RECORD_HEADER_BYTES + 2 * keyLength + count * Long.BYTES;
+            if (bytes > BUFFER_BYTES) {
+                throw new IllegalArgumentException("key too long for a snapshot record: " + keyLength);
+            }
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            buffer.putShort((short) tag).putShort((short) count).putInt(keyLength).putLong(hash);
+            for (int i = 0; i < keyLength; i++) {
+                buffer.putChar(key.charAt(i));
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(words[i]);
+            }
+            position += bytes;
+            records++;
+        }
+
+        /**
+         * Returns the number of records appended.
+         */
+        public long records() {
+            return records;
+        }
+
+        /**
+         * Writes the section index and header, then moves the snapshot into place.
+         *
+         * @throws StorageException if writing fails; the previous snapshot is kept
+         */
+        public void commit() {
+            // Section starts, the end of the records, and the magic number again
+            long indexOffset = position;
+            int indexBytes = Integer.BYTES + (sectionCount + 2) * Long.BYTES;
+            if (buffer.remaining() < indexBytes) {
+                flush();
+            }
+            buffer.putInt(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                buffer.putLong(sections[i]);
+            }
+            buffer.putLong(indexOffset);
+            buffer.putLong(MAGIC);
+            position += indexBytes;
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            header.putLong(MAGIC).putInt(VERSION).putInt(kind)
+                .putLong(time).putLong(System.currentTimeMillis())
+                .putLong(k0).putLong(k1)
+                .putLong(records).putLong(indexOffset)
+                .flip();
+            try {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+                channel.close();
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                committed = true;
+            } catch (IOException e) {
+                throw new StorageException("Cannot write state snapshot " + file, e);
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                long at = position - buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    at += channel.write(buffer, at);
+                }
+            } catch (IOException e) {
+                throw new StorageException("Cannot write state snapshot " + temporary, e);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Discards the temporary file unless the snapshot was committed.
+         */
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                throw new StorageException("Cannot remove " + temporary, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.lycosoft.ratelimit.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes snapshots of local storage to a file, optionally on a period, and once more
+ * when closed.
+ *
+ * <p>Call {@link #close()} on shutdown, so that the next instance restores the latest
+ * state; periodic snapshots bound what is lost if the process dies without closing.
+ * A failed snapshot is logged and leaves the previous one in place.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe; snapshots never overlap.
+ *
+ * @since 1.1.0
+ */
+public class StateSnapshotter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateSnapshotter.class);
+
+    private final Snapshottable storage;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a snapshotter that writes only when closed.
+     *
+     * @param storage the storage to snapshot
+     * @param file the snapshot file
+     */
+    public StateSnapshotter(Snapshottable storage, Path file) {
+        this(storage, file, null);
+    }
+
+    /**
+     * Creates a snapshotter that also writes on a daemon thread every {@code interval}.
+     *
+     * @param storage the storage to snapshot
+     * @param file the snapshot file
+     * @param interval the time between snapshots, or null for none
+     */
+    public StateSnapshotter(Snapshottable storage, Path file, Duration interval) {
+        this.storage = Objects.requireNonNull(storage, "storage cannot be null");
+        this.file = Objects.requireNonNull(file, "file cannot be null");
+        if (interval == null) {
+            this.scheduler = null;
+            return;
+        }
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rl-state-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalMillis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot now.
+     *
+     * @return the number of records written
+     * @throws StorageException if the snapshot cannot be written
+     */
+    public synchronized long snapshot() {
+        long start = System.nanoTime();
+        long records = storage.writeSnapshot(file);
+        logger.debug("Wrote {} records to {} in {} ms", records, file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return records;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            logger.warn("State snapshot to {} failed, previous snapshot kept: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last one.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshotQuietly();
+    }
+}
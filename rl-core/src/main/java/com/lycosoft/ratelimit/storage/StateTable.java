@@ -0,0 +1,866 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.spi.TimeSource;
+
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing table of fixed-size primitive slots, used by
+ * {@link InMemoryStorageProvider}.
+ *
+ * <p>Each slot is four {@code long}s in one array: two words identifying the key and
+ * two words of state whose meaning depends on the slot's tag (the algorithm). Keys
+ * themselves are not kept: a slot is identified by a 64-bit SipHash-1-3 of the key
+ * under a random per-table secret, plus the key's {@link String#hashCode()}, its
+ * length and the tag. Accidental collisions are negligible (below 10<sup>-15</sup>
+ * for 10 million keys), and since the secret is unknown outside the process, keys
+ * cannot be crafted to collide with another key or to build long probe chains.
+ *
+ * <p>The table is split into segments, each with its own {@link StampedLock} and
+ * linear-probing array that doubles when three quarters full. Callers update slots
+ * in place under the segment's write lock; readers may use optimistic reads.
+ * Removal shifts the following entries back, so there are no tombstones.
+ *
+ * <p>Each segment also has a {@link TimingWheel} of the slots scheduled to expire,
+ * each with the {@link IdleState#rule rule} of its configuration. A slot is scheduled
+ * for when its state becomes equivalent to new state, and expires then unless it has
+ * been updated since; a slot that has been is scheduled again, for when its updated
+ * state will be. Expiry is amortized over inserts: a segment advances its wheel before
+ * inserting a slot.
+ *
+ * <p>A table may have a byte budget, split evenly between the segments, against which
+ * each slot is charged its {@link #entryBytes(int) estimated size}, striped token bucket
+ * slots including their stripes. A segment that is full
+ * admits a new slot TinyLFU-style: a {@link FrequencySketch} counts how often each
+ * hash is looked up, and the new slot replaces a victim only if its key is more
+ * frequent. Victims are sampled from the idle slots that come due first in the
+ * timing wheel, that is from the state closest to being equivalent to new state, and
+ * state that already is goes before anything else. A key that is not admitted is
+ * charged to the segment's overflow slot for its algorithm instead, which every key
+ * not admitted to the segment shares, so that such keys are limited together rather
+ * than each seeing new state. Overflow slots are not charged against the budget.
+ *
+ * <p>A table may be restored from a {@link StateSnapshot} with one section per
+ * segment, taking over the snapshot's hash secret so that the slots keep their hashes.
+ * Each segment restores its section when it is first used, so a large snapshot does
+ * not hold up startup, and leaves out the state that has become equivalent to new
+ * state since the snapshot.
+ *
+ * <p><b>Thread Safety:</b> Slots may only be accessed under their segment's lock.
+ * {@link LockFreeTokenBucket} slots are updated by compare-and-set under the read
+ * lock, which only excludes the writers that move slots. {@link StripedTokenBucket}s
+ * are held in an array beside the slots and updated under an optimistic read, which
+ * their users validate afterwards, so that a bucket removed meanwhile is noticed.
+ */
+final class StateTable {
+
+    /** Tag of token bucket slots: A = tokens (double bits), B = last refill time. */
+    static final int TOKEN_BUCKET = 1;
+    /** Tag of sliding window slots: A = current window start, B = previous and current counts. */
+    static final int SLIDING_WINDOW = 2;
+    /** Tag of fixed window slots: A = window number, B = request count. */
+    static final int FIXED_WINDOW = 3;
+    /** Tag of counter slots: A = value, B = expiry time. */
+    static final int COUNTER = 4;
+    /** Tag of {@link LockFreeTokenBucket} slots: A = state word, B = origin. */
+    static final int LOCK_FREE_TOKEN_BUCKET = 5;
+    /**
+     * Tag of {@link StripedTokenBucket} slots: A = time at which a restored bucket is full
+     * again, B = stripes. The bucket itself is held beside the slot, in {@link Segment#buckets}.
+     */
+    static final int STRIPED_TOKEN_BUCKET = 6;
+
+    /** Longs per slot. */
+    static final int WORDS = 4;
+    /** Offset of the first state word in a slot. */
+    static final int A = 2;
+    /** Offset of the second state word in a slot. */
+    static final int B = 3;
+
+    private static final int HASH = 0;
+    private static final int TAG_BITS = 3;
+    private static final int TAG_MASK = (1 << TAG_BITS) - 1;
+
+    /** Hash of the overflow slots, which no key hashes to in practice. */
+    static final long OVERFLOW_HASH = 0x6F76_6572_666C_6F77L;
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 8;
+    /** Idle slots compared when choosing a victim. */
+    private static final int SAMPLE = 4;
+    /** Wheel entries looked at when choosing a victim. */
+    private static final int MAX_VISITS = 16;
+
+    /** Number of segments, and of snapshot sections holding slots. */
+    static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    final long k0;
+    final long k1;
+
+    // Restores pending sections of a snapshot
+    private final TimeSource timeSource;
+    private final long clockDelta;
+
+    StateTable() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a table that holds at most {@code maxBytes} of {@link #entryBytes estimated}
+     * state, or any amount if {@link Long#MAX_VALUE}.
+     */
+    StateTable(long maxBytes) {
+        this(maxBytes, null, TimeSource.system());
+    }
+
+    /**
+     * Creates a table as {@link #StateTable(long)}, whose segments restore their
+     * section of {@code snapshot} when first used.
+     *
+     * @param snapshot a snapshot with {@link #SEGMENTS} sections or more, or null
+     * @param timeSource the clock of the restored state
+     */
+    StateTable(long maxBytes, StateSnapshot snapshot, TimeSource timeSource) {
+        if (snapshot != null) {
+            this.k0 = snapshot.k0();
+            this.k1 = snapshot.k1();
+            this.clockDelta = snapshot.clockDelta(timeSource.currentTimeMillis());
+        } else {
+            SecureRandom random = new SecureRandom();
+            this.k0 = random.nextLong();
+            this.k1 = random.nextLong();
+            this.clockDelta = 0;
+        }
+        this.timeSource = timeSource;
+        long segmentBytes = maxBytes == Long.MAX_VALUE ? Long.MAX_VALUE : maxBytes >> SEGMENT_BITS;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentBytes);
+            if (snapshot != null) {
+                segments[i].pending = snapshot.section(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated heap footprint of a slot with the given tag: its four
+     * {@code long}s at the highest load of the table (three quarters), plus its
+     * {@link TimingWheel} entry unless it is a counter.
+     */
+    static long entryBytes(int tag) {
+        long slot = WORDS * Long.BYTES * 4 / 3;
+        return tag == COUNTER ? slot : slot + 4 * Long.BYTES;
+    }
+
+    /**
+     * Returns the estimated heap footprint of the slot at {@code base} of {@code slots}:
+     * its {@link #entryBytes(int)}, plus its bucket if it is a striped token bucket.
+     */
+    static long entryBytes(long[] slots, int base) {
+        int tag = tag(slots[base + 1]);
+        long bytes = entryBytes(tag);
+        return tag == STRIPED_TOKEN_BUCKET ? bytes + StripedTokenBucket.bytes((int) slots[base + B]) : bytes;
+    }
+
+    /**
+     * Returns the keyed hash of a key, which selects its segment and home slot.
+     */
+    long hash(String key) {
+        return sipHash13(k0, k1, key);
+    }
+
+    /**
+     * Returns the second identifying word of a key's slot for the given tag; never zero.
+     */
+    static long fingerprint(String key, int tag) {
+        return (long) key.hashCode() << 32 | (long) (key.length() & 0x1FFF_FFFF) << TAG_BITS | tag;
+    }
+
+    /**
+     * Returns the fingerprint of a segment's overflow slot for an algorithm, whose length
+     * field no key of a sensible length has.
+     */
+    static long overflowFingerprint(int tag) {
+        return OVERFLOW_HASH << 32 | (long) 0x1FFF_FFFF << TAG_BITS | tag;
+    }
+
+    /**
+     * Returns whether a slot is an overflow slot.
+     */
+    static boolean isOverflow(long hash, long fingerprint) {
+        return hash == OVERFLOW_HASH && fingerprint == overflowFingerprint(tag(fingerprint));
+    }
+
+    /**
+     * Returns the tag stored in a fingerprint.
+     */
+    static int tag(long fingerprint) {
+        return (int) fingerprint & TAG_MASK;
+    }
+
+    /**
+     * Returns the index of the segment holding a hash. Several segments are locked at
+     * once only in index order.
+     */
+    static int segmentIndex(long hash) {
+        return (int) (hash >>> (64 - SEGMENT_BITS));
+    }
+
+    Segment segment(long hash) {
+        return segmentAt(segmentIndex(hash));
+    }
+
+    Segment segmentAt(int index) {
+        Segment segment = segments[index];
+        if (segment.pending != null) {
+            restore(segment);
+        }
+        return segment;
+    }
+
+    Segment[] segments() {
+        return segments;
+    }
+
+    private void restore(Segment segment) {
+        long stamp = segment.lock.writeLock();
+        try {
+            StateSnapshot.Cursor pending = segment.pending;
+            if (pending != null) {
+                segment.restore(pending, clockDelta, timeSource.currentTimeMillis());
+                segment.pending = null;
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Restores every segment still waiting for its section of a snapshot.
+     */
+    void restoreAll() {
+        for (Segment segment : segments) {
+            if (segment.pending != null) {
+                restore(segment);
+            }
+        }
+    }
+
+    /**
+     * Appends a record per slot to {@code writer}, one section per segment. Each
+     * segment's slots and timing wheel are copied under its read lock and written
+     * after releasing it.
+     *
+     * <p>Records are keyed by the slot's hash, with four words: the fingerprint, the
+     * two state words and the rule (zero for counters, whose second state word is their
+     * expiry time). Striped token buckets are recorded as the time at which they are
+     * full again at {@code now}, and their stripes.
+     */
+    void snapshot(StateSnapshot.Writer writer, long now) {
+        long[] words = new long[4];
+        for (int s = 0; s < segments.length; s++) {
+            Segment segment = segments[s];
+            if (segment.pending != null) {
+                restore(segment);
+            }
+            if (s > 0) {
+                writer.section();
+            }
+            long[] slots;
+            long[] entries;
+            StripedTokenBucket[] buckets;
+            long stamp = segment.lock.readLock();
+            try {
+                slots = segment.slots.clone();
+                entries = segment.wheel.entries();
+                buckets = segment.buckets == null ? null : segment.buckets.clone();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+            for (int i = 0; buckets != null && i < buckets.length; i++) {
+                if (buckets[i] != null) {
+                    slots[i * WORDS + A] = buckets[i].fullAt(now);
+                }
+            }
+
+            // A slot may have a stale wheel entry besides its current one
+            BitSet written = new BitSet(slots.length / WORDS);
+            for (int i = 0; i < entries.length; i += 3) {
+                int base = Segment.find(slots, entries[i], entries[i + 1]);
+                if (base >= 0 && !written.get(base / WORDS)) {
+                    written.set(base / WORDS);
+                    append(writer, slots, base, entries[i + 2], words);
+                }
+            }
+            for (int base = 0; base < slots.length; base += WORDS) {
+                if (slots[base + 1] != 0 && tag(slots[base + 1]) == COUNTER) {
+                    append(writer, slots, base, 0, words);
+                }
+            }
+        }
+    }
+
+    private static void append(StateSnapshot.Writer writer, long[] slots, int base, long rule, long[] words) {
+        long fingerprint = slots[base + 1];
+        words[0] = fingerprint;
+        words[1] = slots[base + A];
+        words[2] = slots[base + B];
+        words[3] = rule;
+        writer.append(tag(fingerprint), null, slots[base + HASH], words, 4);
+    }
+
+    /**
+     * Returns the estimated bytes of the slots in use, read without locking.
+     */
+    long bytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of slots in use, read without locking once every segment has
+     * restored its snapshot section.
+     */
+    int size() {
+        restoreAll();
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Expires the due slots of every segment.
+     *
+     * @return the number of slots removed
+     */
+    long expire(long now) {
+        restoreAll();
+        long removed = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                removed += segment.advance(now);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the time from which the state of the slot at {@code base} of
+     * {@code slots} is equivalent to new state, as {@link IdleState#idleAt}.
+     */
+    static long idleAt(long[] slots, int base, long rule) {
+        return IdleState.idleAt(tag(slots[base + 1]), slots[base + A], slots[base + B], rule);
+    }
+
+    /**
+     * Removes every slot.
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                segment.pending = null;
+                segment.slots = new long[INITIAL_CAPACITY * WORDS];
+                segment.buckets = null;
+                segment.size = 0;
+                segment.bytes = 0;
+                segment.wheel.clear();
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * One lock and its linear-probing array.
+     */
+    static final class Segment implements TimingWheel.Expiry {
+        final StampedLock lock = new StampedLock();
+        final TimingWheel wheel = new TimingWheel();
+        final long maxBytes;
+        final FrequencySketch sketch;
+        long[] slots = new long[INITIAL_CAPACITY * WORDS];
+        // The buckets of striped token bucket slots, by slot index; null until the first
+        StripedTokenBucket[] buckets;
+        volatile int size;
+        volatile long bytes;
+
+        // Budget statistics, written under the write lock
+        volatile long evictions;
+        volatile long refusals;
+
+        private final long[] entry = new long[4];
+        private final long[] sample = new long[SAMPLE * 4];
+
+        // The section of a snapshot to restore on first use, or null
+        volatile StateSnapshot.Cursor pending;
+
+        // Expiry statistics, written under the write lock
+        volatile long expired;
+        volatile long sweeps;
+        volatile long sweepNanos;
+        volatile long maxSweepNanos;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.sketch = maxBytes == Long.MAX_VALUE ? null
+                    : new FrequencySketch((int) Math.min(maxBytes / entryBytes(TOKEN_BUCKET), Integer.MAX_VALUE));
+        }
+
+        /**
+         * Returns the offset of the slot for {@code (hash, fingerprint)} in
+         * {@link #slots}, or -1 if there is none.
+         */
+        int find(long hash, long fingerprint) {
+            return find(slots, hash, fingerprint);
+        }
+
+        /**
+         * As {@link #find(long, long)} on a given array, for optimistic readers that
+         * must read the slot from the same array they searched.
+         */
+        static int find(long[] slots, long hash, long fingerprint) {
+            int mask = slots.length / WORDS - 1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                int base = i * WORDS;
+                long stored = slots[base + 1];
+                if (stored == 0) {
+                    return -1;
+                }
+                if (stored == fingerprint && slots[base + HASH] == hash) {
+                    return base;
+                }
+            }
+        }
+
+        /**
+         * Returns the bucket of the striped token bucket slot for {@code (hash, fingerprint)},
+         * or null if there is no such slot or it has no bucket yet. Optimistic readers must
+         * validate their stamp after using the bucket.
+         */
+        StripedTokenBucket stripedBucket(long hash, long fingerprint) {
+            long[] slots = this.slots;
+            StripedTokenBucket[] buckets = this.buckets;
+            int base = find(slots, hash, fingerprint);
+            // Read racily, the arrays may be of different generations
+            return base >= 0 && buckets != null && base / WORDS < buckets.length ? buckets[base / WORDS] : null;
+        }
+
+        /**
+         * Returns the bucket of the striped token bucket slot at {@code base}, or null if
+         * it has none yet. Requires a lock.
+         */
+        StripedTokenBucket bucket(int base) {
+            return buckets == null ? null : buckets[base / WORDS];
+        }
+
+        /**
+         * Holds {@code bucket} beside the striped token bucket slot at {@code base}, until
+         * the slot is removed. Requires the write lock.
+         */
+        void attach(int base, StripedTokenBucket bucket) {
+            if (buckets == null) {
+                buckets = new StripedTokenBucket[slots.length / WORDS];
+            }
+            buckets[base / WORDS] = bucket;
+        }
+
+        /**
+         * Returns the offset of the slot for {@code (hash, fingerprint)}, or else of the
+         * overflow slot that the key is charged to if it was not admitted, or -1 if
+         * there is neither.
+         */
+        int findOrOverflow(long hash, long fingerprint) {
+            int base = find(hash, fingerprint);
+            return base >= 0 ? base : find(OVERFLOW_HASH, overflowFingerprint(tag(fingerprint)));
+        }
+
+        /**
+         * Returns the offset of the slot for {@code (hash, fingerprint)}, or the bitwise
+         * complement of the offset of a new zeroed slot if there was none. Requires the
+         * write lock.
+         */
+        int findOrInsert(long hash, long fingerprint) {
+            return findOrInsert(hash, fingerprint, 0);
+        }
+
+        /**
+         * As {@link #findOrInsert(long, long)}, storing {@code stripes} in a new striped
+         * token bucket slot so that the slot is charged for its bucket.
+         */
+        private int findOrInsert(long hash, long fingerprint, int stripes) {
+            int base = find(hash, fingerprint);
+            if (base >= 0) {
+                return base;
+            }
+            if ((size + 1) * 4L > (slots.length / WORDS) * 3L) {
+                resize(slots.length / WORDS * 2);
+            }
+            long[] slots = this.slots;
+            int mask = slots.length / WORDS - 1;
+            int i = (int) hash & mask;
+            while (slots[i * WORDS + 1] != 0) {
+                i = (i + 1) & mask;
+            }
+            base = i * WORDS;
+            slots[base + HASH] = hash;
+            slots[base + 1] = fingerprint;
+            if (tag(fingerprint) == STRIPED_TOKEN_BUCKET) {
+                slots[base + B] = stripes;
+            }
+            size++;
+            if (!isOverflow(hash, fingerprint)) {
+                bytes += entryBytes(slots, base);
+            }
+            return ~base;
+        }
+
+        /**
+         * As {@link #findOrInsert(long, long)}, first expiring the due slots if there is
+         * no slot for {@code (hash, fingerprint)} yet. If the budget does not admit the
+         * key, returns the overflow slot of its algorithm instead, as found or inserted.
+         * Requires the write lock.
+         */
+        int findOrInsert(long hash, long fingerprint, long now) {
+            return findOrInsert(hash, fingerprint, 0, entryBytes(tag(fingerprint)), now);
+        }
+
+        /**
+         * As {@link #findOrInsert(long, long, long)} for a striped token bucket slot,
+         * admitting the key only if its bucket of {@code stripes} fits the budget too. A new
+         * slot has no bucket yet. Requires the write lock.
+         */
+        int findOrInsertStriped(long hash, long fingerprint, int stripes, long now) {
+            long entryBytes = entryBytes(STRIPED_TOKEN_BUCKET) + StripedTokenBucket.bytes(stripes);
+            return findOrInsert(hash, fingerprint, stripes, entryBytes, now);
+        }
+
+        private int findOrInsert(long hash, long fingerprint, int stripes, long entryBytes, long now) {
+            int base = find(hash, fingerprint);
+            if (sketch != null) {
+                sketch.increment(hash);
+            }
+            if (base >= 0) {
+                return base;
+            }
+            advance(now);
+            if (bytes + entryBytes > maxBytes && !evict(hash, now)) {
+                refusals++;
+                // Keeps the shared slot frequent, so that admitting a key rarely evicts it
+                if (sketch != null) {
+                    sketch.increment(OVERFLOW_HASH);
+                }
+                return findOrInsert(OVERFLOW_HASH, overflowFingerprint(tag(fingerprint)), stripes);
+            }
+            return findOrInsert(hash, fingerprint, stripes);
+        }
+
+        /**
+         * Evicts an idle slot that is less valuable than a new slot for {@code hash}: a
+         * slot whose state is already equivalent to new state, or else the least frequent
+         * of a few slots that come due first. Requires the write lock.
+         *
+         * @return whether a slot was evicted
+         */
+        private boolean evict(long hash, long now) {
+            int candidate = sketch.frequency(hash);
+            int sampled = 0;
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int visits = 0; visits < MAX_VISITS && sampled < SAMPLE && wheel.poll(entry); visits++) {
+                int base = find(entry[0], entry[1]);
+                if (base < 0) {
+                    continue;
+                }
+                long idleAt = idleAt(base, entry[2], now);
+                if (idleAt > Math.max(now, TimingWheel.deadline(entry))) {
+                    // Updated since it was scheduled
+                    wheel.reschedule(entry, idleAt);
+                    continue;
+                }
+                int frequency = idleAt <= now ? -1 : sketch.frequency(entry[0]);
+                System.arraycopy(entry, 0, sample, sampled * 4, 4);
+                if (frequency < victimFrequency) {
+                    victim = sampled;
+                    victimFrequency = frequency;
+                }
+                sampled++;
+                if (frequency < 0) {
+                    break;
+                }
+            }
+
+            boolean evicted = victim >= 0 && victimFrequency < candidate;
+            for (int i = 0; i < sampled; i++) {
+                if (evicted && i == victim) {
+                    remove(find(sample[i * 4], sample[i * 4 + 1]));
+                    evictions++;
+                } else {
+                    wheel.offer(sample, i * 4);
+                }
+            }
+            return evicted;
+        }
+
+        /**
+         * Releases the write lock.
+         */
+        void unlockWrite(long stamp) {
+            lock.unlockWrite(stamp);
+        }
+
+        /**
+         * Releases a read or write lock.
+         */
+        void unlock(long stamp) {
+            lock.unlock(stamp);
+        }
+
+        /**
+         * Schedules the slot at {@code base}, whose state has been written, to expire
+         * once it is equivalent to new state under {@code rule}. Requires the write lock.
+         */
+        void expireWhenIdle(int base, long rule, long now) {
+            wheel.schedule(slots[base + HASH], slots[base + 1], rule, idleAt(base, rule, now), now);
+        }
+
+        /**
+         * As {@link StateTable#idleAt}, reading a striped token bucket from its stripes.
+         * Requires the write lock.
+         */
+        private long idleAt(int base, long rule, long now) {
+            StripedTokenBucket bucket = tag(slots[base + 1]) == STRIPED_TOKEN_BUCKET ? bucket(base) : null;
+            return bucket != null ? bucket.fullAt(now) : StateTable.idleAt(slots, base, rule);
+        }
+
+        /**
+         * Inserts the slots of a snapshot section written by {@link StateTable#snapshot},
+         * shifting their times by {@code clockDelta}, as far as the byte budget allows.
+         * Windows cannot be shifted by a fraction of their length, so they are dropped
+         * if the clock moved; expired counters and state equivalent to new state are
+         * dropped too. Requires the write lock.
+         */
+        void restore(StateSnapshot.Cursor cursor, long clockDelta, long now) {
+            while (cursor.next()) {
+                long hash = cursor.hash();
+                long fingerprint = cursor.word(0);
+                long a = cursor.word(1);
+                long b = cursor.word(2);
+                int tag = tag(fingerprint);
+                switch (tag) {
+                    case TOKEN_BUCKET, LOCK_FREE_TOKEN_BUCKET -> b += clockDelta;
+                    case STRIPED_TOKEN_BUCKET -> a += clockDelta;
+                    case COUNTER -> {
+                        b += clockDelta;
+                        if (b <= now) {
+                            continue;
+                        }
+                    }
+                    default -> {
+                        if (clockDelta != 0) {
+                            continue;
+                        }
+                    }
+                }
+                long rule = cursor.word(3);
+                long idleAt = tag == COUNTER ? Long.MAX_VALUE : IdleState.idleAt(tag, a, b, rule);
+                if (idleAt <= now) {
+                    continue;
+                }
+                long entryBytes = tag == STRIPED_TOKEN_BUCKET
+                        ? entryBytes(tag) + StripedTokenBucket.bytes((int) b) : entryBytes(tag);
+                if (bytes + entryBytes > maxBytes) {
+                    return;
+                }
+                int slot = findOrInsert(hash, fingerprint, tag == STRIPED_TOKEN_BUCKET ? (int) b : 0);
+                int base = slot < 0 ? ~slot : slot;
+                slots[base + A] = a;
+                slots[base + B] = b;
+                if (tag != COUNTER) {
+                    wheel.schedule(hash, fingerprint, rule, idleAt, now);
+                }
+            }
+        }
+
+        /**
+         * Advances the wheel to {@code now}, removing the slots that expired. Requires
+         * the write lock.
+         *
+         * @return the number of slots removed
+         */
+        int advance(long now) {
+            long start = System.nanoTime();
+            long before = expired;
+            if (!wheel.advance(now, this)) {
+                return 0;
+            }
+            long elapsed = System.nanoTime() - start;
+            sweeps++;
+            sweepNanos += elapsed;
+            maxSweepNanos = Math.max(maxSweepNanos, elapsed);
+            return (int) (expired - before);
+        }
+
+        /**
+         * Removes the slot if its state is equivalent to new state. Requires the write lock.
+         */
+        @Override
+        public long expire(long hash, long fingerprint, long rule, long now) {
+            int base = find(hash, fingerprint);
+            if (base < 0) {
+                return TimingWheel.DONE;
+            }
+            long idleAt = idleAt(base, rule, now);
+            if (idleAt > now) {
+                return idleAt;
+            }
+            remove(base);
+            expired++;
+            return TimingWheel.DONE;
+        }
+
+        /**
+         * Removes the slot at {@code base}, and its bucket if any, shifting back entries of
+         * the same probe run. Requires the write lock.
+         */
+        void remove(int base) {
+            long[] slots = this.slots;
+            StripedTokenBucket[] buckets = this.buckets;
+            if (!isOverflow(slots[base + HASH], slots[base + 1])) {
+                bytes -= entryBytes(slots, base);
+            }
+            int mask = slots.length / WORDS - 1;
+            int hole = base / WORDS;
+            for (int i = (hole + 1) & mask; slots[i * WORDS + 1] != 0; i = (i + 1) & mask) {
+                int home = (int) slots[i * WORDS + HASH] & mask;
+                // Entries whose home lies cyclically in (hole, i] stay where they are
+                boolean stays = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+                if (!stays) {
+                    System.arraycopy(slots, i * WORDS, slots, hole * WORDS, WORDS);
+                    if (buckets != null) {
+                        buckets[hole] = buckets[i];
+                    }
+                    hole = i;
+                }
+            }
+            int start = hole * WORDS;
+            for (int w = 0; w < WORDS; w++) {
+                slots[start + w] = 0;
+            }
+            if (buckets != null) {
+                buckets[hole] = null;
+            }
+            size--;
+        }
+
+        /**
+         * Removes every slot with the given tag whose state word {@code word} is at most
+         * {@code limit}. Requires the write lock.
+         *
+         * @return the number of slots removed
+         */
+        int removeExpired(int tag, int word, long limit) {
+            long[] old = slots;
+            int removed = 0;
+            for (int base = 0; base < old.length; base += WORDS) {
+                long fingerprint = old[base + 1];
+                if (fingerprint != 0 && tag(fingerprint) == tag && old[base + word] <= limit) {
+                    old[base + 1] = 0;
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                size -= removed;
+                bytes -= removed * entryBytes(tag);
+                rehash(old, old.length / WORDS);
+            }
+            return removed;
+        }
+
+        private void resize(int capacity) {
+            rehash(slots, capacity);
+        }
+
+        /**
+         * Reinserts the occupied slots of {@code old} into a new array of {@code capacity} slots.
+         */
+        private void rehash(long[] old, int capacity) {
+            long[] slots = new long[capacity * WORDS];
+            StripedTokenBucket[] oldBuckets = this.buckets;
+            StripedTokenBucket[] buckets = oldBuckets == null ? null : new StripedTokenBucket[capacity];
+            int mask = capacity - 1;
+            for (int base = 0; base < old.length; base += WORDS) {
+                if (old[base + 1] == 0) {
+                    continue;
+                }
+                int i = (int) old[base + HASH] & mask;
+                while (slots[i * WORDS + 1] != 0) {
+                    i = (i + 1) & mask;
+                }
+                System.arraycopy(old, base, slots, i * WORDS, WORDS);
+                if (buckets != null) {
+                    buckets[i] = oldBuckets[base / WORDS];
+                }
+            }
+            this.slots = slots;
+            this.buckets = buckets;
+        }
+    }
+
+    /**
+     * SipHash-1-3 of the key's UTF-16 code units, four per 64-bit word.
+     */
+    static long sipHash13(long k0, long k1, String key) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+
+        int length = key.length();
+        int end = length & ~3;
+        for (int i = 0; i < end; i += 4) {
+            long m = key.charAt(i)
+                | (long) key.charAt(i + 1) << 16
+                | (long) key.charAt(i + 2) << 32
+                | (long) key.charAt(i + 3) << 48;
+            v3 ^= m;
+            // One compression round
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+
+        // Last word: remaining code units and the length in the top byte
+        long m = (long) (length * 2) << 56;
+        for (int i = end, shift = 0; i < length; i++, shift += 16) {
+            m |= (long) key.charAt(i) << shift;
+        }
+        v3 ^= m;
+        v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+        v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+        v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+        v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        v0 ^= m;
+
+        // Three finalization rounds
+        v2 ^= 0xff;
+        for (int r = 0; r < 3; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+}
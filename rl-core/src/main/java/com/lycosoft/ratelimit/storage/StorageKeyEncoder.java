@@ -0,0 +1,219 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.util.MurmurHash3;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a limiter name and a resolved key into the key used by the storage provider.
+ *
+ * <p>Without encoding, two limiters whose keys resolve to the same value (for example
+ * the client IP) share state, and long keys such as JWT subjects are stored verbatim
+ * in every entry. The encodings are:
+ * <ul>
+ *   <li><b>{@link Mode#RAW}:</b> the resolved key unchanged, as in 1.0. This is the
+ *       migration setting for deployments that must keep their existing keys.</li>
+ *   <li><b>{@link Mode#NAMESPACED}:</b> {@code <limiterId>:<key>}.</li>
+ *   <li><b>{@link Mode#HASHED_64}:</b> {@code <limiterId>:<hash>}, the hash being the
+ *       first 64 bits of MurmurHash3_x64_128 of the key's UTF-8 bytes in 11 base64url
+ *       characters.</li>
+ *   <li><b>{@link Mode#HASHED_128}:</b> as {@code HASHED_64} with both halves of the
+ *       hash, in 22 characters.</li>
+ * </ul>
+ *
+ * <p>The limiter ID is 36 bits of the hash of the limiter name in 6 base64url
+ * characters, so every node derives the same ID without coordination. An encoder
+ * rejects a second limiter name whose ID collides with one it has already seen.
+ *
+ * <p>Hashed keys of different values collide with a probability of about
+ * {@code n² / 2^65} for {@code n} keys of one limiter with 64 bits (around 3 in a
+ * million for 10 million keys); colliding clients share a bucket. Use
+ * {@code HASHED_128} where that matters. All encoded keys use printable ASCII only,
+ * so they are one byte per character both on the heap and in Redis.
+ *
+ * <p>Changing the mode changes every storage key: existing state is not migrated, so
+ * limits start from a fresh state once after the switch.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe.
+ *
+ * @since 1.1.0
+ */
+public final class StorageKeyEncoder {
+
+    /**
+     * How keys are encoded.
+     */
+    public enum Mode {
+        /** The resolved key, unchanged (1.0 behavior). */
+        RAW,
+        /** The resolved key prefixed with the limiter ID. */
+        NAMESPACED,
+        /** A 64-bit hash of the resolved key prefixed with the limiter ID. */
+        HASHED_64,
+        /** A 128-bit hash of the resolved key prefixed with the limiter ID. */
+        HASHED_128
+    }
+
+    private static final char[] BASE64_URL =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final StorageKeyEncoder RAW = new StorageKeyEncoder(Mode.RAW);
+    private static final Namespace RAW_NAMESPACE = new Namespace(Mode.RAW, "");
+
+    private final Mode mode;
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    private final Map<String, String> limiterById = new ConcurrentHashMap<>();
+
+    private StorageKeyEncoder(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Returns an encoder for the given mode.
+     *
+     * @param mode the encoding mode
+     * @return the encoder
+     */
+    public static StorageKeyEncoder of(Mode mode) {
+        Objects.requireNonNull(mode, "mode cannot be null");
+        return mode == Mode.RAW ? RAW : new StorageKeyEncoder(mode);
+    }
+
+    /**
+     * Returns the encoder that leaves keys unchanged.
+     *
+     * @return the raw encoder
+     */
+    public static StorageKeyEncoder raw() {
+        return RAW;
+    }
+
+    /**
+     * @return the encoding mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Encodes a resolved key for a limiter.
+     *
+     * @param limiterName the limiter (configuration) name
+     * @param key the resolved key
+     * @return the storage key
+     * @throws IllegalStateException if the limiter's ID collides with another limiter's
+     */
+    public String encode(String limiterName, String key) {
+        return mode == Mode.RAW ? key : namespace(limiterName).encode(key);
+    }
+
+    /**
+     * Returns the namespace of a limiter, for encoding many keys without looking it up
+     * each time.
+     *
+     * @param limiterName the limiter (configuration) name
+     * @return the limiter's namespace
+     * @throws IllegalStateException if the limiter's ID collides with another limiter's
+     */
+    public Namespace namespace(String limiterName) {
+        Objects.requireNonNull(limiterName, "limiterName cannot be null");
+        if (mode == Mode.RAW) {
+            return RAW_NAMESPACE;
+        }
+        Namespace namespace = namespaces.get(limiterName);
+        if (namespace != null) {
+            return namespace;
+        }
+        return namespaces.computeIfAbsent(limiterName, name -> {
+            String id = limiterId(name);
+            String owner = limiterById.putIfAbsent(id, name);
+            if (owner != null && !owner.equals(name)) {
+                throw new IllegalStateException(
+                    "Limiters '" + owner + "' and '" + name + "' have the same storage key ID; rename one of them");
+            }
+            return new Namespace(mode, id);
+        });
+    }
+
+    /**
+     * Returns the 6-character ID of a limiter name.
+     *
+     * @param limiterName the limiter (configuration) name
+     * @return the limiter ID
+     */
+    public static String limiterId(String limiterName) {
+        char[] chars = new char[6];
+        appendBase64(MurmurHash3.hash64(limiterName) >>> 28, 36, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the low {@code bits} bits of {@code value} (a multiple of 6) as base64url
+     * characters, most significant first. 64-bit values are written as 66 bits.
+     */
+    private static void appendBase64(long value, int bits, char[] out, int offset) {
+        for (int shift = bits - 6; shift >= 0; shift -= 6) {
+            out[offset++] = BASE64_URL[(int) ((value >>> shift) & 63)];
+        }
+    }
+
+    /**
+     * The keys of one limiter.
+     *
+     * <p>{@link com.lycosoft.ratelimit.engine.BoundLimiter Bound limiters} hold their
+     * namespace so each request only encodes the key.
+     */
+    public static final class Namespace {
+        private final Mode mode;
+        private final String limiterId;
+        private final String prefix;
+
+        private Namespace(Mode mode, String limiterId) {
+            this.mode = mode;
+            this.limiterId = limiterId;
+            this.prefix = limiterId + ':';
+        }
+
+        /**
+         * @return the limiter ID, or an empty string for {@link Mode#RAW}
+         */
+        public String getLimiterId() {
+            return limiterId;
+        }
+
+        /**
+         * Encodes a resolved key.
+         *
+         * @param key the resolved key
+         * @return the storage key
+         */
+        public String encode(String key) {
+            switch (mode) {
+                case RAW:
+                    return key;
+                case NAMESPACED:
+                    return prefix.concat(key);
+                case HASHED_64: {
+                    char[] chars = new char[7 + 11];
+                    limiterId.getChars(0, 6, chars, 0);
+                    chars[6] = ':';
+                    appendBase64(MurmurHash3.hash64(key), 66, chars, 7);
+                    return new String(chars);
+                }
+                case HASHED_128: {
+                    long[] hash = MurmurHash3.hash128(key);
+                    char[] chars = new char[7 + 22];
+                    limiterId.getChars(0, 6, chars, 0);
+                    chars[6] = ':';
+                    appendBase64(hash[0], 66, chars, 7);
+                    appendBase64(hash[1], 66, chars, 18);
+                    return new String(chars);
+                }
+                default:
+                    throw new IllegalStateException("Unknown key encoding: " + mode);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.algorithm.TokenBucketAlgorithm;
+import com.lycosoft.ratelimit.util.MurmurHash3;
+
+/**
+ * A token bucket split into {@link LockFreeTokenBucket} stripes, in the manner of
+ * {@link java.util.concurrent.atomic.LongAdder}, for keys on which every thread of
+ * the node contends.
+ *
+ * <p>Each stripe holds an equal share of the capacity and refill rate, and sits on its
+ * own cache lines. A thread consumes from the stripe its ID maps to; if that stripe
+ * cannot cover the request, the request gathers tokens from all stripes, fractions
+ * included, and puts them back if the stripes together cannot cover it either. The
+ * total is therefore never more than the configured capacity and refill rate; under
+ * contention a request may be denied while another thread holds tokens it gathered
+ * but is about to put back.
+ *
+ * <p>Results report the remaining tokens estimated from the thread's own stripe.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe.
+ */
+final class StripedTokenBucket {
+
+    /** Longs per stripe: 128 bytes, so that no two stripes share a cache line. */
+    private static final int STRIDE = 16;
+
+    private final TokenBucketAlgorithm algorithm;
+    private final TokenBucketAlgorithm stripe;
+    private final int stripes;
+    private final long[] buckets;
+
+    StripedTokenBucket(TokenBucketAlgorithm algorithm, int stripes, long currentTime) {
+        this.algorithm = algorithm;
+        this.stripe = new TokenBucketAlgorithm(algorithm.getCapacity() / stripes, algorithm.getRefillRate() / stripes);
+        this.stripes = stripes;
+        this.buckets = new long[(stripes + 1) * STRIDE];
+        for (int i = 0; i < stripes; i++) {
+            LockFreeTokenBucket.init(buckets, offset(i), stripe, currentTime);
+        }
+    }
+
+    /**
+     * Consumes {@code permits} tokens if the stripes together have them.
+     *
+     * @return an estimate of the tokens available before consuming, which is at least
+     *         {@code permits} if and only if the request is allowed
+     */
+    double tryConsume(int permits, long currentTime) {
+        int home = homeStripe();
+        double local = LockFreeTokenBucket.tryConsume(buckets, offset(home), stripe, permits, currentTime);
+        if (local >= permits) {
+            return Math.max(permits, local * stripes);
+        }
+
+        // Borrow from the siblings, starting with our own stripe's fraction
+        double gathered = 0;
+        for (int i = 0; i < stripes && permits - gathered > 1e-9; i++) {
+            int index = offset((home + i) % stripes);
+            gathered += LockFreeTokenBucket.take(buckets, index, stripe, permits - gathered, currentTime);
+        }
+        if (permits - gathered <= 1e-9) {
+            return permits;
+        }
+        put(home, gathered, currentTime);
+        return gathered;
+    }
+
+    /**
+     * Returns consumed tokens, filling the thread's own stripe first.
+     *
+     * @return an estimate of the tokens available after the refund
+     */
+    double refund(int permits, long currentTime) {
+        int home = homeStripe();
+        put(home, permits, currentTime);
+        return Math.min(algorithm.getCapacity(),
+                LockFreeTokenBucket.available(buckets, offset(home), stripe, currentTime) * stripes);
+    }
+
+    /**
+     * Returns the tokens available in all stripes at {@code currentTime}.
+     */
+    double available(long currentTime) {
+        double available = 0;
+        for (int i = 0; i < stripes; i++) {
+            available += LockFreeTokenBucket.available(buckets, offset(i), stripe, currentTime);
+        }
+        return available;
+    }
+
+    /**
+     * Returns the time at which the stripes will be full again, rounded up, or
+     * {@code currentTime} if they are full but for rounding of the stripes' shares.
+     */
+    long fullAt(long currentTime) {
+        double missing = algorithm.getCapacity() - available(currentTime);
+        if (missing <= algorithm.getCapacity() * 1e-9) {
+            return currentTime;
+        }
+        return currentTime + (long) Math.ceil(missing / algorithm.getRefillRate());
+    }
+
+    /**
+     * Returns the estimated heap footprint of a bucket with the given stripes: the
+     * padded stripe array, this object and the stripe's algorithm.
+     */
+    static long bytes(int stripes) {
+        return (long) (stripes + 1) * STRIDE * Long.BYTES + 64;
+    }
+
+    /**
+     * Takes up to {@code tokens} tokens from the stripes in turn.
+     */
+    void drain(double tokens, long currentTime) {
+        for (int i = 0; i < stripes && tokens > 1e-9; i++) {
+            tokens -= LockFreeTokenBucket.take(buckets, offset(i), stripe, tokens, currentTime);
+        }
+    }
+
+    private void put(int home, double tokens, long currentTime) {
+        for (int i = 0; i < stripes && tokens > 0; i++) {
+            tokens -= LockFreeTokenBucket.put(buckets, offset((home + i) % stripes), stripe, tokens, currentTime);
+        }
+    }
+
+    private int homeStripe() {
+        long mixed = MurmurHash3.fmix64(Thread.currentThread().getId());
+        return (int) (((mixed >>> 32) * stripes) >>> 32);
+    }
+
+    private static int offset(int stripe) {
+        // Leading padding keeps the first stripe off the array header's line
+        return (stripe + 1) * STRIDE - STRIDE / 2;
+    }
+}
@@ -0,0 +1,249 @@
+package com.lycosoft.ratelimit.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hierarchical timing wheel of expiry entries, used by {@link StateTable} segments.
+ *
+ * <p>There are four wheels of 64 buckets, with buckets of about 1 second, 1 minute,
+ * 1 hour and 3 days. An entry goes into the finest wheel whose span covers its
+ * deadline, so scheduling is O(1). {@link #advance} visits only the buckets whose time
+ * has passed: entries that are due are handed to the {@link Expiry}, entries of a
+ * coarser wheel that are not due yet move down to a finer one. Entries further out
+ * than the coarsest wheel's span (about 200 days) wait in its buckets and are
+ * rescheduled when they come around.
+ *
+ * <p>An entry is four {@code long}s in the bucket's array: the slot's hash and
+ * fingerprint, the {@link IdleState#rule rule} of its configuration, and the deadline,
+ * in ticks of {@value #TICK_MILLIS} ms. There is no object per entry, and entries are
+ * not removed when their slot is: the {@link Expiry} finds out when the entry comes
+ * due, and tells when to look at a slot that is still in use again.
+ *
+ * <p>{@link #poll} takes entries out in roughly the order they come due, for
+ * segments that must evict before their entries are due.
+ *
+ * <p><b>Thread Safety:</b> Not thread-safe; each segment's wheel is guarded by the
+ * segment's write lock.
+ */
+final class TimingWheel {
+
+    /** Milliseconds per tick of the finest wheel. */
+    static final long TICK_MILLIS = 1L << 10;
+
+    /** Decides what happens to the slot of a due entry. */
+    @FunctionalInterface
+    interface Expiry {
+        /**
+         * Expires the slot if its state is equivalent to new state.
+         *
+         * @param hash the slot's hash
+         * @param fingerprint the slot's fingerprint
+         * @param rule the rule the entry was scheduled with
+         * @param now the current time
+         * @return {@link #DONE} if the slot expired or is gone, or the time after
+         *         {@code now} at which to look at the slot again
+         */
+        long expire(long hash, long fingerprint, long rule, long now);
+    }
+
+    /** Returned by an {@link Expiry} when the entry is done. */
+    static final long DONE = Long.MIN_VALUE;
+
+    private static final int WORDS = 4;
+    private static final int BUCKETS = 64;
+    private static final int[] SHIFT = {10, 16, 22, 28};
+
+    private final long[][][] wheels = new long[SHIFT.length][BUCKETS][];
+    private final int[][] counts = new int[SHIFT.length][BUCKETS];
+    private long time;
+    private boolean started;
+    private int size;
+
+    /**
+     * Schedules a slot to be handed to the {@link Expiry} once {@code at} has passed,
+     * or on the next tick if it already has.
+     */
+    void schedule(long hash, long fingerprint, long rule, long at, long now) {
+        if (!started) {
+            time = now;
+            started = true;
+        }
+        add(hash, fingerprint, rule, tick(at));
+    }
+
+    /**
+     * Moves the wheel to {@code now}, handing every due entry to {@code expiry}.
+     *
+     * @return whether any bucket was visited
+     */
+    boolean advance(long now, Expiry expiry) {
+        if (!started) {
+            time = now;
+            started = true;
+            return false;
+        }
+        if ((now >>> SHIFT[0]) <= (time >>> SHIFT[0])) {
+            return false;
+        }
+        long previous = time;
+        time = now;
+        for (int level = 0; level < SHIFT.length; level++) {
+            long previousTicks = previous >>> SHIFT[level];
+            long delta = (now >>> SHIFT[level]) - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            int steps = (int) Math.min(1 + delta, BUCKETS);
+            for (int i = 0; i < steps; i++) {
+                expire(level, (int) ((previousTicks + i) & (BUCKETS - 1)), now, expiry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a random entry of the first bucket to come due, copying its four words
+     * into {@code entry}.
+     *
+     * @return whether there was an entry
+     */
+    boolean poll(long[] entry) {
+        for (int level = 0; level < SHIFT.length; level++) {
+            long ticks = time >>> SHIFT[level];
+            for (int i = 0; i < BUCKETS; i++) {
+                int index = (int) ((ticks + i) & (BUCKETS - 1));
+                int count = counts[level][index];
+                if (count == 0) {
+                    continue;
+                }
+                long[] entries = wheels[level][index];
+                int base = ThreadLocalRandom.current().nextInt(count / WORDS) * WORDS;
+                System.arraycopy(entries, base, entry, 0, WORDS);
+                System.arraycopy(entries, count - WORDS, entries, base, WORDS);
+                counts[level][index] = count - WORDS;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts back an entry taken by {@link #poll}, with its deadline unchanged.
+     */
+    void offer(long[] entry, int offset) {
+        add(entry[offset], entry[offset + 1], entry[offset + 2], entry[offset + 3]);
+    }
+
+    /**
+     * Puts back an entry taken by {@link #poll}, to come due once {@code at} has passed.
+     */
+    void reschedule(long[] entry, long at) {
+        add(entry[0], entry[1], entry[2], tick(at));
+    }
+
+    /**
+     * Returns the time at which an entry taken by {@link #poll} comes due.
+     */
+    static long deadline(long[] entry) {
+        return entry[3] << SHIFT[0];
+    }
+
+    /**
+     * Returns the number of entries scheduled.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot hash, fingerprint and rule of every entry, three {@code long}s
+     * each.
+     */
+    long[] entries() {
+        long[] copy = new long[size * 3];
+        int n = 0;
+        for (int level = 0; level < SHIFT.length; level++) {
+            for (int index = 0; index < BUCKETS; index++) {
+                long[] entries = wheels[level][index];
+                for (int base = 0; base < counts[level][index]; base += WORDS) {
+                    copy[n++] = entries[base];
+                    copy[n++] = entries[base + 1];
+                    copy[n++] = entries[base + 2];
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        for (int level = 0; level < SHIFT.length; level++) {
+            Arrays.fill(wheels[level], null);
+            Arrays.fill(counts[level], 0);
+        }
+        size = 0;
+    }
+
+    private void expire(int level, int index, long now, Expiry expiry) {
+        long[] entries = wheels[level][index];
+        int count = counts[level][index];
+        if (count == 0) {
+            return;
+        }
+        wheels[level][index] = null;
+        counts[level][index] = 0;
+        size -= count / WORDS;
+
+        long nowTick = now >>> SHIFT[0];
+        for (int base = 0; base < count; base += WORDS) {
+            long hash = entries[base];
+            long fingerprint = entries[base + 1];
+            long rule = entries[base + 2];
+            long tick = entries[base + 3];
+            if (tick > nowTick) {
+                add(hash, fingerprint, rule, tick);
+                continue;
+            }
+            long at = expiry.expire(hash, fingerprint, rule, now);
+            if (at != DONE) {
+                add(hash, fingerprint, rule, Math.max(tick(at), nowTick + 1));
+            }
+        }
+    }
+
+    private void add(long hash, long fingerprint, long rule, long tick) {
+        long deadline = Math.max(tick, time >>> SHIFT[0]) << SHIFT[0];
+        long delay = deadline - time;
+        int level = 0;
+        while (level < SHIFT.length - 1 && delay >= 1L << SHIFT[level + 1]) {
+            level++;
+        }
+        int index = (int) ((deadline >>> SHIFT[level]) & (BUCKETS - 1));
+        long[] entries = wheels[level][index];
+        int count = counts[level][index];
+        if (entries == null) {
+            entries = new long[4 * WORDS];
+            wheels[level][index] = entries;
+        } else if (count == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            wheels[level][index] = entries;
+        }
+        entries[count] = hash;
+        entries[count + 1] = fingerprint;
+        entries[count + 2] = rule;
+        entries[count + 3] = tick;
+        counts[level][index] = count + WORDS;
+        size++;
+    }
+
+    /**
+     * Returns the first tick that starts at or after {@code at}.
+     */
+    private static long tick(long at) {
+        return at > Long.MAX_VALUE - TICK_MILLIS ? Long.MAX_VALUE >> SHIFT[0] : (at + TICK_MILLIS - 1) >> SHIFT[0];
+    }
+}
@@ -0,0 +1,118 @@
+package com.lycosoft.ratelimit.time;
+
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimeSource} whose value is refreshed by a background thread.
+ *
+ * <p>A daemon thread reads the underlying clock once per resolution period and
+ * publishes it in a volatile field; {@link #currentTimeMillis()} only reads that
+ * field. Requests therefore pay no clock call at all, at the cost of the time lagging
+ * by up to one resolution period (plus scheduling delay). Rate limits are measured in
+ * windows and refill intervals far longer than that, so a resolution of a few
+ * milliseconds does not change decisions noticeably.
+ *
+ * <p>The published time never goes backwards, even if the underlying clock does.
+ * Call {@link #close()} to stop the ticking thread.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe.
+ *
+ * @since 1.1.0
+ */
+public final class CoarseTimeSource implements TimeSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoarseTimeSource.class);
+
+    /**
+     * Default resolution: one millisecond.
+     */
+    public static final Duration DEFAULT_RESOLUTION = Duration.ofMillis(1);
+
+    private final TimeSource source;
+    private final long resolutionMicros;
+    private final ScheduledExecutorService ticker;
+    private volatile long now;
+
+    /**
+     * Creates a coarse system clock with the {@link #DEFAULT_RESOLUTION}.
+     */
+    public CoarseTimeSource() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Creates a coarse system clock.
+     *
+     * @param resolution how often the time is refreshed
+     */
+    public CoarseTimeSource(Duration resolution) {
+        this(TimeSource.system(), resolution);
+    }
+
+    /**
+     * Creates a coarse view of another clock.
+     *
+     * @param source the clock to read once per resolution period
+     * @param resolution how often the time is refreshed (at least one microsecond)
+     */
+    public CoarseTimeSource(TimeSource source, Duration resolution) {
+        this.source = Objects.requireNonNull(source, "source cannot be null");
+        Objects.requireNonNull(resolution, "resolution cannot be null");
+        long micros = resolution.toNanos() / 1_000;
+        if (micros <= 0) {
+            throw new IllegalArgumentException("resolution must be at least one microsecond");
+        }
+        this.resolutionMicros = micros;
+        this.now = source.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rl-coarse-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, micros, micros, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    private void tick() {
+        try {
+            long time = source.currentTimeMillis();
+            if (time > now) {
+                now = time;
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; a failed read only delays the next update
+            logger.warn("Failed to read the underlying clock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the refresh period in microseconds
+     */
+    public long getResolutionMicros() {
+        return resolutionMicros;
+    }
+
+    /**
+     * Stops the ticking thread. The time stays at its last value afterwards.
+     */
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "CoarseTimeSource{source=" + source + ", resolutionMicros=" + resolutionMicros + '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.lycosoft.ratelimit.time;
+
+import com.lycosoft.ratelimit.spi.TimeSource;
+
+/**
+ * {@link TimeSource} that derives epoch time from {@link System#nanoTime()}.
+ *
+ * <p>The wall clock is read once, at construction; afterwards the time advances with
+ * the monotonic clock. Adjustments of the system clock (NTP steps, manual changes)
+ * are not observed, so the time never goes backwards and windows and refills never
+ * jump. Over long uptimes the result can drift from the wall clock by the rate
+ * difference between the two clocks; create a new instance to re-anchor it.
+ *
+ * <p><b>Thread Safety:</b> This class is immutable and thread-safe.
+ *
+ * @since 1.1.0
+ */
+public final class MonotonicTimeSource implements TimeSource {
+
+    private final long originMillis;
+    private final long originNanos;
+
+    /**
+     * Creates a monotonic clock anchored at the current system time.
+     */
+    public MonotonicTimeSource() {
+        this(TimeSource.system());
+    }
+
+    /**
+     * Creates a monotonic clock anchored at the current time of {@code anchor}.
+     *
+     * @param anchor the clock read once to anchor the epoch
+     */
+    public MonotonicTimeSource(TimeSource anchor) {
+        this.originMillis = anchor.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return originMillis + (System.nanoTime() - originNanos) / 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return "MonotonicTimeSource{originMillis=" + originMillis + '}';
+    }
+}
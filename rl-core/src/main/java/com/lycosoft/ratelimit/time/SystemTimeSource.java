@@ -0,0 +1,31 @@
+package com.lycosoft.ratelimit.time;
+
+import com.lycosoft.ratelimit.spi.TimeSource;
+
+/**
+ * {@link TimeSource} reading {@link System#currentTimeMillis()} on every call.
+ *
+ * <p>Obtain it with {@link TimeSource#system()}.
+ *
+ * @since 1.1.0
+ */
+public final class SystemTimeSource implements TimeSource {
+
+    /**
+     * The shared instance.
+     */
+    public static final SystemTimeSource INSTANCE = new SystemTimeSource();
+
+    private SystemTimeSource() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "SystemTimeSource";
+    }
+}
@@ -0,0 +1,147 @@
+package com.lycosoft.ratelimit.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MurmurHash3 x64 128-bit, as published by Austin Appleby (public domain).
+ *
+ * <p>Strings are hashed as their UTF-8 bytes with seed 0, so results match other
+ * MurmurHash3_x64_128 implementations (for example Guava's {@code murmur3_128()}).
+ *
+ * @since 1.1.0
+ */
+public final class MurmurHash3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final VarHandle LONG_LE =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private MurmurHash3() {
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of a string.
+     *
+     * @param value the string to hash
+     * @return the 128-bit hash as {@code {h1, h2}}
+     */
+    public static long[] hash128(String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        long[] out = new long[2];
+        hash128(data, 0, out);
+        return out;
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of a string to 64 bits (the first half of the 128-bit hash).
+     *
+     * @param value the string to hash
+     * @return the 64-bit hash
+     */
+    public static long hash64(String value) {
+        return hash128(value)[0];
+    }
+
+    /**
+     * Hashes {@code data} into {@code out[0]} and {@code out[1]}.
+     *
+     * @param data the bytes to hash
+     * @param seed the seed
+     * @param out an array of at least two elements receiving {@code h1} and {@code h2}
+     */
+    public static void hash128(byte[] data, long seed, long[] out) {
+        int length = data.length;
+        int blocks = length >>> 4;
+        long h1 = seed;
+        long h2 = seed;
+
+        for (int i = 0; i < blocks; i++) {
+            int offset = i << 4;
+            long k1 = getLong(data, offset);
+            long k2 = getLong(data, offset + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Tail: up to 15 remaining bytes
+        int tail = blocks << 4;
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xff) << 8;
+            case 9:  k2 ^= (data[tail + 8] & 0xff);
+                     h2 ^= mixK2(k2);
+            case 8:  k1 ^= (long) (data[tail + 7] & 0xff) << 56;
+            case 7:  k1 ^= (long) (data[tail + 6] & 0xff) << 48;
+            case 6:  k1 ^= (long) (data[tail + 5] & 0xff) << 40;
+            case 5:  k1 ^= (long) (data[tail + 4] & 0xff) << 32;
+            case 4:  k1 ^= (long) (data[tail + 3] & 0xff) << 24;
+            case 3:  k1 ^= (long) (data[tail + 2] & 0xff) << 16;
+            case 2:  k1 ^= (long) (data[tail + 1] & 0xff) << 8;
+            case 1:  k1 ^= (data[tail] & 0xff);
+                     h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        out[0] = h1;
+        out[1] = h2;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return (long) LONG_LE.get(data, offset);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer; also usable on its own to spread a {@code long}.
+     *
+     * @param k the value to mix
+     * @return the mixed value
+     */
+    public static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -161,6 +161,81 @@ class TokenBucketAlgorithmTest {
             algorithm.tryConsume(null, -5, 1000L));
     }
     
+    @Test
+    void shouldReserveTokensAsDebt() {
+        // Given: Empty token bucket with capacity=10, refill=5 tokens/sec
+        TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm(10, 5.0 / 1000.0);
+        long currentTime = 1000L;
+        TokenBucketAlgorithm.BucketState empty = algorithm.tryConsume(null, 10, currentTime);
+        
+        // When: Reserving 5 tokens with up to 2 seconds of wait
+        TokenBucketAlgorithm.BucketState reserved = algorithm.reserve(empty, 5, 2000L, currentTime);
+        
+        // Then: Booked as debt, available after 1 second
+        assertTrue(reserved.allowed());
+        assertThat(reserved.tokens()).isEqualTo(-5.0);
+        assertThat(algorithm.availableAt(reserved, 5, currentTime)).isEqualTo(2000L);
+        
+        // When: Reserving 5 more tokens behind the first reservation
+        TokenBucketAlgorithm.BucketState queued = algorithm.reserve(reserved, 5, 2000L, currentTime);
+        
+        // Then: Available after 2 seconds
+        assertTrue(queued.allowed());
+        assertThat(algorithm.availableAt(queued, 5, currentTime)).isEqualTo(3000L);
+        
+        // Then: Regular consumption is denied while in debt
+        assertFalse(algorithm.tryConsume(queued, 1, currentTime + 1000L).allowed());
+    }
+    
+    @Test
+    void shouldNotReserveBeyondMaxWait() {
+        // Given: Empty token bucket with capacity=10, refill=5 tokens/sec
+        TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm(10, 5.0 / 1000.0);
+        long currentTime = 1000L;
+        TokenBucketAlgorithm.BucketState empty = algorithm.tryConsume(null, 10, currentTime);
+        
+        // When: Reserving 5 tokens with only 500ms of wait allowed
+        TokenBucketAlgorithm.BucketState result = algorithm.reserve(empty, 5, 500L, currentTime);
+        
+        // Then: Not booked, bucket unchanged, earliest time still reported
+        assertFalse(result.allowed());
+        assertThat(result.tokens()).isEqualTo(0.0);
+        assertThat(algorithm.availableAt(result, 5, currentTime)).isEqualTo(2000L);
+        
+        // Then: Requests larger than capacity can never be reserved
+        assertThrows(IllegalArgumentException.class, () ->
+            algorithm.reserve(empty, 11, Long.MAX_VALUE, currentTime));
+    }
+    
+    @Test
+    void shouldLeaseAvailableTokensAndTakeBackUnused() {
+        // Given: Token bucket with capacity=10, refill=5 tokens/sec
+        TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm(10, 5.0 / 1000.0);
+        long currentTime = 1000L;
+        
+        // When: Leasing up to 8 tokens from a full bucket
+        TokenBucketAlgorithm.LeaseGrant first = algorithm.lease(null, 0, 1, 8, currentTime);
+        
+        // Then: 8 tokens granted, 2 left
+        assertThat(first.granted()).isEqualTo(8);
+        assertThat(first.state().tokens()).isEqualTo(2.0);
+        
+        // When: Returning 3 unused tokens and leasing up to 8 again
+        TokenBucketAlgorithm.LeaseGrant second = algorithm.lease(first.state(), 3, 1, 8, currentTime);
+        
+        // Then: Only what is available is granted
+        assertThat(second.granted()).isEqualTo(5);
+        assertThat(second.state().tokens()).isEqualTo(0.0);
+        
+        // When: Leasing at least 2 tokens from an empty bucket
+        TokenBucketAlgorithm.LeaseGrant denied = algorithm.lease(second.state(), 0, 2, 8, currentTime);
+        
+        // Then: Nothing granted, available once 2 tokens have refilled
+        assertThat(denied.granted()).isZero();
+        assertFalse(denied.state().allowed());
+        assertThat(algorithm.toLeaseResult(denied, 2, currentTime).getResetTime()).isEqualTo(1400L);
+    }
+    
     /**
      * Virtual clock for testing time-dependent logic.
      */
@@ -308,6 +308,36 @@ class RateLimitConfigTest {
         assertThat(config1).isNotEqualTo(config2);
     }
 
+    // ==================== Staleness Bound Tests ====================
+
+    @Test
+    void shouldAllowStalenessBoundOnlyForFailOpen() {
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("test")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(100)
+            .window(60)
+            .maxStalenessMillis(250)
+            .build();
+
+        assertThat(config.getMaxStalenessMillis()).isEqualTo(250);
+        assertThat(config.isEventuallyConsistent()).isTrue();
+
+        assertThrows(IllegalArgumentException.class, () -> RateLimitConfig.builder()
+            .name("test")
+            .requests(100)
+            .window(60)
+            .failStrategy(RateLimitConfig.FailStrategy.FAIL_CLOSED)
+            .maxStalenessMillis(250)
+            .build());
+        assertThrows(IllegalArgumentException.class, () -> RateLimitConfig.builder()
+            .name("test")
+            .requests(100)
+            .window(60)
+            .maxStalenessMillis(-1)
+            .build());
+    }
+
     // ==================== ToString Tests ====================
 
     @Test
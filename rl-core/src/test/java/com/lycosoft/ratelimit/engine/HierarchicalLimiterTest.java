@@ -0,0 +1,114 @@
+package com.lycosoft.ratelimit.engine;
+
+import com.lycosoft.ratelimit.config.LimitHierarchy;
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
+import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HierarchicalLimiter}.
+ */
+class HierarchicalLimiterTest {
+
+    private InMemoryStorageProvider storageProvider;
+    private HierarchicalLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        storageProvider = new InMemoryStorageProvider();
+        LimiterEngine engine = new LimiterEngine(storageProvider, new StaticKeyResolver(), null, null);
+
+        LimitHierarchy hierarchy = LimitHierarchy.builder()
+            .root(fixedWindow("global", 10), "global")
+            .child("global", fixedWindow("tenant", 5), "tenant:{tenant}")
+            .child("tenant", fixedWindow("user", 2), "tenant:{tenant}:user:{user}")
+            .build();
+        limiter = engine.bind(hierarchy);
+    }
+
+    @Test
+    void shouldNotConsumeParentsWhenLeafDenies() {
+        // Given: User alice has used her budget of 2
+        Map<String, String> alice = Map.of("tenant", "acme", "user", "alice");
+        assertTrue(limiter.tryAcquire("user", alice).isAllowed());
+        assertTrue(limiter.tryAcquire("user", alice).isAllowed());
+
+        // When: Alice keeps sending requests
+        for (int i = 0; i < 5; i++) {
+            RateLimitDecision decision = limiter.tryAcquire("user", alice);
+
+            // Then: Denied by the user level
+            assertFalse(decision.isAllowed());
+            assertThat(decision.getLimiterName()).isEqualTo("user");
+        }
+
+        // Then: The tenant still has 3 of its 5 permits for other users
+        Map<String, String> bob = Map.of("tenant", "acme", "user", "bob");
+        Map<String, String> carol = Map.of("tenant", "acme", "user", "carol");
+        assertTrue(limiter.tryAcquire("user", bob).isAllowed());
+        assertTrue(limiter.tryAcquire("user", bob).isAllowed());
+        assertTrue(limiter.tryAcquire("user", carol).isAllowed());
+
+        RateLimitDecision tenantFull = limiter.tryAcquire("user", carol);
+        assertFalse(tenantFull.isAllowed());
+        assertThat(tenantFull.getLimiterName()).isEqualTo("tenant");
+    }
+
+    @Test
+    void shouldEnforceEveryLevelOnThePath() {
+        // Given: Two tenants drawing from the global budget of 10
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("tenant", Map.of("tenant", "acme")).isAllowed());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("tenant", Map.of("tenant", "globex")).isAllowed());
+        }
+
+        // When: A third tenant sends its first request
+        RateLimitDecision decision = limiter.tryAcquire("user", Map.of("tenant", "initech", "user", "peter"));
+
+        // Then: Denied by the global level
+        assertFalse(decision.isAllowed());
+        assertThat(decision.getLimiterName()).isEqualTo("global");
+        assertThat(storageProvider.getState("global")).isPresent();
+    }
+
+    @Test
+    void shouldRejectInvalidHierarchiesAndRequests() {
+        // Unknown parent, duplicate level, and a child keyed like its parent
+        assertThrows(IllegalArgumentException.class, () -> LimitHierarchy.builder()
+            .root(fixedWindow("global", 10), "global")
+            .child("missing", fixedWindow("tenant", 5), "tenant:{tenant}"));
+        assertThrows(IllegalArgumentException.class, () -> LimitHierarchy.builder()
+            .root(fixedWindow("global", 10), "global")
+            .child("global", fixedWindow("global", 5), "tenant:{tenant}"));
+        assertThrows(IllegalArgumentException.class, () -> LimitHierarchy.builder()
+            .root(fixedWindow("global", 10), "global")
+            .child("global", fixedWindow("tenant", 5), "global"));
+        assertThrows(IllegalArgumentException.class, () -> LimitHierarchy.builder()
+            .root(fixedWindow("global", 10), "global:{"));
+
+        // Unknown level and missing key variable
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire("team", Map.of()));
+        assertThrows(IllegalArgumentException.class, () ->
+            limiter.tryAcquire("user", Map.of("tenant", "acme")));
+    }
+
+    private static RateLimitConfig fixedWindow(String name, int requests) {
+        return RateLimitConfig.builder()
+            .name(name)
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(requests)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+    }
+}
@@ -1,13 +1,26 @@
 package com.lycosoft.ratelimit.engine;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
 import com.lycosoft.ratelimit.spi.KeyResolver;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
 import com.lycosoft.ratelimit.storage.StaticKeyResolver;
+import com.lycosoft.ratelimit.storage.StorageKeyEncoder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -199,6 +212,619 @@ class LimiterEngineTest {
         assertNotNull(decision);
     }
     
+    @Test
+    void shouldReportAccurateStateForSlidingWindow() {
+        // Given: Sliding window with 5 requests per minute
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("sliding-limiter")
+            .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+            .requests(5)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Making 2 requests
+        engine.tryAcquire(context, config);
+        RateLimitDecision decision = engine.tryAcquire(context, config);
+        
+        // Then: Limit and remaining reflect the configuration, not a placeholder
+        assertTrue(decision.isAllowed());
+        assertThat(decision.getLimit()).isEqualTo(5);
+        assertThat(decision.getRemaining()).isEqualTo(3);
+        assertThat(decision.getResetTime()).isGreaterThan(System.currentTimeMillis() - 1);
+    }
+    
+    @Test
+    void shouldNotReadStateAfterAcquire() {
+        // Given: Storage provider that counts getState calls
+        StateCountingStorageProvider countingStorage = new StateCountingStorageProvider();
+        LimiterEngine countingEngine = new LimiterEngine(countingStorage, keyResolver, null, null);
+        
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("test-limiter")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(10)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Making a request
+        RateLimitDecision decision = countingEngine.tryAcquire(context, config);
+        
+        // Then: Decision metadata comes from the acquire result alone
+        assertTrue(decision.isAllowed());
+        assertThat(decision.getRemaining()).isEqualTo(9);
+        assertThat(countingStorage.getStateCalls).isZero();
+    }
+    
+    @Test
+    void shouldConsumeFromNoLimitWhenOneDenies() {
+        // Given: A strict per-second limit and a looser per-minute limit on the same key, kept apart by
+        // namespaced storage keys
+        StorageKeyEncoder encoder = StorageKeyEncoder.of(StorageKeyEncoder.Mode.NAMESPACED);
+        LimiterEngine namespaced = new LimiterEngine(storageProvider, keyResolver, null, null, null, encoder);
+        RateLimitConfig perSecond = RateLimitConfig.builder()
+            .name("per-second")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(2)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        RateLimitConfig perMinute = RateLimitConfig.builder()
+            .name("per-minute")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(10)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        List<RateLimitConfig> configs = List.of(perSecond, perMinute);
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Making 3 requests
+        assertTrue(namespaced.tryAcquireAll(context, configs).isAllowed());
+        assertTrue(namespaced.tryAcquireAll(context, configs).isAllowed());
+        RateLimitDecision decision = namespaced.tryAcquireAll(context, configs);
+        
+        // Then: The third is denied by the strict limit and the loose limit keeps its token
+        assertFalse(decision.isAllowed());
+        assertThat(decision.getLimiterName()).isEqualTo("per-second");
+        assertThat(storageProvider.getState(encoder.encode("per-minute", "test-key")))
+            .hasValueSatisfying(state -> assertThat(state.getRemaining()).isEqualTo(8));
+    }
+    
+    @Test
+    void shouldReturnMostRestrictiveDecisionWhenAllLimitsAllow() {
+        // Given: Two limits with different capacities
+        RateLimitConfig small = RateLimitConfig.builder()
+            .name("small")
+            .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+            .requests(3)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        RateLimitConfig large = RateLimitConfig.builder()
+            .name("large")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(100)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Making one request
+        RateLimitDecision decision = engine.tryAcquireAll(context, List.of(large, small));
+        
+        // Then: The decision describes the limit closest to exhaustion
+        assertTrue(decision.isAllowed());
+        assertThat(decision.getLimiterName()).isEqualTo("small");
+        assertThat(decision.getRemaining()).isEqualTo(2);
+    }
+    
+    @Test
+    void shouldApplyStrictestFailStrategyForMultipleLimits() {
+        // Given: Broken storage and a group with one FAIL_CLOSED limit
+        LimiterEngine brokenEngine = new LimiterEngine(new BrokenStorageProvider(), keyResolver, null, null);
+        RateLimitConfig open = RateLimitConfig.builder()
+            .name("open")
+            .requests(10)
+            .window(60)
+            .failStrategy(RateLimitConfig.FailStrategy.FAIL_OPEN)
+            .build();
+        RateLimitConfig closed = RateLimitConfig.builder()
+            .name("closed")
+            .requests(10)
+            .window(60)
+            .failStrategy(RateLimitConfig.FailStrategy.FAIL_CLOSED)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Checking both limits
+        RateLimitDecision decision = brokenEngine.tryAcquireAll(context, List.of(open, closed));
+        
+        // Then: The request is denied by the FAIL_CLOSED limit
+        assertFalse(decision.isAllowed());
+        assertThat(decision.getLimiterName()).isEqualTo("closed");
+    }
+    
+    @Test
+    void shouldChargeWeightedPermitsAcrossAlgorithms() {
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            // Given: A limit of 10 requests per minute
+            RateLimitConfig config = RateLimitConfig.builder()
+                .name("weighted-" + algorithm)
+                .algorithm(algorithm)
+                .requests(10)
+                .window(60)
+                .windowUnit(TimeUnit.SECONDS)
+                .build();
+            
+            RateLimitContext context = RateLimitContext.builder()
+                .keyExpression("test-key")
+                .build();
+            storageProvider.reset("test-key");
+            
+            // When: Making a request that costs 4 permits, twice
+            RateLimitDecision first = engine.tryAcquire(context, config, 4);
+            RateLimitDecision second = engine.tryAcquire(context, config, 4);
+            
+            // Then: Both are allowed and each consumes 4 permits
+            assertTrue(first.isAllowed(), algorithm + " first request");
+            assertThat(first.getRemaining()).as(algorithm.name()).isEqualTo(6);
+            assertTrue(second.isAllowed(), algorithm + " second request");
+            assertThat(second.getRemaining()).as(algorithm.name()).isEqualTo(2);
+            
+            // And: A request costing more than what is left is denied without consuming
+            assertFalse(engine.tryAcquire(context, config, 3).isAllowed(), algorithm + " oversized request");
+            RateLimitDecision last = engine.tryAcquire(context, config, 2);
+            assertTrue(last.isAllowed(), algorithm + " request that fits");
+            assertThat(last.getRemaining()).as(algorithm.name()).isZero();
+        }
+    }
+    
+    @Test
+    void shouldRejectNonPositivePermits() {
+        // Given: Any limit
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("test-limiter")
+            .requests(10)
+            .window(60)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When/Then: A request costing zero permits is a programming error
+        assertThrows(IllegalArgumentException.class, () -> engine.tryAcquire(context, config, 0));
+    }
+    
+    @Test
+    void shouldAcquireAsynchronously() {
+        // Given: Token bucket with 1 request capacity
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("test-limiter")
+            .requests(1)
+            .window(60)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Making two requests asynchronously
+        CompletableFuture<RateLimitDecision> first = engine.tryAcquireAsync(context, config).toCompletableFuture();
+        CompletableFuture<RateLimitDecision> second = engine.tryAcquireAsync(context, config).toCompletableFuture();
+        
+        // Then: The in-memory provider completes immediately; the second request is denied
+        assertTrue(first.isDone());
+        assertTrue(first.join().isAllowed());
+        assertFalse(second.join().isAllowed());
+    }
+    
+    @Test
+    void shouldApplyFailStrategyWhenAsyncStorageFails() {
+        // Given: Broken storage and a FAIL_CLOSED limit
+        LimiterEngine brokenEngine = new LimiterEngine(new BrokenStorageProvider(), keyResolver, null, null);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("closed")
+            .requests(10)
+            .window(60)
+            .failStrategy(RateLimitConfig.FailStrategy.FAIL_CLOSED)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Acquiring asynchronously
+        RateLimitDecision decision = brokenEngine.tryAcquireAsync(context, config).toCompletableFuture().join();
+        
+        // Then: The stage completes normally with a denial
+        assertFalse(decision.isAllowed());
+        assertThat(decision.getReason()).isEqualTo("Rate limiter temporarily unavailable");
+    }
+    
+    @Test
+    void shouldShareStateBetweenBoundAndUnboundChecks() {
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            // Given: A limit of 3 requests bound once
+            RateLimitConfig config = RateLimitConfig.builder()
+                .name("bound-" + algorithm)
+                .algorithm(algorithm)
+                .requests(3)
+                .window(60)
+                .windowUnit(TimeUnit.SECONDS)
+                .build();
+            BoundLimiter limiter = engine.bind(config);
+            
+            RateLimitContext context = RateLimitContext.builder()
+                .keyExpression("test-key")
+                .build();
+            storageProvider.reset("test-key");
+            
+            // When: Mixing bound and unbound checks
+            RateLimitDecision first = limiter.tryAcquire(context);
+            RateLimitDecision second = engine.tryAcquire(context, config);
+            RateLimitDecision third = limiter.tryAcquire(context);
+            RateLimitDecision fourth = limiter.tryAcquire(context);
+            
+            // Then: They draw from the same limit
+            assertThat(limiter.getConfig()).isSameAs(config);
+            assertThat(first.getRemaining()).as(algorithm.name()).isEqualTo(2);
+            assertThat(second.getRemaining()).as(algorithm.name()).isEqualTo(1);
+            assertTrue(third.isAllowed(), algorithm + " third request");
+            assertFalse(fourth.isAllowed(), algorithm + " fourth request");
+            assertThat(fourth.getLimiterName()).isEqualTo("bound-" + algorithm);
+        }
+    }
+    
+    @Test
+    void shouldReturnSharedAllowDecisionsWhenBoundAllocationFree() {
+        // Given: A limit of 2 requests bound with shared allow decisions
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("shared")
+            .requests(2)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        BoundLimiter limiter = engine.bind(config, true);
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+
+        // When
+        RateLimitDecision first = limiter.tryAcquire(context);
+        RateLimitDecision second = limiter.tryAcquire(context);
+        RateLimitDecision third = limiter.tryAcquire(context);
+
+        // Then: Allowed requests share one decision; the denial is fully populated
+        assertThat(first).isSameAs(second);
+        assertTrue(first.isAllowed());
+        assertThat(first.getLimit()).isEqualTo(2);
+        assertThat(first.getRemaining()).isEqualTo(-1);
+        assertFalse(third.isAllowed());
+        assertThat(third.getLimiterName()).isEqualTo("shared");
+        assertThat(third.getResetTime()).isGreaterThan(System.currentTimeMillis() - 1000);
+    }
+
+    @Test
+    void shouldReturnPackedOutcome() {
+        // Given: A fixed window of 3 requests
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("packed")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(3)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        BoundLimiter limiter = engine.bind(config);
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+
+        // When
+        long allowed = limiter.tryAcquirePacked(context, 2);
+        long denied = limiter.tryAcquirePacked(context, 2);
+
+        // Then
+        assertTrue(PackedAcquireResult.isAllowed(allowed));
+        assertThat(PackedAcquireResult.remaining(allowed)).isEqualTo(1);
+        assertThat(PackedAcquireResult.resetDelayMillis(allowed)).isBetween(1L, 60_000L);
+        assertFalse(PackedAcquireResult.isAllowed(denied));
+        assertThat(PackedAcquireResult.remaining(denied)).isZero();
+    }
+
+    @Test
+    void shouldApplyFailStrategyForBoundLimiter() {
+        // Given: Broken storage and a FAIL_OPEN limit
+        LimiterEngine brokenEngine = new LimiterEngine(new BrokenStorageProvider(), keyResolver, null, null);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("open")
+            .requests(10)
+            .window(60)
+            .failStrategy(RateLimitConfig.FailStrategy.FAIL_OPEN)
+            .build();
+        BoundLimiter limiter = brokenEngine.bind(config);
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Checking synchronously and asynchronously
+        RateLimitDecision decision = limiter.tryAcquire(context);
+        RateLimitDecision asyncDecision = limiter.tryAcquireAsync(context, 1).toCompletableFuture().join();
+        
+        // Then: Both fail open
+        assertTrue(decision.isAllowed());
+        assertTrue(asyncDecision.isAllowed());
+    }
+    
+    @Test
+    void shouldQueueReservationsBehindEachOther() {
+        // Given: Token bucket with 2 tokens refilling at 1 token/sec
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("reserve")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(2)
+            .window(2)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: Reserving four permits one at a time
+        Reservation first = engine.reserve(context, config, 1);
+        Reservation second = engine.reserve(context, config, 1);
+        Reservation third = engine.reserve(context, config, 1);
+        Reservation fourth = engine.reserve(context, config, 1);
+        
+        // Then: The burst is immediate, later reservations wait in turn
+        assertTrue(first.isBooked());
+        assertThat(first.getWaitMillis()).isZero();
+        assertThat(second.getWaitMillis()).isZero();
+        assertTrue(third.isBooked());
+        assertThat(third.getWaitMillis()).isBetween(900L, 1000L);
+        assertThat(fourth.getWaitMillis()).isGreaterThan(third.getWaitMillis());
+        
+        // Then: Regular requests are denied while permits are reserved
+        assertFalse(engine.tryAcquire(context, config).isAllowed());
+    }
+    
+    @Test
+    void shouldNotBookReservationBeyondMaxWait() {
+        // Given: Exhausted token bucket refilling at 1 token/sec
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("reserve")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        assertTrue(engine.tryAcquire(context, config).isAllowed());
+        
+        // When: Reserving with a 100ms maximum wait
+        Reservation reservation = engine.reserve(context, config, 1, Duration.ofMillis(100));
+        
+        // Then: Not booked, but the wait is reported
+        assertFalse(reservation.isBooked());
+        assertThat(reservation.getWaitMillis()).isGreaterThan(100L);
+        
+        // Then: Reservations require a token bucket
+        RateLimitConfig window = RateLimitConfig.builder()
+            .name("window")
+            .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+            .requests(1)
+            .window(1)
+            .build();
+        assertThrows(UnsupportedOperationException.class, () -> engine.reserve(context, window, 1));
+    }
+    
+    @Test
+    void shouldBlockUntilPermitsRefill() {
+        // Given: Exhausted token bucket refilling 1 token per 100ms
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("blocking")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(100)
+            .windowUnit(TimeUnit.MILLISECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        assertTrue(engine.tryAcquire(context, config).isAllowed());
+        
+        // When: Acquiring with a 1 second timeout from an interrupted thread
+        Thread.currentThread().interrupt();
+        long start = System.nanoTime();
+        RateLimitDecision decision = engine.acquire(context, config, Duration.ofSeconds(1));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        boolean interrupted = Thread.interrupted();
+        
+        // Then: Allowed after the refill, with the interrupt status preserved
+        assertTrue(decision.isAllowed());
+        assertThat(elapsedMillis).isBetween(50L, 900L);
+        assertTrue(interrupted);
+    }
+    
+    @Test
+    void shouldReturnDenialWhenPermitsCannotArriveInTime() {
+        // Given: Exhausted token bucket refilling 1 token per 10 seconds
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("blocking")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(10)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        assertTrue(engine.tryAcquire(context, config).isAllowed());
+        
+        // When: Acquiring with a 5 second timeout
+        long start = System.nanoTime();
+        RateLimitDecision decision = engine.acquire(context, config, Duration.ofSeconds(5));
+        
+        // Then: Denied at once instead of sleeping until the timeout
+        assertFalse(decision.isAllowed());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000L);
+    }
+    
+    @Test
+    void shouldCoalesceWaitersOnTheSameKey() throws Exception {
+        // Given: Token bucket of 1 token refilling every 20ms, and storage counting polls
+        CountingStorageProvider countingStorage = new CountingStorageProvider();
+        LimiterEngine countingEngine = new LimiterEngine(countingStorage, keyResolver, null, null);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("coalesced")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(20)
+            .windowUnit(TimeUnit.MILLISECONDS)
+            .build();
+        
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        
+        // When: 8 threads block on the same key
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<RateLimitDecision>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> countingEngine.acquire(context, config, Duration.ofSeconds(5))));
+            }
+            
+            // Then: Everyone gets a permit, with a bounded number of storage polls
+            for (Future<RateLimitDecision> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS).isAllowed());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(countingStorage.acquireCalls.get()).isLessThanOrEqualTo(4 * threads);
+    }
+    
+    @Test
+    void shouldNotPollStorageAgainRightAfterTheFastPathDenial() {
+        // Given: Exhausted token bucket refilling 1 token per 100ms, and storage counting polls
+        CountingStorageProvider countingStorage = new CountingStorageProvider();
+        LimiterEngine countingEngine = new LimiterEngine(countingStorage, keyResolver, null, null);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("blocking")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(100)
+            .windowUnit(TimeUnit.MILLISECONDS)
+            .build();
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        assertTrue(countingEngine.tryAcquire(context, config).isAllowed());
+        
+        // When: Acquiring with a 1 second timeout
+        RateLimitDecision decision = countingEngine.acquire(context, config, Duration.ofSeconds(1));
+        
+        // Then: The fast path denial, then a single poll once the token has refilled
+        assertTrue(decision.isAllowed());
+        assertThat(countingStorage.acquireCalls.get()).isEqualTo(3);
+    }
+    
+    @Test
+    void shouldAnswerWaitersTimingOutBehindTheHeadWithoutPolling() throws Exception {
+        // Given: Exhausted token bucket refilling 1 token per 500ms, with a caller waiting at the head
+        CountingStorageProvider countingStorage = new CountingStorageProvider();
+        LimiterEngine countingEngine = new LimiterEngine(countingStorage, keyResolver, null, null);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("blocking")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1)
+            .window(500)
+            .windowUnit(TimeUnit.MILLISECONDS)
+            .build();
+        RateLimitContext context = RateLimitContext.builder()
+            .keyExpression("test-key")
+            .build();
+        assertTrue(countingEngine.tryAcquire(context, config).isAllowed());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<RateLimitDecision> head = executor.submit(
+                () -> countingEngine.acquire(context, config, Duration.ofSeconds(5)));
+            while (countingStorage.acquireCalls.get() < 2) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            
+            // When: Another caller times out behind the head
+            RateLimitDecision decision = countingEngine.acquire(context, config, Duration.ofMillis(50));
+            
+            // Then: It gets the head's denial without polling storage, and the head its permit
+            assertFalse(decision.isAllowed());
+            assertThat(decision.getResetTime()).isPositive();
+            assertThat(countingStorage.acquireCalls.get()).isEqualTo(2);
+            assertTrue(head.get(5, TimeUnit.SECONDS).isAllowed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void shouldKeepLimitersResolvingTheSameKeyApartWhenNamespaced() {
+        // Given: Two limiters of one request each, resolving the same key
+        LimiterEngine namespaced = new LimiterEngine(storageProvider, keyResolver, null, null, null,
+            StorageKeyEncoder.of(StorageKeyEncoder.Mode.HASHED_64));
+        RateLimitConfig login = RateLimitConfig.builder()
+            .name("login")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(60)
+            .build();
+        RateLimitConfig search = RateLimitConfig.builder()
+            .name("search")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(60)
+            .build();
+        RateLimitContext context = RateLimitContext.builder().keyExpression("test-key").build();
+        
+        // When: Each limiter takes its request
+        assertTrue(namespaced.tryAcquire(context, login).isAllowed());
+        assertTrue(namespaced.bind(search).tryAcquire(context).isAllowed());
+        
+        // Then: Each limiter is exhausted on its own key, and the raw key is untouched
+        assertFalse(namespaced.tryAcquire(context, login).isAllowed());
+        assertFalse(namespaced.tryAcquire(context, search).isAllowed());
+        assertThat(storageProvider.getState("test-key")).isEmpty();
+        assertThat(storageProvider.size()).isEqualTo(2);
+    }
+    
     // ========== Helper Classes ==========
     
     /**
@@ -209,5 +835,42 @@ class LimiterEngineTest {
         public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
             throw new RuntimeException("Storage is broken!");
         }
+        
+        @Override
+        public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+            throw new RuntimeException("Storage is broken!");
+        }
+        
+        @Override
+        public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs, int[] permits,
+                                              long currentTime) {
+            throw new RuntimeException("Storage is broken!");
+        }
+    }
+    
+    /**
+     * Storage provider that counts acquire calls.
+     */
+    private static class CountingStorageProvider extends InMemoryStorageProvider {
+        private final AtomicInteger acquireCalls = new AtomicInteger();
+        
+        @Override
+        public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+            acquireCalls.incrementAndGet();
+            return super.acquire(key, config, permits, currentTime);
+        }
+    }
+    
+    /**
+     * Storage provider that records how often state is read back.
+     */
+    private static class StateCountingStorageProvider extends InMemoryStorageProvider {
+        private int getStateCalls;
+        
+        @Override
+        public Optional<RateLimitState> getState(String key) {
+            getStateCalls++;
+            return super.getState(key);
+        }
     }
 }
@@ -3,16 +3,20 @@ package com.lycosoft.ratelimit.resilience;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -98,6 +102,25 @@ class JitteredCircuitBreakerTest {
         }
     }
 
+    @Test
+    void shouldTimeOpenStateWithTimeSource() throws Exception {
+        // Given: An open circuit on a manually advanced clock
+        AtomicLong now = new AtomicLong(1_000_000L);
+        circuitBreaker = new JitteredCircuitBreaker(0.5, 10_000, 50, 0.0, 1, now::get);
+        circuitBreaker.tripCircuit();
+
+        // When/Then: Before the timeout elapses on that clock, calls are rejected
+        now.addAndGet(50);
+        assertThrows(JitteredCircuitBreaker.CircuitBreakerOpenException.class, () ->
+            circuitBreaker.execute(() -> "should not execute")
+        );
+
+        // When/Then: Once it has elapsed, the probe runs and closes the circuit
+        now.addAndGet(1);
+        assertThat(circuitBreaker.execute(() -> "probe")).isEqualTo("probe");
+        assertThat(circuitBreaker.getState()).isEqualTo(JitteredCircuitBreaker.State.CLOSED);
+    }
+
     @Test
     void shouldTransitionToClosedAfterSuccessfulProbe() throws Exception {
         // Given: Circuit in HALF_OPEN after timeout
@@ -127,6 +150,38 @@ class JitteredCircuitBreakerTest {
         assertThat(circuitBreaker.getState()).isEqualTo(JitteredCircuitBreaker.State.OPEN);
     }
 
+    @Test
+    void shouldHoldProbeSlotUntilAsyncOperationCompletes() throws Exception {
+        // Given: Circuit in HALF_OPEN after timeout, with one probe slot
+        circuitBreaker = new JitteredCircuitBreaker(0.5, 10_000, 1, 0.0, 1);
+        circuitBreaker.tripCircuit();
+        Thread.sleep(50);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        // When: An asynchronous probe is still in flight
+        circuitBreaker.executeAsync(() -> pending);
+        assertThat(circuitBreaker.getState()).isEqualTo(JitteredCircuitBreaker.State.HALF_OPEN);
+
+        // Then: A second call is rejected until the probe completes
+        assertThat(circuitBreaker.executeAsync(() -> CompletableFuture.completedFuture("second")))
+            .failsWithin(Duration.ZERO)
+            .withThrowableOfType(ExecutionException.class)
+            .withCauseInstanceOf(JitteredCircuitBreaker.CircuitBreakerOpenException.class);
+
+        pending.complete("probe");
+        assertThat(circuitBreaker.getState()).isEqualTo(JitteredCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldOpenAfterAsyncFailures() {
+        // When: 2 asynchronous failures (100% failure rate)
+        circuitBreaker.executeAsync(() -> CompletableFuture.failedFuture(new RuntimeException("Failure 1")));
+        circuitBreaker.executeAsync(() -> CompletableFuture.failedFuture(new RuntimeException("Failure 2")));
+
+        // Then: Circuit should be OPEN
+        assertThat(circuitBreaker.getState()).isEqualTo(JitteredCircuitBreaker.State.OPEN);
+    }
+
     // ==================== MaxConcurrentProbes Tests ====================
 
     @Test
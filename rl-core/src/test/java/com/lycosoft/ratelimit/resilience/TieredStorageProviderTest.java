@@ -1,6 +1,7 @@
 package com.lycosoft.ratelimit.resilience;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
 import com.lycosoft.ratelimit.storage.InMemoryStorageProvider;
@@ -11,6 +12,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -214,6 +216,25 @@ class TieredStorageProviderTest {
         assertThat(allowed).isFalse();
     }
 
+    @Test
+    void shouldFallbackToL2WhenAsyncL1Fails() {
+        // Given: L1 provider whose asynchronous acquire fails
+        StorageProvider failingL1 = mock(StorageProvider.class);
+        when(failingL1.acquireAsync(anyString(), any(), anyInt(), anyLong()))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("L1 connection failed")));
+
+        TieredStorageProvider provider = new TieredStorageProvider(failingL1, l2Provider,
+            RateLimitConfig.FailStrategy.FAIL_OPEN);
+
+        // When: Acquire asynchronously
+        AcquireResult result = provider.acquireAsync("key1", config, 1, System.currentTimeMillis())
+            .toCompletableFuture().join();
+
+        // Then: L2 answered the request
+        assertThat(result.isAllowed()).isTrue();
+        assertThat(l2Provider.getState("key1")).isPresent();
+    }
+
     // ==================== Circuit Breaker Tests ====================
 
     @Test
@@ -0,0 +1,162 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DenyCachingStorageProvider}.
+ */
+class DenyCachingStorageProviderTest {
+
+    private CountingStorageProvider delegate;
+    private DenyCachingStorageProvider provider;
+    private RateLimitConfig tokenBucketConfig;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new CountingStorageProvider();
+        provider = new DenyCachingStorageProvider(delegate, 16);
+        // 2 tokens, refilling 1 token per second
+        tokenBucketConfig = RateLimitConfig.builder()
+            .name("tb")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(2)
+            .window(2)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+    }
+
+    @Test
+    void shouldDenyLocallyUntilNextTokenIsDue() {
+        // Given: An exhausted token bucket
+        long time = 1_000_000L;
+        assertTrue(provider.acquire("key", tokenBucketConfig, 2, time).isAllowed());
+        AcquireResult denied = provider.acquire("key", tokenBucketConfig, 1, time);
+        assertFalse(denied.isAllowed());
+        assertThat(denied.getResetTime()).isEqualTo(time + 1000);
+        int callsAfterDenial = delegate.acquireCalls.get();
+
+        // When: Requests keep arriving before the next token is due
+        for (int i = 0; i < 100; i++) {
+            assertFalse(provider.acquire("key", tokenBucketConfig, 1, time + 999).isAllowed());
+        }
+
+        // Then: No storage calls were made
+        assertThat(delegate.acquireCalls.get()).isEqualTo(callsAfterDenial);
+        assertThat(provider.getLocalDenials()).isEqualTo(100);
+
+        // Then: Once the token is due, storage decides again
+        assertTrue(provider.acquire("key", tokenBucketConfig, 1, time + 1000).isAllowed());
+        assertThat(delegate.acquireCalls.get()).isEqualTo(callsAfterDenial + 1);
+    }
+
+    @Test
+    void shouldAskStorageForCheaperRequests() {
+        // Given: A 2-permit request denied with one token left
+        long time = 1_000_000L;
+        assertTrue(provider.acquire("key", tokenBucketConfig, 1, time).isAllowed());
+        assertFalse(provider.acquire("key", tokenBucketConfig, 2, time).isAllowed());
+
+        // When/Then: A 1-permit request is not covered by the cached denial
+        assertTrue(provider.acquire("key", tokenBucketConfig, 1, time).isAllowed());
+
+        // When/Then: A larger request is
+        int calls = delegate.acquireCalls.get();
+        assertFalse(provider.acquire("key", tokenBucketConfig, 2, time).isAllowed());
+        assertThat(delegate.acquireCalls.get()).isEqualTo(calls);
+    }
+
+    @Test
+    void shouldNotCacheSlidingWindowDenials() {
+        // Given: An exhausted sliding window
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("sw")
+            .algorithm(RateLimitConfig.Algorithm.SLIDING_WINDOW)
+            .requests(1)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        long time = 1_000_000L;
+        assertTrue(provider.acquire("key", config, 1, time).isAllowed());
+
+        // When: Two more requests are denied
+        assertFalse(provider.acquire("key", config, 1, time).isAllowed());
+        assertFalse(provider.acquire("key", config, 1, time).isAllowed());
+
+        // Then: Both went to storage
+        assertThat(delegate.acquireCalls.get()).isEqualTo(3);
+        assertThat(provider.getLocalDenials()).isZero();
+    }
+
+    @Test
+    void shouldShortCircuitBoundAndMultiLimitCalls() {
+        // Given: An exhausted key, denied once through the bound path
+        long time = 1_000_000L;
+        BoundStorage bound = provider.bind(tokenBucketConfig);
+        assertTrue(PackedAcquireResult.isAllowed(bound.acquirePacked("key", 2, time)));
+        assertFalse(PackedAcquireResult.isAllowed(bound.acquirePacked("key", 1, time)));
+        int calls = delegate.acquireCalls.get();
+
+        // When: Checking it through the bound, unbound and multi-limit paths
+        long packed = bound.acquirePacked("key", 1, time + 500);
+        AcquireResult unbound = provider.acquire("key", tokenBucketConfig, 1, time + 500);
+        List<AcquireResult> all = provider.acquireAll(List.of("key", "parent"),
+            List.of(tokenBucketConfig, tokenBucketConfig), new int[] {1, 1}, time + 500);
+
+        // Then: All are denied locally with the same reset time
+        assertFalse(PackedAcquireResult.isAllowed(packed));
+        assertThat(PackedAcquireResult.resetDelayMillis(packed)).isEqualTo(500);
+        assertFalse(unbound.isAllowed());
+        assertThat(all).hasSize(1);
+        assertFalse(all.get(0).isAllowed());
+        assertThat(delegate.acquireCalls.get()).isEqualTo(calls);
+        assertThat(delegate.getState("parent")).isEmpty();
+    }
+
+    @Test
+    void shouldForgetKeyOnReset() {
+        // Given: An exhausted key
+        long time = 1_000_000L;
+        assertTrue(provider.acquire("key", tokenBucketConfig, 2, time).isAllowed());
+        assertFalse(provider.acquire("key", tokenBucketConfig, 1, time).isAllowed());
+
+        // When: The key is reset
+        provider.reset("key");
+
+        // Then: The next request is allowed by storage
+        assertTrue(provider.acquire("key", tokenBucketConfig, 1, time).isAllowed());
+    }
+
+    /**
+     * In-memory storage that counts acquire calls.
+     */
+    private static class CountingStorageProvider extends InMemoryStorageProvider {
+        private final AtomicInteger acquireCalls = new AtomicInteger();
+
+        @Override
+        public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+            acquireCalls.incrementAndGet();
+            return super.acquire(key, config, permits, currentTime);
+        }
+
+        @Override
+        public BoundStorage bind(RateLimitConfig config) {
+            BoundStorage bound = super.bind(config);
+            return (key, permits, currentTime) -> {
+                acquireCalls.incrementAndGet();
+                return bound.acquire(key, permits, currentTime);
+            };
+        }
+    }
+}
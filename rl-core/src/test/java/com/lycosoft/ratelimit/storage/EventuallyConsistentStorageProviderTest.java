@@ -0,0 +1,206 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link EventuallyConsistentStorageProvider}.
+ */
+class EventuallyConsistentStorageProviderTest {
+
+    /**
+     * Start of a 60-second window.
+     */
+    private static final long WINDOW_START = 60_000L * 1_000;
+
+    private SharedStorageProvider shared;
+    private EventuallyConsistentStorageProvider nodeA;
+    private EventuallyConsistentStorageProvider nodeB;
+    private RateLimitConfig config;
+
+    @BeforeEach
+    void setUp() {
+        shared = new SharedStorageProvider();
+        // Flushes are triggered by the tests
+        nodeA = new EventuallyConsistentStorageProvider(shared, Duration.ofHours(1), 16);
+        nodeB = new EventuallyConsistentStorageProvider(shared, Duration.ofHours(1), 16);
+        config = RateLimitConfig.builder()
+            .name("ec")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(10)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .maxStalenessMillis(1000)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void shouldDecideLocallyAndConvergeAfterFlush() {
+        // Given: Two nodes admitting requests for the same key without talking to storage
+        long time = WINDOW_START + 100;
+        for (int i = 0; i < 6; i++) {
+            assertTrue(nodeA.acquire("key", config, 1, time).isAllowed());
+            assertTrue(nodeB.acquire("key", config, 1, time).isAllowed());
+        }
+        assertThat(shared.counterCalls.get()).isZero();
+        assertThat(nodeA.getLocalDecisions()).isEqualTo(6);
+
+        // When: Both flush their deltas and A pulls the merged count
+        nodeA.flush();
+        nodeB.flush();
+        nodeA.flush();
+
+        // Then: Both see the global count of 12 and deny
+        AcquireResult deniedA = nodeA.acquire("key", config, 1, time + 10);
+        AcquireResult deniedB = nodeB.acquire("key", config, 1, time + 10);
+        assertFalse(deniedA.isAllowed());
+        assertFalse(deniedB.isAllowed());
+        assertThat(deniedA.getCurrentUsage()).isEqualTo(12);
+
+        // Then: The drift and the over-admission are reported
+        assertThat(nodeA.getDrift()).isEqualTo(6);
+        assertThat(nodeB.getMaxDrift()).isEqualTo(6);
+        assertThat(nodeA.getOverAdmissions()).isEqualTo(2);
+        assertThat(shared.counterCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldMergeSynchronouslyWhenViewIsOlderThanBound() {
+        // Given: Node A used the whole window and flushed
+        long time = WINDOW_START + 100;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(nodeA.acquire("key", config, 1, time).isAllowed());
+        }
+        nodeA.flush();
+
+        // When: Node B sees its first request more than the bound after the window start
+        AcquireResult result = nodeB.acquire("key", config, 1, WINDOW_START + 1500);
+
+        // Then: B merged before deciding and denies
+        assertFalse(result.isAllowed());
+        assertThat(nodeB.getSyncDecisions()).isEqualTo(1);
+        assertThat(nodeB.getLocalDecisions()).isZero();
+
+        // Then: Within the bound of that merge, B decides locally again
+        assertFalse(nodeB.acquire("key", config, 1, WINDOW_START + 2000).isAllowed());
+        assertThat(nodeB.getLocalDecisions()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotBlockOtherRequestsWhileOneMerges() throws Exception {
+        // Given: Storage that holds merges until released
+        shared.entered = new CountDownLatch(1);
+        shared.release = new CountDownLatch(1);
+        long time = WINDOW_START + 1500;
+
+        // When: One request past the bound merges the key
+        CompletableFuture<AcquireResult> merging =
+            CompletableFuture.supplyAsync(() -> nodeA.acquire("key", config, 1, time));
+        assertTrue(shared.entered.await(5, TimeUnit.SECONDS));
+
+        // Then: Another request for the key decides from the stale view meanwhile
+        assertTrue(nodeA.acquire("key", config, 1, time).isAllowed());
+        assertThat(nodeA.getLocalDecisions()).isEqualTo(1);
+
+        // Then: The merging request decides once storage answers
+        shared.release.countDown();
+        assertTrue(merging.get(5, TimeUnit.SECONDS).isAllowed());
+        assertThat(nodeA.getSyncDecisions()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepDeltasWhenFlushFails() {
+        // Given: Admissions not yet flushed, and storage failing
+        long time = WINDOW_START + 100;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(nodeA.acquire("key", config, 1, time).isAllowed());
+        }
+        shared.failing = true;
+
+        // When/Then: The flush fails and a request past the bound reports the failure
+        assertThrows(IllegalStateException.class, nodeA::flush);
+        assertThrows(IllegalStateException.class, () -> nodeA.acquire("key", config, 1, time + 1500));
+        assertThat(nodeA.getFlushFailures()).isEqualTo(2);
+
+        // When: Storage recovers
+        shared.failing = false;
+        shared.time = time + 1500;
+        nodeA.flush();
+
+        // Then: The deltas were pushed exactly once
+        assertThat(shared.addCounters(List.of("key:ec:" + (WINDOW_START / 60_000)),
+            new long[] {0}, new long[] {60_000})[0]).isEqualTo(4);
+    }
+
+    @Test
+    void shouldPassStrictLimitsToDelegate() {
+        // Given: A limit without a staleness bound
+        RateLimitConfig strict = RateLimitConfig.builder()
+            .name("strict")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(60)
+            .build();
+
+        // When: Both nodes acquire it
+        assertTrue(nodeA.acquire("strict", strict, 1, WINDOW_START).isAllowed());
+        assertFalse(nodeB.acquire("strict", strict, 1, WINDOW_START).isAllowed());
+
+        // Then: The delegate decided
+        assertThat(nodeA.getLocalDecisions() + nodeB.getLocalDecisions()).isZero();
+        assertThat(shared.getState("strict")).isPresent();
+    }
+
+    /**
+     * In-memory storage shared by the nodes, with a fixed clock, counting counter
+     * batches and able to fail or hold them.
+     */
+    private static class SharedStorageProvider extends InMemoryStorageProvider {
+        private final AtomicInteger counterCalls = new AtomicInteger();
+        private volatile long time = WINDOW_START + 100;
+        private volatile boolean failing;
+        private volatile CountDownLatch entered;
+        private volatile CountDownLatch release;
+
+        @Override
+        public long getCurrentTime() {
+            return time;
+        }
+
+        @Override
+        public long[] addCounters(List<String> keys, long[] deltas, long[] ttlMillis) {
+            if (failing) {
+                throw new IllegalStateException("storage down");
+            }
+            counterCalls.incrementAndGet();
+            if (entered != null) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.addCounters(keys, deltas, ttlMillis);
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link InMemoryStorageProvider} and its {@link StateTable}.
+ */
+class InMemoryStorageProviderTest {
+
+    @TempDir
+    Path directory;
+
+    private InMemoryStorageProvider provider;
+    private RateLimitConfig fixedWindowConfig;
+    private RateLimitConfig slidingWindowConfig;
+    private RateLimitConfig tokenBucketConfig;
+
+    @BeforeEach
+    void setUp() {
+        provider = new InMemoryStorageProvider();
+        fixedWindowConfig = config("fw", RateLimitConfig.Algorithm.FIXED_WINDOW, 3);
+        slidingWindowConfig = config("sw", RateLimitConfig.Algorithm.SLIDING_WINDOW, 3);
+        tokenBucketConfig = config("tb", RateLimitConfig.Algorithm.TOKEN_BUCKET, 3);
+    }
+
+    @Test
+    void shouldKeepStatePerKeyAcrossTableGrowth() {
+        // Given: Enough keys to resize every segment several times
+        long time = 1_000_000L;
+        int keys = 50_000;
+        for (int i = 0; i < keys; i++) {
+            assertTrue(provider.acquire("key-" + i, fixedWindowConfig, 3, time).isAllowed());
+        }
+
+        // Then: Every key kept its own exhausted window
+        assertThat(provider.size()).isEqualTo(keys);
+        for (int i = 0; i < keys; i += 7) {
+            assertFalse(provider.acquire("key-" + i, fixedWindowConfig, 1, time).isAllowed());
+        }
+        assertTrue(provider.acquire("another-key", fixedWindowConfig, 1, time).isAllowed());
+    }
+
+    @Test
+    void shouldFindRemainingKeysAfterReset() {
+        // Given: Many keys, half of which are reset
+        long time = 1_000_000L;
+        int keys = 10_000;
+        for (int i = 0; i < keys; i++) {
+            provider.acquire("key-" + i, fixedWindowConfig, 2, time);
+        }
+        for (int i = 0; i < keys; i += 2) {
+            provider.reset("key-" + i);
+        }
+
+        // Then: Reset keys start over and the others keep their count
+        assertThat(provider.size()).isEqualTo(keys / 2);
+        for (int i = 0; i < keys; i++) {
+            AcquireResult result = provider.acquire("key-" + i, fixedWindowConfig, 2, time);
+            assertThat(result.isAllowed()).as("key-%d", i).isEqualTo(i % 2 == 0);
+        }
+    }
+
+    @Test
+    void shouldKeepAlgorithmsOfTheSameKeyApart() {
+        long time = 1_000_000L;
+
+        // When: The same key is used under every algorithm and as a counter
+        provider.acquire("key", tokenBucketConfig, 3, time);
+        provider.acquire("key", slidingWindowConfig, 1, time);
+        provider.acquire("key", fixedWindowConfig, 2, time);
+        provider.addCounters(List.of("key"), new long[] {5}, new long[] {60_000});
+
+        // Then: Each has its own state
+        assertThat(provider.size()).isEqualTo(4);
+        assertFalse(provider.acquire("key", tokenBucketConfig, 1, time).isAllowed());
+        assertThat(provider.acquire("key", slidingWindowConfig, 2, time).isAllowed()).isTrue();
+        assertThat(provider.acquire("key", fixedWindowConfig, 1, time).getRemaining()).isZero();
+        assertThat(provider.addCounters(List.of("key"), new long[] {1}, new long[] {60_000})).containsExactly(6L);
+
+        // Then: Reset removes all of them
+        provider.reset("key");
+        assertThat(provider.size()).isZero();
+        assertThat(provider.getState("key")).isEmpty();
+    }
+
+    @Test
+    void shouldPackTheSameResultsAsAcquire() {
+        // Given: Two providers bound to each algorithm
+        InMemoryStorageProvider other = new InMemoryStorageProvider();
+        long time = 1_000_000L;
+        for (RateLimitConfig config : List.of(tokenBucketConfig, slidingWindowConfig, fixedWindowConfig)) {
+            BoundStorage packed = provider.bind(config);
+            BoundStorage unpacked = other.bind(config);
+
+            // When/Then: Packed and regular acquires agree, allowed or denied
+            for (int i = 0; i < 5; i++) {
+                long now = time + i * 300L;
+                long result = packed.acquirePacked("key", 1, now);
+                assertThat(result).as("%s #%d", config.getAlgorithm(), i)
+                    .isEqualTo(PackedAcquireResult.pack(unpacked.acquire("key", 1, now), now));
+            }
+        }
+    }
+
+    @Test
+    void shouldDecideTheSameWithLockFreeTokenBuckets() {
+        // Given: A locking and a lock-free provider, 3 tokens refilling 1 per 20s
+        InMemoryStorageProvider lockFree = new InMemoryStorageProvider(TimeSource.system(), true);
+        long time = 1_000_000L;
+
+        // When/Then: Acquires, reservations and refill give the same results
+        for (int i = 0; i < 6; i++) {
+            long now = time + i * 7_000L;
+            int permits = 1 + i % 2;
+            assertThat(lockFree.acquire("key", tokenBucketConfig, permits, now))
+                .usingRecursiveComparison()
+                .isEqualTo(provider.acquire("key", tokenBucketConfig, permits, now));
+        }
+        long now = time + 50_000L;
+        assertThat(lockFree.reserve("key", tokenBucketConfig, 3, 60_000, now))
+            .isEqualTo(provider.reserve("key", tokenBucketConfig, 3, 60_000, now));
+        assertThat(lockFree.acquire("key", tokenBucketConfig, 1, now).isAllowed()).isFalse();
+
+        // Then: The bucket is one slot, removed by reset
+        assertThat(lockFree.size()).isEqualTo(1);
+        lockFree.reset("key");
+        assertThat(lockFree.size()).isZero();
+    }
+
+    @Test
+    void shouldBorrowAcrossStripesWithinTheConfiguredCapacity() throws Exception {
+        // Given: A striped bucket of 100 tokens over 8 stripes that barely refills
+        RateLimitConfig striped = RateLimitConfig.builder()
+            .name("global")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(100)
+            .window(1)
+            .windowUnit(TimeUnit.HOURS)
+            .stripes(8)
+            .build();
+        long time = 1_000_000L;
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            // When: Many threads drain it concurrently
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20; i++) {
+                        if (provider.acquire("global", striped, 1, time).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then: One thread can take whatever is left, borrowing from every stripe
+        while (provider.acquire("global", striped, 1, time).isAllowed()) {
+            allowed.incrementAndGet();
+        }
+        assertThat(allowed.get()).isEqualTo(100);
+
+        // Then: Refill is shared by the stripes, and reset removes the bucket
+        assertTrue(provider.acquire("global", striped, 1, time + 36_000).isAllowed());
+        assertFalse(provider.acquire("global", striped, 1, time + 36_000).isAllowed());
+        assertThat(provider.size()).isEqualTo(1);
+        provider.reset("global");
+        assertThat(provider.size()).isZero();
+        assertThrows(UnsupportedOperationException.class,
+            () -> provider.reserve("global", striped, 1, 0, time));
+    }
+
+    @Test
+    void shouldExpireKeysOnceTheirWindowHasEnded() {
+        // Given: 1000 keys seen once and one busy key, in a 60s window ending at 1,020,000
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        InMemoryStorageProvider expiring = new InMemoryStorageProvider(clock::get);
+        long start = clock.get();
+        for (int i = 0; i < 1000; i++) {
+            expiring.acquire("ip-" + i, fixedWindowConfig, 1, start);
+        }
+        expiring.acquire("busy", fixedWindowConfig, 1, start);
+
+        // When: Time passes within the window
+        clock.set(start + 15_000);
+
+        // Then: Nothing has expired while its count still holds
+        assertThat(expiring.cleanUp()).isZero();
+        assertThat(expiring.size()).isEqualTo(1001);
+
+        // When: New keys arrive in the next window, the busy key being used in it too
+        clock.set(start + 25_000);
+        expiring.acquire("busy", fixedWindowConfig, 1, clock.get());
+        for (int i = 0; i < 1000; i++) {
+            expiring.acquire("new-ip-" + i, fixedWindowConfig, 1, clock.get());
+        }
+
+        // Then: Inserting expired the idle keys well before their TTL, and only the busy key is left of the old ones
+        assertThat(expiring.size()).isEqualTo(1001);
+        assertThat(expiring.getState("busy")).isPresent();
+        assertThat(expiring.getState("ip-0")).isEmpty();
+        assertThat(expiring.getDiagnostics())
+            .containsEntry("expiry.expired", 1000L)
+            .containsEntry("expiry.scheduled", 1001L);
+    }
+
+    @Test
+    void shouldExpireBucketsOnceRefilledAndWindowsOnceAgedOut() {
+        // Given: Keys that took one request of a bucket refilling 3 per 60s and of a 60s sliding window
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        InMemoryStorageProvider expiring = new InMemoryStorageProvider(clock::get);
+        long start = clock.get();
+        expiring.acquire("client", tokenBucketConfig, 1, start);
+        expiring.acquire("client", slidingWindowConfig, 1, start);
+
+        // When/Then: The bucket is gone once its token is back, 20s later
+        clock.set(start + 19_000);
+        assertThat(expiring.cleanUp()).isZero();
+        clock.set(start + 22_000);
+        assertThat(expiring.cleanUp()).isOne();
+        assertThat(expiring.size()).isOne();
+
+        // When/Then: The window is gone once its count has left the estimate, at the end of the next window
+        clock.set(1_079_000L);
+        assertThat(expiring.cleanUp()).isZero();
+        clock.set(1_082_000L);
+        assertThat(expiring.cleanUp()).isOne();
+        assertThat(expiring.size()).isZero();
+
+        // Then: A returning client starts afresh
+        assertThat(expiring.acquire("client", tokenBucketConfig, 1, clock.get()).getRemaining()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldExpireStripedBucketsAndChargeThemToTheBudget() {
+        // Given: A striped bucket that took one of its 100 tokens per hour
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        InMemoryStorageProvider expiring = new InMemoryStorageProvider(clock::get);
+        RateLimitConfig striped = stripedConfig();
+        long start = clock.get();
+        expiring.acquire("client", striped, 1, start);
+
+        // When/Then: It is gone once its token is back in the stripe it came from, which
+        // refills at an eighth of the rate, 288s later
+        clock.set(start + 286_000);
+        assertThat(expiring.cleanUp()).isZero();
+        clock.set(start + 290_000);
+        assertThat(expiring.cleanUp()).isOne();
+        assertThat(expiring.size()).isZero();
+
+        // When: Many keys get striped buckets under a budget
+        long maxBytes = 1_000_000;
+        InMemoryStorageProvider budgeted = new InMemoryStorageProvider(clock::get, false, maxBytes);
+        for (int i = 0; i < 10_000; i++) {
+            budgeted.acquire("ip-" + i, striped, 1, start);
+        }
+
+        // Then: Their stripes count against the budget, which refuses the rest
+        Map<String, Object> diagnostics = budgeted.getDiagnostics();
+        assertThat((long) diagnostics.get("budget.usedBytes")).isLessThanOrEqualTo(maxBytes);
+        assertThat((double) diagnostics.get("budget.utilization")).isGreaterThan(0.5);
+        assertThat((long) diagnostics.get("budget.refusals")).isPositive();
+        assertThat(budgeted.size()).isLessThan(1_000);
+    }
+
+    @Test
+    void shouldCommitNoLimitOfAGroupThatOneDenies() {
+        // Given: One key per algorithm, the fixed window left with a single request
+        long time = 1_000_000L;
+        List<String> keys = List.of("tb-key", "sw-key", "fw-key");
+        List<RateLimitConfig> configs = List.of(tokenBucketConfig, slidingWindowConfig, fixedWindowConfig);
+        provider.acquire("fw-key", fixedWindowConfig, 2, time);
+
+        // When: The group takes one request, then asks for one more
+        assertThat(provider.acquireAll(keys, configs, new int[] {1, 1, 1}, time)).allMatch(AcquireResult::isAllowed);
+        List<AcquireResult> denied = provider.acquireAll(keys, configs, new int[] {1, 1, 1}, time);
+
+        // Then: Only the fixed window denies, and the others report and keep their state without it
+        assertThat(denied).extracting(AcquireResult::isAllowed).containsExactly(true, true, false);
+        assertThat(denied.get(0).getRemaining()).isEqualTo(2);
+        assertThat(denied.get(1).getRemaining()).isEqualTo(2);
+        assertThat(provider.acquire("tb-key", tokenBucketConfig, 2, time).isAllowed()).isTrue();
+        assertThat(provider.acquire("sw-key", slidingWindowConfig, 2, time).isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldCheckLimitsOnOneKeyAgainstEachOther() {
+        // Given: Two limits of one call that resolve to the same state
+        long time = 1_000_000L;
+        List<String> keys = List.of("shared", "shared");
+        List<RateLimitConfig> configs = List.of(fixedWindowConfig, fixedWindowConfig);
+
+        // When: Each fits on its own, but not both
+        List<AcquireResult> results = provider.acquireAll(keys, configs, new int[] {2, 2}, time);
+
+        // Then: The second sees the first's permits, and nothing is counted
+        assertThat(results).extracting(AcquireResult::isAllowed).containsExactly(true, false);
+        assertThat(provider.acquire("shared", fixedWindowConfig, 3, time).isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldKeepFrequentKeysWithinTheMemoryBudget() {
+        // Given: A budget of about 1300 keys, and 100 regular clients seen 5 times each
+        long maxBytes = 100_000;
+        InMemoryStorageProvider budgeted = new InMemoryStorageProvider(TimeSource.system(), false, maxBytes);
+        long time = 1_000_000L;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                budgeted.acquire("client-" + i, fixedWindowConfig, 1, time);
+            }
+        }
+
+        // When: 50,000 one-off keys arrive while the clients keep coming back
+        for (int i = 0; i < 50_000; i++) {
+            budgeted.acquire("ip-" + i, fixedWindowConfig, 1, time);
+            if (i % 1000 == 0) {
+                for (int c = 0; c < 100; c++) {
+                    budgeted.acquire("client-" + c, fixedWindowConfig, 1, time);
+                }
+            }
+        }
+
+        // Then: The state stays within the budget and the clients keep their counts
+        Map<String, Object> diagnostics = budgeted.getDiagnostics();
+        assertThat((long) diagnostics.get("budget.usedBytes")).isLessThanOrEqualTo(maxBytes);
+        assertThat((double) diagnostics.get("budget.utilization")).isGreaterThan(0.9);
+        assertThat((long) diagnostics.get("budget.refusals")).isPositive();
+        for (int i = 0; i < 100; i++) {
+            assertThat(budgeted.acquire("client-" + i, fixedWindowConfig, 1, time).getRemaining())
+                .as("client-%d", i).isZero();
+        }
+
+        // Then: A key requested repeatedly is admitted in place of a one-off key
+        for (int i = 0; i < 3; i++) {
+            budgeted.acquire("newcomer", fixedWindowConfig, 1, time);
+        }
+        assertThat(budgeted.getState("newcomer")).isPresent();
+        assertThat((long) budgeted.getDiagnostics().get("budget.evictions")).isPositive();
+    }
+
+    @Test
+    void shouldLimitKeysThatAreNotAdmitted() {
+        // Given: A budget of about one key per segment, taken by clients more frequent
+        // than any newcomer can become
+        InMemoryStorageProvider budgeted = new InMemoryStorageProvider(TimeSource.system(), false, 5_000);
+        long time = 1_000_000L;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                budgeted.acquire("client-" + i, fixedWindowConfig, 1, time);
+            }
+        }
+
+        // When: A new key is requested past its limit while the clients keep coming back
+        int allowed = 0;
+        boolean lastAllowed = true;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            lastAllowed = budgeted.acquire("attacker", fixedWindowConfig, 1, time).isAllowed();
+            if (lastAllowed) {
+                allowed++;
+            }
+            for (int i = 0; i < 500; i++) {
+                budgeted.acquire("client-" + i, fixedWindowConfig, 1, time);
+            }
+        }
+
+        // Then: It is never admitted, yet it is limited rather than seeing new state each time
+        assertThat(budgeted.getState("attacker")).isEmpty();
+        assertThat(allowed).isLessThanOrEqualTo(3);
+        assertThat(lastAllowed).isFalse();
+        assertThat((long) budgeted.getDiagnostics().get("budget.refusals")).isPositive();
+    }
+
+    @Test
+    void shouldSweepExpiredCounters() {
+        // Given: A counter that has expired
+        provider.addCounters(List.of("stale"), new long[] {1}, new long[] {0});
+
+        // When: Enough batches pass for a sweep
+        for (int i = 0; i < 1024; i++) {
+            provider.addCounters(List.of("live"), new long[] {1}, new long[] {60_000});
+        }
+
+        // Then: Only the live counter is left
+        assertThat(provider.size()).isEqualTo(1);
+        assertThat(provider.addCounters(List.of("live"), new long[] {0}, new long[] {60_000}))
+            .containsExactly(1024L);
+    }
+
+    @Test
+    void shouldRestoreEveryAlgorithmFromASnapshot() {
+        // Given: Keys exhausted under every algorithm, a striped bucket and a counter
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        InMemoryStorageProvider original = new InMemoryStorageProvider(clock::get, true);
+        RateLimitConfig striped = stripedConfig();
+        long time = clock.get();
+        for (RateLimitConfig config : List.of(fixedWindowConfig, slidingWindowConfig, tokenBucketConfig, striped)) {
+            while (original.acquire("client", config, 1, time).isAllowed()) {
+                // exhaust
+            }
+        }
+        original.addCounters(List.of("counter"), new long[] {7}, new long[] {60_000});
+        for (int i = 0; i < 1000; i++) {
+            original.acquire("ip-" + i, fixedWindowConfig, 1, time);
+        }
+        Path file = directory.resolve("state.snapshot");
+
+        // When: It is snapshotted and a new provider starts from the snapshot
+        try (StateSnapshotter snapshotter = new StateSnapshotter(original, file)) {
+            assertThat(snapshotter.snapshot()).isEqualTo(1005);
+        }
+        InMemoryStorageProvider restored = new InMemoryStorageProvider(clock::get, true, Long.MAX_VALUE, file);
+
+        // Then: Every key keeps its state
+        for (RateLimitConfig config : List.of(fixedWindowConfig, slidingWindowConfig, tokenBucketConfig, striped)) {
+            assertFalse(restored.acquire("client", config, 1, time).isAllowed(), config.getName());
+        }
+        assertThat(restored.acquire("ip-0", fixedWindowConfig, 1, time).getRemaining()).isEqualTo(1);
+        assertThat(restored.addCounters(List.of("counter"), new long[] {1}, new long[] {60_000}))
+            .containsExactly(8L);
+        assertThat(restored.size()).isEqualTo(original.size());
+
+        // Then: Idle keys still expire once their state is equivalent to new state
+        clock.set(time + 250_000);
+        restored.acquire("other", fixedWindowConfig, 1, clock.get());
+        assertThat(restored.cleanUp()).isPositive();
+        assertThat(restored.getState("ip-1")).isEmpty();
+    }
+
+    @Test
+    void shouldShiftTimesWhenTheClockMovedSinceTheSnapshot() {
+        // Given: A snapshot of exhausted keys
+        long time = 1_000_000L;
+        InMemoryStorageProvider original = new InMemoryStorageProvider(() -> time);
+        original.acquire("client", tokenBucketConfig, 3, time);
+        original.acquire("client", fixedWindowConfig, 3, time);
+        Path file = directory.resolve("state.snapshot");
+        original.writeSnapshot(file);
+
+        // When: It is restored by a provider whose clock is 10 minutes ahead
+        long later = time + 600_000;
+        InMemoryStorageProvider restored = new InMemoryStorageProvider(() -> later, false, Long.MAX_VALUE, file);
+
+        // Then: The bucket is still empty, while the window, which cannot be shifted, is dropped
+        assertFalse(restored.acquire("client", tokenBucketConfig, 1, later).isAllowed());
+        assertTrue(restored.acquire("client", fixedWindowConfig, 1, later).isAllowed());
+    }
+
+    @Test
+    void shouldIgnoreMissingOrUnreadableSnapshots() throws IOException {
+        // Given: A corrupt snapshot
+        Path corrupt = directory.resolve("corrupt.snapshot");
+        Files.writeString(corrupt, "not a snapshot");
+
+        // When/Then: Providers start empty
+        for (Path file : List.of(corrupt, directory.resolve("missing.snapshot"))) {
+            InMemoryStorageProvider restored = new InMemoryStorageProvider(TimeSource.system(), false, Long.MAX_VALUE, file);
+            assertThat(restored.size()).isZero();
+            assertTrue(restored.tryAcquire("client", fixedWindowConfig, 1_000_000L));
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> new StateSnapshotter(provider, corrupt, Duration.ZERO));
+    }
+
+    private static RateLimitConfig stripedConfig() {
+        return RateLimitConfig.builder()
+            .name("striped")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(100)
+            .window(1)
+            .windowUnit(TimeUnit.HOURS)
+            .stripes(8)
+            .build();
+    }
+
+    private static RateLimitConfig config(String name, RateLimitConfig.Algorithm algorithm, int requests) {
+        return RateLimitConfig.builder()
+            .name(name)
+            .algorithm(algorithm)
+            .requests(requests)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+    }
+}
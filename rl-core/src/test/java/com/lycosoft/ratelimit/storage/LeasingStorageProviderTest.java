@@ -0,0 +1,158 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.LeaseResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LeasingStorageProvider}.
+ */
+class LeasingStorageProviderTest {
+
+    private InMemoryStorageProvider shared;
+    private LeasingStorageProvider provider;
+    private RateLimitConfig config;
+
+    @BeforeEach
+    void setUp() {
+        shared = new InMemoryStorageProvider();
+        provider = new LeasingStorageProvider(shared, Duration.ofMillis(100), 1000);
+        // 1000 tokens, refilling 1 token per 1000 seconds
+        config = RateLimitConfig.builder()
+            .name("leased")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .capacity(1000)
+            .refillRate(0.000001)
+            .build();
+    }
+
+    @Test
+    void shouldBatchHotKeysWithoutExceedingTheSharedBucket() {
+        // Given: A burst of requests within one millisecond
+        long time = 1_000_000L;
+
+        // When: The first 1000 go through the leasing provider
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(provider.acquire("hot", config, 1, time).isAllowed(), "Request " + i);
+        }
+
+        // Then: They were served with few lease calls
+        assertThat(provider.getLeaseCalls()).isLessThan(20);
+        assertThat(provider.getLocalGrants()).isGreaterThan(980);
+
+        // Then: The shared bucket's capacity is not exceeded
+        assertFalse(provider.acquire("hot", config, 1, time).isAllowed());
+        assertFalse(shared.acquire("hot", config, 1, time).isAllowed());
+    }
+
+    @Test
+    void shouldKeepLowRateKeysExact() {
+        // Given: Requests spaced further apart than the lease duration
+        long time = 1_000_000L;
+
+        // When: Sending 5 of them
+        for (int i = 0; i < 5; i++) {
+            assertTrue(provider.acquire("quiet", config, 1, time + i * 1000L).isAllowed());
+        }
+
+        // Then: Each request leased a single token, nothing is held locally
+        assertThat(provider.getLeaseCalls()).isEqualTo(5);
+        assertThat(provider.getLocalGrants()).isZero();
+        assertThat(provider.releaseLeases()).isZero();
+    }
+
+    @Test
+    void shouldReturnUnusedTokensToTheSharedBucket() {
+        // Given: A hot key holding a lease
+        long time = shared.getCurrentTime();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(provider.acquire("hot", config, 1, time).isAllowed());
+        }
+        assertThat(shared.acquire("hot", config, 1, time).getRemaining()).isLessThan(899);
+
+        // When: Releasing the leases
+        int returned = provider.releaseLeases();
+
+        // Then: The shared bucket reflects only the tokens actually used
+        assertThat(returned).isPositive();
+        assertThat(shared.acquire("hot", config, 1, shared.getCurrentTime()).getRemaining()).isEqualTo(898);
+    }
+
+    @Test
+    void shouldKeepUnusedTokensWhenTheLeaseCallFails() {
+        // Given: A hot key holding a lease, and storage failing once it has expired
+        FailingStorageProvider failing = new FailingStorageProvider();
+        LeasingStorageProvider leasing = new LeasingStorageProvider(failing, Duration.ofMillis(100), 1000);
+        long time = failing.getCurrentTime() - 1000;
+        for (int i = 0; i < 100; i++) {
+            assertTrue(leasing.acquire("hot", config, 1, time).isAllowed());
+        }
+        failing.failing = true;
+
+        // When: A renewal fails
+        assertThrows(IllegalStateException.class, () -> leasing.acquire("hot", config, 1, time + 200));
+
+        // Then: The unused tokens are still handed back once storage recovers
+        failing.failing = false;
+        assertThat(leasing.releaseLeases()).isPositive();
+        assertThat(failing.acquire("hot", config, 1, failing.getCurrentTime()).getRemaining()).isEqualTo(899);
+    }
+
+    @Test
+    void shouldReturnExpiredLeasesOfIdleKeysOnLaterRequests() {
+        // Given: A key that held a lease and went idle
+        long time = 1_000_000L;
+        for (int i = 0; i < 100; i++) {
+            assertTrue(provider.acquire("idle", config, 1, time).isAllowed());
+        }
+
+        // When: Another key is requested after the lease expired
+        provider.acquire("other", config, 1, time + 200);
+
+        // Then: The idle key's unused tokens are back in the shared bucket
+        assertThat(shared.acquire("idle", config, 1, time + 200).getRemaining()).isEqualTo(899);
+        assertThat(provider.releaseLeases()).isZero();
+    }
+
+    @Test
+    void shouldPassOtherAlgorithmsThrough() {
+        // Given: A fixed window limit
+        RateLimitConfig fixedWindow = RateLimitConfig.builder()
+            .name("fw")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        long time = 1_000_000L;
+
+        // When/Then: Decisions come straight from the delegate
+        assertTrue(provider.acquire("fw", fixedWindow, 1, time).isAllowed());
+        assertFalse(provider.acquire("fw", fixedWindow, 1, time).isAllowed());
+        assertThat(provider.getLeaseCalls()).isZero();
+    }
+
+    /**
+     * In-memory storage whose lease calls can fail.
+     */
+    private static class FailingStorageProvider extends InMemoryStorageProvider {
+        private volatile boolean failing;
+
+        @Override
+        public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                                 long currentTime) {
+            if (failing) {
+                throw new IllegalStateException("storage down");
+            }
+            return super.lease(key, config, returned, minPermits, maxPermits, currentTime);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.RateLimitState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link MappedStorageProvider}. Two providers mapping one file share
+ * state the same way two processes do.
+ */
+class MappedStorageProviderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldShareLimitsBetweenProvidersOfOneFile() {
+        // Given: Two providers on one file
+        Path file = directory.resolve("state");
+        MappedStorageProvider first = new MappedStorageProvider(file, 1024);
+        MappedStorageProvider second = new MappedStorageProvider(file, 1024);
+        long time = 1_000_000L;
+
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            RateLimitConfig config = config(algorithm, 10);
+
+            // When: Both acquire on one key in turn
+            int allowed = 0;
+            for (int i = 0; i < 20; i++) {
+                MappedStorageProvider provider = i % 2 == 0 ? first : second;
+                if (provider.tryAcquire("client", config, time)) {
+                    allowed++;
+                }
+            }
+
+            // Then: They enforce one limit between them
+            assertThat(allowed).as(algorithm.name()).isEqualTo(10);
+        }
+        assertThat(second.getDiagnostics()).containsEntry("states.count", 3L);
+    }
+
+    @Test
+    void shouldAdmitExactlyTheCapacityUnderContention() throws Exception {
+        // Given: A bucket of 1000 tokens that does not refill, and 4 providers on one file
+        Path file = directory.resolve("state");
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("tb")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(1000)
+            .window(60)
+            .capacity(1000)
+            .refillRate(1e-9)
+            .build();
+        List<MappedStorageProvider> providers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            providers.add(new MappedStorageProvider(file, 1024));
+        }
+
+        // When: 8 threads acquire 500 times each
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            MappedStorageProvider provider = providers.get(t % providers.size());
+            futures.add(executor.submit(() -> {
+                int allowed = 0;
+                for (int i = 0; i < 500; i++) {
+                    if (provider.tryAcquire("global", config, 1_000_000L)) {
+                        allowed++;
+                    }
+                }
+                return allowed;
+            }));
+        }
+        int allowed = 0;
+        for (Future<Integer> future : futures) {
+            allowed += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then: Exactly the capacity was admitted
+        assertThat(allowed).isEqualTo(1000);
+    }
+
+    @Test
+    void shouldReclaimSlotsOnceTheirWindowHasEnded() {
+        // Given: 100 keys seen once and one busy key, in a 60s window ending at 1,020,000
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 1024, clock::get);
+        RateLimitConfig config = config(RateLimitConfig.Algorithm.FIXED_WINDOW, 3);
+        long start = clock.get();
+        for (int i = 0; i < 100; i++) {
+            provider.acquire("ip-" + i, config, 3, start);
+        }
+        provider.acquire("busy", config, 1, start);
+
+        // When: Time passes within the window
+        clock.set(start + 15_000);
+
+        // Then: Nothing is reclaimed while the counts still hold
+        assertThat(provider.cleanUp()).isZero();
+
+        // When: The next window has begun, the busy key being used in it
+        clock.set(start + 25_000);
+        provider.acquire("busy", config, 1, clock.get());
+
+        // Then: Their slots are reclaimed and reused, and they start over
+        assertThat(provider.cleanUp()).isEqualTo(100);
+        assertThat(provider.getDiagnostics())
+            .containsEntry("states.count", 1L)
+            .containsEntry("sweep.reclaimed", 100L);
+        assertThat(provider.getState("ip-0")).isEmpty();
+        assertThat(provider.getState("busy")).isPresent();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(provider.acquire("ip-" + i, config, 3, clock.get()).isAllowed());
+        }
+        assertThat(provider.getDiagnostics()).containsEntry("states.count", 101L);
+    }
+
+    @Test
+    void shouldReclaimBucketsOnceRefilledAndWindowsOnceAgedOut() {
+        // Given: A key that took one request of a bucket refilling 3 per 60s and of a 60s sliding window
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 1024, clock::get);
+        long start = clock.get();
+        provider.acquire("client", config(RateLimitConfig.Algorithm.TOKEN_BUCKET, 3), 1, start);
+        provider.acquire("client", config(RateLimitConfig.Algorithm.SLIDING_WINDOW, 3), 1, start);
+
+        // When/Then: The bucket is reclaimed once its token is back, 20s later
+        clock.set(start + 19_000);
+        assertThat(provider.cleanUp()).isZero();
+        clock.set(start + 21_000);
+        assertThat(provider.cleanUp()).isOne();
+
+        // When/Then: The window is reclaimed once its count has left the estimate, at the end of the next window
+        clock.set(1_079_000L);
+        assertThat(provider.cleanUp()).isZero();
+        clock.set(1_080_000L);
+        assertThat(provider.cleanUp()).isOne();
+        assertThat(provider.getDiagnostics()).containsEntry("states.count", 0L);
+    }
+
+    @Test
+    void shouldReportLiveStateWithoutInventingLimits() {
+        // Given: A key whose bucket has refilled and whose 60s fixed window, ending at 1,080,000, holds 2 requests
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 1024, clock::get);
+        provider.acquire("client", config(RateLimitConfig.Algorithm.TOKEN_BUCKET, 3), 1, clock.get());
+        provider.acquire("client", config(RateLimitConfig.Algorithm.FIXED_WINDOW, 3), 2, 1_020_000L);
+
+        // When
+        clock.set(1_030_000L);
+        RateLimitState state = provider.getState("client").orElseThrow();
+
+        // Then: The window is reported past the stale bucket, with unknown limits as 0
+        assertThat(state.getLimit()).isZero();
+        assertThat(state.getRemaining()).isZero();
+        assertThat(state.getResetTime()).isEqualTo(1_080_000L);
+        assertThat(state.getCurrentUsage()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotLeakSlotsReclaimedWhileBeingAcquired() throws Exception {
+        // Given: A small table whose sweeps, an hour ahead, find every slot stale as soon as it is written
+        long start = 1_000_000L;
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 256,
+                () -> start + 3_600_000L);
+        RateLimitConfig config = config(RateLimitConfig.Algorithm.FIXED_WINDOW, 3);
+
+        // When: New keys are acquired from several threads while another keeps sweeping
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<?>> acquirers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            acquirers.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    provider.acquire("key-" + thread + "-" + (i % 64), config, 1, start);
+                }
+            }));
+        }
+        Future<?> sweeper = executor.submit(() -> {
+            while (!acquirers.stream().allMatch(Future::isDone)) {
+                provider.cleanUp();
+            }
+        });
+        for (Future<?> acquirer : acquirers) {
+            acquirer.get(30, TimeUnit.SECONDS);
+        }
+        sweeper.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Then: Every slot is reclaimed and reusable, so the whole table can be filled again
+        provider.cleanUp();
+        assertThat(provider.getDiagnostics()).containsEntry("states.count", 0L);
+        for (int i = 0; i < 256; i++) {
+            assertTrue(provider.acquire("fresh-" + i, config, 1, start).isAllowed());
+        }
+    }
+
+    @Test
+    void shouldResetAllAlgorithmsOfAKey() {
+        // Given: A key exhausted under each algorithm
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 64);
+        long time = 1_000_000L;
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            provider.acquire("client", config(algorithm, 3), 3, time);
+            assertFalse(provider.tryAcquire("client", config(algorithm, 3), time));
+        }
+
+        // When
+        provider.reset("client");
+
+        // Then
+        assertThat(provider.getState("client")).isEmpty();
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            assertTrue(provider.tryAcquire("client", config(algorithm, 3), time));
+        }
+    }
+
+    @Test
+    void shouldKeepStateAndSizeWhenReopened() {
+        // Given: A file of 64 slots with an exhausted key
+        Path file = directory.resolve("state");
+        RateLimitConfig config = config(RateLimitConfig.Algorithm.FIXED_WINDOW, 3);
+        new MappedStorageProvider(file, 64).acquire("client", config, 3, 1_000_000L);
+
+        // When: It is opened again asking for more slots
+        MappedStorageProvider reopened = new MappedStorageProvider(file, 4096);
+
+        // Then: The file keeps its size and its state
+        assertThat(reopened.getDiagnostics()).containsEntry("slots", 64);
+        assertFalse(reopened.tryAcquire("client", config, 1_000_000L));
+    }
+
+    @Test
+    void shouldInitializeAgainAfterAnIncompleteInitialization() throws IOException {
+        // Given: A sized file whose header was never completed
+        Path file = directory.resolve("state");
+        Files.write(file, new byte[MappedStorageProvider.HEADER_BYTES + 64 * MappedStorageProvider.SLOT_BYTES]);
+
+        // When
+        MappedStorageProvider provider = new MappedStorageProvider(file, 128);
+
+        // Then: It is initialized with the requested size
+        assertThat(provider.getDiagnostics()).containsEntry("slots", 128);
+        assertTrue(provider.tryAcquire("client", config(RateLimitConfig.Algorithm.TOKEN_BUCKET, 3), 1_000_000L));
+    }
+
+    @Test
+    void shouldRejectFilesThatAreNotStateFiles() throws IOException {
+        Path foreign = directory.resolve("foreign");
+        Files.writeString(foreign, "not a state file");
+        assertThrows(StorageException.class, () -> new MappedStorageProvider(foreign, 64));
+
+        // Given: A state file whose header was corrupted
+        Path corrupted = directory.resolve("corrupted");
+        new MappedStorageProvider(corrupted, 64);
+        byte[] bytes = Files.readAllBytes(corrupted);
+        bytes[16] ^= 1;
+        Files.write(corrupted, bytes);
+
+        assertThrows(StorageException.class, () -> new MappedStorageProvider(corrupted, 64));
+    }
+
+    @Test
+    void shouldFailWhenTheTableIsFull() {
+        // Given: A table of 2 slots
+        MappedStorageProvider provider = new MappedStorageProvider(directory.resolve("state"), 2);
+        RateLimitConfig config = config(RateLimitConfig.Algorithm.FIXED_WINDOW, 3);
+        provider.tryAcquire("a", config, 1_000_000L);
+        provider.tryAcquire("b", config, 1_000_000L);
+
+        // Then
+        assertThrows(StorageException.class, () -> provider.tryAcquire("c", config, 1_000_000L));
+    }
+
+    private static RateLimitConfig config(RateLimitConfig.Algorithm algorithm, int requests) {
+        return RateLimitConfig.builder()
+            .name(algorithm.name())
+            .algorithm(algorithm)
+            .requests(requests)
+            .window(60)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+    }
+}
@@ -0,0 +1,87 @@
+package com.lycosoft.ratelimit.storage;
+
+import com.lycosoft.ratelimit.util.MurmurHash3;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link StorageKeyEncoder}.
+ */
+class StorageKeyEncoderTest {
+
+    private static final String JWT_SUBJECT = "auth0|5f7c8ec7c33c6c004bbafe82:tenant-eu-west-1:premium";
+
+    @Test
+    void shouldLeaveKeysUnchangedInRawMode() {
+        StorageKeyEncoder encoder = StorageKeyEncoder.raw();
+
+        assertThat(encoder.encode("login", "10.0.0.1")).isSameAs("10.0.0.1");
+        assertThat(StorageKeyEncoder.of(StorageKeyEncoder.Mode.RAW)).isSameAs(encoder);
+    }
+
+    @Test
+    void shouldPrefixKeysWithLimiterId() {
+        StorageKeyEncoder encoder = StorageKeyEncoder.of(StorageKeyEncoder.Mode.NAMESPACED);
+        String id = StorageKeyEncoder.limiterId("login");
+
+        assertThat(id).hasSize(6).matches("[A-Za-z0-9_-]{6}");
+        assertThat(encoder.encode("login", "10.0.0.1")).isEqualTo(id + ":10.0.0.1");
+        assertThat(encoder.encode("search", "10.0.0.1")).isNotEqualTo(encoder.encode("login", "10.0.0.1"));
+    }
+
+    @Test
+    void shouldHashKeysToFixedWidth() {
+        StorageKeyEncoder hashed64 = StorageKeyEncoder.of(StorageKeyEncoder.Mode.HASHED_64);
+        StorageKeyEncoder hashed128 = StorageKeyEncoder.of(StorageKeyEncoder.Mode.HASHED_128);
+
+        // Then: 6-char ID, separator, then 11 or 22 base64url characters
+        String key64 = hashed64.encode("api", JWT_SUBJECT);
+        String key128 = hashed128.encode("api", JWT_SUBJECT);
+        assertThat(key64).hasSize(18).matches("[A-Za-z0-9_-]{6}:[A-Za-z0-9_-]{11}");
+        assertThat(key128).hasSize(29).matches("[A-Za-z0-9_-]{6}:[A-Za-z0-9_-]{22}");
+        assertThat(key128).startsWith(key64);
+
+        // Then: Encoding is deterministic across encoder instances and distinguishes keys
+        assertThat(StorageKeyEncoder.of(StorageKeyEncoder.Mode.HASHED_64).encode("api", JWT_SUBJECT))
+            .isEqualTo(key64);
+        assertThat(hashed64.encode("api", JWT_SUBJECT + "x")).isNotEqualTo(key64);
+    }
+
+    @Test
+    void shouldRejectLimitersWithCollidingIds() {
+        // Given: Two limiter names with the same 36-bit ID
+        Map<String, String> nameById = new HashMap<>();
+        String first = null;
+        String second = null;
+        for (int i = 0; second == null; i++) {
+            String name = "limiter-" + i;
+            String previous = nameById.putIfAbsent(StorageKeyEncoder.limiterId(name), name);
+            if (previous != null) {
+                first = previous;
+                second = name;
+            }
+        }
+        StorageKeyEncoder encoder = StorageKeyEncoder.of(StorageKeyEncoder.Mode.NAMESPACED);
+        encoder.encode(first, "key");
+
+        // When/Then: The second limiter cannot silently share the first one's keys
+        String colliding = second;
+        assertThrows(IllegalStateException.class, () -> encoder.encode(colliding, "key"));
+        assertDoesNotThrow(() -> StorageKeyEncoder.raw().encode(colliding, "key"));
+    }
+
+    @Test
+    void shouldMatchReferenceMurmurHash3() {
+        // Reference values of MurmurHash3_x64_128 with seed 0
+        assertThat(MurmurHash3.hash128("")).containsExactly(0L, 0L);
+        assertThat(MurmurHash3.hash128("The quick brown fox jumps over the lazy dog"))
+            .containsExactly(0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L);
+        assertThat(MurmurHash3.hash128("hell"))
+            .containsExactly(0x629942693e10f867L, 0x92db0b82baeb5347L);
+    }
+}
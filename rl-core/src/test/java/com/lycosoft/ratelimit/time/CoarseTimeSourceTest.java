@@ -0,0 +1,63 @@
+package com.lycosoft.ratelimit.time;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CoarseTimeSource} and {@link MonotonicTimeSource}.
+ */
+class CoarseTimeSourceTest {
+
+    @Test
+    void shouldPublishUnderlyingTimeOnEachTick() throws InterruptedException {
+        // Given: A coarse view of a manually advanced clock
+        AtomicLong source = new AtomicLong(1_000L);
+        CoarseTimeSource clock = new CoarseTimeSource(source::get, Duration.ofMillis(1));
+        try {
+            assertThat(clock.currentTimeMillis()).isEqualTo(1_000L);
+
+            // When: The underlying clock advances
+            source.set(2_000L);
+
+            // Then: The coarse clock follows within a few ticks
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (clock.currentTimeMillis() != 2_000L && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(clock.currentTimeMillis()).isEqualTo(2_000L);
+
+            // When/Then: The underlying clock steps back, the coarse clock does not
+            source.set(1_500L);
+            Thread.sleep(20);
+            assertThat(clock.currentTimeMillis()).isEqualTo(2_000L);
+        } finally {
+            clock.close();
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidResolution() {
+        assertThrows(IllegalArgumentException.class, () -> new CoarseTimeSource(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new CoarseTimeSource(Duration.ofNanos(10)));
+    }
+
+    @Test
+    void shouldAdvanceMonotonicallyFromAnchor() throws InterruptedException {
+        // Given: A monotonic clock anchored far from the system time
+        MonotonicTimeSource clock = new MonotonicTimeSource(() -> 5_000L);
+
+        // When: Time passes
+        long first = clock.currentTimeMillis();
+        Thread.sleep(5);
+        long second = clock.currentTimeMillis();
+
+        // Then: It starts at the anchor and never goes backwards
+        assertThat(first).isBetween(5_000L, 5_010L);
+        assertThat(second).isGreaterThanOrEqualTo(first + 5);
+    }
+}
@@ -14,7 +14,7 @@ import reactor.core.publisher.Mono;
 /**
  * Non-blocking rate limit filter for WebFlux.
  * 
- * <p>Applies rate limiting to /reactive/* paths without blocking threads.
+ * <p>Applies rate limiting to /reactive/* paths without blocking the event loop.
  */
 @Component
 public class RateLimitWebFilter implements WebFilter {
@@ -51,8 +51,9 @@ public class RateLimitWebFilter implements WebFilter {
             .keyExpression(clientIp)
             .build();
         
-        // Check rate limit (non-blocking!)
-        return Mono.fromCallable(() -> limiterEngine.checkLimit(clientIp, config, context))
+        // Check rate limit without blocking the event loop: a blocking storage client such as
+        // Redis's runs on the provider's executor, whose thread completes the stage
+        return Mono.fromCompletionStage(() -> limiterEngine.tryAcquireAsync(context, config))
             .flatMap(decision -> {
                 if (decision.isAllowed()) {
                     // Add rate limit headers
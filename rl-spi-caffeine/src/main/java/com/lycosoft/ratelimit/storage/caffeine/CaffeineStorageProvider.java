@@ -2,24 +2,54 @@ package com.lycosoft.ratelimit.storage.caffeine;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.lycosoft.ratelimit.algorithm.FixedWindowAlgorithm;
 import com.lycosoft.ratelimit.algorithm.SlidingWindowAlgorithm;
 import com.lycosoft.ratelimit.algorithm.TokenBucketAlgorithm;
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LeaseResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import com.lycosoft.ratelimit.storage.IdleState;
+import com.lycosoft.ratelimit.storage.LockFreeTokenBucket;
+import com.lycosoft.ratelimit.storage.Snapshottable;
+import com.lycosoft.ratelimit.storage.StateSnapshot;
+import com.lycosoft.ratelimit.storage.StorageException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static com.lycosoft.ratelimit.storage.caffeine.MutableState.NO_WINDOW;
+import static com.lycosoft.ratelimit.storage.caffeine.MutableState.counts;
+import static com.lycosoft.ratelimit.storage.caffeine.MutableState.currentCount;
+import static com.lycosoft.ratelimit.storage.caffeine.MutableState.previousCount;
 
 /**
  * Caffeine-based in-memory storage provider for rate limiting.
- * 
+ *
  * <p>This implementation provides:
  * <ul>
  *   <li>Local (single-node) rate limiting</li>
@@ -27,311 +57,1215 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *   <li>High performance (no network overhead)</li>
  *   <li>TTL-based automatic cleanup</li>
  * </ul>
- * 
+ *
+ * <p><b>Storage:</b> Every key has one entry in a single cache, a {@link MutableState}
+ * tagged with its algorithm and updated in place, so that a decision on a known key
+ * costs one cache read and allocates nothing beyond its result ({@link #bind bound}
+ * acquires can return {@link BoundStorage#acquirePacked packed} results instead), apart
+ * from Caffeine's amortized maintenance. A key used with a different algorithm starts
+ * over with new state. The cache holds at most {@code maxEntries} keys, whatever their
+ * algorithm. Cache statistics cost a little on every decision and can be turned off.
+ *
+ * <p><b>Expiry:</b> An entry is removed as soon as a sweep finds its state equivalent
+ * to new state, as {@link IdleState} tells: a bucket that has refilled, windows whose
+ * counts have aged out. A chunk of {@value #SWEEP_CHUNK} entries is swept every
+ * {@value #SWEEP_INTERVAL} cache misses, and {@link #cleanUp()} sweeps them all, so
+ * that the entries track the active keys rather than every key seen. Lock-free token
+ * buckets, which have no monitor to retire them under, are not swept. As a backstop,
+ * each entry also expires once it has not been used for the TTL of the configuration
+ * that created it ({@link RateLimitConfig#getTtl()}, twice the window), but never
+ * before its state is equivalent to new state, as a bucket in debt from
+ * {@link #reserve reservations} takes longer to be, and at most after the provider's
+ * TTL; Caffeine's system scheduler removes those when they expire instead of on later
+ * cache activity.
+ *
  * <p><b>Thread Safety:</b> Caffeine is thread-safe and lock-free for high concurrency.
- * 
+ * State is created with an atomic {@code compute()} and updated holding its monitor,
+ * which serializes requests for the same key. With lock-free token buckets, buckets
+ * are {@link LockFreeTokenBucket}s updated by compare-and-set, so concurrent requests
+ * for a hot key retry instead of blocking, and {@link #getState} reports only the time
+ * at which they run empty. A decision racing with the eviction or reset of its key
+ * updates the state being removed, as if it had happened just before. A sweep removes
+ * idle state holding its monitor, and a decision that then finds it removed starts
+ * over on the key's new state.
+ *
+ * <p><b>Snapshots:</b> The cache can be {@link #writeSnapshot written} to a file, for
+ * example by a {@code StateSnapshotter} on shutdown, and restored by a new provider so
+ * that a restart does not hand every client a full bucket. The snapshot is mapped and
+ * each key's state is taken from it when the key is first used, until the snapshot is
+ * a TTL old. Times are shifted if the clock moved differently from the wall clock
+ * since the snapshot; windows are then dropped, as they cannot be shifted.
+ *
  * <p><b>Use Cases:</b>
  * <ul>
  *   <li>Testing and development</li>
  *   <li>Single-node deployments</li>
  *   <li>L2 fallback in tiered storage</li>
  * </ul>
- * 
+ *
  * @since 1.0.0
  */
-public class CaffeineStorageProvider implements StorageProvider {
-    
+public class CaffeineStorageProvider implements StorageProvider, Snapshottable {
+
     private static final Logger logger = LoggerFactory.getLogger(CaffeineStorageProvider.class);
-    
+
+    /** Identifies snapshots written by this provider. */
+    private static final int SNAPSHOT_KIND = 2;
+
+    /** Cache misses between two sweeps of a chunk. */
+    private static final int SWEEP_INTERVAL = 64;
+    /** Entries per sweep chunk. */
+    private static final int SWEEP_CHUNK = 256;
+
+    /**
+     * State of every key.
+     */
+    private final Cache<String, MutableState> cache;
+
+    /**
+     * Whether token buckets are kept as {@link LockFreeTokenBucket}s.
+     */
+    private final boolean lockFreeTokenBuckets;
+
+    /**
+     * Whether the cache records statistics.
+     */
+    private final boolean recordStats;
+
+    /**
+     * Longest time an idle entry is kept, in nanoseconds.
+     */
+    private final long maxTtlNanos;
+
+    /**
+     * Clock returned by {@link #getCurrentTime()}.
+     */
+    private final TimeSource timeSource;
+
     /**
-     * Cache for Token Bucket states.
+     * Expiry of the cache's entries.
      */
-    private final Cache<String, TokenBucketAlgorithm.BucketState> tokenBucketCache;
+    private final IdleExpiry expiry = new IdleExpiry();
 
     /**
-     * Cache for Sliding Window states.
+     * Snapshot whose records are restored as keys are first used, or null.
      */
-    private final Cache<String, SlidingWindowAlgorithm.WindowState> slidingWindowCache;
+    private volatile StateSnapshot snapshot;
 
     /**
-     * Cache for Fixed Window states.
+     * Shift of the snapshot's times to this provider's clock.
      */
-    private final Cache<String, FixedWindowAlgorithm.WindowState> fixedWindowCache;
+    private final long clockDelta;
 
     /**
-     * Cache for algorithm configurations (to know which cache to use).
+     * Time after which every restored entry would have expired, ending the restore.
      */
-    private final Cache<String, RateLimitConfig.Algorithm> algorithmCache;
-    
+    private final long restoreUntil;
+
+    /**
+     * Cache misses, counting towards the next sweep.
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Held by the sweeping thread; a chunk is skipped while another thread sweeps.
+     */
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    /**
+     * Where the next chunk is swept from, or null to start over. Guarded by {@link #sweepLock}.
+     */
+    private Iterator<Map.Entry<String, MutableState>> sweepCursor;
+
+    /**
+     * Entries removed by sweeps.
+     */
+    private final LongAdder removed = new LongAdder();
+
     /**
      * Creates a Caffeine storage provider with default settings.
-     * 
+     *
      * <p>Default: max 10,000 entries, TTL=2 hours
      */
     public CaffeineStorageProvider() {
         this(10_000, 2, TimeUnit.HOURS);
     }
-    
+
     /**
      * Creates a Caffeine storage provider with custom settings.
-     * 
+     *
      * @param maxEntries the maximum number of entries
      * @param ttlDuration the TTL duration
      * @param ttlUnit the TTL time unit
      */
     public CaffeineStorageProvider(long maxEntries, long ttlDuration, TimeUnit ttlUnit) {
-        this.tokenBucketCache = Caffeine.newBuilder()
-                .maximumSize(maxEntries)
-                .expireAfterWrite(ttlDuration, ttlUnit)
-                .recordStats()
-                .build();
+        this(maxEntries, ttlDuration, ttlUnit, TimeSource.system());
+    }
 
-        this.slidingWindowCache = Caffeine.newBuilder()
-                .maximumSize(maxEntries)
-                .expireAfterWrite(ttlDuration, ttlUnit)
-                .recordStats()
-                .build();
+    /**
+     * Creates a Caffeine storage provider with custom settings on the given clock.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttlDuration the TTL duration
+     * @param ttlUnit the TTL time unit
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @since 1.1.0
+     */
+    public CaffeineStorageProvider(long maxEntries, long ttlDuration, TimeUnit ttlUnit, TimeSource timeSource) {
+        this(maxEntries, ttlDuration, ttlUnit, timeSource, false);
+    }
 
-        this.fixedWindowCache = Caffeine.newBuilder()
-                .maximumSize(maxEntries)
-                .expireAfterWrite(ttlDuration, ttlUnit)
-                .recordStats()
-                .build();
+    /**
+     * Creates a Caffeine storage provider with custom settings on the given clock,
+     * optionally with lock-free token buckets.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttlDuration the TTL duration
+     * @param ttlUnit the TTL time unit
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @since 1.1.0
+     */
+    public CaffeineStorageProvider(long maxEntries, long ttlDuration, TimeUnit ttlUnit, TimeSource timeSource,
+                                   boolean lockFreeTokenBuckets) {
+        this(maxEntries, ttlDuration, ttlUnit, timeSource, lockFreeTokenBuckets, null);
+    }
+
+    /**
+     * Creates a Caffeine storage provider as
+     * {@link #CaffeineStorageProvider(long, long, TimeUnit, TimeSource, boolean)}, restoring
+     * the state of a snapshot written by {@link #writeSnapshot}.
+     *
+     * <p>A missing snapshot is ignored; one that cannot be read is logged and ignored,
+     * so that a bad file never prevents startup.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttlDuration the TTL duration
+     * @param ttlUnit the TTL time unit
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @param snapshot the snapshot file to restore, or null
+     * @since 1.1.0
+     */
+    public CaffeineStorageProvider(long maxEntries, long ttlDuration, TimeUnit ttlUnit, TimeSource timeSource,
+                                   boolean lockFreeTokenBuckets, Path snapshot) {
+        this(maxEntries, ttlDuration, ttlUnit, timeSource, lockFreeTokenBuckets, true, snapshot);
+    }
+
+    /**
+     * Creates a Caffeine storage provider as
+     * {@link #CaffeineStorageProvider(long, long, TimeUnit, TimeSource, boolean, Path)},
+     * optionally without cache statistics.
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttlDuration the TTL duration
+     * @param ttlUnit the TTL time unit
+     * @param timeSource the clock returned by {@link #getCurrentTime()}
+     * @param lockFreeTokenBuckets whether to keep token buckets as {@link LockFreeTokenBucket}s
+     * @param recordStats whether the cache records statistics for {@link #getStats()}
+     * @param snapshot the snapshot file to restore, or null
+     * @since 1.1.0
+     */
+    public CaffeineStorageProvider(long maxEntries, long ttlDuration, TimeUnit ttlUnit, TimeSource timeSource,
+                                   boolean lockFreeTokenBuckets, boolean recordStats, Path snapshot) {
+        this.timeSource = Objects.requireNonNull(timeSource, "timeSource cannot be null");
+        this.lockFreeTokenBuckets = lockFreeTokenBuckets;
+        this.recordStats = recordStats;
+        this.snapshot = snapshot == null ? null : openSnapshot(snapshot);
+        long now = timeSource.currentTimeMillis();
+        this.clockDelta = this.snapshot == null ? 0 : this.snapshot.clockDelta(now);
+        this.restoreUntil = now + ttlUnit.toMillis(ttlDuration);
+        this.maxTtlNanos = ttlUnit.toNanos(ttlDuration);
 
-        this.algorithmCache = Caffeine.newBuilder()
+        Caffeine<String, MutableState> builder = Caffeine.newBuilder()
                 .maximumSize(maxEntries)
-                .expireAfterWrite(ttlDuration, ttlUnit)
-                .build();
+                .expireAfter(expiry)
+                .scheduler(Scheduler.systemScheduler());
+        if (recordStats) {
+            builder.recordStats();
+        }
+        this.cache = builder.build();
+
+        logger.info("CaffeineStorageProvider initialized (maxEntries={}, TTL={}{}, lockFreeTokenBuckets={}, "
+                   + "recordStats={})", maxEntries, ttlDuration, ttlUnit, lockFreeTokenBuckets, recordStats);
+    }
 
-        logger.info("CaffeineStorageProvider initialized (maxEntries={}, TTL={}{})",
-                   maxEntries, ttlDuration, ttlUnit);
+    private static StateSnapshot openSnapshot(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            StateSnapshot snapshot = StateSnapshot.open(file);
+            if (snapshot.kind() != SNAPSHOT_KIND) {
+                logger.warn("Ignoring state snapshot {}: not written by CaffeineStorageProvider", file);
+                return null;
+            }
+            logger.info("Restoring {} records from state snapshot {} as keys are used", snapshot.records(), file);
+            return snapshot;
+        } catch (StorageException e) {
+            logger.warn("Ignoring state snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
     }
-    
+
     @Override
     public long getCurrentTime() {
-        // Local provider uses system time
-        return System.currentTimeMillis();
+        // Local provider uses the local clock
+        return timeSource.currentTimeMillis();
     }
-    
+
     @Override
     public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
-        // Store algorithm type for this key
-        algorithmCache.put(key, config.getAlgorithm());
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> acquireTokenBucket(key, tokenBucket(config), ttlNanos(config), IdleState.rule(config),
+                    permits, currentTime);
+            case SLIDING_WINDOW -> acquireSlidingWindow(key, slidingWindow(config), ttlNanos(config),
+                    IdleState.rule(config), permits, currentTime);
+            case FIXED_WINDOW -> acquireFixedWindow(key, fixedWindow(config), config.getRequests(), ttlNanos(config),
+                    IdleState.rule(config), permits, currentTime);
+        };
+    }
 
+    /**
+     * Creates the algorithm instance once, instead of on every {@link #acquire} call.
+     */
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        long ttlNanos = ttlNanos(config);
+        long rule = IdleState.rule(config);
         return switch (config.getAlgorithm()) {
-            case TOKEN_BUCKET -> tryAcquireTokenBucket(key, config, currentTime);
-            case SLIDING_WINDOW -> tryAcquireSlidingWindow(key, config, currentTime);
-            case FIXED_WINDOW -> tryAcquireFixedWindow(key, config, currentTime);
+            case TOKEN_BUCKET -> {
+                TokenBucketAlgorithm algorithm = tokenBucket(config);
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireTokenBucket(key, algorithm, ttlNanos, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        double available = consumeTokens(key, algorithm, ttlNanos, rule, permits, currentTime);
+                        boolean allowed = available >= permits;
+                        return algorithm.toPackedResult(allowed, allowed ? available - permits : available,
+                                permits, currentTime);
+                    }
+                };
+            }
+            case SLIDING_WINDOW -> {
+                SlidingWindowAlgorithm algorithm = slidingWindow(config);
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireSlidingWindow(key, algorithm, ttlNanos, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        while (true) {
+                            MutableState state = state(key, StateSnapshot.SLIDING_WINDOW, null, ttlNanos, rule,
+                                    currentTime);
+                            synchronized (state) {
+                                if (state.retired) {
+                                    continue;
+                                }
+                                boolean allowed = consumeWindow(state.words, algorithm, permits, currentTime);
+                                long counts = state.words[1];
+                                return algorithm.toPackedResult(allowed, previousCount(counts),
+                                        currentCount(counts), state.words[0], currentTime);
+                            }
+                        }
+                    }
+                };
+            }
+            case FIXED_WINDOW -> {
+                FixedWindowAlgorithm algorithm = fixedWindow(config);
+                int limit = config.getRequests();
+                yield new BoundStorage() {
+                    @Override
+                    public AcquireResult acquire(String key, int permits, long currentTime) {
+                        return acquireFixedWindow(key, algorithm, limit, ttlNanos, rule, permits, currentTime);
+                    }
+
+                    @Override
+                    public long acquirePacked(String key, int permits, long currentTime) {
+                        while (true) {
+                            MutableState state = state(key, StateSnapshot.FIXED_WINDOW, null, ttlNanos, rule,
+                                    currentTime);
+                            synchronized (state) {
+                                if (state.retired) {
+                                    continue;
+                                }
+                                boolean allowed = countWindow(state.words, algorithm, limit, permits, currentTime);
+                                return algorithm.toPackedResult(allowed, state.words[0], (int) state.words[1],
+                                        limit, currentTime);
+                            }
+                        }
+                    }
+                };
+            }
         };
     }
-    
+
+    /**
+     * Evaluates all limits and consumes from them only if every one allows.
+     *
+     * <p>The monitors of the keys' states are taken in key order, so that concurrent
+     * calls cannot deadlock, and each limit is checked against a copy of its state.
+     * The copies are written back only once every limit allows. Limits on the same
+     * state are checked in turn, each seeing the permits counted by the ones before.
+     * Lock-free token buckets take no monitor: they are consumed once all other limits
+     * allow, and given back if one of them denies.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        if (keys.size() != configs.size() || keys.size() != permits.length) {
+            throw new IllegalArgumentException("keys, configs and permits must have the same size");
+        }
+        int size = keys.size();
+        for (int permit : permits) {
+            if (permit <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(keys::get));
+
+        while (true) {
+            MutableState[] states = new MutableState[size];
+            for (int i = 0; i < size; i++) {
+                RateLimitConfig config = configs.get(i);
+                if (!isLockFree(config)) {
+                    boolean bucket = config.getAlgorithm() == RateLimitConfig.Algorithm.TOKEN_BUCKET;
+                    states[i] = state(keys.get(i), tag(config), bucket ? tokenBucket(config) : null,
+                            ttlNanos(config), IdleState.rule(config), currentTime);
+                }
+            }
+            List<AcquireResult> results = holding(states, order, 0,
+                    () -> checkAll(keys, configs, permits, states, currentTime));
+            if (results != null) {
+                if (!results.stream().allMatch(AcquireResult::isAllowed)) {
+                    logger.trace("Multi-limit check denied for {} limits, nothing consumed", size);
+                }
+                return results;
+            }
+        }
+    }
+
     /**
-     * Tries to acquire using Token Bucket algorithm.
+     * Runs {@code check} holding the monitors of the states from {@code position} of
+     * {@code order} on, the limits without state being skipped.
      *
-     * <p><b>Thread Safety:</b> Uses atomic compute() operation to prevent
-     * race conditions (TOCTOU - Time-of-Check to Time-of-Use).
+     * @return the result of {@code check}, or null if a state was retired before its
+     *         monitor was taken
+     */
+    private static List<AcquireResult> holding(MutableState[] states, Integer[] order, int position,
+                                               Supplier<List<AcquireResult>> check) {
+        if (position == order.length) {
+            return check.get();
+        }
+        MutableState state = states[order[position]];
+        if (state == null) {
+            return holding(states, order, position + 1, check);
+        }
+        synchronized (state) {
+            return state.retired ? null : holding(states, order, position + 1, check);
+        }
+    }
+
+    /**
+     * Checks every limit of {@link #acquireAll} against a copy of its state and commits
+     * the copies if all allow. Requires the monitors of all {@code states}.
+     */
+    private List<AcquireResult> checkAll(List<String> keys, List<RateLimitConfig> configs, int[] permits,
+                                         MutableState[] states, long currentTime) {
+        int size = keys.size();
+        long[][] words = new long[size][];
+        double[] available = new double[size];
+        boolean[] allowed = new boolean[size];
+        boolean allAllowed = true;
+        for (int i = 0; i < size; i++) {
+            if (states[i] == null) {
+                continue;
+            }
+            int earlier = -1;
+            for (int j = 0; j < i; j++) {
+                if (states[j] == states[i]) {
+                    earlier = j;
+                }
+            }
+            words[i] = (earlier >= 0 ? words[earlier] : states[i].words).clone();
+            RateLimitConfig config = configs.get(i);
+            switch (config.getAlgorithm()) {
+                case TOKEN_BUCKET -> {
+                    available[i] = refillAndTake(words[i], tokenBucket(config), permits[i], currentTime);
+                    allowed[i] = available[i] >= permits[i];
+                }
+                case SLIDING_WINDOW ->
+                    allowed[i] = consumeWindow(words[i], slidingWindow(config), permits[i], currentTime);
+                case FIXED_WINDOW -> allowed[i] = countWindow(words[i], fixedWindow(config), config.getRequests(),
+                        permits[i], currentTime);
+            }
+            allAllowed &= allowed[i];
+        }
+
+        boolean[] taken = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            RateLimitConfig config = configs.get(i);
+            if (!isLockFree(config)) {
+                continue;
+            }
+            TokenBucketAlgorithm algorithm = tokenBucket(config);
+            long[] bucket = lockFreeBucket(keys.get(i), algorithm, ttlNanos(config), IdleState.rule(config),
+                    currentTime);
+            available[i] = allAllowed
+                    ? LockFreeTokenBucket.tryConsume(bucket, 0, algorithm, permits[i], currentTime)
+                    : LockFreeTokenBucket.available(bucket, 0, algorithm, currentTime);
+            allowed[i] = available[i] >= permits[i];
+            taken[i] = allAllowed && allowed[i];
+            allAllowed &= allowed[i];
+        }
+        for (int i = 0; i < size && !allAllowed; i++) {
+            if (taken[i]) {
+                RateLimitConfig config = configs.get(i);
+                TokenBucketAlgorithm algorithm = tokenBucket(config);
+                available[i] = LockFreeTokenBucket.refund(lockFreeBucket(keys.get(i), algorithm, ttlNanos(config),
+                        IdleState.rule(config), currentTime), 0, algorithm, permits[i], currentTime);
+            }
+        }
+
+        List<AcquireResult> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            RateLimitConfig config = configs.get(i);
+            if (allAllowed && states[i] != null) {
+                System.arraycopy(words[i], 0, states[i].words, 0, words[i].length);
+            }
+            int uncommitted = allowed[i] && !allAllowed ? permits[i] : 0;
+            switch (config.getAlgorithm()) {
+                case TOKEN_BUCKET -> results.add(tokenBucket(config).toResult(allowed[i],
+                        allowed[i] && allAllowed ? available[i] - permits[i] : available[i], permits[i], currentTime));
+                case SLIDING_WINDOW -> results.add(slidingWindow(config).toResult(allowed[i],
+                        previousCount(words[i][1]), currentCount(words[i][1]) - uncommitted, words[i][0], currentTime));
+                case FIXED_WINDOW -> results.add(fixedWindow(config).toResult(allowed[i], words[i][0],
+                        (int) words[i][1] - uncommitted, config.getRequests()));
+            }
+        }
+        return results;
+    }
+
+    private boolean isLockFree(RateLimitConfig config) {
+        return lockFreeTokenBuckets && config.getAlgorithm() == RateLimitConfig.Algorithm.TOKEN_BUCKET;
+    }
+
+    /**
+     * Returns the snapshot tag of the state a limit is kept in, unless it is lock-free.
+     */
+    private static int tag(RateLimitConfig config) {
+        return switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> StateSnapshot.TOKEN_BUCKET;
+            case SLIDING_WINDOW -> StateSnapshot.SLIDING_WINDOW;
+            case FIXED_WINDOW -> StateSnapshot.FIXED_WINDOW;
+        };
+    }
+
+    /**
+     * Books the permits as {@link TokenBucketAlgorithm#reserve} does, holding the
+     * bucket's monitor, so concurrent reservations queue behind each other.
+     */
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Reservations require the TOKEN_BUCKET algorithm");
+        }
+        TokenBucketAlgorithm algorithm = tokenBucket(config);
+        if (lockFreeTokenBuckets) {
+            MutableState bucket = state(key, StateSnapshot.LOCK_FREE_TOKEN_BUCKET, algorithm, ttlNanos(config),
+                    IdleState.rule(config), currentTime);
+            long availableAt = LockFreeTokenBucket.reserve(bucket.words, 0, algorithm, permits, maxWaitMillis,
+                    currentTime);
+            expireNoSoonerThanIdle(key, bucket);
+            return availableAt;
+        }
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        if (permits > algorithm.getCapacity()) {
+            throw new IllegalArgumentException("tokensRequired cannot exceed capacity");
+        }
+        long ttlNanos = ttlNanos(config);
+        long rule = IdleState.rule(config);
+        while (true) {
+            MutableState state = state(key, StateSnapshot.TOKEN_BUCKET, algorithm, ttlNanos, rule, currentTime);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                long[] words = state.words;
+                double available = algorithm.availableTokens(
+                        Double.longBitsToDouble(words[0]), words[1], 0, currentTime);
+                boolean booked = algorithm.canReserve(available, permits, maxWaitMillis);
+                double tokens = booked ? available - permits : available;
+                words[0] = Double.doubleToRawLongBits(tokens);
+                words[1] = currentTime;
+                if (booked && tokens < 0) {
+                    expireNoSoonerThanIdle(key, state);
+                }
+                return algorithm.availableAt(booked, tokens, permits, currentTime);
+            }
+        }
+    }
+
+    /**
+     * Returns and leases tokens as {@link TokenBucketAlgorithm#lease} does, holding the
+     * bucket's monitor.
+     */
+    @Override
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Leases require the TOKEN_BUCKET algorithm");
+        }
+        if (returned < 0 || minPermits < 0 || maxPermits < minPermits) {
+            throw new IllegalArgumentException("invalid lease: returned=" + returned
+                    + ", min=" + minPermits + ", max=" + maxPermits);
+        }
+        TokenBucketAlgorithm algorithm = tokenBucket(config);
+        if (lockFreeTokenBuckets) {
+            long[] bucket = lockFreeBucket(key, algorithm, ttlNanos(config), IdleState.rule(config), currentTime);
+            return LockFreeTokenBucket.lease(bucket, 0, algorithm, returned, minPermits, maxPermits, currentTime);
+        }
+        long ttlNanos = ttlNanos(config);
+        long rule = IdleState.rule(config);
+        while (true) {
+            MutableState state = state(key, StateSnapshot.TOKEN_BUCKET, algorithm, ttlNanos, rule, currentTime);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                long[] words = state.words;
+                double available = algorithm.availableTokens(
+                        Double.longBitsToDouble(words[0]), words[1], returned, currentTime);
+                int granted = algorithm.leaseGrant(available, minPermits, maxPermits);
+                double tokens = granted >= 0 ? available - granted : available;
+                words[0] = Double.doubleToRawLongBits(tokens);
+                words[1] = currentTime;
+                return algorithm.toLeaseResult(granted >= 0, Math.max(0, granted), tokens, minPermits, currentTime);
+            }
+        }
+    }
+
+    /**
+     * Acquires using Token Bucket algorithm.
      *
      * @param key the rate limit key
-     * @param config the configuration
+     * @param algorithm the algorithm for the configuration
+     * @param ttlNanos how long new state is kept once idle
+     * @param rule the {@link IdleState#rule} of the configuration
+     * @param permits the number of permits to acquire
      * @param currentTime the current time
-     * @return true if allowed, false otherwise
-     */
-    private boolean tryAcquireTokenBucket(String key, RateLimitConfig config, long currentTime) {
-        TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm(
-            config.getCapacity(),
-            config.getRefillRate()
-        );
-
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        // Always update state to track refill time correctly, regardless of allow/deny
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        tokenBucketCache.asMap().compute(key, (k, oldState) -> {
-            TokenBucketAlgorithm.BucketState newState = algorithm.tryConsume(oldState, 1, currentTime);
-            allowed.set(newState.allowed());
-            return newState;  // Always persist state for correct refill tracking
-        });
+     * @return the acquire result
+     */
+    private AcquireResult acquireTokenBucket(String key, TokenBucketAlgorithm algorithm, long ttlNanos, long rule,
+                                             int permits, long currentTime) {
+        double available = consumeTokens(key, algorithm, ttlNanos, rule, permits, currentTime);
+        boolean allowed = available >= permits;
+        logger.trace("Token Bucket check for key={}, allowed={}", key, allowed);
+        return algorithm.toResult(allowed, allowed ? available - permits : available, permits, currentTime);
+    }
 
-        logger.trace("Token Bucket check for key={}, allowed={}", key, allowed.get());
+    /**
+     * Refills the bucket and consumes the permits if available, as
+     * {@link TokenBucketAlgorithm#tryConsume} does, holding the bucket's monitor or by
+     * compare-and-set on a {@link LockFreeTokenBucket}.
+     *
+     * @return the tokens available before consuming; the request is allowed if at
+     *         least {@code permits}
+     */
+    private double consumeTokens(String key, TokenBucketAlgorithm algorithm, long ttlNanos, long rule, int permits,
+                                 long currentTime) {
+        if (lockFreeTokenBuckets) {
+            return LockFreeTokenBucket.tryConsume(lockFreeBucket(key, algorithm, ttlNanos, rule, currentTime), 0,
+                    algorithm, permits, currentTime);
+        }
+        if (permits <= 0) {
+            throw new IllegalArgumentException("tokensRequired must be positive");
+        }
+        while (true) {
+            MutableState state = state(key, StateSnapshot.TOKEN_BUCKET, algorithm, ttlNanos, rule, currentTime);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                return refillAndTake(state.words, algorithm, permits, currentTime);
+            }
+        }
+    }
 
-        return allowed.get();
+    /**
+     * Refills the bucket and takes the permits if available. The refill is stored
+     * either way. Requires the state's monitor.
+     *
+     * @return the tokens available before consuming
+     */
+    private static double refillAndTake(long[] words, TokenBucketAlgorithm algorithm, int permits,
+                                        long currentTime) {
+        double available = algorithm.availableTokens(Double.longBitsToDouble(words[0]), words[1], 0, currentTime);
+        words[0] = Double.doubleToRawLongBits(available >= permits ? available - permits : available);
+        words[1] = currentTime;
+        return available;
     }
-    
+
     /**
-     * Tries to acquire using Sliding Window algorithm.
+     * Returns the lock-free bucket of a key, creating a full one if there is none.
      *
-     * <p><b>Thread Safety:</b> Uses atomic compute() operation to prevent
-     * race conditions (TOCTOU - Time-of-Check to Time-of-Use).
+     * @param key the rate limit key
+     * @param algorithm the algorithm for the configuration
+     * @param ttlNanos how long a new bucket is kept once idle
+     * @param rule the {@link IdleState#rule} of the configuration
+     * @param currentTime the current time
+     * @return the bucket, at offset 0
+     */
+    private long[] lockFreeBucket(String key, TokenBucketAlgorithm algorithm, long ttlNanos, long rule,
+                                  long currentTime) {
+        return state(key, StateSnapshot.LOCK_FREE_TOKEN_BUCKET, algorithm, ttlNanos, rule, currentTime).words;
+    }
+
+    /**
+     * Acquires using Sliding Window algorithm.
      *
      * @param key the rate limit key
-     * @param config the configuration
+     * @param algorithm the algorithm for the configuration
+     * @param ttlNanos how long new state is kept once idle
+     * @param rule the {@link IdleState#rule} of the configuration
+     * @param permits the number of permits to acquire
      * @param currentTime the current time
-     * @return true if allowed, false otherwise
-     */
-    private boolean tryAcquireSlidingWindow(String key, RateLimitConfig config, long currentTime) {
-        SlidingWindowAlgorithm algorithm = new SlidingWindowAlgorithm(
-            config.getRequests(),
-            config.getWindowMillis()
-        );
-
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        // Always update state to track window rotation correctly, regardless of allow/deny
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        slidingWindowCache.asMap().compute(key, (k, oldState) -> {
-            SlidingWindowAlgorithm.WindowState newState = algorithm.tryConsume(oldState, currentTime);
-            allowed.set(newState.isAllowed());
-            return newState;  // Always persist state for correct window tracking
-        });
+     * @return the acquire result
+     */
+    private AcquireResult acquireSlidingWindow(String key, SlidingWindowAlgorithm algorithm, long ttlNanos, long rule,
+                                               int permits, long currentTime) {
+        boolean allowed;
+        long start;
+        long counts;
+        while (true) {
+            MutableState state = state(key, StateSnapshot.SLIDING_WINDOW, null, ttlNanos, rule, currentTime);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                allowed = consumeWindow(state.words, algorithm, permits, currentTime);
+                start = state.words[0];
+                counts = state.words[1];
+                break;
+            }
+        }
 
-        logger.trace("Sliding Window check for key={}, allowed={}", key, allowed.get());
+        logger.trace("Sliding Window check for key={}, allowed={}", key, allowed);
 
-        return allowed.get();
+        return algorithm.toResult(allowed, previousCount(counts), currentCount(counts), start, currentTime);
     }
 
     /**
-     * Tries to acquire using Fixed Window algorithm.
+     * Rotates the windows and counts the permits if the weighted estimate allows, as
+     * {@link SlidingWindowAlgorithm#tryConsume} does. Requires the state's monitor.
      *
-     * <p><b>Thread Safety:</b> Uses atomic compute() operation to prevent
-     * race conditions (TOCTOU - Time-of-Check to Time-of-Use).
+     * <p>Only the current window's start is stored; the previous count belongs to the
+     * window just before it, and is dropped when the windows rotate by more than one.
+     *
+     * @return whether the request is allowed
+     */
+    private static boolean consumeWindow(long[] words, SlidingWindowAlgorithm algorithm, int permits,
+                                         long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long currentWindowStart = algorithm.windowStart(currentTime);
+        long start = words[0];
+        int previous = previousCount(words[1]);
+        int current = currentCount(words[1]);
+
+        if (start < currentWindowStart) {
+            previous = start == currentWindowStart - algorithm.getWindowSizeMs() ? current : 0;
+            current = 0;
+            start = currentWindowStart;
+        }
+
+        boolean allowed = algorithm.allows(
+                algorithm.estimateCount(previous, current, currentWindowStart, currentTime), permits);
+        if (allowed) {
+            current += permits;
+        }
+        words[0] = start;
+        words[1] = counts(previous, current);
+        return allowed;
+    }
+
+    /**
+     * Acquires using Fixed Window algorithm.
      *
      * @param key the rate limit key
-     * @param config the configuration
+     * @param algorithm the algorithm for the configuration
+     * @param limit the maximum number of requests per window
+     * @param ttlNanos how long new state is kept once idle
+     * @param rule the {@link IdleState#rule} of the configuration
+     * @param permits the number of permits to acquire
      * @param currentTime the current time
-     * @return true if allowed, false otherwise
+     * @return the acquire result
      */
-    private boolean tryAcquireFixedWindow(String key, RateLimitConfig config, long currentTime) {
-        // Convert window to seconds for FixedWindowAlgorithm
-        int windowSeconds = (int) (config.getWindowMillis() / 1000);
-        if (windowSeconds < 1) {
-            windowSeconds = 1;  // Minimum 1 second
-        }
-        FixedWindowAlgorithm algorithm = new FixedWindowAlgorithm(windowSeconds);
-
-        // Use atomic compute() to prevent race conditions (TOCTOU)
-        AtomicBoolean allowed = new AtomicBoolean(false);
-        fixedWindowCache.asMap().compute(key, (k, oldState) -> {
-            FixedWindowAlgorithm.WindowState newState = algorithm.tryAcquire(
-                    oldState, config.getRequests(), currentTime);
-            allowed.set(newState.isAllowed());
-            return newState;
-        });
+    private AcquireResult acquireFixedWindow(String key, FixedWindowAlgorithm algorithm, int limit, long ttlNanos,
+                                             long rule, int permits, long currentTime) {
+        boolean allowed;
+        long windowNumber;
+        int count;
+        while (true) {
+            MutableState state = state(key, StateSnapshot.FIXED_WINDOW, null, ttlNanos, rule, currentTime);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                allowed = countWindow(state.words, algorithm, limit, permits, currentTime);
+                windowNumber = state.words[0];
+                count = (int) state.words[1];
+                break;
+            }
+        }
+
+        logger.trace("Fixed Window check for key={}, allowed={}", key, allowed);
+
+        return algorithm.toResult(allowed, windowNumber, count, limit);
+    }
+
+    /**
+     * Counts the permits in the current window if they fit the limit, as
+     * {@link FixedWindowAlgorithm#tryAcquire} does. Requires the state's monitor.
+     *
+     * @return whether the request is allowed
+     */
+    private static boolean countWindow(long[] words, FixedWindowAlgorithm algorithm, int limit, int permits,
+                                       long currentTime) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        long windowNumber = algorithm.windowNumber(currentTime);
+        int count = words[0] == windowNumber ? (int) words[1] : 0;
+
+        boolean allowed = count + permits <= limit;
+        words[0] = windowNumber;
+        words[1] = allowed ? count + permits : count;
+        return allowed;
+    }
+
+    /**
+     * Returns the state of a key for an algorithm, creating it if the key has none or
+     * has state of another algorithm. A known key costs one cache read; every
+     * {@value #SWEEP_INTERVAL} misses, a chunk of the cache is swept.
+     *
+     * @param key the rate limit key
+     * @param tag the algorithm's snapshot tag
+     * @param algorithm the token bucket to fill a new bucket from, or null for windows
+     * @param ttlNanos how long new state is kept once idle
+     * @param rule the {@link IdleState#rule} of the configuration
+     * @param currentTime the current time
+     * @return the state, which may be removed as idle before its monitor is taken
+     */
+    private MutableState state(String key, int tag, TokenBucketAlgorithm algorithm, long ttlNanos, long rule,
+                               long currentTime) {
+        MutableState state = cache.getIfPresent(key);
+        if (state != null && state.tag == tag) {
+            return state;
+        }
+        if ((created.incrementAndGet() & (SWEEP_INTERVAL - 1)) == 0) {
+            sweep(SWEEP_CHUNK, currentTime);
+        }
+        return cache.asMap().compute(key, (k, existing) -> existing != null && existing.tag == tag ? existing
+                : newState(k, tag, algorithm, ttlNanos, rule, currentTime));
+    }
+
+    /**
+     * Creates the state of a key seen for the first time: the snapshot's, if it has
+     * one, otherwise a full bucket or empty windows.
+     */
+    private MutableState newState(String key, int tag, TokenBucketAlgorithm algorithm, long ttlNanos, long rule,
+                                  long currentTime) {
+        long[] restored = restoredWords(key, tag);
+        if (restored != null) {
+            return new MutableState(tag, ttlNanos, rule, restored);
+        }
+        return switch (tag) {
+            case StateSnapshot.TOKEN_BUCKET ->
+                    new MutableState(tag, ttlNanos, rule, Double.doubleToRawLongBits(algorithm.getCapacity()),
+                            currentTime);
+            case StateSnapshot.LOCK_FREE_TOKEN_BUCKET ->
+                    new MutableState(tag, ttlNanos, rule, LockFreeTokenBucket.create(algorithm, currentTime));
+            default -> new MutableState(tag, ttlNanos, rule, NO_WINDOW, 0);
+        };
+    }
 
-        logger.trace("Fixed Window check for key={}, allowed={}", key, allowed.get());
+    /**
+     * Takes a key's record from the snapshot being restored, shifting its times, and
+     * drops the snapshot once all it holds would have expired.
+     *
+     * @return the record's state words, or null if there is none
+     */
+    private long[] restoredWords(String key, int tag) {
+        StateSnapshot restoring = snapshot;
+        if (restoring == null) {
+            return null;
+        }
+        if (timeSource.currentTimeMillis() > restoreUntil) {
+            snapshot = null;
+            return null;
+        }
+        boolean window = tag == StateSnapshot.SLIDING_WINDOW || tag == StateSnapshot.FIXED_WINDOW;
+        long[] words = new long[2];
+        if (!restoring.take(key, tag, words) || window && clockDelta != 0) {
+            return null;
+        }
+        if (!window) {
+            // Last refill time of a bucket, origin of a lock-free bucket
+            words[1] += clockDelta;
+        }
+        return words;
+    }
 
-        return allowed.get();
+    /**
+     * Returns how long a key's state is kept once idle: the configured TTL, but never
+     * less than it takes the state to become equivalent to a new one (a token bucket to
+     * refill completely, a window to roll out of the sliding estimate), and at most the
+     * provider's TTL.
+     */
+    private long ttlNanos(RateLimitConfig config) {
+        long ttl = config.getTtl() > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : config.getTtl() * 1000;
+        long idleMillis = switch (config.getAlgorithm()) {
+            case TOKEN_BUCKET -> Math.max(ttl, (long) Math.ceil(config.getCapacity() / config.getRefillRate()));
+            case SLIDING_WINDOW -> Math.max(ttl, 2 * config.getWindowMillis());
+            case FIXED_WINDOW -> Math.max(ttl, 2 * Math.max(1000, config.getWindowMillis()));
+        };
+        return Math.min(maxTtlNanos, TimeUnit.MILLISECONDS.toNanos(idleMillis));
+    }
+
+    /**
+     * Sweeps up to {@code count} entries from where the last sweep stopped, unless
+     * another thread is sweeping.
+     *
+     * @return the number of entries removed
+     */
+    private long sweep(int count, long currentTime) {
+        if (!sweepLock.tryLock()) {
+            return 0;
+        }
+        try {
+            long swept = 0;
+            for (int i = 0; i < count; i++) {
+                if (sweepCursor == null || !sweepCursor.hasNext()) {
+                    sweepCursor = cache.asMap().entrySet().iterator();
+                    if (!sweepCursor.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<String, MutableState> entry = sweepCursor.next();
+                if (removeIfIdle(entry.getKey(), entry.getValue(), currentTime)) {
+                    swept++;
+                }
+            }
+            removed.add(swept);
+            return swept;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a key's entry if its state is equivalent to new state, marking the state
+     * as retired under its monitor so that a decision holding it starts over.
+     *
+     * @return whether the entry was removed
+     */
+    private boolean removeIfIdle(String key, MutableState state, long currentTime) {
+        if (state.tag == StateSnapshot.LOCK_FREE_TOKEN_BUCKET) {
+            return false;
+        }
+        synchronized (state) {
+            if (state.retired
+                    || IdleState.idleAt(state.tag, state.words[0], state.words[1], state.rule) > currentTime) {
+                return false;
+            }
+            state.retired = true;
+            cache.asMap().remove(key, state);
+            return true;
+        }
+    }
+
+    /**
+     * Removes every entry whose state is equivalent to new state, instead of waiting for
+     * the sweeps, and runs Caffeine's pending maintenance.
+     *
+     * @return the number of entries removed as idle
+     * @since 1.1.0
+     */
+    public long cleanUp() {
+        long currentTime = getCurrentTime();
+        long swept = 0;
+        sweepLock.lock();
+        try {
+            for (Map.Entry<String, MutableState> entry : cache.asMap().entrySet()) {
+                if (removeIfIdle(entry.getKey(), entry.getValue(), currentTime)) {
+                    swept++;
+                }
+            }
+            removed.add(swept);
+        } finally {
+            sweepLock.unlock();
+        }
+        cache.cleanUp();
+        return swept;
+    }
+
+    /**
+     * Keeps a bucket that a reservation put into debt until it has refilled, which may
+     * take longer than the expiry its last read set.
+     */
+    private void expireNoSoonerThanIdle(String key, MutableState state) {
+        cache.policy().expireVariably().ifPresent(policy ->
+                policy.setExpiresAfter(key, expiry.expiresAfter(state), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Expires each entry {@link MutableState#ttlNanos} after it was last used, or once
+     * its state is equivalent to new state if that is later, as {@link IdleState} tells
+     * for a bucket in debt, and at most after the provider's TTL.
+     *
+     * <p>Reads return the state before the decision updates it in place, so the entry
+     * is kept for its whole TTL rather than until the updated state becomes
+     * equivalent to new state; sweeps remove it sooner. Only reservations leave a
+     * bucket further from new state than its TTL covers, and they extend the expiry
+     * themselves.
+     */
+    private final class IdleExpiry implements Expiry<String, MutableState> {
+
+        long expiresAfter(MutableState state) {
+            long idleAt = IdleState.idleAt(state.tag, state.words[0], state.words[1], state.rule);
+            long now = timeSource.currentTimeMillis();
+            if (idleAt <= now) {
+                return state.ttlNanos;
+            }
+            long untilIdle = Math.min(maxTtlNanos, TimeUnit.MILLISECONDS.toNanos(idleAt - now));
+            return Math.max(state.ttlNanos, untilIdle);
+        }
+
+        @Override
+        public long expireAfterCreate(String key, MutableState state, long currentTime) {
+            return expiresAfter(state);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, MutableState state, long currentTime, long currentDuration) {
+            return expiresAfter(state);
+        }
+
+        @Override
+        public long expireAfterRead(String key, MutableState state, long currentTime, long currentDuration) {
+            return expiresAfter(state);
+        }
+    }
+
+    private static TokenBucketAlgorithm tokenBucket(RateLimitConfig config) {
+        return new TokenBucketAlgorithm(config.getCapacity(), config.getRefillRate());
+    }
+
+    private static SlidingWindowAlgorithm slidingWindow(RateLimitConfig config) {
+        return new SlidingWindowAlgorithm(config.getRequests(), config.getWindowMillis());
+    }
+
+    /**
+     * Creates a {@link FixedWindowAlgorithm} with the configured window in whole seconds.
+     *
+     * @param config the configuration
+     * @return the algorithm (window of at least 1 second)
+     */
+    private static FixedWindowAlgorithm fixedWindow(RateLimitConfig config) {
+        int windowSeconds = (int) (config.getWindowMillis() / 1000);
+        return new FixedWindowAlgorithm(Math.max(1, windowSeconds));  // Minimum 1 second
     }
 
     @Override
     public void reset(String key) {
-        tokenBucketCache.invalidate(key);
-        slidingWindowCache.invalidate(key);
-        fixedWindowCache.invalidate(key);
-        algorithmCache.invalidate(key);
+        cache.invalidate(key);
         logger.debug("Reset rate limiter for key: {}", key);
     }
-    
+
     @Override
     public Optional<RateLimitState> getState(String key) {
-        RateLimitConfig.Algorithm algorithm = algorithmCache.getIfPresent(key);
-        
-        if (algorithm == null) {
+        MutableState state = cache.getIfPresent(key);
+        if (state == null) {
             return Optional.empty();
         }
-        
-        switch (algorithm) {
-            case TOKEN_BUCKET:
-                TokenBucketAlgorithm.BucketState bucketState = tokenBucketCache.getIfPresent(key);
-                if (bucketState != null) {
-                    return Optional.of(new CaffeineRateLimitState(
-                        0,  // limit unknown
-                        (int) bucketState.tokens(),
-                        0,  // reset time unknown
-                        0   // usage unknown
-                    ));
-                }
-                break;
-                
-            case SLIDING_WINDOW:
-                SlidingWindowAlgorithm.WindowState windowState = slidingWindowCache.getIfPresent(key);
-                if (windowState != null) {
-                    int currentCount = windowState.getCurrentWindow() != null
-                        ? windowState.getCurrentWindow().getCount()
-                        : 0;
-                    return Optional.of(new CaffeineRateLimitState(
-                        0,  // limit unknown
-                        0,  // remaining unknown
-                        0,  // reset time unknown
-                        currentCount
-                    ));
-                }
-                break;
+        if (state.tag == StateSnapshot.LOCK_FREE_TOKEN_BUCKET) {
+            return Optional.of(new CaffeineRateLimitState(
+                0,  // limit unknown
+                0,  // remaining unknown without the configuration
+                LockFreeTokenBucket.emptyAt(state.words, 0),
+                0   // usage unknown
+            ));
+        }
+        long first;
+        long second;
+        synchronized (state) {
+            if (state.retired) {
+                return Optional.empty();
+            }
+            first = state.words[0];
+            second = state.words[1];
+        }
+        return Optional.of(switch (state.tag) {
+            case StateSnapshot.TOKEN_BUCKET -> new CaffeineRateLimitState(
+                0,  // limit unknown
+                (int) Double.longBitsToDouble(first),
+                0,  // reset time unknown
+                0   // usage unknown
+            );
+            case StateSnapshot.SLIDING_WINDOW -> new CaffeineRateLimitState(
+                0,  // limit unknown
+                0,  // remaining unknown
+                0,  // reset time unknown
+                currentCount(second)
+            );
+            default -> new CaffeineRateLimitState(
+                0,  // limit unknown
+                0,  // remaining unknown
+                first * 1000,  // approximate reset time
+                (int) second
+            );
+        });
+    }
 
-            case FIXED_WINDOW:
-                FixedWindowAlgorithm.WindowState fixedState = fixedWindowCache.getIfPresent(key);
-                if (fixedState != null) {
-                    return Optional.of(new CaffeineRateLimitState(
-                        0,  // limit unknown
-                        0,  // remaining unknown
-                        fixedState.getWindowNumber() * 1000,  // approximate reset time
-                        fixedState.getRequestCount()
-                    ));
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes the entries of the cache as they are while iterating; restored entries
+     * get a full TTL again.
+     */
+    @Override
+    public long writeSnapshot(Path file) {
+        SecureRandom random = new SecureRandom();
+        try (StateSnapshot.Writer writer = StateSnapshot.write(file, SNAPSHOT_KIND, getCurrentTime(),
+                random.nextLong(), random.nextLong())) {
+            long[] words = new long[2];
+            cache.asMap().forEach((key, state) -> {
+                if (state.tag == StateSnapshot.LOCK_FREE_TOKEN_BUCKET) {
+                    writer.append(state.tag, key, writer.hash(key), state.words, 2);
+                    return;
                 }
-                break;
+                synchronized (state) {
+                    if (state.retired) {
+                        return;
+                    }
+                    words[0] = state.words[0];
+                    words[1] = state.words[1];
+                }
+                writer.append(state.tag, key, writer.hash(key), words, 2);
+            });
+            writer.commit();
+            return writer.records();
         }
-
-        return Optional.empty();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The sizes per algorithm are counted by iterating the cache.
+     */
     @Override
     public Map<String, Object> getDiagnostics() {
         Map<String, Object> diagnostics = new HashMap<>();
+        long[] sizes = new long[StateSnapshot.LOCK_FREE_TOKEN_BUCKET + 1];
+        for (MutableState state : cache.asMap().values()) {
+            sizes[state.tag]++;
+        }
 
         diagnostics.put("type", "Caffeine");
         diagnostics.put("healthy", true);
-        diagnostics.put("tokenBucket.size", tokenBucketCache.estimatedSize());
-        diagnostics.put("tokenBucket.hitRate", getTokenBucketStats().hitRate());
-        diagnostics.put("slidingWindow.size", slidingWindowCache.estimatedSize());
-        diagnostics.put("slidingWindow.hitRate", getSlidingWindowStats().hitRate());
-        diagnostics.put("fixedWindow.size", fixedWindowCache.estimatedSize());
-        diagnostics.put("fixedWindow.hitRate", getFixedWindowStats().hitRate());
+        diagnostics.put("size", cache.estimatedSize());
+        diagnostics.put("tokenBucket.size", sizes[StateSnapshot.TOKEN_BUCKET]);
+        if (lockFreeTokenBuckets) {
+            diagnostics.put("lockFreeTokenBucket.size", sizes[StateSnapshot.LOCK_FREE_TOKEN_BUCKET]);
+        }
+        diagnostics.put("slidingWindow.size", sizes[StateSnapshot.SLIDING_WINDOW]);
+        diagnostics.put("fixedWindow.size", sizes[StateSnapshot.FIXED_WINDOW]);
+        diagnostics.put("sweep.removed", removed.sum());
+        if (recordStats) {
+            diagnostics.put("hitRate", cache.stats().hitRate());
+        }
 
         return diagnostics;
     }
 
+    /**
+     * Returns how long until a key's entry expires unless it is used again.
+     *
+     * @param key the rate limit key
+     * @param unit the unit of the result
+     * @return the time left, or empty if the key has no entry
+     */
+    OptionalLong expiresAfter(String key, TimeUnit unit) {
+        return cache.policy().expireVariably().orElseThrow().getExpiresAfter(key, unit);
+    }
+
+    /**
+     * Gets the cache statistics, empty if statistics are not recorded.
+     *
+     * @return cache stats
+     * @since 1.1.0
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
     /**
      * Gets cache statistics for Token Bucket.
-     * 
+     *
      * @return cache stats
+     * @deprecated all algorithms share one cache; use {@link #getStats()}
      */
-    public com.github.benmanes.caffeine.cache.stats.CacheStats getTokenBucketStats() {
-        return tokenBucketCache.stats();
+    @Deprecated
+    public CacheStats getTokenBucketStats() {
+        return getStats();
     }
-    
+
     /**
      * Gets cache statistics for Sliding Window.
      *
      * @return cache stats
+     * @deprecated all algorithms share one cache; use {@link #getStats()}
      */
-    public com.github.benmanes.caffeine.cache.stats.CacheStats getSlidingWindowStats() {
-        return slidingWindowCache.stats();
+    @Deprecated
+    public CacheStats getSlidingWindowStats() {
+        return getStats();
     }
 
     /**
      * Gets cache statistics for Fixed Window.
      *
      * @return cache stats
+     * @deprecated all algorithms share one cache; use {@link #getStats()}
      */
-    public com.github.benmanes.caffeine.cache.stats.CacheStats getFixedWindowStats() {
-        return fixedWindowCache.stats();
+    @Deprecated
+    public CacheStats getFixedWindowStats() {
+        return getStats();
     }
 
     /**
-     * Clears all caches.
+     * Clears all state.
      */
     public void clearAll() {
-        tokenBucketCache.invalidateAll();
-        slidingWindowCache.invalidateAll();
-        fixedWindowCache.invalidateAll();
-        algorithmCache.invalidateAll();
+        cache.invalidateAll();
         logger.info("Cleared all Caffeine caches");
     }
 
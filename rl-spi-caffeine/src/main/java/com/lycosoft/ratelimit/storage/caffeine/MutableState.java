@@ -0,0 +1,69 @@
+package com.lycosoft.ratelimit.storage.caffeine;
+
+import com.lycosoft.ratelimit.storage.IdleState;
+import com.lycosoft.ratelimit.storage.LockFreeTokenBucket;
+import com.lycosoft.ratelimit.storage.StateSnapshot;
+
+/**
+ * The rate limit state of one key in {@link CaffeineStorageProvider}, updated in place.
+ *
+ * <p>The {@link #tag} identifies the algorithm, with the tags of {@link StateSnapshot}
+ * records, and the two {@link #words} hold its state:
+ * <ul>
+ *   <li>Token bucket: the tokens (as the bits of a {@code double}) and the last refill time</li>
+ *   <li>Lock-free token bucket: a {@link LockFreeTokenBucket}</li>
+ *   <li>Sliding window: the current window's start, and the previous and current counts
+ *       in the high and low halves</li>
+ *   <li>Fixed window: the window number and the count</li>
+ * </ul>
+ *
+ * <p>The state also holds how long it is kept once idle, {@link #ttlNanos}, and the
+ * {@link IdleState#rule rule} telling when it is equivalent to new state, both set from
+ * the configuration of the limit that created it. A state that has been removed as
+ * idle is {@link #retired}.
+ *
+ * <p><b>Thread Safety:</b> The words of a lock-free token bucket are updated by
+ * compare-and-set; all other states are read and written holding the state's monitor,
+ * as is {@link #retired}.
+ */
+final class MutableState {
+
+    /**
+     * Start or number of a window that never was, so that the first request starts a new one.
+     */
+    static final long NO_WINDOW = Long.MIN_VALUE;
+
+    final int tag;
+    final long ttlNanos;
+    final long rule;
+    final long[] words;
+
+    /**
+     * Whether the state has been removed from the cache as idle, so that a decision
+     * holding it must look the key up again.
+     */
+    boolean retired;
+
+    MutableState(int tag, long ttlNanos, long rule, long first, long second) {
+        this(tag, ttlNanos, rule, new long[] {first, second});
+    }
+
+    MutableState(int tag, long ttlNanos, long rule, long[] words) {
+        this.tag = tag;
+        this.ttlNanos = ttlNanos;
+        this.rule = rule;
+        this.words = words;
+    }
+
+    static long counts(int previous, int current) {
+        return (long) previous << 32 | (current & 0xFFFF_FFFFL);
+    }
+
+    static int previousCount(long counts) {
+        return (int) (counts >>> 32);
+    }
+
+    static int currentCount(long counts) {
+        return (int) counts;
+    }
+}
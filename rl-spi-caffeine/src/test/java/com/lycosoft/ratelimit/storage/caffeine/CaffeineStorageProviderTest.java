@@ -1,10 +1,15 @@
 package com.lycosoft.ratelimit.storage.caffeine;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.PackedAcquireResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -16,6 +21,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -118,6 +124,76 @@ class CaffeineStorageProviderTest {
         }
     }
 
+    @Test
+    void shouldAdmitExactlyCapacityWithLockFreeTokenBuckets() throws Exception {
+        // Given: A lock-free provider and a bucket of 100 that barely refills
+        CaffeineStorageProvider lockFree = new CaffeineStorageProvider(
+            10_000, 2, TimeUnit.HOURS, com.lycosoft.ratelimit.spi.TimeSource.system(), true);
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("lock-free-test")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(100)
+            .window(1)
+            .windowUnit(TimeUnit.HOURS)
+            .capacity(100)
+            .build();
+        int numThreads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicInteger allowedCount = new AtomicInteger();
+
+        try {
+            // When: Many threads race on one key
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    startLatch.await();
+                    for (int j = 0; j < 50; j++) {
+                        if (lockFree.tryAcquire("hot-key", config, System.currentTimeMillis())) {
+                            allowedCount.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            startLatch.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            // Then: Exactly the capacity was admitted
+            assertThat(allowedCount.get()).isEqualTo(100);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then: Results, rollback and reset behave as with compute()
+        long time = 1_000_000L;
+        AcquireResult result = null;
+        for (int i = 0; i < 3; i++) {
+            result = lockFree.acquire("tb-key", tokenBucketConfig, 1, time);
+        }
+        assertThat(result.getRemaining()).isEqualTo(7);
+        assertThat(result.getResetTime()).isEqualTo(time + 300);
+        assertThat(lockFree.getState("tb-key")).isPresent();
+
+        RateLimitConfig oneRequest = RateLimitConfig.builder()
+            .name("one-request")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        lockFree.acquire("fw-key", oneRequest, 1, time);
+        List<AcquireResult> rolledBack = lockFree.acquireAll(List.of("tb-key", "fw-key"),
+            List.of(tokenBucketConfig, oneRequest), new int[] {2, 1}, time);
+        assertThat(rolledBack.get(0).getRemaining()).isEqualTo(7);
+
+        lockFree.reset("tb-key");
+        assertThat(lockFree.getState("tb-key")).isEmpty();
+        assertThat(lockFree.acquire("tb-key", tokenBucketConfig, 1, time).getRemaining()).isEqualTo(9);
+    }
+
     @Test
     void shouldNotLoseStateOnDeniedRequestTokenBucket() {
         // Given: Exhaust all tokens
@@ -260,6 +336,90 @@ class CaffeineStorageProviderTest {
         assertThat(allowed).isFalse();
     }
 
+    @Test
+    void shouldReturnPostDecisionStateFromAcquire() {
+        long time = 1_000_000L;
+
+        // Token bucket: 10 tokens, 3 consumed
+        AcquireResult result = null;
+        for (int i = 0; i < 3; i++) {
+            result = provider.acquire("tb-key", tokenBucketConfig, 1, time);
+        }
+        assertThat(result.isAllowed()).isTrue();
+        assertThat(result.getLimit()).isEqualTo(10);
+        assertThat(result.getRemaining()).isEqualTo(7);
+        assertThat(result.getCurrentUsage()).isEqualTo(3);
+        assertThat(result.getResetTime()).isEqualTo(time + 300);  // 3 tokens at 10/sec
+
+        // Sliding window: 10 per second, 4 consumed
+        for (int i = 0; i < 4; i++) {
+            result = provider.acquire("sw-key", slidingWindowConfig, 1, time);
+        }
+        assertThat(result.isAllowed()).isTrue();
+        assertThat(result.getLimit()).isEqualTo(10);
+        assertThat(result.getRemaining()).isEqualTo(6);
+        assertThat(result.getResetTime()).isEqualTo(time + 1000);
+    }
+
+    @Test
+    void shouldReportRetryTimeWhenTokenBucketDenies() {
+        long time = 1_000_000L;
+
+        for (int i = 0; i < 10; i++) {
+            provider.acquire("tb-key", tokenBucketConfig, 1, time);
+        }
+        AcquireResult denied = provider.acquire("tb-key", tokenBucketConfig, 1, time);
+
+        // Next token is due after 100ms at 10 tokens/sec
+        assertThat(denied.isAllowed()).isFalse();
+        assertThat(denied.getRemaining()).isZero();
+        assertThat(denied.getResetTime()).isEqualTo(time + 100);
+    }
+
+    @Test
+    void shouldAcquireThroughBoundStorage() {
+        long time = 1_000_000L;
+        BoundStorage bound = provider.bind(slidingWindowConfig);
+
+        // Bound and unbound calls update the same state
+        assertThat(bound.acquire("sw-key", 4, time).getRemaining()).isEqualTo(6);
+        assertThat(provider.acquire("sw-key", slidingWindowConfig, 1, time).getRemaining()).isEqualTo(5);
+        assertThat(bound.acquire("sw-key", 6, time).isAllowed()).isFalse();
+
+        // State is visible to getState, which relies on the recorded algorithm
+        assertThat(provider.getState("sw-key")).isPresent();
+    }
+
+    @Test
+    void shouldRollBackAllLimitsWhenOneDenies() {
+        long time = 1_000_000L;
+        RateLimitConfig fixedWindowConfig = RateLimitConfig.builder()
+            .name("test-fixed-window")
+            .algorithm(RateLimitConfig.Algorithm.FIXED_WINDOW)
+            .requests(1)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .build();
+        List<String> keys = List.of("tb-key", "sw-key", "fw-key");
+        List<RateLimitConfig> configs = List.of(tokenBucketConfig, slidingWindowConfig, fixedWindowConfig);
+
+        // First call fits every limit and consumes from all of them
+        List<AcquireResult> first = provider.acquireAll(keys, configs, new int[] {1, 1, 1}, time);
+        assertThat(first).allMatch(AcquireResult::isAllowed);
+
+        // Second call is denied by the fixed window; the others are rolled back
+        List<AcquireResult> second = provider.acquireAll(keys, configs, new int[] {1, 1, 1}, time);
+        assertThat(second).hasSize(3);
+        assertThat(second.get(2).isAllowed()).isFalse();
+        assertThat(second.get(0).isAllowed()).isTrue();
+        assertThat(second.get(0).getRemaining()).isEqualTo(9);
+        assertThat(second.get(1).getRemaining()).isEqualTo(9);
+
+        // Individual limits still have the capacity left by the first call only
+        assertThat(provider.acquire("tb-key", tokenBucketConfig, 1, time).getRemaining()).isEqualTo(8);
+        assertThat(provider.acquire("sw-key", slidingWindowConfig, 1, time).getRemaining()).isEqualTo(8);
+    }
+
     @Test
     void shouldTrackSeparateKeys() {
         long time = System.currentTimeMillis();
@@ -337,12 +497,11 @@ class CaffeineStorageProviderTest {
         }
 
         // When: Get stats
-        var tokenBucketStats = provider.getTokenBucketStats();
-        var slidingWindowStats = provider.getSlidingWindowStats();
+        var stats = provider.getStats();
 
-        // Then: Stats should be available
-        assertThat(tokenBucketStats).isNotNull();
-        assertThat(slidingWindowStats).isNotNull();
+        // Then: Stats should cover the activity
+        assertThat(stats).isNotNull();
+        assertThat(stats.requestCount()).isPositive();
     }
 
     // ==================== Time Source Tests ====================
@@ -439,4 +598,206 @@ class CaffeineStorageProviderTest {
 
         assertThat(allowedCount).isEqualTo(1000);
     }
+
+    @Test
+    void shouldRestoreStateFromASnapshot(@TempDir Path directory) {
+        // Given: Keys exhausted under every algorithm, with and without lock-free buckets
+        long time = 1_000_000L;
+        Path file = directory.resolve("state.snapshot");
+        for (boolean lockFree : new boolean[] {false, true}) {
+            CaffeineStorageProvider original = new CaffeineStorageProvider(
+                10_000, 2, TimeUnit.HOURS, () -> time, lockFree);
+            for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+                RateLimitConfig config = limit(algorithm);
+                while (original.acquire("client-" + algorithm, config, 1, time).isAllowed()) {
+                    // exhaust
+                }
+                original.acquire("other-" + algorithm, config, 1, time);
+            }
+
+            // When: It is snapshotted and a new provider starts from the snapshot
+            assertThat(original.writeSnapshot(file)).isEqualTo(6);
+            CaffeineStorageProvider restored = new CaffeineStorageProvider(
+                10_000, 2, TimeUnit.HOURS, () -> time, lockFree, file);
+
+            // Then: Every key keeps its state as it is used
+            for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+                RateLimitConfig config = limit(algorithm);
+                assertThat(restored.acquire("client-" + algorithm, config, 1, time).isAllowed())
+                    .as(algorithm.name()).isFalse();
+                assertThat(restored.acquire("other-" + algorithm, config, 1, time).getRemaining())
+                    .as(algorithm.name()).isEqualTo(1);
+                assertThat(restored.acquire("new-" + algorithm, config, 1, time).isAllowed())
+                    .as(algorithm.name()).isTrue();
+            }
+        }
+
+        // When: A provider whose clock is 10 minutes ahead restores the snapshot
+        long later = time + 600_000;
+        CaffeineStorageProvider shifted = new CaffeineStorageProvider(
+            10_000, 2, TimeUnit.HOURS, () -> later, true, file);
+
+        // Then: The bucket is still empty, while windows, which cannot be shifted, are dropped
+        RateLimitConfig tokenBucket = limit(RateLimitConfig.Algorithm.TOKEN_BUCKET);
+        RateLimitConfig fixedWindow = limit(RateLimitConfig.Algorithm.FIXED_WINDOW);
+        assertThat(shifted.acquire("client-TOKEN_BUCKET", tokenBucket, 1, later).isAllowed()).isFalse();
+        assertThat(shifted.acquire("client-FIXED_WINDOW", fixedWindow, 1, later).isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldKeepOneEntryPerKeyAcrossAlgorithms() {
+        // Given: A key exhausted as a token bucket
+        long time = System.currentTimeMillis();
+        while (provider.tryAcquire("key1", tokenBucketConfig, time)) {
+            // exhaust
+        }
+
+        // When: It is used with another algorithm
+        boolean allowed = provider.tryAcquire("key1", slidingWindowConfig, time);
+
+        // Then: It starts over in the same entry, and reset removes it
+        assertThat(allowed).isTrue();
+        assertThat(provider.getDiagnostics())
+            .containsEntry("size", 1L)
+            .containsEntry("tokenBucket.size", 0L)
+            .containsEntry("slidingWindow.size", 1L);
+        provider.reset("key1");
+        assertThat(provider.getState("key1")).isEmpty();
+    }
+
+    @Test
+    void shouldPackTheSameResultsAsAcquire() {
+        // Given: A provider without statistics, and one with
+        CaffeineStorageProvider withoutStats = new CaffeineStorageProvider(
+            10_000, 2, TimeUnit.HOURS, com.lycosoft.ratelimit.spi.TimeSource.system(), false, false, null);
+        long time = 1_000_000L;
+        for (RateLimitConfig.Algorithm algorithm : RateLimitConfig.Algorithm.values()) {
+            RateLimitConfig config = limit(algorithm);
+            BoundStorage packed = withoutStats.bind(config);
+            BoundStorage unpacked = provider.bind(config);
+
+            // When/Then: Packed and regular acquires agree, allowed or denied
+            for (int i = 0; i < 5; i++) {
+                long now = time + i * 300L;
+                assertThat(packed.acquirePacked("key", 1, now)).as("%s #%d", algorithm, i)
+                    .isEqualTo(PackedAcquireResult.pack(unpacked.acquire("key", 1, now), now));
+            }
+        }
+
+        // Then: Only the provider with statistics records them
+        assertThat(withoutStats.getStats().requestCount()).isZero();
+        assertThat(withoutStats.getDiagnostics()).doesNotContainKey("hitRate");
+        assertThat(provider.getStats().hitCount()).isPositive();
+    }
+
+    @Test
+    void shouldExpireEachEntryAfterTheTtlOfItsLimit() {
+        // Given: Limits of 1 second, 1 hour and 1 day, and a bucket that refills in 100 seconds
+        long time = System.currentTimeMillis();
+        RateLimitConfig slowBucket = RateLimitConfig.builder()
+            .name("slow-bucket")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(10)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .capacity(10)
+            .refillRate(0.1 / 1000.0)
+            .build();
+
+        // When
+        provider.tryAcquire("second", limit(RateLimitConfig.Algorithm.FIXED_WINDOW, 1, TimeUnit.SECONDS), time);
+        provider.tryAcquire("hour", limit(RateLimitConfig.Algorithm.SLIDING_WINDOW, 1, TimeUnit.HOURS), time);
+        provider.tryAcquire("day", limit(RateLimitConfig.Algorithm.FIXED_WINDOW, 1, TimeUnit.DAYS), time);
+        provider.tryAcquire("bucket", slowBucket, time);
+
+        // Then: Each is kept for twice its window, until its state is as good as new,
+        // and at most for the provider's TTL of 2 hours
+        assertThat(provider.expiresAfter("second", TimeUnit.MILLISECONDS).getAsLong()).isBetween(1_000L, 2_000L);
+        assertThat(provider.expiresAfter("hour", TimeUnit.MINUTES).getAsLong()).isBetween(119L, 120L);
+        assertThat(provider.expiresAfter("day", TimeUnit.MINUTES).getAsLong()).isBetween(119L, 120L);
+        assertThat(provider.expiresAfter("bucket", TimeUnit.SECONDS).getAsLong()).isBetween(99L, 100L);
+        assertThat(provider.expiresAfter("missing", TimeUnit.SECONDS)).isEmpty();
+    }
+
+    @Test
+    void shouldKeepBucketsInDebtUntilTheyHaveRefilled() {
+        // Given: Buckets that refill in 100 seconds, emptied, then reserved 10 tokens into debt
+        long time = System.currentTimeMillis();
+        RateLimitConfig slowBucket = RateLimitConfig.builder()
+            .name("slow-bucket")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(10)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .capacity(10)
+            .refillRate(0.1 / 1000.0)
+            .build();
+        CaffeineStorageProvider lockFreeProvider = new CaffeineStorageProvider(
+            10_000, 2, TimeUnit.HOURS, com.lycosoft.ratelimit.spi.TimeSource.system(), true);
+        for (CaffeineStorageProvider storage : List.of(provider, lockFreeProvider)) {
+            storage.acquire("bucket", slowBucket, 10, time);
+            storage.reserve("bucket", slowBucket, 10, 200_000, time);
+        }
+
+        // When: The bucket is used again, still in debt
+        provider.tryAcquire("bucket", slowBucket, time);
+        lockFreeProvider.tryAcquire("bucket", slowBucket, time);
+
+        // Then: Each is kept until it has refilled, 200 seconds, not just for its 100 second TTL
+        assertThat(provider.expiresAfter("bucket", TimeUnit.SECONDS).getAsLong()).isBetween(195L, 200L);
+        assertThat(lockFreeProvider.expiresAfter("bucket", TimeUnit.SECONDS).getAsLong()).isBetween(195L, 200L);
+    }
+
+    @Test
+    void shouldRemoveEntriesOnceTheirStateIsAsGoodAsNew() {
+        // Given: One request each under hourly limits of 3
+        AtomicLong clock = new AtomicLong(36_000_000L);
+        long time = clock.get();
+        CaffeineStorageProvider sweeping = new CaffeineStorageProvider(10_000, 2, TimeUnit.HOURS, clock::get);
+        RateLimitConfig fixedWindow = limit(RateLimitConfig.Algorithm.FIXED_WINDOW);
+        sweeping.tryAcquire("bucket", limit(RateLimitConfig.Algorithm.TOKEN_BUCKET), time);
+        sweeping.tryAcquire("fixed", fixedWindow, time);
+        sweeping.tryAcquire("sliding", limit(RateLimitConfig.Algorithm.SLIDING_WINDOW), time);
+
+        // When/Then: Nothing is removed while each state still counts
+        clock.set(time + 1_000_000);
+        assertThat(sweeping.cleanUp()).isZero();
+
+        // When/Then: The bucket is removed once its token is back, after 20 minutes
+        clock.set(time + 1_300_000);
+        assertThat(sweeping.cleanUp()).isOne();
+        assertThat(sweeping.getState("bucket")).isEmpty();
+
+        // When/Then: The fixed window is removed once its hour is over, and starts afresh
+        clock.set(time + 3_600_000);
+        assertThat(sweeping.cleanUp()).isOne();
+        assertThat(sweeping.acquire("fixed", fixedWindow, 1, clock.get()).getRemaining()).isEqualTo(2);
+
+        // When: New keys arrive once the sliding window's count has left the estimate
+        clock.set(time + 7_300_000);
+        for (int i = 0; i < 64; i++) {
+            sweeping.tryAcquire("key-" + i, fixedWindow, clock.get());
+        }
+
+        // Then: Their misses swept the idle entries without a clean-up
+        assertThat(sweeping.getState("sliding")).isEmpty();
+        assertThat(sweeping.getState("fixed")).isEmpty();
+        assertThat(sweeping.getDiagnostics())
+            .containsEntry("size", 64L)
+            .containsEntry("sweep.removed", 4L);
+    }
+
+    private static RateLimitConfig limit(RateLimitConfig.Algorithm algorithm) {
+        return limit(algorithm, 1, TimeUnit.HOURS);
+    }
+
+    private static RateLimitConfig limit(RateLimitConfig.Algorithm algorithm, int window, TimeUnit unit) {
+        return RateLimitConfig.builder()
+            .name(algorithm.name())
+            .algorithm(algorithm)
+            .requests(3)
+            .window(window)
+            .windowUnit(unit)
+            .build();
+    }
 }
@@ -6,9 +6,13 @@ public final class LuaScripts {
     public static final String TOKEN_BUCKET = "token_bucket_consume.lua";
     public static final String SLIDING_WINDOW = "sliding_window_consume.lua";
     public static final String FIXED_WINDOW = "fixed_window_consume.lua";
+    public static final String MULTI = "multi_consume.lua";
+    public static final String TOKEN_BUCKET_RESERVE = "token_bucket_reserve.lua";
+    public static final String TOKEN_BUCKET_LEASE = "token_bucket_lease.lua";
 
     private LuaScripts() {} // Prevent instantiation
 
-    public static Set<String> WHITELISTED_SCRIPTS = Set.of(TOKEN_BUCKET, SLIDING_WINDOW, FIXED_WINDOW);
+    public static Set<String> WHITELISTED_SCRIPTS = Set.of(TOKEN_BUCKET, SLIDING_WINDOW, FIXED_WINDOW, MULTI,
+            TOKEN_BUCKET_RESERVE, TOKEN_BUCKET_LEASE);
 
 }
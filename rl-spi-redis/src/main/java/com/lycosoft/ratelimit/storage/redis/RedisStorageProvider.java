@@ -1,19 +1,33 @@
 package com.lycosoft.ratelimit.storage.redis;
 
 import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.AcquireResult;
+import com.lycosoft.ratelimit.spi.BoundStorage;
+import com.lycosoft.ratelimit.spi.LeaseResult;
 import com.lycosoft.ratelimit.spi.RateLimitState;
 import com.lycosoft.ratelimit.spi.StorageProvider;
+import com.lycosoft.ratelimit.spi.TimeSource;
 import com.lycosoft.ratelimit.storage.SecureStorageException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.SafeEncoder;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Redis-based storage provider for rate limiting.
@@ -21,7 +35,8 @@ import java.util.concurrent.atomic.AtomicReference;
  * <p>This implementation uses Lua scripts to ensure atomicity of rate limit operations.
  * All scripts are versioned and automatically reloaded on version mismatch.
  *
- * <p><b>Clock Synchronization:</b> Uses {@code REDIS.TIME()} command to ensure
+ * <p><b>Clock Synchronization:</b> Can follow the Redis server clock (via
+ * {@link RedisTimeSource}, which reads {@code TIME} in the background) to ensure
  * cluster-wide time consistency, preventing window fragmentation due to clock skew.
  *
  * <p><b>Features:</b>
@@ -33,6 +48,20 @@ import java.util.concurrent.atomic.AtomicReference;
  *   <li>Distributed clock sync</li>
  * </ul>
  *
+ * <p><b>Exact expiry:</b> Keys expire after the configuration's TTL (twice the window)
+ * by default. Optionally, single-limit acquires expire each key as soon as its state is
+ * equivalent to none: a token bucket when it is full again (a full bucket is deleted at
+ * once), a sliding window's count when it leaves the estimate at the end of the next
+ * window, a fixed window's count when its window ends. Resident keys then track the
+ * active clients rather than every client seen within a TTL. Reservations, leases and
+ * multi-limit acquires keep the TTL. A token bucket below capacity never expires before
+ * it is full again, so tokens booked by {@link #reserve} outlive the TTL.
+ *
+ * <p><b>Asynchronous calls:</b> Jedis has no non-blocking API, so the {@code *Async}
+ * methods run the blocking call on a dedicated executor, never on the caller's thread.
+ * By default this is a daemon pool sized to the connection pool, so an event loop
+ * thread is never parked on Redis and callers need no extra offloading.
+ *
  * @since 1.0.0
  */
 public class RedisStorageProvider implements StorageProvider {
@@ -41,38 +70,130 @@ public class RedisStorageProvider implements StorageProvider {
 
     private final JedisPool jedisPool;
     private final VersionedLuaScriptManager scriptManager;
+    private final Executor asyncExecutor;
+    private final ExecutorService ownedAsyncExecutor;
 
     // Script names
     private static final String TOKEN_BUCKET_SCRIPT = LuaScripts.TOKEN_BUCKET;
     private static final String SLIDING_WINDOW_SCRIPT = LuaScripts.SLIDING_WINDOW;
     private static final String FIXED_WINDOW_SCRIPT = LuaScripts.FIXED_WINDOW;
+    private static final String MULTI_SCRIPT = LuaScripts.MULTI;
+    private static final String TOKEN_BUCKET_RESERVE_SCRIPT = LuaScripts.TOKEN_BUCKET_RESERVE;
+    private static final String TOKEN_BUCKET_LEASE_SCRIPT = LuaScripts.TOKEN_BUCKET_LEASE;
+
+    /**
+     * Number of values returned by the reservation script: booked, available_at.
+     */
+    private static final int RESERVE_RESULT_SIZE = 2;
+
+    /**
+     * Number of values returned by the lease script: allowed, granted, remaining, limit, reset_time.
+     */
+    private static final int LEASE_RESULT_SIZE = 5;
+
+    /**
+     * Number of values returned by every script: allowed, remaining, limit, reset_time, usage.
+     */
+    private static final int SCRIPT_RESULT_SIZE = 5;
+
+    /**
+     * Number of arguments per limit passed to the multi-limit script.
+     */
+    private static final int MULTI_ARGS_STRIDE = 5;
+
+    private final TimeSource timeSource;
+    private final RedisTimeSource ownedTimeSource;
+
+    /**
+     * Last ARGV entry of the single-limit scripts: "1" to expire keys as soon as their
+     * state is equivalent to none, "0" to expire them after the TTL.
+     */
+    private final String exactExpiry;
 
-    private final boolean useRedisTime;
+    /**
+     * Number of ARGV entries of every single-limit script.
+     */
+    private static final int BOUND_ARGS_SIZE = 6;
+
+    private static final byte[] ONE_PERMIT = Protocol.toByteArray(1);
+
+    private static final ThreadLocal<byte[][]> BOUND_PARAMS_BUFFER =
+            ThreadLocal.withInitial(() -> new byte[1 + BOUND_ARGS_SIZE][]);  // key, then ARGV
 
     private static final ThreadLocal<String[]> KEYS_BUFFER =
             ThreadLocal.withInitial(() -> new String[1]);
 
     private static final ThreadLocal<String[]> TOKEN_BUCKET_ARGS_BUFFER =
-            ThreadLocal.withInitial(() -> new String[5]);
+            ThreadLocal.withInitial(() -> new String[6]);  // 6 elements: capacity, rate, tokens, time, ttl, exact
 
-    private static final ThreadLocal<String[]> SLIDING_WINDOW_ARGS_BUFFER =
-            ThreadLocal.withInitial(() -> new String[4]);  // 4 elements: limit, window_size, current_time, ttl
+    private static final ThreadLocal<String[]> TOKEN_BUCKET_RESERVE_ARGS_BUFFER =
+            ThreadLocal.withInitial(() -> new String[6]);  // 6 elements: token bucket args, max_wait
 
-    private static final ThreadLocal<String[]> FIXED_WINDOW_ARGS_BUFFER =
-            ThreadLocal.withInitial(() -> new String[4]);  // 4 elements: limit, window_size, current_time, ttl
+    private static final ThreadLocal<String[]> TOKEN_BUCKET_LEASE_ARGS_BUFFER =
+            ThreadLocal.withInitial(() -> new String[7]);  // 7 elements: capacity, rate, returned, min, max, time, ttl
 
-    // Atomic cache entry to prevent non-atomic reads of cachedTime and cacheExpiry
-    private static final long CACHE_TTL_MS = 100; // Cache for 100ms
+    private static final ThreadLocal<String[]> SLIDING_WINDOW_ARGS_BUFFER =
+            ThreadLocal.withInitial(() -> new String[6]);  // 6 elements: limit, window_size, time, ttl, permits, exact
 
-    private record CacheEntry(long cachedTime, long cacheExpiry) {}
-    private final AtomicReference<CacheEntry> timeCache = new AtomicReference<>(new CacheEntry(0, 0));
+    private static final ThreadLocal<String[]> FIXED_WINDOW_ARGS_BUFFER =
+            ThreadLocal.withInitial(() -> new String[6]);  // 6 elements: limit, window_size, time, ttl, permits, exact
 
     /**
      * Creates a Redis storage provider with the given Jedis pool.
      *
+     * <p>Asynchronous calls run on a daemon pool with one thread per pooled connection,
+     * shut down by {@link #close()}.
+     *
      * @param jedisPool the Jedis connection pool
      */
     public RedisStorageProvider(JedisPool jedisPool, boolean useRedisTime) {
+        this(jedisPool, useRedisTime, null);
+    }
+
+    /**
+     * Creates a Redis storage provider that runs asynchronous calls on the given executor.
+     *
+     * <p>The executor performs blocking Redis I/O and should not be an event loop. It is
+     * not shut down by {@link #close()}.
+     *
+     * @param jedisPool the Jedis connection pool
+     * @param useRedisTime whether to use the Redis server clock
+     * @param asyncExecutor the executor for asynchronous calls, or null for the default pool
+     * @since 1.1.0
+     */
+    public RedisStorageProvider(JedisPool jedisPool, boolean useRedisTime, Executor asyncExecutor) {
+        this(jedisPool, useRedisTime ? null : TimeSource.system(), asyncExecutor);
+    }
+
+    /**
+     * Creates a Redis storage provider on the given clock.
+     *
+     * <p>With a null {@code timeSource}, the provider follows the Redis server clock
+     * through a {@link RedisTimeSource} it owns, refreshed in the background and
+     * stopped by {@link #close()}. Pass a {@code RedisTimeSource} over a
+     * {@code CoarseTimeSource} to avoid clock calls on the request path entirely.
+     *
+     * @param jedisPool the Jedis connection pool
+     * @param timeSource the clock returned by {@link #getCurrentTime()}, or null for the Redis server clock
+     * @param asyncExecutor the executor for asynchronous calls, or null for the default pool
+     * @since 1.1.0
+     */
+    public RedisStorageProvider(JedisPool jedisPool, TimeSource timeSource, Executor asyncExecutor) {
+        this(jedisPool, timeSource, asyncExecutor, false);
+    }
+
+    /**
+     * Creates a Redis storage provider on the given clock, optionally expiring keys as
+     * soon as their state is equivalent to none rather than after the TTL.
+     *
+     * @param jedisPool the Jedis connection pool
+     * @param timeSource the clock returned by {@link #getCurrentTime()}, or null for the Redis server clock
+     * @param asyncExecutor the executor for asynchronous calls, or null for the default pool
+     * @param exactExpiry whether single-limit acquires expire keys once their state is equivalent to none
+     * @since 1.1.0
+     */
+    public RedisStorageProvider(JedisPool jedisPool, TimeSource timeSource, Executor asyncExecutor,
+                                boolean exactExpiry) {
         Objects.requireNonNull(jedisPool, "jedisPool cannot be null");
         VersionedLuaScriptManager tempScriptManager = new VersionedLuaScriptManager();
 
@@ -81,7 +202,10 @@ public class RedisStorageProvider implements StorageProvider {
             tempScriptManager.loadScript(jedis, TOKEN_BUCKET_SCRIPT);
             tempScriptManager.loadScript(jedis, SLIDING_WINDOW_SCRIPT);
             tempScriptManager.loadScript(jedis, FIXED_WINDOW_SCRIPT);
-            logger.info("RedisStorageProvider initialized with {} scripts loaded", 3);
+            tempScriptManager.loadScript(jedis, MULTI_SCRIPT);
+            tempScriptManager.loadScript(jedis, TOKEN_BUCKET_RESERVE_SCRIPT);
+            tempScriptManager.loadScript(jedis, TOKEN_BUCKET_LEASE_SCRIPT);
+            logger.info("RedisStorageProvider initialized with {} scripts loaded", 6);
         } catch (Exception e) {
             logger.error("Failed to pre-load Lua scripts", e);
             throw new RuntimeException("Redis initialization failed", e);
@@ -89,59 +213,420 @@ public class RedisStorageProvider implements StorageProvider {
 
         this.jedisPool = jedisPool;
         this.scriptManager = tempScriptManager;
-        this.useRedisTime = useRedisTime;
+        this.ownedTimeSource = timeSource == null ? new RedisTimeSource(jedisPool) : null;
+        this.timeSource = timeSource != null ? timeSource : ownedTimeSource;
+        this.ownedAsyncExecutor = asyncExecutor == null ? newAsyncExecutor(jedisPool) : null;
+        this.asyncExecutor = asyncExecutor != null ? asyncExecutor : ownedAsyncExecutor;
+        this.exactExpiry = exactExpiry ? "1" : "0";
     }
 
+    /**
+     * Creates the default executor for asynchronous calls: one daemon thread per pooled
+     * connection, since more threads would only wait for a connection.
+     */
+    private static ExecutorService newAsyncExecutor(JedisPool jedisPool) {
+        int maxTotal = jedisPool.getMaxTotal();
+        int threads = maxTotal > 0 ? maxTotal : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rl-redis-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the time from this provider's {@link TimeSource}.
+     *
+     * <p>When following the Redis server clock, the offset is refreshed in the
+     * background, so this never blocks on Redis.
+     */
     @Override
     public long getCurrentTime() {
-        long now = System.currentTimeMillis();
+        return timeSource.currentTimeMillis();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+        return acquire(key, config, 1, currentTime).isAllowed();
+    }
+
+    /**
+     * Acquires permission with a single {@code EVALSHA}.
+     *
+     * <p>Every script returns {@code [allowed, remaining, limit, reset_time, usage]},
+     * so the decision and its metadata cost one round trip.
+     */
+    @Override
+    public AcquireResult acquire(String key, RateLimitConfig config, int permits, long currentTime) {
+        long startNanos = System.nanoTime();
+        // Validate inputs
+        if (key == null || key.trim().isEmpty()) {
+            throw new IllegalArgumentException("Rate limit key cannot be null or empty");
+        }
+
+        validateConfig(config);
+
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+
+        if (currentTime <= 0) {
+            logger.warn("Invalid currentTime: {}, using the provider clock", currentTime);
+            currentTime = timeSource.currentTimeMillis();
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result = switch (config.getAlgorithm()) {
+                case TOKEN_BUCKET -> executeTokenBucketScript(jedis, key, config, permits, currentTime);
+                case SLIDING_WINDOW -> executeSlidingWindowScript(jedis, key, config, permits, currentTime);
+                case FIXED_WINDOW -> executeFixedWindowScript(jedis, key, config, permits, currentTime);
+            };
+            return parseAcquireResult(result, key, config.getAlgorithm(), startNanos);
+
+        } catch (Exception e) {
+            throw acquireFailure(key, startNanos, e);
+        }
+    }
+
+    /**
+     * Validates and parses the result of a single-limit script, logging slow and sampled calls.
+     *
+     * @param result      the raw script result
+     * @param key         the rate limit key
+     * @param algorithm   the algorithm, for logging
+     * @param startNanos  when the call started, from {@link System#nanoTime()}
+     * @return the acquire result
+     */
+    private AcquireResult parseAcquireResult(Object result, String key, RateLimitConfig.Algorithm algorithm,
+                                             long startNanos) {
+        // Calculate duration AFTER the actual Redis operation
+        long durationMicros = (System.nanoTime() - startNanos) / 1000;
+
+        // Validate and parse result safely
+        if (!(result instanceof List)) {
+            logger.error("Unexpected Lua script return type: {}, key: {}",
+                    result.getClass().getName(), maskKey(key));
+            throw new SecureStorageException("Service temporarily unavailable", "Invalid Lua script response type");
+        }
 
-        // Check local cache first to prevent Redis DoS vector.
-        // Use atomic read to prevent inconsistent state between cachedTime and cacheExpiry
-        CacheEntry cache = timeCache.get();
-        if (now < cache.cacheExpiry()) {
-            return cache.cachedTime() + (now - (cache.cacheExpiry() - CACHE_TTL_MS));
+        @SuppressWarnings("unchecked")
+        List<Long> scriptResult = (List<Long>) result;
+
+        validateScriptResult(scriptResult, SCRIPT_RESULT_SIZE, key);
+        AcquireResult acquireResult = toAcquireResult(scriptResult, 0);
+        boolean allowed = acquireResult.isAllowed();
+
+        // Warn on slow operations (use masked key for PII protection)
+        if (durationMicros > 5000) { // >5ms
+            logger.warn("Slow rate limit check: key={}, duration={}μs, algorithm={}",
+                    maskKey(key), durationMicros, algorithm);
         }
 
-        if (!useRedisTime) {
-            return now; // No network call
+        // Info-level sampling for production visibility (use masked key for PII protection)
+        if (ThreadLocalRandom.current().nextInt(1000) == 0) { // 0.1% sampling
+            logger.info("Rate limit: key={}, allowed={}, duration={}μs, algo={}",
+                    maskKey(key), allowed, durationMicros, algorithm);
+        }
+
+        logger.debug("Rate limit check: key={}, allowed={}, remaining={}, duration={}μs",
+                maskKey(key), allowed, acquireResult.getRemaining(), durationMicros);
+
+        return acquireResult;
+    }
+
+    /**
+     * Logs a failed single-limit call and wraps the error.
+     */
+    private SecureStorageException acquireFailure(String key, long startNanos, Exception e) {
+        long durationMicros = (System.nanoTime() - startNanos) / 1000;
+        logger.error("Rate limit error: key={}, duration={}μs, error={}",
+                maskKey(key), durationMicros, e.getMessage(), e);
+        return new SecureStorageException("Service temporarily unavailable", "Failed to check rate limit", e);
+    }
+
+    /**
+     * Books a token bucket reservation with a single {@code EVALSHA}.
+     *
+     * <p>The script records the reservation as debt in the same hash the consume script
+     * uses, so later acquires and reservations queue behind it.
+     */
+    @Override
+    public long reserve(String key, RateLimitConfig config, int permits, long maxWaitMillis, long currentTime) {
+        long startNanos = System.nanoTime();
+        if (key == null || key.trim().isEmpty()) {
+            throw new IllegalArgumentException("Rate limit key cannot be null or empty");
+        }
+
+        validateConfig(config);
+
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Reservations require the TOKEN_BUCKET algorithm");
+        }
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+
+        if (currentTime <= 0) {
+            logger.warn("Invalid currentTime: {}, using the provider clock", currentTime);
+            currentTime = timeSource.currentTimeMillis();
         }
 
         try (Jedis jedis = jedisPool.getResource()) {
-            // Use REDIS.TIME() for cluster-wide clock synchronization
-            // Returns: [seconds, microseconds]
-            List<String> time = jedis.time();
-            long seconds = Long.parseLong(time.get(0));
-            long microseconds = Long.parseLong(time.get(1));
+            String[] keys = KEYS_BUFFER.get();
+            keys[0] = key;
+
+            String[] args = TOKEN_BUCKET_RESERVE_ARGS_BUFFER.get();
+            args[0] = String.valueOf(config.getCapacity());
+            args[1] = String.valueOf(config.getRefillRate());
+            args[2] = String.valueOf(permits);
+            args[3] = String.valueOf(currentTime);
+            args[4] = String.valueOf(config.getTtl());
+            args[5] = String.valueOf(maxWaitMillis);
+
+            Object result = scriptManager.evalsha(jedis, TOKEN_BUCKET_RESERVE_SCRIPT, keys, args);
+            if (!(result instanceof List)) {
+                throw new SecureStorageException("Service temporarily unavailable", "Invalid Lua script response type");
+            }
 
-            // Convert to milliseconds
-            long redisTime = (seconds * 1000) + (microseconds / 1000);
+            @SuppressWarnings("unchecked")
+            List<Long> scriptResult = (List<Long>) result;
+            validateScriptResult(scriptResult, RESERVE_RESULT_SIZE, key);
 
-            // Atomic update of cache
-            timeCache.set(new CacheEntry(redisTime, now + CACHE_TTL_MS));
+            long availableAt = scriptResult.get(1);
+            logger.debug("Rate limit reservation: key={}, booked={}, wait={}ms, duration={}μs",
+                    maskKey(key), scriptResult.get(0) == 1L, availableAt - currentTime,
+                    (System.nanoTime() - startNanos) / 1000);
+            return availableAt;
 
-            return redisTime;
         } catch (Exception e) {
-            logger.warn("Failed to get Redis time, falling back to System time", e);
-            return System.currentTimeMillis();
+            throw acquireFailure(key, startNanos, e);
         }
     }
 
+    /**
+     * Returns and leases tokens with a single {@code EVALSHA}.
+     *
+     * <p>The script works on the same hash as the consume script, so leased tokens are
+     * debited from the bucket every node shares.
+     */
     @Override
-    public boolean tryAcquire(String key, RateLimitConfig config, long currentTime) {
+    public LeaseResult lease(String key, RateLimitConfig config, int returned, int minPermits, int maxPermits,
+                             long currentTime) {
         long startNanos = System.nanoTime();
-        // Validate inputs
         if (key == null || key.trim().isEmpty()) {
             throw new IllegalArgumentException("Rate limit key cannot be null or empty");
         }
 
-        if (config == null) {
-            throw new IllegalArgumentException("RateLimitConfig cannot be null");
+        validateConfig(config);
+
+        if (config.getAlgorithm() != RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+            throw new UnsupportedOperationException("Leases require the TOKEN_BUCKET algorithm");
+        }
+        if (returned < 0 || minPermits < 0 || maxPermits < minPermits) {
+            throw new IllegalArgumentException("invalid lease: returned=" + returned
+                    + ", min=" + minPermits + ", max=" + maxPermits);
         }
 
         if (currentTime <= 0) {
-            logger.warn("Invalid currentTime: {}, using System.currentTimeMillis()", currentTime);
-            currentTime = System.currentTimeMillis();
+            logger.warn("Invalid currentTime: {}, using the provider clock", currentTime);
+            currentTime = timeSource.currentTimeMillis();
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            String[] keys = KEYS_BUFFER.get();
+            keys[0] = key;
+
+            String[] args = TOKEN_BUCKET_LEASE_ARGS_BUFFER.get();
+            args[0] = String.valueOf(config.getCapacity());
+            args[1] = String.valueOf(config.getRefillRate());
+            args[2] = String.valueOf(returned);
+            args[3] = String.valueOf(minPermits);
+            args[4] = String.valueOf(maxPermits);
+            args[5] = String.valueOf(currentTime);
+            args[6] = String.valueOf(config.getTtl());
+
+            Object result = scriptManager.evalsha(jedis, TOKEN_BUCKET_LEASE_SCRIPT, keys, args);
+            if (!(result instanceof List)) {
+                throw new SecureStorageException("Service temporarily unavailable", "Invalid Lua script response type");
+            }
+
+            @SuppressWarnings("unchecked")
+            List<Long> scriptResult = (List<Long>) result;
+            validateScriptResult(scriptResult, LEASE_RESULT_SIZE, key);
+
+            boolean allowed = scriptResult.get(0) == 1L;
+            int remaining = scriptResult.get(2).intValue();
+            int limit = scriptResult.get(3).intValue();
+            long resetTime = scriptResult.get(4);
+            logger.debug("Token lease: key={}, returned={}, granted={}, duration={}μs",
+                    maskKey(key), returned, scriptResult.get(1), (System.nanoTime() - startNanos) / 1000);
+            return allowed
+                    ? LeaseResult.granted(scriptResult.get(1).intValue(), limit, remaining, resetTime)
+                    : LeaseResult.denied(limit, remaining, resetTime);
+
+        } catch (Exception e) {
+            throw acquireFailure(key, startNanos, e);
+        }
+    }
+
+    /**
+     * Adds to the counters with one pipelined batch of {@code INCRBY} and
+     * {@code PEXPIRE} commands.
+     *
+     * <p>The batch costs one round trip however many counters it holds. Each
+     * {@code INCRBY} is atomic; the commands of different counters may interleave
+     * with other clients.
+     */
+    @Override
+    public long[] addCounters(List<String> keys, long[] deltas, long[] ttlMillis) {
+        if (keys == null || deltas == null || ttlMillis == null
+                || keys.size() != deltas.length || keys.size() != ttlMillis.length) {
+            throw new IllegalArgumentException("keys, deltas and ttlMillis must have the same size");
+        }
+        for (String key : keys) {
+            if (key == null || key.trim().isEmpty()) {
+                throw new IllegalArgumentException("Counter key cannot be null or empty");
+            }
+        }
+        if (keys.isEmpty()) {
+            return new long[0];
+        }
+
+        long startNanos = System.nanoTime();
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Long>> responses = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                responses.add(pipeline.incrBy(keys.get(i), deltas[i]));
+                pipeline.pexpire(keys.get(i), Math.max(1, ttlMillis[i]));
+            }
+            pipeline.sync();
+
+            long[] values = new long[keys.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = responses.get(i).get();
+            }
+            logger.debug("Counter batch: counters={}, duration={}μs",
+                    keys.size(), (System.nanoTime() - startNanos) / 1000);
+            return values;
+
+        } catch (Exception e) {
+            long durationMicros = (System.nanoTime() - startNanos) / 1000;
+            logger.error("Counter batch error: counters={}, duration={}μs, error={}",
+                    keys.size(), durationMicros, e.getMessage(), e);
+            throw new SecureStorageException("Service temporarily unavailable", "Failed to update counters", e);
+        }
+    }
+
+    /**
+     * Encodes the configuration's script arguments once.
+     *
+     * <p>Per call, only the key, the current time and the permit count are encoded.
+     */
+    @Override
+    public BoundStorage bind(RateLimitConfig config) {
+        validateConfig(config);
+        return new BoundScript(config);
+    }
+
+    /**
+     * Evaluates all limits with a single {@code EVALSHA} of the multi-limit script.
+     *
+     * <p>The script checks every key before writing anything and only consumes when
+     * all limits allow, so a denial by one limit leaves the others untouched.
+     */
+    @Override
+    public List<AcquireResult> acquireAll(List<String> keys, List<RateLimitConfig> configs,
+                                          int[] permits, long currentTime) {
+        if (keys == null || configs == null || permits == null
+                || keys.size() != configs.size() || keys.size() != permits.length) {
+            throw new IllegalArgumentException("keys, configs and permits must have the same size");
+        }
+        if (keys.size() == 1) {
+            return List.of(acquire(keys.get(0), configs.get(0), permits[0], currentTime));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (key == null || key.trim().isEmpty()) {
+                throw new IllegalArgumentException("Rate limit key cannot be null or empty");
+            }
+            validateConfig(configs.get(i));
+            if (permits[i] <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+        }
+        if (currentTime <= 0) {
+            logger.warn("Invalid currentTime: {}, using the provider clock", currentTime);
+            currentTime = timeSource.currentTimeMillis();
+        }
+
+        long startNanos = System.nanoTime();
+        String[] scriptKeys = keys.toArray(new String[0]);
+        String[] args = new String[1 + keys.size() * MULTI_ARGS_STRIDE];
+        args[0] = String.valueOf(currentTime);
+        for (int i = 0; i < configs.size(); i++) {
+            RateLimitConfig config = configs.get(i);
+            int base = 1 + i * MULTI_ARGS_STRIDE;
+            switch (config.getAlgorithm()) {
+                case TOKEN_BUCKET -> {
+                    args[base] = "tb";
+                    args[base + 1] = String.valueOf(config.getCapacity());
+                    args[base + 2] = String.valueOf(config.getRefillRate());
+                }
+                case SLIDING_WINDOW, FIXED_WINDOW -> {
+                    args[base] = config.getAlgorithm() == RateLimitConfig.Algorithm.SLIDING_WINDOW ? "sw" : "fw";
+                    args[base + 1] = String.valueOf(config.getRequests());
+                    args[base + 2] = String.valueOf(config.getWindowMillis());
+                }
+            }
+            args[base + 3] = String.valueOf(permits[i]);
+            args[base + 4] = String.valueOf(config.getTtl());
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result = scriptManager.evalsha(jedis, MULTI_SCRIPT, scriptKeys, args);
+            long durationMicros = (System.nanoTime() - startNanos) / 1000;
+
+            if (!(result instanceof List)) {
+                logger.error("Unexpected Lua script return type: {}, keys: {}",
+                        result.getClass().getName(), keys.size());
+                throw new SecureStorageException("Service temporarily unavailable", "Invalid Lua script response type");
+            }
+
+            @SuppressWarnings("unchecked")
+            List<Long> scriptResult = (List<Long>) result;
+            validateScriptResult(scriptResult, keys.size() * SCRIPT_RESULT_SIZE, keys.get(0));
+
+            List<AcquireResult> results = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                results.add(toAcquireResult(scriptResult, i * SCRIPT_RESULT_SIZE));
+            }
+
+            if (durationMicros > 5000) { // >5ms
+                logger.warn("Slow multi-limit check: limits={}, duration={}μs", keys.size(), durationMicros);
+            }
+            logger.debug("Multi-limit check: limits={}, duration={}μs", keys.size(), durationMicros);
+
+            return results;
+
+        } catch (Exception e) {
+            long durationMicros = (System.nanoTime() - startNanos) / 1000;
+            logger.error("Multi-limit rate limit error: limits={}, duration={}μs, error={}",
+                    keys.size(), durationMicros, e.getMessage(), e);
+            throw new SecureStorageException("Service temporarily unavailable", "Failed to check rate limits", e);
+        }
+    }
+
+    /**
+     * Validates algorithm-specific configuration parameters.
+     *
+     * @param config the rate limit configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    private void validateConfig(RateLimitConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("RateLimitConfig cannot be null");
         }
 
         if (config.getAlgorithm() == null) {
@@ -169,66 +654,49 @@ public class RedisStorageProvider implements StorageProvider {
                 }
                 break;
         }
+    }
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            Object result = switch (config.getAlgorithm()) {
-                case TOKEN_BUCKET -> executeTokenBucketScript(jedis, key, config, currentTime);
-                case SLIDING_WINDOW -> executeSlidingWindowScript(jedis, key, config, currentTime);
-                case FIXED_WINDOW -> executeFixedWindowScript(jedis, key, config, currentTime);
-            };
-
-            // Calculate duration AFTER the actual Redis operation
-            long durationMicros = (System.nanoTime() - startNanos) / 1000;
-
-            // Validate and parse result safely
-            if (!(result instanceof List)) {
-                logger.error("Unexpected Lua script return type: {}, key: {}",
-                        result.getClass().getName(), maskKey(key));
-                throw new SecureStorageException("Service temporarily unavailable", "Invalid Lua script response type");
-            }
-
-            @SuppressWarnings("unchecked")
-            List<Long> scriptResult = (List<Long>) result;
-
-            if (scriptResult.isEmpty()) {
-                logger.error("Lua script returned empty list for key: {}", maskKey(key));
-                throw new SecureStorageException("Service temporarily unavailable", "Malformed Lua script response");
-            }
+    /**
+     * Checks that a script response has the expected size and no null values.
+     *
+     * @param scriptResult the script response
+     * @param expectedSize the minimum number of values
+     * @param key          the key (for logging)
+     */
+    private void validateScriptResult(List<Long> scriptResult, int expectedSize, String key) {
+        if (scriptResult.size() < expectedSize) {
+            logger.error("Lua script returned {} values for key: {}", scriptResult.size(), maskKey(key));
+            throw new SecureStorageException("Service temporarily unavailable", "Malformed Lua script response");
+        }
 
-            // Safe access with bounds checking
-            Long allowedValue = scriptResult.get(0);
-            if (allowedValue == null) {
-                logger.error("Lua script returned null allowed value for key: {}", maskKey(key));
+        // Safe access with null checking
+        for (Long value : scriptResult) {
+            if (value == null) {
+                logger.error("Lua script returned null value for key: {}", maskKey(key));
                 throw new SecureStorageException("Service temporarily unavailable", "Null value in Lua script response");
             }
-
-            boolean allowed = allowedValue == 1;
-
-            // Warn on slow operations (use masked key for PII protection)
-            if (durationMicros > 5000) { // >5ms
-                logger.warn("Slow rate limit check: key={}, duration={}μs, algorithm={}",
-                        maskKey(key), durationMicros, config.getAlgorithm());
-            }
-
-            // Info-level sampling for production visibility (use masked key for PII protection)
-            if (ThreadLocalRandom.current().nextInt(1000) == 0) { // 0.1% sampling
-                logger.info("Rate limit: key={}, allowed={}, duration={}μs, algo={}",
-                        maskKey(key), allowed, durationMicros, config.getAlgorithm());
-            }
-
-            logger.debug("Rate limit check: key={}, allowed={}, remaining={}, duration={}μs",
-                    maskKey(key), allowed, scriptResult.get(1), durationMicros);
-
-            return allowed;
-
-        } catch (Exception e) {
-            long durationMicros = (System.nanoTime() - startNanos) / 1000;
-            logger.error("Rate limit error: key={}, duration={}μs, error={}",
-                    maskKey(key), durationMicros, e.getMessage(), e);
-            throw new SecureStorageException("Service temporarily unavailable", "Failed to check rate limit", e);
         }
     }
 
+    /**
+     * Reads one {@code [allowed, remaining, limit, reset_time, usage]} tuple.
+     *
+     * @param scriptResult the script response
+     * @param offset       the index of the tuple's first value
+     * @return the acquire result
+     */
+    private static AcquireResult toAcquireResult(List<Long> scriptResult, int offset) {
+        boolean allowed = scriptResult.get(offset) == 1;
+        int remaining = scriptResult.get(offset + 1).intValue();
+        int limit = scriptResult.get(offset + 2).intValue();
+        long resetTime = scriptResult.get(offset + 3);
+        int usage = scriptResult.get(offset + 4).intValue();
+
+        return allowed
+                ? AcquireResult.allowed(limit, remaining, resetTime, usage)
+                : AcquireResult.denied(limit, remaining, resetTime, usage);
+    }
+
     /**
      * Masks a key for logging to protect PII.
      * Shows first 4 and last 4 characters, masks the middle.
@@ -249,11 +717,12 @@ public class RedisStorageProvider implements StorageProvider {
      * @param jedis       the Redis connection
      * @param key         the rate limit key
      * @param config      the rate limit configuration
+     * @param permits     the number of tokens to consume
      * @param currentTime the current time in milliseconds
-     * @return the script result: [allowed, remaining_tokens]
+     * @return the script result: [allowed, remaining, limit, reset_time, usage]
      */
-    private Object executeTokenBucketScript(Jedis jedis, String key,
-                                            RateLimitConfig config, long currentTime) {
+    private Object executeTokenBucketScript(Jedis jedis, String key, RateLimitConfig config,
+                                            int permits, long currentTime) {
 
         String[] keys = KEYS_BUFFER.get();
         keys[0] = key;
@@ -261,9 +730,10 @@ public class RedisStorageProvider implements StorageProvider {
         String[] args = TOKEN_BUCKET_ARGS_BUFFER.get();
         args[0] = String.valueOf(config.getCapacity());
         args[1] = String.valueOf(config.getRefillRate());
-        args[2] = "1";  // tokens_required (constant)
+        args[2] = String.valueOf(permits);  // tokens_required
         args[3] = String.valueOf(currentTime);
         args[4] = String.valueOf(config.getTtl());
+        args[5] = exactExpiry;
 
         return scriptManager.evalsha(jedis, TOKEN_BUCKET_SCRIPT, keys, args);
     }
@@ -274,11 +744,12 @@ public class RedisStorageProvider implements StorageProvider {
      * @param jedis       the Redis connection
      * @param key         the rate limit key
      * @param config      the rate limit configuration
+     * @param permits     the number of slots to consume
      * @param currentTime the current time in milliseconds
-     * @return the script result: [allowed, remaining]
+     * @return the script result: [allowed, remaining, limit, reset_time, usage]
      */
-    private Object executeSlidingWindowScript(Jedis jedis, String key,
-                                              RateLimitConfig config, long currentTime) {
+    private Object executeSlidingWindowScript(Jedis jedis, String key, RateLimitConfig config,
+                                              int permits, long currentTime) {
 
         String[] keys = KEYS_BUFFER.get();
         keys[0] = key;
@@ -288,6 +759,8 @@ public class RedisStorageProvider implements StorageProvider {
         args[1] = String.valueOf(config.getWindowMillis()); // window_size
         args[2] = String.valueOf(currentTime); // current_time (fixed: was incorrectly at index 3)
         args[3] = String.valueOf(config.getTtl()); // ttl (fixed: was incorrectly at index 4)
+        args[4] = String.valueOf(permits); // permits
+        args[5] = exactExpiry; // exact_expiry
 
         return scriptManager.evalsha(jedis, SLIDING_WINDOW_SCRIPT, keys, args);
     }
@@ -298,11 +771,12 @@ public class RedisStorageProvider implements StorageProvider {
      * @param jedis       the Redis connection
      * @param key         the rate limit key
      * @param config      the rate limit configuration
+     * @param permits     the number of permits to count
      * @param currentTime the current time in milliseconds
-     * @return the script result: [allowed, remaining]
+     * @return the script result: [allowed, remaining, limit, reset_time, usage]
      */
-    private Object executeFixedWindowScript(Jedis jedis, String key,
-                                            RateLimitConfig config, long currentTime) {
+    private Object executeFixedWindowScript(Jedis jedis, String key, RateLimitConfig config,
+                                            int permits, long currentTime) {
 
         String[] keys = KEYS_BUFFER.get();
         keys[0] = key;
@@ -312,10 +786,44 @@ public class RedisStorageProvider implements StorageProvider {
         args[1] = String.valueOf(config.getWindowMillis()); // window_size
         args[2] = String.valueOf(currentTime); // current_time
         args[3] = String.valueOf(config.getTtl()); // ttl
+        args[4] = String.valueOf(permits); // permits
+        args[5] = exactExpiry; // exact_expiry
 
         return scriptManager.evalsha(jedis, FIXED_WINDOW_SCRIPT, keys, args);
     }
 
+    @Override
+    public CompletionStage<AcquireResult> acquireAsync(String key, RateLimitConfig config,
+                                                       int permits, long currentTime) {
+        return supplyAsync(() -> acquire(key, config, permits, currentTime));
+    }
+
+    @Override
+    public CompletionStage<Optional<RateLimitState>> getStateAsync(String key) {
+        return supplyAsync(() -> getState(key));
+    }
+
+    @Override
+    public CompletionStage<Void> resetAsync(String key) {
+        return supplyAsync(() -> {
+            reset(key);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a blocking Redis call on the asynchronous executor.
+     *
+     * <p>A rejected submission (e.g. after {@link #close()}) fails the returned stage.
+     */
+    private <T> CompletionStage<T> supplyAsync(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, asyncExecutor);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     @Override
     public void reset(String key) {
         if (key == null || key.trim().isEmpty()) {
@@ -369,9 +877,87 @@ public class RedisStorageProvider implements StorageProvider {
     }
 
     /**
-     * Closes the Jedis pool.
+     * A single-limit script call with the configuration's arguments pre-encoded.
+     *
+     * <p>Argument layout matches {@link #executeTokenBucketScript} and the window
+     * script methods.
+     */
+    private final class BoundScript implements BoundStorage {
+
+        private final String script;
+        private final RateLimitConfig.Algorithm algorithm;
+        private final byte[][] argsTemplate;
+        private final int timeIndex;
+        private final int permitsIndex;
+
+        BoundScript(RateLimitConfig config) {
+            this.algorithm = config.getAlgorithm();
+            this.argsTemplate = new byte[BOUND_ARGS_SIZE][];
+            if (algorithm == RateLimitConfig.Algorithm.TOKEN_BUCKET) {
+                this.script = TOKEN_BUCKET_SCRIPT;
+                this.timeIndex = 3;
+                this.permitsIndex = 2;
+                argsTemplate[0] = SafeEncoder.encode(String.valueOf(config.getCapacity()));
+                argsTemplate[1] = SafeEncoder.encode(String.valueOf(config.getRefillRate()));
+                argsTemplate[4] = SafeEncoder.encode(String.valueOf(config.getTtl()));
+            } else {
+                this.script = algorithm == RateLimitConfig.Algorithm.SLIDING_WINDOW
+                        ? SLIDING_WINDOW_SCRIPT
+                        : FIXED_WINDOW_SCRIPT;
+                this.timeIndex = 2;
+                this.permitsIndex = 4;
+                argsTemplate[0] = SafeEncoder.encode(String.valueOf(config.getRequests()));
+                argsTemplate[1] = SafeEncoder.encode(String.valueOf(config.getWindowMillis()));
+                argsTemplate[3] = SafeEncoder.encode(String.valueOf(config.getTtl()));
+            }
+            argsTemplate[5] = SafeEncoder.encode(exactExpiry);
+        }
+
+        @Override
+        public AcquireResult acquire(String key, int permits, long currentTime) {
+            long startNanos = System.nanoTime();
+            if (key == null || key.trim().isEmpty()) {
+                throw new IllegalArgumentException("Rate limit key cannot be null or empty");
+            }
+            if (permits <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+            if (currentTime <= 0) {
+                logger.warn("Invalid currentTime: {}, using the provider clock", currentTime);
+                currentTime = timeSource.currentTimeMillis();
+            }
+
+            byte[][] params = BOUND_PARAMS_BUFFER.get();
+            params[0] = SafeEncoder.encode(key);
+            System.arraycopy(argsTemplate, 0, params, 1, BOUND_ARGS_SIZE);
+            params[1 + timeIndex] = Protocol.toByteArray(currentTime);
+            params[1 + permitsIndex] = permits == 1 ? ONE_PERMIT : Protocol.toByteArray(permits);
+
+            try (Jedis jedis = jedisPool.getResource()) {
+                Object result = scriptManager.evalsha(jedis, script, 1, params);
+                return parseAcquireResult(result, key, algorithm, startNanos);
+
+            } catch (Exception e) {
+                throw acquireFailure(key, startNanos, e);
+            }
+        }
+
+        @Override
+        public CompletionStage<AcquireResult> acquireAsync(String key, int permits, long currentTime) {
+            return supplyAsync(() -> acquire(key, permits, currentTime));
+        }
+    }
+
+    /**
+     * Closes the Jedis pool, the default asynchronous executor and the owned Redis clock.
      */
     public void close() {
+        if (ownedTimeSource != null) {
+            ownedTimeSource.close();
+        }
+        if (ownedAsyncExecutor != null) {
+            ownedAsyncExecutor.shutdown();
+        }
         if (jedisPool != null && !jedisPool.isClosed()) {
             jedisPool.close();
             logger.info("RedisStorageProvider closed");
@@ -0,0 +1,128 @@
+package com.lycosoft.ratelimit.storage.redis;
+
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TimeSource} that follows the Redis server clock without calling Redis on the
+ * request path.
+ *
+ * <p>A daemon thread periodically reads the server time with {@code TIME} and stores
+ * its offset from the local clock, correcting for half the round trip. Reading the
+ * time is then the local clock plus that offset, so every node using the same Redis
+ * agrees on window boundaries and refill times without a blocking call per request.
+ *
+ * <p>If a refresh fails, the last known offset is kept (zero before the first
+ * success) and the failure is logged. Call {@link #close()} to stop refreshing.
+ *
+ * <p><b>Thread Safety:</b> This class is thread-safe.
+ *
+ * @since 1.1.0
+ */
+public class RedisTimeSource implements TimeSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisTimeSource.class);
+
+    /**
+     * Default interval between offset refreshes.
+     */
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    private final JedisPool jedisPool;
+    private final TimeSource localClock;
+    private final ScheduledExecutorService refresher;
+    private volatile long offsetMillis;
+    private volatile long lastRefresh;
+
+    /**
+     * Creates a Redis-synchronized clock over the system clock, refreshed every
+     * {@link #DEFAULT_REFRESH_INTERVAL}.
+     *
+     * @param jedisPool the Jedis connection pool
+     */
+    public RedisTimeSource(JedisPool jedisPool) {
+        this(jedisPool, TimeSource.system(), DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Creates a Redis-synchronized clock.
+     *
+     * <p>The first offset is read before the constructor returns.
+     *
+     * @param jedisPool the Jedis connection pool
+     * @param localClock the local clock the offset is applied to (for example a
+     *                   {@code CoarseTimeSource})
+     * @param refreshInterval the time between offset refreshes
+     */
+    public RedisTimeSource(JedisPool jedisPool, TimeSource localClock, Duration refreshInterval) {
+        this.jedisPool = Objects.requireNonNull(jedisPool, "jedisPool cannot be null");
+        this.localClock = Objects.requireNonNull(localClock, "localClock cannot be null");
+        Objects.requireNonNull(refreshInterval, "refreshInterval cannot be null");
+        if (refreshInterval.isNegative() || refreshInterval.isZero()) {
+            throw new IllegalArgumentException("refreshInterval must be positive");
+        }
+
+        refresh();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rl-redis-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalMillis = Math.max(1, refreshInterval.toMillis());
+        refresher.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return localClock.currentTimeMillis() + offsetMillis;
+    }
+
+    /**
+     * Reads the server time and updates the offset. Failures keep the previous offset.
+     */
+    void refresh() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            long before = localClock.currentTimeMillis();
+            // Returns: [seconds, microseconds]
+            List<String> time = jedis.time();
+            long after = localClock.currentTimeMillis();
+
+            long redisTime = Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+            offsetMillis = redisTime - (before + (after - before) / 2);
+            lastRefresh = after;
+        } catch (Exception e) {
+            logger.warn("Failed to read Redis time, keeping offset {}ms: {}", offsetMillis, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the Redis clock minus the local clock, in milliseconds
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * @return the local time of the last successful refresh, or 0 if none succeeded
+     */
+    public long getLastRefresh() {
+        return lastRefresh;
+    }
+
+    /**
+     * Stops refreshing the offset. The last offset stays in effect.
+     */
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.SafeEncoder;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -55,6 +56,11 @@ public class VersionedLuaScriptManager {
      */
     private final Map<String, String> scriptContentCache = new ConcurrentHashMap<>();
 
+    /**
+     * Cache of SHA-1 hash → encoded SHA-1 hash, for binary calls
+     */
+    private final Map<String, byte[]> shaBytesCache = new ConcurrentHashMap<>();
+
     private static final int MAX_VERSION_SCAN_LINES = 10;
 
     /**
@@ -151,6 +157,42 @@ public class VersionedLuaScriptManager {
         }
     }
     
+    /**
+     * Executes a Lua script with pre-encoded arguments, with automatic reload on
+     * {@link JedisNoScriptException}.
+     * 
+     * <p>Lets callers encode arguments that do not change between calls once, instead
+     * of converting them from strings on every call.
+     * 
+     * @param jedis the Redis connection
+     * @param scriptName the script name
+     * @param keyCount the number of leading {@code params} that are KEYS
+     * @param params the KEYS followed by the ARGV, encoded
+     * @return the script result
+     * @since 1.1.0
+     */
+    public Object evalsha(Jedis jedis, String scriptName, int keyCount, byte[]... params) {
+        String sha = scriptShaCache.get(scriptName);
+        
+        if (sha == null) {
+            // Script not loaded yet - load it now
+            sha = loadScript(jedis, scriptName);
+        }
+        
+        try {
+            return jedis.evalsha(shaBytes(sha), keyCount, params);
+        } catch (JedisNoScriptException e) {
+            // Script evicted from Redis - reload and retry
+            logger.warn("Script {} evicted from Redis, reloading...", scriptName);
+            sha = reloadScript(jedis, scriptName);
+            return jedis.evalsha(shaBytes(sha), keyCount, params);
+        }
+    }
+    
+    private byte[] shaBytes(String sha) {
+        return shaBytesCache.computeIfAbsent(sha, SafeEncoder::encode);
+    }
+    
     /**
      * Reloads a script, forcing a fresh load from resources.
      * 
@@ -287,6 +329,7 @@ public class VersionedLuaScriptManager {
     public void clearCache() {
         scriptShaCache.clear();
         scriptContentCache.clear();
+        shaBytesCache.clear();
         logger.info("Cleared Lua script cache");
     }
     
@@ -1,4 +1,4 @@
--- Version: 1.0.0
+-- Version: 1.1.0
 -- Algorithm: Fixed Window Counter
 -- Description: Atomic fixed window rate limiting with O(1) memory
 -- Note: Can allow 2x burst at window boundaries
@@ -8,9 +8,12 @@ local limit = tonumber(ARGV[1])
 local window_size_ms = tonumber(ARGV[2])
 local current_time = tonumber(ARGV[3])
 local ttl = tonumber(ARGV[4])
+local permits = tonumber(ARGV[5]) or 1
+local exact_expiry = ARGV[6] == '1'  -- optional: expire when the window ends
 
 -- Calculate current window start time
 local current_window_start = math.floor(current_time / window_size_ms) * window_size_ms
+local reset_time = current_window_start + window_size_ms
 
 -- Build key for current window (includes window start for automatic rotation)
 local window_key = key .. ':fw:' .. tostring(current_window_start)
@@ -18,16 +21,20 @@ local window_key = key .. ':fw:' .. tostring(current_window_start)
 -- Get current count
 local current_count = tonumber(redis.call('GET', window_key)) or 0
 
--- Decision: allow or deny
-if current_count < limit then
+-- Decision: allow or deny (all-or-nothing)
+if current_count + permits <= limit then
     -- Request ALLOWED - increment counter
-    redis.call('INCR', window_key)
-    redis.call('EXPIRE', window_key, ttl)
+    redis.call('INCRBY', window_key, permits)
+    if exact_expiry then
+        redis.call('PEXPIRE', window_key, reset_time - current_time)
+    else
+        redis.call('EXPIRE', window_key, ttl)
+    end
 
-    -- Return: {allowed=1, remaining=(limit - current_count - 1)}
-    return {1, limit - current_count - 1}
+    -- Return: {allowed=1, remaining, limit, reset_time, usage}
+    return {1, limit - current_count - permits, limit, reset_time, current_count + permits}
 else
     -- Request DENIED - limit reached
-    -- Return: {allowed=0, remaining=0}
-    return {0, 0}
+    -- Return: {allowed=0, remaining=0, limit, reset_time, usage}
+    return {0, 0, limit, reset_time, current_count}
 end
@@ -0,0 +1,117 @@
+-- Version: 1.1.0
+-- Algorithm: Multi-limit (Token Bucket / Sliding Window / Fixed Window)
+-- Description: Atomic all-or-nothing evaluation of several rate limits in one call
+-- Note: Every limit is checked first; counters are only written if all limits allow
+
+-- KEYS[i]: base key of limit i
+-- ARGV[1]: current_time
+-- ARGV[2 + (i - 1) * 5 ...]: per-limit arguments (stride 5)
+--   Token Bucket:   'tb', capacity, refill_rate, permits, ttl
+--   Sliding Window: 'sw', limit, window_size_ms, permits, ttl
+--   Fixed Window:   'fw', limit, window_size_ms, permits, ttl
+
+local current_time = tonumber(ARGV[1])
+local stride = 5
+local results = {}
+local writes = {}
+local all_allowed = true
+
+for i = 1, #KEYS do
+    local key = KEYS[i]
+    local base = 2 + (i - 1) * stride
+    local algorithm = ARGV[base]
+    local p1 = tonumber(ARGV[base + 1])
+    local p2 = tonumber(ARGV[base + 2])
+    local permits = tonumber(ARGV[base + 3])
+    local ttl = tonumber(ARGV[base + 4])
+
+    if algorithm == 'tb' then
+        local capacity, refill_rate, tokens_required = p1, p2, permits
+        local state = redis.call('HMGET', key, 'tokens', 'last_refill')
+        local tokens = tonumber(state[1]) or capacity
+        local last_refill = tonumber(state[2]) or current_time
+        local available = math.min(capacity, tokens + (current_time - last_refill) * refill_rate)
+        local limit = math.floor(capacity)
+
+        if available >= tokens_required then
+            local remaining = available - tokens_required
+            local remaining_whole = math.floor(remaining)
+            local reset_time = current_time + math.ceil((capacity - remaining) / refill_rate)
+            results[i] = {1, remaining_whole, limit, reset_time, limit - remaining_whole}
+            -- Keep the key until the bucket is full again, so booked reservations cannot expire
+            local bucket_ttl = ttl
+            if remaining < capacity and refill_rate > 0 then
+                bucket_ttl = math.max(ttl, math.ceil((capacity - remaining) / refill_rate / 1000))
+            end
+            writes[i] = {'tb', key, remaining, bucket_ttl}
+        else
+            -- Nothing is written on deny; the refill is recomputed lazily next time
+            local remaining_whole = math.floor(available)
+            local reset_time = current_time + math.ceil((tokens_required - available) / refill_rate)
+            results[i] = {0, remaining_whole, limit, reset_time, limit - remaining_whole}
+            all_allowed = false
+        end
+
+    elseif algorithm == 'sw' then
+        local limit, window_size_ms = p1, p2
+        local current_window_start = math.floor(current_time / window_size_ms) * window_size_ms
+        local previous_window_start = current_window_start - window_size_ms
+        local reset_time = current_window_start + window_size_ms
+        local current_window_key = key .. ':' .. tostring(current_window_start)
+        local previous_window_key = key .. ':' .. tostring(previous_window_start)
+
+        local current_count = tonumber(redis.call('GET', current_window_key)) or 0
+        local previous_count = tonumber(redis.call('GET', previous_window_key)) or 0
+        local overlap_weight = (window_size_ms - (current_time - current_window_start)) / window_size_ms
+        local estimated_count = (previous_count * overlap_weight) + current_count
+
+        if estimated_count + permits - 1 < limit then
+            results[i] = {1, math.floor(limit - estimated_count - permits), limit, reset_time, math.ceil(estimated_count + permits)}
+            writes[i] = {'counter', current_window_key, permits, ttl}
+        else
+            results[i] = {0, 0, limit, reset_time, math.ceil(estimated_count)}
+            all_allowed = false
+        end
+
+    else
+        -- 'fw'
+        local limit, window_size_ms = p1, p2
+        local current_window_start = math.floor(current_time / window_size_ms) * window_size_ms
+        local reset_time = current_window_start + window_size_ms
+        local window_key = key .. ':fw:' .. tostring(current_window_start)
+
+        local current_count = tonumber(redis.call('GET', window_key)) or 0
+
+        if current_count + permits <= limit then
+            results[i] = {1, limit - current_count - permits, limit, reset_time, current_count + permits}
+            writes[i] = {'counter', window_key, permits, ttl}
+        else
+            results[i] = {0, 0, limit, reset_time, current_count}
+            all_allowed = false
+        end
+    end
+end
+
+-- Commit phase: consume from every limit, or from none
+if all_allowed then
+    for i = 1, #KEYS do
+        local write = writes[i]
+        if write[1] == 'tb' then
+            redis.call('HSET', write[2], 'tokens', write[3], 'last_refill', current_time)
+        else
+            redis.call('INCRBY', write[2], write[3])
+        end
+        redis.call('EXPIRE', write[2], write[4])
+    end
+end
+
+-- Return: flattened {allowed, remaining, limit, reset_time, usage} per limit
+-- When not all limits allow, allowed=1 marks limits that passed but were not consumed;
+-- their values describe the state as if the request had been admitted
+local flat = {}
+for i = 1, #KEYS do
+    for j = 1, 5 do
+        flat[#flat + 1] = results[i][j]
+    end
+end
+return flat
@@ -1,4 +1,4 @@
--- Version: 1.0.0
+-- Version: 1.1.0
 -- Algorithm: Sliding Window Counter (Two-Window Weighted Average)
 -- Description: Atomic sliding window rate limiting with O(1) memory
 
@@ -7,10 +7,13 @@ local limit = tonumber(ARGV[1])
 local window_size_ms = tonumber(ARGV[2])
 local current_time = tonumber(ARGV[3])
 local ttl = tonumber(ARGV[4])
+local permits = tonumber(ARGV[5]) or 1
+local exact_expiry = ARGV[6] == '1'  -- optional: expire when the count leaves the estimate
 
 -- Calculate current and previous window boundaries
 local current_window_start = math.floor(current_time / window_size_ms) * window_size_ms
 local previous_window_start = current_window_start - window_size_ms
+local reset_time = current_window_start + window_size_ms
 
 -- Build keys for current and previous windows
 local current_window_key = key .. ':' .. tostring(current_window_start)
@@ -25,16 +28,21 @@ local time_elapsed_in_current = current_time - current_window_start
 local overlap_weight = (window_size_ms - time_elapsed_in_current) / window_size_ms
 local estimated_count = (previous_count * overlap_weight) + current_count
 
--- Decision: allow or deny
-if estimated_count < limit then
+-- Decision: allow or deny (all-or-nothing; same rule as a single permit when permits = 1)
+if estimated_count + permits - 1 < limit then
     -- Request ALLOWED - increment current window
-    redis.call('INCR', current_window_key)
-    redis.call('EXPIRE', current_window_key, ttl)
+    redis.call('INCRBY', current_window_key, permits)
+    if exact_expiry then
+        -- The count is weighed in until the end of the next window
+        redis.call('PEXPIRE', current_window_key, current_window_start + 2 * window_size_ms - current_time)
+    else
+        redis.call('EXPIRE', current_window_key, ttl)
+    end
     
-    -- Return: {allowed=1, remaining=(limit - estimated_count - 1)}
-    return {1, math.floor(limit - estimated_count - 1)}
+    -- Return: {allowed=1, remaining, limit, reset_time, usage}
+    return {1, math.floor(limit - estimated_count - permits), limit, reset_time, math.ceil(estimated_count + permits)}
 else
     -- Request DENIED - no changes to counters
-    -- Return: {allowed=0, remaining=0}
-    return {0, 0}
+    -- Return: {allowed=0, remaining=0, limit, reset_time, usage}
+    return {0, 0, limit, reset_time, math.ceil(estimated_count)}
 end
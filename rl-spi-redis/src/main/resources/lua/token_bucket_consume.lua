@@ -1,4 +1,4 @@
--- Version: 1.0.0
+-- Version: 1.1.0
 -- Algorithm: Token Bucket (Lazy Refill)
 -- Description: Atomic token bucket rate limiting with lazy refill strategy
 
@@ -8,6 +8,7 @@ local refill_rate = tonumber(ARGV[2])  -- tokens per millisecond
 local tokens_required = tonumber(ARGV[3])
 local current_time = tonumber(ARGV[4])
 local ttl = tonumber(ARGV[5])
+local exact_expiry = ARGV[6] == '1'  -- optional: expire when the bucket is full again
 
 -- Get current state from Redis
 -- Returns: {tokens, last_refill_time}
@@ -20,22 +21,55 @@ local elapsed = current_time - last_refill
 local tokens_to_add = elapsed * refill_rate
 local available = math.min(capacity, tokens + tokens_to_add)
 
+local limit = math.floor(capacity)
+
+-- Keep the key at least until the bucket is full again, so booked reservations
+-- (negative tokens) cannot expire with it and come back as a full bucket
+local function bucket_ttl(tokens)
+    if tokens < capacity and refill_rate > 0 then
+        return math.max(ttl, math.ceil((capacity - tokens) / refill_rate / 1000))
+    end
+    return ttl
+end
+
+-- A full bucket is equivalent to none: with exact expiry, the key expires as soon as
+-- the bucket is full again, and a full bucket is deleted at once
+local function expire_bucket(tokens)
+    if not exact_expiry or refill_rate <= 0 then
+        redis.call('EXPIRE', key, bucket_ttl(tokens))
+    elseif tokens >= capacity then
+        redis.call('DEL', key)
+    else
+        redis.call('PEXPIRE', key, math.ceil((capacity - tokens) / refill_rate))
+    end
+end
+
 -- Binary decision: all-or-nothing
 if available >= tokens_required then
     -- Request ALLOWED - consume tokens
-    redis.call('HSET', key, 
-        'tokens', available - tokens_required, 
+    local remaining = available - tokens_required
+    redis.call('HSET', key,
+        'tokens', remaining,
         'last_refill', current_time)
-    redis.call('EXPIRE', key, ttl)
-    
-    -- Return: {allowed=1, remaining_tokens}
-    return {1, available - tokens_required}
+    expire_bucket(remaining)
+
+    -- Reset: time until the bucket is full again
+    local reset_time = current_time + math.ceil((capacity - remaining) / refill_rate)
+    local remaining_whole = math.floor(remaining)
+
+    -- Return: {allowed=1, remaining, limit, reset_time, usage}
+    return {1, remaining_whole, limit, reset_time, limit - remaining_whole}
 else
-    -- Request DENIED - update available tokens (refill happened) but not last_refill
-    redis.call('HSET', key, 'tokens', available)
-    -- Note: Don't update last_refill since no consumption occurred
-    redis.call('EXPIRE', key, ttl)
-    
-    -- Return: {allowed=0, remaining_tokens}
-    return {0, available}
+    -- Request DENIED - persist the refill so it is not counted twice
+    redis.call('HSET', key,
+        'tokens', available,
+        'last_refill', current_time)
+    expire_bucket(available)
+
+    -- Reset: time until the required tokens are available
+    local reset_time = current_time + math.ceil((tokens_required - available) / refill_rate)
+    local remaining_whole = math.floor(available)
+
+    -- Return: {allowed=0, remaining, limit, reset_time, usage}
+    return {0, remaining_whole, limit, reset_time, limit - remaining_whole}
 end
@@ -0,0 +1,60 @@
+-- Version: 1.1.0
+-- Algorithm: Token Bucket Lease (Lazy Refill)
+-- Description: Atomically returns a node's unused leased tokens and debits a new batch
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local refill_rate = tonumber(ARGV[2])  -- tokens per millisecond
+local returned = tonumber(ARGV[3])     -- unused tokens handed back
+local min_tokens = tonumber(ARGV[4])   -- fewest tokens worth leasing
+local max_tokens = tonumber(ARGV[5])   -- most tokens to lease
+local current_time = tonumber(ARGV[6])
+local ttl = tonumber(ARGV[7])
+
+-- Get current state from Redis (same layout as token_bucket_consume.lua)
+-- Returns: {tokens, last_refill_time}
+local state = redis.call('HMGET', key, 'tokens', 'last_refill')
+local tokens = tonumber(state[1]) or capacity  -- If nil, bucket starts FULL
+local last_refill = tonumber(state[2]) or current_time
+
+-- Lazy refill calculation, then take back the unused tokens
+local elapsed = current_time - last_refill
+local available = math.min(capacity, tokens + elapsed * refill_rate + returned)
+local limit = math.floor(capacity)
+
+-- Keep the key at least until the bucket is full again, so booked reservations
+-- (negative tokens) cannot expire with it and come back as a full bucket
+local function bucket_ttl(tokens)
+    if tokens < capacity and refill_rate > 0 then
+        return math.max(ttl, math.ceil((capacity - tokens) / refill_rate / 1000))
+    end
+    return ttl
+end
+
+if available >= min_tokens then
+    local granted = math.min(max_tokens, math.floor(available))
+    local remaining = available - granted
+
+    redis.call('HSET', key,
+        'tokens', remaining,
+        'last_refill', current_time)
+    redis.call('EXPIRE', key, bucket_ttl(remaining))
+
+    local reset_time = current_time + math.ceil((capacity - remaining) / refill_rate)
+
+    -- Return: {allowed=1, granted, remaining, limit, reset_time}
+    return {1, granted, math.floor(remaining), limit, reset_time}
+end
+
+-- Not enough tokens: keep the returned tokens, lease nothing
+if returned > 0 then
+    redis.call('HSET', key,
+        'tokens', available,
+        'last_refill', current_time)
+    redis.call('EXPIRE', key, bucket_ttl(available))
+end
+
+local reset_time = current_time + math.ceil((min_tokens - available) / refill_rate)
+
+-- Return: {allowed=0, granted=0, remaining, limit, reset_time}
+return {0, 0, math.floor(available), limit, reset_time}
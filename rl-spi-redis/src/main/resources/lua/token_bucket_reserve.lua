@@ -0,0 +1,47 @@
+-- Version: 1.1.0
+-- Algorithm: Token Bucket Reservation (Lazy Refill)
+-- Description: Atomically books tokens against future refill; the bucket may go into debt
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local refill_rate = tonumber(ARGV[2])  -- tokens per millisecond
+local tokens_required = tonumber(ARGV[3])
+local current_time = tonumber(ARGV[4])
+local ttl = tonumber(ARGV[5])
+local max_wait = tonumber(ARGV[6])  -- milliseconds
+
+-- Get current state from Redis (same layout as token_bucket_consume.lua)
+-- Returns: {tokens, last_refill_time}
+local state = redis.call('HMGET', key, 'tokens', 'last_refill')
+local tokens = tonumber(state[1]) or capacity  -- If nil, bucket starts FULL
+local last_refill = tonumber(state[2]) or current_time
+
+-- Lazy refill calculation (tokens may be negative while earlier reservations are pending)
+local elapsed = current_time - last_refill
+local available = math.min(capacity, tokens + elapsed * refill_rate)
+
+local after_reservation = available - tokens_required
+local wait = 0
+if after_reservation < 0 then
+    wait = math.ceil(-after_reservation / refill_rate)
+end
+
+if wait <= max_wait then
+    -- Book the reservation: record the future consumption as debt
+    redis.call('HSET', key,
+        'tokens', after_reservation,
+        'last_refill', current_time)
+
+    -- Keep the state at least until the bucket is full again, so the debt cannot expire
+    local refill_seconds = math.ceil((capacity - after_reservation) / refill_rate / 1000)
+    redis.call('EXPIRE', key, math.max(ttl, refill_seconds))
+
+    -- Return: {booked=1, available_at}
+    return {1, current_time + wait}
+end
+
+-- Not booked: the wait exceeds the caller's maximum, nothing is consumed
+local wait_for_tokens = math.ceil((tokens_required - available) / refill_rate)
+
+-- Return: {booked=0, available_at}
+return {0, current_time + wait_for_tokens}
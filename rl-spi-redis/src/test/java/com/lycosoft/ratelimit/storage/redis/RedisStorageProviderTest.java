@@ -0,0 +1,85 @@
+package com.lycosoft.ratelimit.storage.redis;
+
+import com.lycosoft.ratelimit.config.RateLimitConfig;
+import com.lycosoft.ratelimit.spi.TimeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for {@link RedisStorageProvider} against a live Redis server.
+ *
+ * <p>The server is read from the {@code REDIS_HOST} and {@code REDIS_PORT} environment
+ * variables (default {@code localhost:6379}); the tests are skipped when it is not reachable.
+ */
+class RedisStorageProviderTest {
+
+    private JedisPool jedisPool;
+    private RedisStorageProvider provider;
+    private String key;
+
+    @BeforeEach
+    void setUp() {
+        String host = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        int port = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+        jedisPool = new JedisPool(host, port);
+        assumeTrue(isReachable(jedisPool), "Redis is not reachable at " + host + ":" + port);
+
+        provider = new RedisStorageProvider(jedisPool, TimeSource.system(), null);
+        key = "rl-test:" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.del(key);
+            }
+            provider.close(); // also closes the pool
+        } else {
+            jedisPool.close();
+        }
+    }
+
+    @Test
+    void shouldKeepReservedDebtPastTheTtlAfterLaterAcquires() {
+        // Given: A bucket of 10 tokens refilling 10 per second (TTL 2s), 30 tokens reserved
+        RateLimitConfig config = RateLimitConfig.builder()
+            .name("redis-reserve")
+            .algorithm(RateLimitConfig.Algorithm.TOKEN_BUCKET)
+            .requests(10)
+            .window(1)
+            .windowUnit(TimeUnit.SECONDS)
+            .capacity(10)
+            .refillRate(10.0 / 1000.0)
+            .build();
+        long now = System.currentTimeMillis();
+        provider.reserve(key, config, 30, 5_000, now);
+
+        // When: A later acquire writes the bucket again
+        boolean allowed = provider.tryAcquire(key, config, now);
+
+        // Then: The key outlives the TTL until the bucket is full again (3s), keeping the debt
+        assertThat(allowed).isFalse();
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.ttl(key)).isGreaterThan(config.getTtl());
+            assertThat(Double.parseDouble(jedis.hget(key, "tokens"))).isNegative();
+        }
+    }
+
+    private static boolean isReachable(JedisPool pool) {
+        try (Jedis jedis = pool.getResource()) {
+            return "PONG".equals(jedis.ping());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}